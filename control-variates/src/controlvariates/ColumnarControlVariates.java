@@ -0,0 +1,199 @@
+package controlvariates;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+
+import parser.ColumnarStore;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Role level control variates over a columnar store written by market-sim
+ * with --columnar. Only the payoff, role, strategy and "controls/" columns are
+ * read. The controls have a known mean of zero, so the adjusted payoff of each
+ * player is Y - beta * x, with beta fit by role over every observation in the
+ * store, and a control missing from an observation is taken to be its mean.
+ *
+ * Writes one entry per simulation spec, role and strategy with the raw and
+ * adjusted mean payoff and standard deviation.
+ *
+ * Example arguments:
+ *
+ * path=foldername ( MUST BE FIRST ARGUMENT )
+ *
+ * store=store-directory
+ * adj=adjusted-payoffs.json
+ */
+public class ColumnarControlVariates {
+
+	public final static String STORE_KEY = "store";
+	public final static String CONTROL_PREFIX = "controls/";
+
+	protected final ColumnarStore store;
+	protected final List<String> labels = Lists.newArrayList();
+	protected final Map<Integer, double[]> coefficients = Maps.newTreeMap();
+
+	protected int[] spec;		// by player
+	protected int[] role;
+	protected int[] strategy;
+	protected double[] Y;
+	protected double[][] X_t;
+
+	public static void main(String... args) {
+		String path = "";
+		File storeDir = null;
+		File outputFile = null;
+
+		for (String arg : args) {
+			String[] parts = arg.split("=");
+			if (parts[0].equals(VarianceReduction.PATH_KEY)) {
+				path = parts[1] + "/";
+			} else if (parts[0].equals(STORE_KEY)) {
+				storeDir = new File(path + parts[1]);
+			} else if (parts[0].equals(VarianceReduction.ADJUSTED_SUMMARY_KEY)) {
+				outputFile = new File(path + parts[1]);
+			}
+		}
+		if (storeDir == null || outputFile == null) {
+			System.err.println("A store and an output file are required");
+			System.exit(1);
+		}
+
+		try {
+			ColumnarControlVariates cv = new ColumnarControlVariates(new ColumnarStore(storeDir));
+			cv.readColumns();
+			cv.computeCoefficients();
+			cv.writeAdjusted(outputFile);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public ColumnarControlVariates(ColumnarStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * Reads the payoffs and controls of every player, with the observation
+	 * controls first.
+	 */
+	public void readColumns() throws IOException {
+		int[] observation = store.readInts(ColumnarStore.PLAYERS, "observation");
+		int[] obsSpec = store.readInts(ColumnarStore.OBSERVATIONS, "spec");
+		role = store.readInts(ColumnarStore.PLAYERS, "role");
+		strategy = store.readInts(ColumnarStore.PLAYERS, "strategy");
+		Y = store.readDoubles(ColumnarStore.PLAYERS, "payoff");
+
+		List<double[]> columns = Lists.newArrayList();
+		for (String name : store.getColumnNames(ColumnarStore.OBSERVATIONS)) {
+			if (!name.startsWith(CONTROL_PREFIX)) continue;
+			double[] byObs = store.readDoubles(ColumnarStore.OBSERVATIONS, name);
+			double[] byPlayer = new double[Y.length];
+			for (int i = 0; i < Y.length; i++) byPlayer[i] = byObs[observation[i]];
+			labels.add(name);
+			columns.add(byPlayer);
+		}
+		for (String name : store.getColumnNames(ColumnarStore.PLAYERS)) {
+			if (!name.startsWith(CONTROL_PREFIX)) continue;
+			labels.add(name);
+			columns.add(store.readDoubles(ColumnarStore.PLAYERS, name));
+		}
+
+		spec = new int[Y.length];
+		X_t = new double[Y.length][columns.size()];
+		for (int i = 0; i < Y.length; i++) {
+			spec[i] = obsSpec[observation[i]];
+			for (int j = 0; j < columns.size(); j++) {
+				double x = columns.get(j)[i];
+				X_t[i][j] = Double.isNaN(x) ? 0 : x;
+			}
+		}
+	}
+
+	/**
+	 * Fits beta for every role over all of its players.
+	 */
+	public void computeCoefficients() {
+		Map<Integer, List<Integer>> rowsByRole = Maps.newTreeMap();
+		for (int i = 0; i < Y.length; i++) {
+			List<Integer> rows = rowsByRole.get(role[i]);
+			if (rows == null) {
+				rows = Lists.newArrayList();
+				rowsByRole.put(role[i], rows);
+			}
+			rows.add(i);
+		}
+
+		List<String> roles = store.getRoles();
+		for (Entry<Integer, List<Integer>> entry : rowsByRole.entrySet()) {
+			double[] roleY = new double[entry.getValue().size()];
+			double[][] roleX_t = new double[roleY.length][];
+			for (int i = 0; i < roleY.length; i++) {
+				roleY[i] = Y[entry.getValue().get(i)];
+				roleX_t[i] = X_t[entry.getValue().get(i)];
+			}
+			ParallelRegression rows = new ParallelRegression(labels.size());
+			rows.addRows(roleY, roleX_t);
+			double[] coeffs = rows.accumulate().getRegressionParameters(false);
+			coefficients.put(entry.getKey(), coeffs);
+
+			System.out.println(roles.get(entry.getKey()) + ":");
+			String s = "coeffs: ";
+			for (double c : coeffs) s += "   " + c;
+			System.out.println(s);
+			System.out.print("           const_term");
+			for (String label : labels) System.out.print("          " + label);
+			System.out.println("");
+		}
+	}
+
+	/**
+	 * Writes the raw and adjusted payoffs of each spec, role and strategy.
+	 */
+	public void writeAdjusted(File outputFile) throws IOException {
+		Map<List<Integer>, SummaryStatistics> raw = Maps.newLinkedHashMap();
+		Map<List<Integer>, SummaryStatistics> adjusted = Maps.newLinkedHashMap();
+		for (int i = 0; i < Y.length; i++) {
+			List<Integer> key = Lists.newArrayList(spec[i], role[i], strategy[i]);
+			if (!raw.containsKey(key)) {
+				raw.put(key, new SummaryStatistics());
+				adjusted.put(key, new SummaryStatistics());
+			}
+			double[] coeffs = coefficients.get(role[i]);
+			double y = Y[i];
+			for (int j = 0; j < labels.size(); j++) y -= coeffs[j+1] * X_t[i][j];
+			raw.get(key).addValue(Y[i]);
+			adjusted.get(key).addValue(y);
+		}
+
+		List<String> roles = store.getRoles();
+		List<String> strategies = store.getStrategies();
+		JsonWriter writer = new JsonWriter(new OutputStreamWriter(
+				new FileOutputStream(outputFile), "UTF-8"));
+		writer.beginArray();
+		for (Entry<List<Integer>, SummaryStatistics> entry : raw.entrySet()) {
+			SummaryStatistics adj = adjusted.get(entry.getKey());
+			writer.beginObject();
+			writer.name("spec").value(entry.getKey().get(0));
+			writer.name("role").value(roles.get(entry.getKey().get(1)));
+			writer.name("strategy").value(strategies.get(entry.getKey().get(2)));
+			writer.name("samples").value(entry.getValue().getN());
+			writer.name("payoff").value(entry.getValue().getMean());
+			writer.name("payoff_sd").value(entry.getValue().getStandardDeviation());
+			writer.name("adjusted_payoff").value(adj.getMean());
+			writer.name("adjusted_payoff_sd").value(adj.getStandardDeviation());
+			writer.endObject();
+		}
+		writer.endArray();
+		writer.close();
+	}
+}
@@ -22,7 +22,6 @@ import json.summary.SummarySymmetryGroup;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
-import org.apache.commons.math3.stat.regression.OLSMultipleLinearRegression;
 
 import Jama.Matrix;
 
@@ -135,22 +134,19 @@ public class ControlVariates {
 			writer.beginArray();
 			for (String role : VarianceReduction.roles) {
 				System.out.println(role + ":");
-				double[][] allX_t = null;
-				double[] allY = null;
+				ParallelRegression rows = new ParallelRegression(control_variables.length);
 
 				for (AggregatedObservationProfile profile : aggregatedObs.getProfiles()) {
 					double[][] X_t = profile.getControlVariables(control_variables);
 
 					for (ProfileSymmetryGroup profileGroup : profile.getSymmetryGroups()) {
 						if (profileGroup.getRole().equals(role)) {
-							double[] Y = profile.getObservationPayoffs(profileGroup);
-							allY = concatenateVectors(allY, Y);
-							allX_t = concatenateVertMatrices(allX_t, X_t); 
+							rows.addRows(profile.getObservationPayoffs(profileGroup), X_t);
 						}
 					}
 				}
-				allX_t = subtractColumnMeans(allX_t); /// TODO TEST THIS
-				double[] coeffs = computeRegressionCoefficients(allX_t, allY);
+				// control variables centered by their means over the role
+				double[] coeffs = computeRegressionCoefficients(rows, true);
 				coefficients.put(role, new Matrix(coeffs, coeffs.length));
 				String s = "coeffs: ";
 				for (double c : coeffs) s += "   " + c;
@@ -194,8 +190,9 @@ public class ControlVariates {
 			for (String role : VarianceReduction.roles) {
 				System.out.println(role + ":");
 
-				double[][] allX_t = null;
-				double[] allY = null;
+				ParallelRegression rows = new ParallelRegression(role.equals(BACKGROUND)
+						? control_variables.length + pv_control_variables.length
+						: control_variables.length);
 
 				for (FeatureObservationProfile profile : aggregatedFeatures.getProfiles()) {
 
@@ -204,17 +201,15 @@ public class ControlVariates {
 					for (ProfileSymmetryGroup profileGroup : profile.getSymmetryGroups()) {
 						if (profileGroup.getRole().equals(role)) {
 							double[] Y = profile.getObservationPayoffs(profileGroup);
-							allY = concatenateVectors(allY, Y);
 							if (role.equals(BACKGROUND)) {
 								double[][] pvs = profile.getFeatureControlVariables(pv_control_variables, profileGroup);
-								allX_t = concatenateVertMatrices(allX_t, concatenateHorizMatrices(X_t, pvs));
+								rows.addRows(Y, X_t, pvs);
 							} else
-								allX_t = concatenateVertMatrices(allX_t, X_t);
+								rows.addRows(Y, X_t);
 						}
 					}
 				}
-				allX_t = subtractColumnMeans(allX_t);
-				double[] coeffs = computeRegressionCoefficients(allX_t, allY);
+				double[] coeffs = computeRegressionCoefficients(rows, true);
 
 				coefficients.put(role, new Matrix(coeffs, coeffs.length));
 				String s = "coeffs: ";
@@ -301,18 +296,28 @@ public class ControlVariates {
 	 * @return
 	 */
 	public double[] computeRegressionCoefficients(double[][] X_t, double[] Y) {
-		double Ymean = 0;
-		for (int i = 0; i < Y.length; i++) Ymean += Y[i];
-		Ymean /= Y.length;
-		
-		//if (!ArrayUtils.contains(Y, 0.0)) {
-		if (Ymean != 0) {
-			OLSMultipleLinearRegression regression = new OLSMultipleLinearRegression();
-			regression.newSampleData(Y, X_t);
+		ParallelRegression rows = new ParallelRegression(X_t[0].length);
+		rows.addRows(Y, X_t);
+		return computeRegressionCoefficients(rows, false);
+	}
+
+	/**
+	 * Regression of the payoffs on the control variables, accumulated over
+	 * blocks of rows in parallel instead of on a concatenated design matrix.
+	 * 
+	 * @param rows		observed payoffs and control variables
+	 * @param centered	if true, the control variables are treated as having their
+	 * 					means subtracted, so const_term is the mean payoff
+	 * @return [const_term, betas], all zeros if the mean payoff is zero
+	 */
+	public double[] computeRegressionCoefficients(ParallelRegression rows, boolean centered) {
+		StreamingRegression regression = rows.accumulate();
 
+		//if (!ArrayUtils.contains(Y, 0.0)) {
+		if (regression.getMeanY() != 0) {
 			// Q+1 is number of rows in regression coeffs, gamma contains both mu and beta
-			double[] mu_and_beta = regression.estimateRegressionParameters();
-			double[] coeff_stderr = regression.estimateRegressionParametersStandardErrors();
+			double[] mu_and_beta = regression.getRegressionParameters(centered);
+			double[] coeff_stderr = regression.getRegressionParametersStandardErrors(centered);
 
 			double[] signif = new double[coeff_stderr.length];
 			for (int i = 0; i < coeff_stderr.length; i++) {
@@ -325,7 +330,7 @@ public class ControlVariates {
 
 			return mu_and_beta;
 		}
-		return new double[X_t[0].length + 1];
+		return new double[rows.numControls + 1];
 	}
 
 	/**
@@ -348,72 +353,27 @@ public class ControlVariates {
 			int K = X_t.length;		 	// number of simulation runs (observations) (already transposed)
 			int Q = X_t[0].length;		// number of control variables
 
-			Matrix gamma = new Matrix(mu_and_beta, Q+1);	// EQ (A5)
-
-			// Generate estimate for expected value of payoffs
+			// Generate estimate for expected value of payoffs, EQ (A5)
 			double estimate = 0;
 			for(int i = 0; i < K; i++){
 				estimate += Y[i];
 				for(int j = 0; j < Q; j++){
-					estimate -= gamma.get(j+1,0) * X_t[i][j];
+					estimate -= mu_and_beta[j+1] * X_t[i][j];
 				}
 			}
 			estimate /= (double) K;	// estimated expected value of Y
 
-			// get submatrix rows 1-Q (leave off coeff at index 0)
-			double mu_hat = gamma.get(0,0);
-			Matrix beta_hat = gamma.getMatrix(1, Q, 0, 0);
-			double[][] X_t_1 = this.addFirstColumnOnes(X_t);
-
-			double estimate2 = 0;
-			for (int k = 0; k < K; k++) {
-				Matrix xMatrix_k = new Matrix(X_t[k], Q);
-				System.out.println(beta_hat.transpose().times(xMatrix_k).get(0,0));
-				estimate2 -= beta_hat.transpose().times(xMatrix_k).get(0,0);
-				if (k == 50) System.out.println("at k=50, est is " + (estimate2/50.0) + " vs " + Ymean);
-				if (k == 100) System.out.println("at k=100, est is " + (estimate2/100.0) + " vs " + Ymean);
-				if (k == 200) System.out.println("at k=200, est is " + (estimate2/200.0) + " vs " + Ymean);
-			}
-			estimate2 /= (double) K;
-
-			Matrix mX_t = new Matrix(X_t_1, X_t_1.length, X_t_1[0].length); // with column of 1's
-//			double s = mX_t.transpose().times(mX_t).inverse().get(0, 0); // Eq (A7)
-
-			SummaryStatistics stat = new SummaryStatistics();
 			double sigma_hat2 = 0;
 			for(int k = 0; k < K; k++){	// Eq (A8) - modified
-				// Matrix X_k = mX_t.getMatrix(k, k, 1, Q); // (c_k - mu_c) matrix
-				//sigma_hat2 += Math.pow(Y[k] - (mu_hat + beta_hat.times(X_k).get(0, 0)), 2);	// XXX
-				stat.addValue(Y[k]);
 				sigma_hat2 += Math.pow(Y[k] - estimate, 2);
 			}
-			//sigma_hat2 /= (K-Q-1);
-			//double variance = s*sigma_hat2;	// XXX
 			double variance = sigma_hat2 / (K-1);	// sample variance
-			//System.out.println("via SS: " + stat.getStandardDeviation() + ", via est " + Math.sqrt(variance));
 
 			return new EmpiricalValue(estimate, Math.sqrt(variance), K);
 		}
 		return new EmpiricalValue(0, 0, Y.length);
 	}
 
-
-	/**
-	 * Adds a first column of ones to the control variable matrix.
-	 * @param X_t
-	 * @return
-	 */
-	private double[][] addFirstColumnOnes(double[][] X_t) {
-		double[][] X_t_1 = new double[X_t.length][X_t[0].length+1];
-		for (int i = 0; i < X_t_1.length; i++) {
-			X_t_1[i][0] = 1;
-			for (int j = 1; j < X_t_1[0].length; j++) {
-				X_t_1[i][j] = X_t[i][j-1];
-			}
-		}
-		return X_t_1;
-	}
-
 	/**
 	 * @param file
 	 */
@@ -444,7 +404,7 @@ public class ControlVariates {
 	 * @param coeffs
 	 * @param labels
 	 */
-	protected void writeCoeffsToJson(JsonWriter writer, String role, 
+	protected static void writeCoeffsToJson(JsonWriter writer, String role, 
 			double[] coeffs, String[] labels) throws IOException {
 
 		writer.beginObject();
@@ -473,7 +433,7 @@ public class ControlVariates {
 	 * @param role
 	 * @return
 	 */
-	protected double[] readCoeffsFromJson(String role, File file) throws IOException {
+	protected static double[] readCoeffsFromJson(String role, File file) throws IOException {
 		JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
 		double[] coeffs = new double[control_variables.length + 1];
 
@@ -506,7 +466,7 @@ public class ControlVariates {
 	 * @return
 	 * @throws IOException
 	 */
-	protected double[] readCoeffs(JsonReader reader, String role) throws IOException {
+	protected static double[] readCoeffs(JsonReader reader, String role) throws IOException {
 		String[] labels = control_variables;
 		if (role.equals(BACKGROUND))
 			labels = concatenateStringVectors(labels, pv_control_variables);
@@ -696,7 +656,7 @@ public class ControlVariates {
 		return expandedVector;
 	}
 
-	protected String[] concatenateStringVectors(String[] original, String[] vectorToAdd) {
+	protected static String[] concatenateStringVectors(String[] original, String[] vectorToAdd) {
 		if (original == null) return vectorToAdd;
 
 		String[] expandedVector = new String[original.length + vectorToAdd.length];
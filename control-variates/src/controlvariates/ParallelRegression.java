@@ -0,0 +1,119 @@
+package controlvariates;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Collects the rows of a regression by reference, and accumulates the
+ * StreamingRegression over blocks of rows in parallel. Each block keeps its
+ * own means and centered cross products, which are merged in order, so the
+ * result doesn't depend on the number of threads and no design matrix is ever
+ * built.
+ */
+public class ParallelRegression {
+
+	public final static int BLOCK_SIZE = 4096;
+
+	protected static ExecutorService exec = null;
+
+	protected final int numControls;
+	protected final List<double[]> ys = Lists.newArrayList();
+	protected final List<double[][][]> xs = Lists.newArrayList();
+	protected long numRows = 0;
+
+	public ParallelRegression(int numControls) {
+		this.numControls = numControls;
+	}
+
+	/**
+	 * Adds rows of payoffs with their control variables. The control variables
+	 * may be split into several matrices that are joined horizontally, e.g.
+	 * observation features followed by player features. Nothing is copied, so
+	 * the arrays shouldn't be modified until accumulate is called.
+	 *
+	 * @param Y			observed payoffs
+	 * @param X_t		control variable matrices (no column of 1's)
+	 */
+	public void addRows(double[] Y, double[][]... X_t) {
+		int width = 0;
+		for (double[][] part : X_t) {
+			if (part.length != Y.length)
+				throw new IllegalArgumentException("Expected " + Y.length + " rows, got " + part.length);
+			if (part.length > 0) width += part[0].length;
+		}
+		if (Y.length > 0 && width != numControls)
+			throw new IllegalArgumentException("Expected " + numControls
+					+ " control variables, got " + width);
+		ys.add(Y);
+		xs.add(X_t);
+		numRows += Y.length;
+	}
+
+	public long getNumRows() {
+		return numRows;
+	}
+
+	/**
+	 * @return the regression over all of the rows added
+	 */
+	public StreamingRegression accumulate() {
+		if (numRows <= BLOCK_SIZE) {
+			StreamingRegression regression = new StreamingRegression(numControls);
+			for (int i = 0; i < ys.size(); i++) {
+				regression.addObservations(ys.get(i), xs.get(i), 0, ys.get(i).length);
+			}
+			return regression;
+		}
+
+		List<Future<StreamingRegression>> blocks = Lists.newArrayList();
+		for (int i = 0; i < ys.size(); i++) {
+			final double[] Y = ys.get(i);
+			final double[][][] X_t = xs.get(i);
+			for (int from = 0; from < Y.length; from += BLOCK_SIZE) {
+				final int start = from;
+				final int end = Math.min(from + BLOCK_SIZE, Y.length);
+				blocks.add(getExecutor().submit(new Callable<StreamingRegression>() {
+					@Override
+					public StreamingRegression call() {
+						StreamingRegression block = new StreamingRegression(numControls);
+						block.addObservations(Y, X_t, start, end);
+						return block;
+					}
+				}));
+			}
+		}
+
+		StreamingRegression regression = new StreamingRegression(numControls);
+		try {
+			for (Future<StreamingRegression> block : blocks) {
+				regression.combine(block.get());
+			}
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		return regression;
+	}
+
+	/**
+	 * One daemon thread per core shared by every regression, so it doesn't keep
+	 * the program from exiting.
+	 */
+	protected static synchronized ExecutorService getExecutor() {
+		if (exec == null) {
+			exec = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+					new ThreadFactoryBuilder().setDaemon(true)
+					.setNameFormat("regression-%d").build());
+		}
+		return exec;
+	}
+}
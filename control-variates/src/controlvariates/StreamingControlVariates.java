@@ -0,0 +1,308 @@
+package controlvariates;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import json.ProfileSymmetryGroup;
+import json.Role;
+import json.features.Feature;
+import json.features.FeatureObservationProfile;
+import json.features.FeatureObservations;
+import json.features.PlayerFeatureSummary;
+import json.summary.SummaryProfile;
+import json.summary.SummarySymmetryGroup;
+
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+
+import parser.ObservationStreamer;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Role level control variates applied directly to the full game files,
+ * without the intermediate features file. Each file is streamed twice: the
+ * first pass accumulates the regression by role, and the second applies the
+ * coefficients and writes each adjusted profile as soon as it's read. Memory
+ * only depends on the size of a single profile, so it works on games too
+ * large for ControlVariates.applyCVByRoleOverGameWithFeatures.
+ *
+ * The control variables are the same as for
+ * applyCVByRoleOverGameWithFeatures, and are centered by their mean over the
+ * role before the coefficients are applied. The reported standard deviation
+ * is that of the adjusted payoffs.
+ *
+ * Example arguments:
+ *
+ * path=foldername ( MUST BE FIRST ARGUMENT )
+ *
+ * full=113-full.json (may be repeated)
+ * outcoeff=coeffs-output.json
+ * incoeff=coeffs.json
+ * adj=113-output-adj-summary.json
+ */
+public class StreamingControlVariates {
+
+	protected static final Gson gson = new Gson();
+
+	public final static String FULL_KEY = "full";
+
+	protected final ObservationStreamer streamer = new ObservationStreamer();
+	protected final Map<String, StreamingRegression> regressions = Maps.newTreeMap();
+	protected final Map<String, double[]> coefficients = Maps.newHashMap();
+
+	public static void main(String... args) {
+		String path = "";
+		List<File> fullFiles = Lists.newArrayList();
+		File inputCoeffsFile = null;
+		File outputCoeffsFile = null;
+		File outputFile = null;
+
+		for (String arg : args) {
+			String[] parts = arg.split("=");
+			if (parts[0].equals(VarianceReduction.PATH_KEY)) {
+				path = parts[1] + "/";
+			} else if (parts[0].equals(FULL_KEY)) {
+				fullFiles.add(new File(path + parts[1]));
+			} else if (parts[0].equals(VarianceReduction.INPUT_COEFF_KEY)) {
+				inputCoeffsFile = new File(path + parts[1]);
+			} else if (parts[0].equals(VarianceReduction.OUTPUT_COEFF_KEY)) {
+				outputCoeffsFile = new File(path + parts[1]);
+			} else if (parts[0].equals(VarianceReduction.ADJUSTED_SUMMARY_KEY)) {
+				outputFile = new File(path + parts[1]);
+			}
+		}
+		if (fullFiles.isEmpty()) {
+			System.err.println("At least one full game file is required");
+			System.exit(1);
+		}
+		if (inputCoeffsFile == null && outputCoeffsFile == null) {
+			outputCoeffsFile = new File(path + VarianceReduction.OUTPUT_COEFF_DEFAULT);
+		}
+
+		try {
+			StreamingControlVariates cv = new StreamingControlVariates();
+			for (File file : fullFiles) {
+				cv.accumulate(file);
+			}
+			if (inputCoeffsFile != null) {
+				cv.readCoefficients(inputCoeffsFile);
+			} else {
+				cv.computeCoefficients(outputCoeffsFile);
+			}
+			if (outputFile != null) {
+				cv.writeAdjusted(fullFiles, outputFile);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * First pass, adds every symmetry group of every observation to the
+	 * regression of its role.
+	 */
+	public void accumulate(File fullFile) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(fullFile));
+		streamer.streamJson(in, new ProfileHandler() {
+			@Override
+			public void observation(ProfileSymmetryGroup group, double[] x, double y) {
+				StreamingRegression regression = regressions.get(group.getRole());
+				if (regression == null) {
+					regression = new StreamingRegression(x.length);
+					regressions.put(group.getRole(), regression);
+				}
+				regression.addObservation(x, y);
+			}
+		});
+	}
+
+	/**
+	 * Solves the regressions from the first pass and writes the coefficients
+	 * in the same format as ControlVariates.
+	 */
+	public void computeCoefficients(File outputCoeffsFile) throws IOException {
+		JsonWriter writer = new JsonWriter(new FileWriter(outputCoeffsFile));
+		writer.beginArray();
+		for (Entry<String, StreamingRegression> entry : regressions.entrySet()) {
+			double[] coeffs = entry.getValue().getCoefficients();
+			coefficients.put(entry.getKey(), coeffs);
+			printCoefficients(entry.getKey(), coeffs);
+			ControlVariates.writeCoeffsToJson(writer, entry.getKey(), coeffs,
+					getLabels(entry.getKey()));
+		}
+		writer.endArray();
+		writer.close();
+	}
+
+	public void readCoefficients(File inputCoeffsFile) throws IOException {
+		for (String role : regressions.keySet()) {
+			double[] coeffs = ControlVariates.readCoeffsFromJson(role, inputCoeffsFile);
+			coefficients.put(role, coeffs);
+			printCoefficients(role, coeffs);
+		}
+	}
+
+	/**
+	 * Second pass, writes the adjusted summary of every profile in the files,
+	 * in the same format as ControlVariates.writeAdjustedToJson.
+	 */
+	public void writeAdjusted(List<File> fullFiles, File outputFile) throws IOException {
+		final JsonWriter writer = new JsonWriter(new OutputStreamWriter(
+				new FileOutputStream(outputFile), "UTF-8"));
+		final List<FeatureObservations> header = Lists.newArrayList();
+
+		writer.beginObject();
+		writer.name("profiles").beginArray();
+		for (File file : fullFiles) {
+			InputStream in = new BufferedInputStream(new FileInputStream(file));
+			streamer.streamJson(in, new ProfileHandler() {
+				Map<Integer, SummaryStatistics> adjusted;
+				Map<Integer, SummaryStatistics> raw;
+
+				@Override
+				public void startProfile(int id, List<ProfileSymmetryGroup> symmetryGroups) {
+					super.startProfile(id, symmetryGroups);
+					adjusted = Maps.newHashMap();
+					raw = Maps.newHashMap();
+					for (ProfileSymmetryGroup group : symmetryGroups) {
+						adjusted.put(group.getID(), new SummaryStatistics());
+						raw.put(group.getID(), new SummaryStatistics());
+					}
+				}
+
+				@Override
+				public void observation(ProfileSymmetryGroup group, double[] x, double y) {
+					raw.get(group.getID()).addValue(y);
+					adjusted.get(group.getID()).addValue(y - adjustment(group.getRole(), x));
+				}
+
+				@Override
+				public void endProfile() {
+					SummaryProfile profile = new SummaryProfile(id, observations,
+							Lists.<SummarySymmetryGroup>newArrayList());
+					for (ProfileSymmetryGroup group : groups.values()) {
+						SummaryStatistics stats = adjusted.get(group.getID());
+						EmpiricalValue val = raw.get(group.getID()).getMean() != 0
+								? new EmpiricalValue(stats.getMean(), stats.getStandardDeviation(),
+										(int) stats.getN())
+								: new EmpiricalValue(0, 0, (int) stats.getN());
+						profile.addGroup(SummarySymmetryGroup.create(group, val));
+					}
+					gson.toJson(profile, SummaryProfile.class, writer);
+				}
+
+				@Override
+				public void game(String name, List<Role> roles, String simulatorFullname) {
+					FeatureObservations obs = new FeatureObservations(name, roles,
+							simulatorFullname, Lists.<FeatureObservationProfile>newArrayList());
+					if (header.isEmpty())
+						header.add(obs);
+					else
+						header.get(0).mergeObservations(obs);
+				}
+			});
+		}
+		writer.endArray();
+		if (!header.isEmpty()) {
+			writer.name("name").value(header.get(0).getName());
+			writer.name("roles");
+			gson.toJson(gson.toJsonTree(header.get(0).getRoles()), writer);
+			writer.name("simulator_fullname").value(header.get(0).getSimulatorFullName());
+		}
+		writer.endObject();
+		writer.close();
+	}
+
+	/**
+	 * @return beta * (x - mean x) for the role
+	 */
+	protected double adjustment(String role, double[] x) {
+		double[] coeffs = coefficients.get(role);
+		StreamingRegression regression = regressions.get(role);
+		if (coeffs == null || regression == null) return 0;
+
+		double[] means = regression.getMeans();
+		double adjustment = 0;
+		for (int i = 0; i < x.length && i+1 < coeffs.length; i++) {
+			adjustment += coeffs[i+1] * (x[i] - means[i]);
+		}
+		return adjustment;
+	}
+
+	protected static String[] getLabels(String role) {
+		if (role.equals(ControlVariates.BACKGROUND))
+			return ControlVariates.concatenateStringVectors(ControlVariates.control_variables,
+					ControlVariates.pv_control_variables);
+		return ControlVariates.control_variables;
+	}
+
+	protected static void printCoefficients(String role, double[] coeffs) {
+		System.out.println(role + ":");
+		String s = "coeffs: ";
+		for (double c : coeffs) s += "   " + c;
+		System.out.println(s);
+		System.out.print("           const_term");
+		for (String cv : getLabels(role)) System.out.print("          " + cv);
+		System.out.println("");
+	}
+
+	/**
+	 * Turns each observation into a row of the regression for each of the
+	 * profile's symmetry groups.
+	 */
+	protected static abstract class ProfileHandler implements ObservationStreamer.Handler {
+
+		protected int id;
+		protected int observations;
+		protected Map<Integer, ProfileSymmetryGroup> groups;
+
+		public abstract void observation(ProfileSymmetryGroup group, double[] x, double y);
+
+		@Override
+		public void startProfile(int id, List<ProfileSymmetryGroup> symmetryGroups) {
+			this.id = id;
+			this.observations = 0;
+			this.groups = Maps.newLinkedHashMap();
+			for (ProfileSymmetryGroup group : symmetryGroups) {
+				groups.put(group.getID(), group);
+			}
+		}
+
+		@Override
+		public void observation(Feature features, Map<Integer, PlayerFeatureSummary> players) {
+			observations++;
+			for (Entry<Integer, PlayerFeatureSummary> entry : players.entrySet()) {
+				ProfileSymmetryGroup group = groups.get(entry.getKey());
+				if (group == null) continue;
+
+				String[] labels = getLabels(group.getRole());
+				double[] x = new double[labels.length];
+				for (int i = 0; i < ControlVariates.control_variables.length; i++) {
+					x[i] = features.get(ControlVariates.control_variables[i]);
+				}
+				for (int i = ControlVariates.control_variables.length; i < labels.length; i++) {
+					x[i] = entry.getValue().getFeature(labels[i]);
+				}
+				observation(group, x, entry.getValue().getPayoff());
+			}
+		}
+
+		@Override
+		public void endProfile() { }
+
+		@Override
+		public void game(String name, List<Role> roles, String simulatorFullname) { }
+	}
+}
@@ -0,0 +1,226 @@
+package controlvariates;
+
+import Jama.CholeskyDecomposition;
+import Jama.Matrix;
+
+/**
+ * Online least squares of payoffs on control variables. Only the means and
+ * the centered cross products (X'X and X'y about the means) are kept, so
+ * memory doesn't depend on the number of observations. The cross products are
+ * updated one observation at a time as in Welford's variance algorithm, which
+ * keeps them accurate when the control variables have a large mean.
+ *
+ * The coefficients match regressing Y on the control variables with their
+ * means subtracted, i.e. [const_term, beta_1, ..., beta_Q] where the constant
+ * term is the mean payoff. Two regressions over different observations can be
+ * combined, so blocks of rows can be accumulated independently.
+ */
+public class StreamingRegression {
+
+	protected long n;
+	protected double meanY;
+	protected double[] meanX;
+	protected double[][] sxx;		// centered X'X
+	protected double[] sxy;			// centered X'y
+	protected double syy;			// centered y'y
+
+	public StreamingRegression(int numControls) {
+		this.n = 0;
+		this.meanY = 0;
+		this.meanX = new double[numControls];
+		this.sxx = new double[numControls][numControls];
+		this.sxy = new double[numControls];
+		this.syy = 0;
+	}
+
+	/**
+	 * Add an observation.
+	 *
+	 * @param x		control variables (no column of 1's)
+	 * @param y		observed payoff
+	 */
+	public void addObservation(double[] x, double y) {
+		if (x.length != meanX.length)
+			throw new IllegalArgumentException("Expected " + meanX.length
+					+ " control variables, got " + x.length);
+		n++;
+		double[] dx = new double[x.length];
+		for (int i = 0; i < x.length; i++) {
+			dx[i] = x[i] - meanX[i];
+			meanX[i] += dx[i] / n;
+		}
+		double dy = y - meanY;
+		meanY += dy / n;
+		syy += dy * (y - meanY);
+		for (int i = 0; i < x.length; i++) {
+			// uses the old deviation on one side and the new on the other, and
+			// mirrored so X'X stays exactly symmetric for the Cholesky
+			for (int j = 0; j <= i; j++) {
+				double d = dx[i] * (x[j] - meanX[j]);
+				sxx[i][j] += d;
+				if (j != i) sxx[j][i] += d;
+			}
+			sxy[i] += dx[i] * (y - meanY);
+		}
+	}
+
+	/**
+	 * Adds rows from to (exclusive) of a design matrix split into horizontal
+	 * parts, without copying the matrix.
+	 *
+	 * @param Y			observed payoffs
+	 * @param X_t		parts of the control variable matrix (no column of 1's)
+	 */
+	public void addObservations(double[] Y, double[][][] X_t, int from, int to) {
+		double[] x = new double[meanX.length];
+		for (int row = from; row < to; row++) {
+			int col = 0;
+			for (double[][] part : X_t) {
+				for (double value : part[row]) {
+					x[col++] = value;
+				}
+			}
+			addObservation(x, Y[row]);
+		}
+	}
+
+	/**
+	 * Merges the observations of another regression into this one.
+	 */
+	public StreamingRegression combine(StreamingRegression that) {
+		if (that.meanX.length != meanX.length)
+			throw new IllegalArgumentException("Can't combine regressions with "
+					+ meanX.length + " and " + that.meanX.length + " control variables");
+		if (that.n == 0) return this;
+
+		long total = n + that.n;
+		double weight = (double) n * that.n / total;
+		double[] dx = new double[meanX.length];
+		for (int i = 0; i < meanX.length; i++) {
+			dx[i] = that.meanX[i] - meanX[i];
+		}
+		double dy = that.meanY - meanY;
+		for (int i = 0; i < meanX.length; i++) {
+			for (int j = 0; j < meanX.length; j++) {
+				sxx[i][j] += that.sxx[i][j] + dx[i] * dx[j] * weight;
+			}
+			sxy[i] += that.sxy[i] + dx[i] * dy * weight;
+			meanX[i] += dx[i] * that.n / total;
+		}
+		syy += that.syy + dy * dy * weight;
+		meanY += dy * that.n / total;
+		n = total;
+		return this;
+	}
+
+	public long getN() {
+		return n;
+	}
+
+	public double getMeanY() {
+		return meanY;
+	}
+
+	/**
+	 * @return means of the control variables, used to center them when the
+	 * coefficients are applied
+	 */
+	public double[] getMeans() {
+		return meanX.clone();
+	}
+
+	/**
+	 * Solves the normal equations for the coefficients. As with
+	 * ControlVariates.computeRegressionCoefficients, all zeros are returned if
+	 * the mean payoff is zero. A singular X'X (e.g. a control variable that
+	 * never changes) also gives zero betas.
+	 *
+	 * @return [const_term, betas]
+	 */
+	public double[] getCoefficients() {
+		double[] coeffs = new double[meanX.length + 1];
+		if (meanY == 0 || n <= meanX.length) return coeffs;
+
+		coeffs[0] = meanY;
+		double[] betas = getBetas();
+		for (int i = 0; i < meanX.length; i++) {
+			coeffs[i+1] = betas[i];
+		}
+		return coeffs;
+	}
+
+	/**
+	 * Same as OLSMultipleLinearRegression.estimateRegressionParameters.
+	 *
+	 * @param centered	if true, the intercept is for the control variables with
+	 * 					their means subtracted, i.e. the mean payoff
+	 * @return [intercept, betas]
+	 */
+	public double[] getRegressionParameters(boolean centered) {
+		double[] betas = getBetas();
+		double[] params = new double[meanX.length + 1];
+		params[0] = meanY;
+		for (int i = 0; i < meanX.length; i++) {
+			params[i+1] = betas[i];
+			if (!centered) params[0] -= betas[i] * meanX[i];
+		}
+		return params;
+	}
+
+	/**
+	 * Same as OLSMultipleLinearRegression.estimateRegressionParametersStandardErrors.
+	 *
+	 * @param centered	see getRegressionParameters
+	 */
+	public double[] getRegressionParametersStandardErrors(boolean centered) {
+		double[] errors = new double[meanX.length + 1];
+		double[] betas = getBetas();
+		double residual = syy;
+		for (int i = 0; i < meanX.length; i++) {
+			residual -= betas[i] * sxy[i];
+		}
+		double sigma2 = residual / (n - meanX.length - 1);
+
+		Matrix inverse = invert(new Matrix(sxx));
+		errors[0] = 1.0 / n;
+		for (int i = 0; i < meanX.length; i++) {
+			errors[i+1] = Math.sqrt(sigma2 * inverse.get(i, i));
+			if (!centered)
+				for (int j = 0; j < meanX.length; j++)
+					errors[0] += meanX[i] * inverse.get(i, j) * meanX[j];
+		}
+		errors[0] = Math.sqrt(sigma2 * errors[0]);
+		return errors;
+	}
+
+	/**
+	 * Solves X'X beta = X'y (centered) with a Cholesky decomposition, falling
+	 * back to LU if X'X isn't positive definite.
+	 */
+	protected double[] getBetas() {
+		double[] betas = new double[meanX.length];
+		if (meanX.length == 0) return betas;
+
+		Matrix b = new Matrix(sxy, sxy.length);
+		try {
+			CholeskyDecomposition chol = new Matrix(sxx).chol();
+			Matrix beta = chol.isSPD() ? chol.solve(b) : new Matrix(sxx).solve(b);
+			for (int i = 0; i < meanX.length; i++) {
+				betas[i] = beta.get(i, 0);
+			}
+		} catch (RuntimeException e) {
+			System.err.println("Control variables are collinear, not adjusting: " + e.getMessage());
+		}
+		return betas;
+	}
+
+	protected static Matrix invert(Matrix a) {
+		try {
+			CholeskyDecomposition chol = a.chol();
+			Matrix identity = Matrix.identity(a.getRowDimension(), a.getColumnDimension());
+			return chol.isSPD() ? chol.solve(identity) : a.inverse();
+		} catch (RuntimeException e) {
+			return new Matrix(a.getRowDimension(), a.getColumnDimension(), Double.NaN);
+		}
+	}
+}
@@ -0,0 +1,229 @@
+package parser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Reads the columnar store written by market-sim with --columnar. Only the
+ * files of the requested columns are read, so scanning a few columns of a
+ * large batch of observations is much cheaper than parsing the observation
+ * json.
+ *
+ * The store has two tables, OBSERVATIONS with a row per observation, and
+ * PLAYERS with a row per player of every observation. Players have the
+ * columns "observation" (row of the observation), "role", "strategy" (indices
+ * into getRoles and getStrategies) and "payoff", and both tables have numeric
+ * features as "features/name" and controls as "controls/name". Values missing
+ * from a chunk are NaN for doubles and -1 for ints.
+ */
+public class ColumnarStore {
+
+	public final static String MANIFEST = "manifest.json";
+	public final static String OBSERVATIONS = "observations";
+	public final static String PLAYERS = "players";
+
+	protected final File directory;
+	protected final JsonObject manifest;
+	protected final List<JsonObject> chunks = Lists.newArrayList();
+
+	public ColumnarStore(File directory) throws IOException {
+		this.directory = directory;
+		Reader reader = new FileReader(new File(directory, MANIFEST));
+		try {
+			this.manifest = new JsonParser().parse(reader).getAsJsonObject();
+		} finally {
+			reader.close();
+		}
+		for (JsonElement chunk : manifest.getAsJsonArray("chunks")) {
+			chunks.add(chunk.getAsJsonObject());
+		}
+	}
+
+	public long getNumObservations() {
+		return manifest.get(OBSERVATIONS).getAsLong();
+	}
+
+	public long getNumPlayers() {
+		return manifest.get(PLAYERS).getAsLong();
+	}
+
+	public List<String> getRoles() {
+		return getStrings("roles");
+	}
+
+	public List<String> getStrategies() {
+		return getStrings("strategies");
+	}
+
+	/**
+	 * @return the simulation specs, indexed by the "spec" observation column
+	 */
+	public List<JsonObject> getSpecs() {
+		List<JsonObject> specs = Lists.newArrayList();
+		for (JsonElement spec : manifest.getAsJsonArray("specs")) {
+			specs.add(spec.getAsJsonObject());
+		}
+		return specs;
+	}
+
+	/**
+	 * @return names of the columns in any chunk of the table
+	 */
+	public Set<String> getColumnNames(String table) {
+		Set<String> names = Sets.newLinkedHashSet();
+		for (JsonObject chunk : chunks) {
+			for (Entry<String, JsonElement> column : getColumns(chunk, table).entrySet()) {
+				names.add(column.getKey());
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Reads a scalar column over every chunk. Int columns are converted.
+	 */
+	public double[] readDoubles(String table, String name) throws IOException {
+		double[] values = new double[(int) getNumRows(table)];
+		int row = 0;
+		for (JsonObject chunk : chunks) {
+			int rows = chunk.get(table).getAsInt();
+			JsonObject column = getColumn(chunk, table, name);
+			if (column == null) {
+				Arrays.fill(values, row, row + rows, Double.NaN);
+			} else if (getType(column).equals("i4")) {
+				IntBuffer buffer = map(chunk, column.get("file").getAsString()).asIntBuffer();
+				for (int i = 0; i < rows; i++) values[row + i] = buffer.get(i);
+			} else {
+				map(chunk, column.get("file").getAsString()).asDoubleBuffer().get(values, row, rows);
+			}
+			row += rows;
+		}
+		return values;
+	}
+
+	/**
+	 * Reads an int column, e.g. "role", over every chunk.
+	 */
+	public int[] readInts(String table, String name) throws IOException {
+		int[] values = new int[(int) getNumRows(table)];
+		int row = 0;
+		for (JsonObject chunk : chunks) {
+			int rows = chunk.get(table).getAsInt();
+			JsonObject column = getColumn(chunk, table, name);
+			if (column == null) {
+				Arrays.fill(values, row, row + rows, -1);
+			} else if (!getType(column).equals("i4")) {
+				throw new IllegalArgumentException(name + " is not an int column");
+			} else {
+				map(chunk, column.get("file").getAsString()).asIntBuffer().get(values, row, rows);
+			}
+			row += rows;
+		}
+		return values;
+	}
+
+	/**
+	 * Reads a variable length series column, e.g. "features/fundamental".
+	 *
+	 * @return the values of each row, with getSeriesWidth numbers per element
+	 */
+	public double[][] readSeries(String table, String name) throws IOException {
+		double[][] values = new double[(int) getNumRows(table)][];
+		int row = 0;
+		for (JsonObject chunk : chunks) {
+			int rows = chunk.get(table).getAsInt();
+			JsonObject column = getColumn(chunk, table, name);
+			if (column == null) {
+				for (int i = 0; i < rows; i++) values[row + i] = new double[0];
+			} else if (!getType(column).equals("series")) {
+				throw new IllegalArgumentException(name + " is not a series column");
+			} else {
+				int width = column.get("width").getAsInt();
+				DoubleBuffer data = map(chunk, column.get("file").getAsString()).asDoubleBuffer();
+				LongBuffer offsets = map(chunk, column.get("offsets").getAsString()).asLongBuffer();
+				for (int i = 0; i < rows; i++) {
+					int start = (int) offsets.get(i) * width;
+					values[row + i] = new double[(int) offsets.get(i + 1) * width - start];
+					data.position(start);
+					data.get(values[row + i]);
+				}
+			}
+			row += rows;
+		}
+		return values;
+	}
+
+	/**
+	 * @return the number of numbers in each element of a series column, e.g. 2
+	 * for [time, value] pairs
+	 */
+	public int getSeriesWidth(String table, String name) {
+		for (JsonObject chunk : chunks) {
+			JsonObject column = getColumn(chunk, table, name);
+			if (column != null && column.has("width"))
+				return column.get("width").getAsInt();
+		}
+		return 1;
+	}
+
+	protected long getNumRows(String table) {
+		return manifest.get(table).getAsLong();
+	}
+
+	protected List<String> getStrings(String key) {
+		List<String> strings = Lists.newArrayList();
+		for (JsonElement string : manifest.getAsJsonArray(key)) {
+			strings.add(string.getAsString());
+		}
+		return strings;
+	}
+
+	protected static JsonObject getColumns(JsonObject chunk, String table) {
+		JsonObject columns = chunk.getAsJsonObject("columns").getAsJsonObject(table);
+		if (columns == null)
+			throw new IllegalArgumentException("No table " + table);
+		return columns;
+	}
+
+	protected static JsonObject getColumn(JsonObject chunk, String table, String name) {
+		JsonElement column = getColumns(chunk, table).get(name);
+		return column == null ? null : column.getAsJsonObject();
+	}
+
+	protected static String getType(JsonObject column) {
+		return column.get("type").getAsString();
+	}
+
+	/**
+	 * Maps a column file into memory. Files are big endian, the ByteBuffer
+	 * default.
+	 */
+	protected ByteBuffer map(JsonObject chunk, String file) throws IOException {
+		File path = new File(new File(directory, chunk.get("path").getAsString()), file);
+		FileInputStream in = new FileInputStream(path);
+		try {
+			FileChannel channel = in.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.Map;
+
+import json.ProfileSymmetryGroup;
+import json.Role;
+import json.features.Feature;
+import json.features.PlayerFeatureSummary;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Streams the full game data one observation at a time instead of building
+ * the FeatureObservations for the whole game, so memory doesn't grow with the
+ * size of the file. Players are aggregated by symmetry group within each
+ * observation, exactly like JsonStreamer.
+ */
+public class ObservationStreamer extends JsonStreamer {
+
+	/**
+	 * Callbacks for the parts of the game. Profiles are always started before
+	 * their observations, even if the symmetry groups appear later in the file.
+	 */
+	public interface Handler {
+
+		public void startProfile(int id, List<ProfileSymmetryGroup> symmetryGroups);
+
+		/**
+		 * @param features		observation level control variables
+		 * @param players		aggregated player payoffs / features by sid
+		 */
+		public void observation(Feature features, Map<Integer, PlayerFeatureSummary> players);
+
+		public void endProfile();
+
+		/** Called once the whole game has been read */
+		public void game(String name, List<Role> roles, String simulatorFullname);
+	}
+
+	public void streamJson(InputStream in, Handler handler) throws IOException {
+		JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+		try {
+			streamObservations(reader, handler);
+		} finally {
+			reader.close();
+		}
+	}
+
+	public void streamObservations(JsonReader reader, Handler handler) throws IOException {
+		String name = null;
+		String simulator_fullname = null;
+		List<Role> roles = Lists.newArrayList();
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String key = reader.nextName();
+			if (key.equals("name")) {
+				name = reader.nextString();
+			} else if (key.equals("roles")) {
+				roles = readRoles(reader);
+			} else if (key.equals("simulator_fullname")) {
+				simulator_fullname = reader.nextString();
+			} else if (key.equals("profiles")) {
+				reader.beginArray();
+				while (reader.hasNext()) {
+					streamProfile(reader, handler);
+				}
+				reader.endArray();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		handler.game(name, roles, simulator_fullname);
+	}
+
+	public void streamProfile(JsonReader reader, Handler handler) throws IOException {
+		Integer id = null;
+		List<ProfileSymmetryGroup> symmetry_groups = null;
+		// only used if observations come before the id / symmetry groups
+		List<Feature> pendingFeatures = Lists.newArrayList();
+		List<Map<Integer, PlayerFeatureSummary>> pendingPlayers = Lists.newArrayList();
+		boolean started = false;
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (name.equals("id")) {
+				id = reader.nextInt();
+			} else if (name.equals("symmetry_groups")) {
+				symmetry_groups = readSymmetryGroups(reader);
+			} else if (name.equals("observations")) {
+				reader.beginArray();
+				while (reader.hasNext()) {
+					Map<Integer, PlayerFeatureSummary> players = Maps.newHashMap();
+					Feature features = readStreamedObservation(reader, players);
+					if (!started && id != null && symmetry_groups != null) {
+						handler.startProfile(id, symmetry_groups);
+						started = true;
+					}
+					if (started) {
+						handler.observation(features, players);
+					} else {
+						pendingFeatures.add(features);
+						pendingPlayers.add(players);
+					}
+				}
+				reader.endArray();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (!started) {
+			handler.startProfile(id == null ? -1 : id, symmetry_groups == null
+					? Lists.<ProfileSymmetryGroup>newArrayList() : symmetry_groups);
+			for (int i = 0; i < pendingFeatures.size(); i++) {
+				handler.observation(pendingFeatures.get(i), pendingPlayers.get(i));
+			}
+		}
+		handler.endProfile();
+	}
+
+	/**
+	 * Reads one observation, aggregating the players into the map.
+	 *
+	 * @return the observation features
+	 */
+	public Feature readStreamedObservation(JsonReader reader,
+			Map<Integer, PlayerFeatureSummary> playerFeatures) throws IOException {
+		Feature features = new Feature(0, 0, 0);
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (name.equals("players")) {
+				reader.beginArray();
+				while (reader.hasNext()) {
+					readPlayer(reader, playerFeatures);
+				}
+				reader.endArray();
+			} else if (name.equals("features")) {
+				features = readFeatures(reader);
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return features;
+	}
+}
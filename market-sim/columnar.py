@@ -0,0 +1,72 @@
+"""Read columns of a store written by market-sim --columnar without parsing observations
+
+    import columnar
+    store = columnar.Store('store-dir')
+    payoffs = store.column('players', 'payoff')
+    roles = store.decode('players', 'role')
+    fundamentals = store.series('observations', 'features/fundamental')
+"""
+import json
+import os.path
+
+import numpy as np
+
+_dtypes = {'f8': '>f8', 'i4': '>i4'}
+_missing = {'f8': np.nan, 'i4': -1}
+
+
+class Store(object):
+    def __init__(self, path):
+        self.path = path
+        with open(os.path.join(path, 'manifest.json')) as f:
+            self.manifest = json.load(f)
+
+    def specs(self):
+        return self.manifest['specs']
+
+    def columns(self, table):
+        """Names of every column in any chunk of table"""
+        names = []
+        for chunk in self.manifest['chunks']:
+            for name in chunk['columns'][table]:
+                if name not in names:
+                    names.append(name)
+        return names
+
+    def column(self, table, name):
+        """A scalar column over every chunk, missing values are nan or -1"""
+        parts = []
+        for chunk in self.manifest['chunks']:
+            desc = chunk['columns'][table].get(name)
+            if desc is None:
+                parts.append(np.full(chunk[table], np.nan))
+            else:
+                values = np.fromfile(self._file(chunk, desc['file']),
+                                     dtype=_dtypes[desc['type']])
+                parts.append(values.astype(values.dtype.newbyteorder('=')))
+        return np.concatenate(parts) if parts else np.array([])
+
+    def decode(self, table, name):
+        """An index column as the strings it refers to, e.g. role or strategy"""
+        lookup = np.array(self.manifest[name + 's'])
+        return lookup[self.column(table, name)]
+
+    def series(self, table, name):
+        """A list with an array per row, each of shape (length, width)"""
+        rows = []
+        for chunk in self.manifest['chunks']:
+            desc = chunk['columns'][table].get(name)
+            if desc is None:
+                rows.extend(np.empty((0, 1)) for _ in range(chunk[table]))
+                continue
+            width = desc['width']
+            values = np.fromfile(self._file(chunk, desc['file']),
+                                 dtype='>f8').reshape(-1, width)
+            offsets = np.fromfile(self._file(chunk, desc['offsets']),
+                                  dtype='>i8')
+            rows.extend(values[start:end]
+                        for start, end in zip(offsets[:-1], offsets[1:]))
+        return rows
+
+    def _file(self, chunk, name):
+        return os.path.join(self.path, chunk['path'], name)
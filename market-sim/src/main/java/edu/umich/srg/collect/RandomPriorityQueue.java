@@ -5,6 +5,7 @@ import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Maps;
 
 import edu.umich.srg.util.PositionalSeed;
+import edu.umich.srg.util.RandomSource;
 
 import java.util.AbstractQueue;
 import java.util.Collection;
@@ -35,6 +36,7 @@ public class RandomPriorityQueue<K, V> extends AbstractQueue<Entry<K, V>> {
   private final NavigableMap<K, OrderedQueue<V>> queue;
   private int size;
   private final PositionalSeed seed;
+  private final RandomSource source;
   private final Function<Random, OrderedQueue<V>> queueCreator;
 
   protected RandomPriorityQueue(Random rand, Comparator<? super K> comp,
@@ -42,6 +44,7 @@ public class RandomPriorityQueue<K, V> extends AbstractQueue<Entry<K, V>> {
     this.queue = new TreeMap<>(comp);
     this.size = 0;
     this.seed = PositionalSeed.with(rand.nextLong());
+    this.source = RandomSource.of(rand);
     this.queueCreator = queueCreator;
   }
 
@@ -112,7 +115,7 @@ public class RandomPriorityQueue<K, V> extends AbstractQueue<Entry<K, V>> {
      * activity, then rejection sampling your second activity until it's after the first, then the
      * third until it's after the second and so on. Neither seems great...
      */
-    return queueCreator.apply(new Random(seed.getSeed(time.hashCode())));
+    return queueCreator.apply(source.create(seed.getSeed(time.hashCode())));
   }
 
   public boolean add(K time, V activity) {
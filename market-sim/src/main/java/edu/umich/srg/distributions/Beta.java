@@ -26,6 +26,13 @@ public abstract class Beta implements DoubleDistribution {
       return rand.nextDouble();
     }
 
+    @Override
+    public void sample(Random rand, double[] out, int n) {
+      for (int i = 0; i < n; ++i) {
+        out[i] = rand.nextDouble();
+      }
+    }
+
   }
 
   /**
@@ -5,8 +5,8 @@ import static com.google.common.base.Preconditions.checkArgument;
 import edu.umich.srg.distributions.Distribution.LongDistribution;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Random;
-import java.util.stream.DoubleStream;
 
 /**
  * Generate samples from a Binomail. Method is taken from: "Computer Methods for Sampling from
@@ -51,6 +51,11 @@ public abstract class Binomial implements LongDistribution, Serializable {
       return constant;
     }
 
+    @Override
+    public void sample(Random rand, long[] out, int n) {
+      Arrays.fill(out, 0, n, constant);
+    }
+
     private static final long serialVersionUID = 1;
 
   }
@@ -74,8 +79,13 @@ public abstract class Binomial implements LongDistribution, Serializable {
 
     @Override
     public long sample(Random rand) {
-      return DoubleStream.generate(rand::nextDouble).limit(numDraws)
-          .filter(samp -> samp < successProbability).count();
+      long successes = 0;
+      for (long i = 0; i < numDraws; ++i) {
+        if (rand.nextDouble() < successProbability) {
+          ++successes;
+        }
+      }
+      return successes;
     }
 
     private static final long serialVersionUID = 1;
@@ -14,16 +14,37 @@ public interface Distribution<T> {
   /** A distribution that returns integers. */
   interface IntDistribution {
     int sample(Random rand);
+
+    /** Fill the first n elements of out with independent samples. */
+    default void sample(Random rand, int[] out, int n) {
+      for (int i = 0; i < n; ++i) {
+        out[i] = sample(rand);
+      }
+    }
   }
 
   /** A distribution that returns longs. */
   interface LongDistribution {
     long sample(Random rand);
+
+    /** Fill the first n elements of out with independent samples. */
+    default void sample(Random rand, long[] out, int n) {
+      for (int i = 0; i < n; ++i) {
+        out[i] = sample(rand);
+      }
+    }
   }
 
   /** A distribution that returns doubles. */
   interface DoubleDistribution {
     double sample(Random rand);
+
+    /** Fill the first n elements of out with independent samples. */
+    default void sample(Random rand, double[] out, int n) {
+      for (int i = 0; i < n; ++i) {
+        out[i] = sample(rand);
+      }
+    }
   }
 
 }
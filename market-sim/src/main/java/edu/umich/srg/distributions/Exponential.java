@@ -21,4 +21,11 @@ public class Exponential implements DoubleDistribution {
     return -Math.log1p(-rand.nextDouble()) / lambda;
   }
 
+  @Override
+  public void sample(Random rand, double[] out, int n) {
+    for (int i = 0; i < n; ++i) {
+      out[i] = -Math.log1p(-rand.nextDouble()) / lambda;
+    }
+  }
+
 }
@@ -22,4 +22,11 @@ public class Geometric implements LongDistribution {
     return (long) (Math.log1p(-rand.nextDouble()) / weight);
   }
 
+  @Override
+  public void sample(Random rand, long[] out, int n) {
+    for (int i = 0; i < n; ++i) {
+      out[i] = (long) (Math.log1p(-rand.nextDouble()) / weight);
+    }
+  }
+
 }
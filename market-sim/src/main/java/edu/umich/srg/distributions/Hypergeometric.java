@@ -5,6 +5,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import edu.umich.srg.distributions.Distribution.IntDistribution;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Random;
 
 public abstract class Hypergeometric implements IntDistribution, Serializable {
@@ -15,20 +16,69 @@ public abstract class Hypergeometric implements IntDistribution, Serializable {
     checkArgument(0 <= numSuccesses && numSuccesses <= populationSize);
     checkArgument(0 <= draws && draws <= populationSize);
 
-    int offset = 0;
-    int sign = 1;
-    if (2 * draws > populationSize) {
-      draws = populationSize - draws;
-      offset += sign * numSuccesses;
-      sign *= -1;
+    Reduced reduced = new Reduced(populationSize, numSuccesses, draws);
+    return new OffsetHypergeometric(hypergeometricSwitch(reduced.populationSize,
+        reduced.numSuccesses, reduced.draws), reduced.offset, reduced.sign);
+  }
+
+  /**
+   * Take a single sample without creating a distribution. This makes exactly the same random draws
+   * as sampling once from a new distribution created by {@link #with}.
+   */
+  public static int sample(int populationSize, int numSuccesses, int draws, Random rand) {
+    checkArgument(0 <= populationSize);
+    checkArgument(0 <= numSuccesses && numSuccesses <= populationSize);
+    checkArgument(0 <= draws && draws <= populationSize);
+
+    Reduced reduced = new Reduced(populationSize, numSuccesses, draws);
+    int sample;
+    if (reduced.numSuccesses == 0 || reduced.draws == 0) {
+      sample = 0;
+    } else if (reduced.draws == reduced.populationSize) {
+      sample = reduced.numSuccesses;
+    } else if (reduced.numSuccesses == reduced.populationSize) {
+      sample = reduced.draws;
+    } else if (reduced.populationSize > 15) {
+      sample = InverseCmfHypergeometric.sampleOnce(reduced.populationSize, reduced.numSuccesses,
+          reduced.draws, rand);
+    } else {
+      sample = BruteHypergeometric.sampleOnce(reduced.populationSize, reduced.numSuccesses,
+          reduced.draws, rand);
     }
-    if (2 * numSuccesses > populationSize) {
-      numSuccesses = populationSize - numSuccesses;
-      offset += sign * draws;
-      sign *= -1;
+    return reduced.offset + reduced.sign * sample;
+  }
+
+  /**
+   * The parameters of an equivalent hypergeometric with at most half the population drawn and at
+   * most half the population successes. A sample of the original is offset + sign * a sample of
+   * this.
+   */
+  private static final class Reduced {
+    private final int populationSize;
+    private final int numSuccesses;
+    private final int draws;
+    private final int offset;
+    private final int sign;
+
+    private Reduced(int populationSize, int numSuccesses, int draws) {
+      int offset = 0;
+      int sign = 1;
+      if (2 * draws > populationSize) {
+        draws = populationSize - draws;
+        offset += sign * numSuccesses;
+        sign *= -1;
+      }
+      if (2 * numSuccesses > populationSize) {
+        numSuccesses = populationSize - numSuccesses;
+        offset += sign * draws;
+        sign *= -1;
+      }
+      this.populationSize = populationSize;
+      this.numSuccesses = numSuccesses;
+      this.draws = draws;
+      this.offset = offset;
+      this.sign = sign;
     }
-    return new OffsetHypergeometric(hypergeometricSwitch(populationSize, numSuccesses, draws),
-        offset, sign);
   }
 
   private static Hypergeometric hypergeometricSwitch(int populationSize, int numSuccesses,
@@ -58,17 +108,11 @@ public abstract class Hypergeometric implements IntDistribution, Serializable {
      * @param sampleSize n number of draws
      */
     private InverseCmfHypergeometric(int populationSize, int populationSuccesses, int sampleSize) {
-      double populationNotSampled = populationSize - sampleSize;
-      double populationFailures = populationSize - populationSuccesses;
       double nkn = populationSize - populationSuccesses - sampleSize;
-      double proability0 = Math.exp((populationFailures + 0.5) * Math.log(populationFailures)
-          + (populationNotSampled + 0.5) * Math.log(populationNotSampled)
-          - (nkn + 0.5) * Math.log(nkn) - (populationSize + 0.5) * Math.log(populationSize));
-      this.invCmf = new InverseCmf(proability0,
+      this.invCmf = new InverseCmf(probability0(populationSize, populationSuccesses, sampleSize),
           (InverseCmf.PmfFunction & Serializable) (probabilityPreviousSuccesses,
-              drawnSuccesses) -> probabilityPreviousSuccesses
-                  * (populationSuccesses - drawnSuccesses + 1) * (sampleSize - drawnSuccesses + 1)
-                  / (drawnSuccesses * (nkn + drawnSuccesses)));
+              drawnSuccesses) -> nextProbability(probabilityPreviousSuccesses, drawnSuccesses,
+                  populationSuccesses, sampleSize, nkn));
     }
 
     @Override
@@ -76,6 +120,39 @@ public abstract class Hypergeometric implements IntDistribution, Serializable {
       return invCmf.sample(rand);
     }
 
+    /** Walk the cmf from zero, which is what a new inverse cmf does for its first sample. */
+    private static int sampleOnce(int populationSize, int populationSuccesses, int sampleSize,
+        Random rand) {
+      double nkn = populationSize - populationSuccesses - sampleSize;
+      double invCmf = rand.nextDouble();
+      double probability = probability0(populationSize, populationSuccesses, sampleSize);
+      double cmf = probability;
+      int drawnSuccesses = 0;
+      while (invCmf >= cmf) {
+        ++drawnSuccesses;
+        probability = nextProbability(probability, drawnSuccesses, populationSuccesses, sampleSize,
+            nkn);
+        cmf += probability;
+      }
+      return drawnSuccesses;
+    }
+
+    private static double probability0(int populationSize, int populationSuccesses,
+        int sampleSize) {
+      double populationNotSampled = populationSize - sampleSize;
+      double populationFailures = populationSize - populationSuccesses;
+      double nkn = populationSize - populationSuccesses - sampleSize;
+      return Math.exp((populationFailures + 0.5) * Math.log(populationFailures)
+          + (populationNotSampled + 0.5) * Math.log(populationNotSampled)
+          - (nkn + 0.5) * Math.log(nkn) - (populationSize + 0.5) * Math.log(populationSize));
+    }
+
+    private static double nextProbability(double probabilityPreviousSuccesses, int drawnSuccesses,
+        int populationSuccesses, int sampleSize, double nkn) {
+      return probabilityPreviousSuccesses * (populationSuccesses - drawnSuccesses + 1)
+          * (sampleSize - drawnSuccesses + 1) / (drawnSuccesses * (nkn + drawnSuccesses));
+    }
+
     private static final long serialVersionUID = 1;
 
   }
@@ -95,6 +172,10 @@ public abstract class Hypergeometric implements IntDistribution, Serializable {
 
     @Override
     public int sample(Random rand) {
+      return sampleOnce(populationSize, numSuccesses, draws, rand);
+    }
+
+    private static int sampleOnce(int populationSize, int numSuccesses, int draws, Random rand) {
       int result = 0;
       int populationLeft = populationSize;
       int successesLeft = numSuccesses;
@@ -127,6 +208,11 @@ public abstract class Hypergeometric implements IntDistribution, Serializable {
       return constant;
     }
 
+    @Override
+    public void sample(Random rand, int[] out, int n) {
+      Arrays.fill(out, 0, n, constant);
+    }
+
     private static final long serialVersionUID = 1;
 
   }
@@ -148,6 +234,14 @@ public abstract class Hypergeometric implements IntDistribution, Serializable {
       return offset + sign * other.sample(rand);
     }
 
+    @Override
+    public void sample(Random rand, int[] out, int n) {
+      other.sample(rand, out, n);
+      for (int i = 0; i < n; ++i) {
+        out[i] = offset + sign * out[i];
+      }
+    }
+
     private static final long serialVersionUID = 1;
   }
 
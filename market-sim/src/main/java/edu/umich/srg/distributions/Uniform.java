@@ -137,6 +137,13 @@ public abstract class Uniform<T> implements Distribution<T> {
       return rand.nextInt(range) + offset;
     }
 
+    @Override
+    public void sample(Random rand, int[] out, int n) {
+      for (int i = 0; i < n; ++i) {
+        out[i] = rand.nextInt(range) + offset;
+      }
+    }
+
   }
 
   // Long
@@ -190,6 +197,13 @@ public abstract class Uniform<T> implements Distribution<T> {
       return rand.nextDouble() * range + offset;
     }
 
+    @Override
+    public void sample(Random rand, double[] out, int n) {
+      for (int i = 0; i < n; ++i) {
+        out[i] = rand.nextDouble() * range + offset;
+      }
+    }
+
   }
 
 }
@@ -0,0 +1,198 @@
+package edu.umich.srg.egtaonline;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import edu.umich.srg.egtaonline.Observation.Player;
+import edu.umich.srg.egtaonline.SimSpec.RoleStrat;
+import edu.umich.srg.util.SummStats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+
+/**
+ * Sequential sampling of payoffs. Simulations of a spec are run in rounds until the standard error
+ * of every role strategy's mean payoff is at most a target, or a budget of simulations is spent.
+ * After each round the variance so far is used to guess how many more simulations the noisiest
+ * role strategy needs, so noisy specs get more simulations and quiet ones stop early.
+ *
+ * <p>The unit of a sample is one simulation, so payoffs of players with the same role and
+ * strategy are averaged within a simulation before they're added, as they aren't independent.
+ * Results only depend on the simulation numbers, not on how many threads are used.
+ */
+public class AdaptiveSampler implements AutoCloseable {
+
+  private final BiFunction<SimSpec, Integer, Observation> sim;
+  private final double targetError;
+  private final int minSims;
+  private final int maxSims;
+  private final int jobs;
+  private final ExecutorService exec;
+  private int nextSimNum;
+
+  private AdaptiveSampler(BiFunction<SimSpec, Integer, Observation> sim, double targetError,
+      int minSims, int maxSims, int jobs) {
+    this.sim = sim;
+    this.targetError = targetError;
+    this.minSims = minSims;
+    this.maxSims = maxSims;
+    this.jobs = jobs;
+    this.exec = jobs > 1 ? Executors.newFixedThreadPool(jobs) : null;
+    this.nextSimNum = 0;
+  }
+
+  /**
+   * Create a sampler.
+   *
+   * @param minSims Every spec gets at least this many simulations, and never less than two unless
+   *        the budget is smaller, so there's a variance to check.
+   * @param maxSims The budget of simulations for one spec.
+   * @param jobs Number of threads to use. 0 implies number of cores.
+   */
+  public static AdaptiveSampler create(BiFunction<SimSpec, Integer, Observation> sim,
+      double targetError, int minSims, int maxSims, int jobs) {
+    checkArgument(targetError > 0, "target error must be positive (%f)", targetError);
+    checkArgument(minSims > 0, "minimum simulations must be positive (%d)", minSims);
+    checkArgument(maxSims >= minSims, "budget (%d) must be at least the minimum (%d)", maxSims,
+        minSims);
+    checkArgument(jobs >= 0, "number of jobs must be nonegative (%d)", jobs);
+    return new AdaptiveSampler(sim, targetError, minSims, maxSims,
+        jobs == 0 ? Runtime.getRuntime().availableProcessors() : jobs);
+  }
+
+  /**
+   * Sample payoffs of spec. Simulation numbers continue from the previous spec, as they do when
+   * running a fixed number of observations.
+   */
+  public Estimate sample(SimSpec spec) {
+    Estimate estimate = new Estimate();
+    int needed = Math.min(Math.max(minSims, 2), maxSims);
+    while (estimate.observations < needed) {
+      // Run at least a thread's worth, as the extra simulations are nearly free
+      int round = Math.min(Math.max(needed - estimate.observations, jobs),
+          maxSims - estimate.observations);
+      for (Observation obs : simulate(spec, round)) {
+        estimate.add(obs);
+      }
+      needed = Math.min(Math.max(needed, estimate.neededObservations(targetError)), maxSims);
+    }
+    return estimate;
+  }
+
+  private List<Observation> simulate(SimSpec spec, int num) {
+    int first = nextSimNum;
+    nextSimNum += num;
+    List<Observation> observations = new ArrayList<>(num);
+    if (exec == null) {
+      for (int i = 0; i < num; ++i) {
+        observations.add(sim.apply(spec, first + i));
+      }
+    } else {
+      List<Future<Observation>> futures = new ArrayList<>(num);
+      for (int i = 0; i < num; ++i) {
+        final int simNum = first + i;
+        futures.add(exec.submit(() -> sim.apply(spec, simNum)));
+      }
+      // Added in simulation order so the estimate doesn't depend on scheduling
+      for (Future<Observation> future : futures) {
+        observations.add(Futures.getUnchecked(future));
+      }
+    }
+    return observations;
+  }
+
+  @Override
+  public void close() {
+    if (exec != null) {
+      exec.shutdown();
+    }
+  }
+
+  /** Mean payoffs of each role strategy with their standard errors. */
+  public static class Estimate {
+
+    private final Map<RoleStrat, SummStats> payoffs;
+    private int observations;
+
+    private Estimate() {
+      this.payoffs = new TreeMap<>();
+      this.observations = 0;
+    }
+
+    private void add(Observation obs) {
+      Map<RoleStrat, SummStats> simPayoffs = new TreeMap<>();
+      for (Player player : obs.getPlayers()) {
+        simPayoffs.computeIfAbsent(RoleStrat.of(player.getRole(), player.getStrategy()),
+            rs -> SummStats.empty()).accept(player.getPayoff());
+      }
+      for (Entry<RoleStrat, SummStats> entry : simPayoffs.entrySet()) {
+        payoffs.computeIfAbsent(entry.getKey(), rs -> SummStats.empty())
+            .accept(entry.getValue().getAverage().getAsDouble());
+      }
+      ++observations;
+    }
+
+    /** The number of observations needed for every standard error to be at most target. */
+    private int neededObservations(double target) {
+      double needed = 0;
+      for (SummStats stats : payoffs.values()) {
+        needed = Math.max(needed, stats.getVariance().orElse(0) / (target * target));
+      }
+      return (int) Math.min(Math.ceil(needed), Integer.MAX_VALUE);
+    }
+
+    /** The number of simulations run. */
+    public int getObservations() {
+      return observations;
+    }
+
+    /** Statistics of each role strategy's average payoff in a simulation. */
+    public Map<RoleStrat, SummStats> getPayoffs() {
+      return Collections.unmodifiableMap(payoffs);
+    }
+
+    public double getStandardError(RoleStrat roleStrat) {
+      SummStats stats = payoffs.get(roleStrat);
+      return stats.getStandardDeviation().orElse(Double.NaN) / Math.sqrt(stats.getCount());
+    }
+
+    /** The largest standard error of any role strategy. */
+    public double getMaxStandardError() {
+      double max = 0;
+      for (RoleStrat roleStrat : payoffs.keySet()) {
+        max = Math.max(max, getStandardError(roleStrat));
+      }
+      return max;
+    }
+
+    /** The payoffs as json, with the mean and standard error of each role strategy. */
+    public JsonObject toJson() {
+      JsonObject json = new JsonObject();
+      json.addProperty("observations", observations);
+      JsonArray players = new JsonArray();
+      for (Entry<RoleStrat, SummStats> entry : payoffs.entrySet()) {
+        JsonObject player = new JsonObject();
+        player.addProperty("role", entry.getKey().getRole());
+        player.addProperty("strategy", entry.getKey().getStrategy());
+        player.addProperty("payoff", entry.getValue().getAverage().getAsDouble());
+        player.addProperty("payoff_stderr", getStandardError(entry.getKey()));
+        players.add(player);
+      }
+      json.add("players", players);
+      return json;
+    }
+
+  }
+
+}
@@ -0,0 +1,469 @@
+package edu.umich.srg.egtaonline;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import edu.umich.srg.egtaonline.Observation.Player;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Writes observations into a columnar store, so analyses only have to read the columns they need
+ * instead of parsing every observation. The store is a directory with a "manifest.json" and a
+ * directory per chunk of observations. Each chunk has two tables: "observations" with a row per
+ * observation, and "players" with a row per player of every observation.
+ *
+ * <p>Observation columns are "spec", the index of the observation's simulation spec in the
+ * manifest, and players columns are "observation", "role", "strategy", and "payoff", where role
+ * and strategy are indices into the manifest's lists. Numeric features are flattened into columns
+ * named by their path, e.g. "features/total_surplus" or "features/markets/0/rmsd", and controls
+ * are in "controls/name". Arrays of numbers, or of fixed length arrays of numbers like the
+ * fundamental's [time, value] pairs, are variable length series stored as their flattened values
+ * with the offset of every row's first element, so row i has values offsets[i] to offsets[i + 1]
+ * (in units of width numbers). Strings aren't stored.
+ *
+ * <p>Scalar columns are big endian "f8" doubles or "i4" ints, and series offsets are big endian
+ * "i8" longs, so they can be read directly by java's DataInput or numpy. A value missing from some
+ * rows of a chunk is NaN, -1, or an empty series. The manifest is rewritten after every chunk, so
+ * the store is readable while it's written.
+ */
+public class ColumnarWriter implements Consumer<Entry<JsonObject, Observation>>, Closeable {
+
+  public static final String MANIFEST = "manifest.json";
+  public static final int DEFAULT_CHUNK_SIZE = 1024;
+  private static final int FORMAT = 1;
+  private static final Charset charset = Charset.forName("UTF-8");
+  private static final Gson gson = new GsonBuilder().serializeSpecialFloatingPointValues().create();
+
+  private final Path directory;
+  private final int chunkSize;
+  private final boolean features;
+
+  private final Map<JsonObject, Integer> specs;
+  private final Map<String, Integer> roles;
+  private final Map<String, Integer> strategies;
+  private final JsonArray chunks;
+  private long numObservations;
+  private long numPlayers;
+
+  private Table observations;
+  private Table players;
+
+  private ColumnarWriter(Path directory, int chunkSize, boolean features) {
+    this.directory = directory;
+    this.chunkSize = chunkSize;
+    this.features = features;
+    this.specs = new LinkedHashMap<>();
+    this.roles = new LinkedHashMap<>();
+    this.strategies = new LinkedHashMap<>();
+    this.chunks = new JsonArray();
+    this.numObservations = 0;
+    this.numPlayers = 0;
+    this.observations = new Table();
+    this.players = new Table();
+  }
+
+  /**
+   * Create a store in directory, which is created if it doesn't exist.
+   *
+   * @param chunkSize The number of observations per chunk, and so roughly the number of
+   *        observations kept in memory.
+   * @param features If false, only payoffs and controls are written.
+   */
+  public static ColumnarWriter create(Path directory, int chunkSize, boolean features)
+      throws IOException {
+    checkArgument(chunkSize > 0, "chunk size must be positive (%d)", chunkSize);
+    Files.createDirectories(directory);
+    ColumnarWriter writer = new ColumnarWriter(directory, chunkSize, features);
+    writer.writeManifest();
+    return writer;
+  }
+
+  public static ColumnarWriter create(Path directory) throws IOException {
+    return create(directory, DEFAULT_CHUNK_SIZE, true);
+  }
+
+  @Override
+  public void accept(Entry<JsonObject, Observation> obs) {
+    observations.startRow();
+    int observation = (int) numObservations + observations.rows - 1;
+    observations.putInt("spec", specs.computeIfAbsent(obs.getKey(), spec -> specs.size()));
+    if (features) {
+      flatten("features", obs.getValue().getFeatures(), observations);
+    }
+    putControls(obs.getValue().getControls(), observations);
+
+    for (Player player : obs.getValue().getPlayers()) {
+      players.startRow();
+      players.putInt("observation", observation);
+      players.putInt("role", roles.computeIfAbsent(player.getRole(), role -> roles.size()));
+      players.putInt("strategy",
+          strategies.computeIfAbsent(player.getStrategy(), strat -> strategies.size()));
+      players.putDouble("payoff", player.getPayoff());
+      if (features && player.getFeatures() != null) {
+        flatten("features", player.getFeatures(), players);
+      }
+      putControls(player.getControls(), players);
+    }
+
+    if (observations.rows >= chunkSize) {
+      try {
+        flush();
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+    }
+  }
+
+  /** Write the observations so far as a chunk, even if it isn't full. */
+  public void flush() throws IOException {
+    if (observations.rows == 0) {
+      return;
+    }
+    String path = String.format("chunk-%06d", chunks.size());
+    Path chunkDir = directory.resolve(path);
+    Files.createDirectories(chunkDir);
+
+    JsonObject columns = new JsonObject();
+    columns.add("observations", observations.write(chunkDir, "observations"));
+    columns.add("players", players.write(chunkDir, "players"));
+
+    JsonObject chunk = new JsonObject();
+    chunk.addProperty("path", path);
+    chunk.addProperty("observations", observations.rows);
+    chunk.addProperty("players", players.rows);
+    chunk.add("columns", columns);
+    chunks.add(chunk);
+
+    numObservations += observations.rows;
+    numPlayers += players.rows;
+    observations = new Table();
+    players = new Table();
+    writeManifest();
+  }
+
+  @Override
+  public void close() throws IOException {
+    flush();
+  }
+
+  private void writeManifest() throws IOException {
+    JsonObject manifest = new JsonObject();
+    manifest.addProperty("format", FORMAT);
+    manifest.addProperty("observations", numObservations);
+    manifest.addProperty("players", numPlayers);
+    JsonArray specArray = new JsonArray();
+    specs.keySet().forEach(specArray::add);
+    manifest.add("specs", specArray);
+    manifest.add("roles", gson.toJsonTree(roles.keySet()));
+    manifest.add("strategies", gson.toJsonTree(strategies.keySet()));
+    manifest.add("chunks", chunks);
+
+    // Replace atomically so readers never see a partial manifest
+    Path temp = directory.resolve(MANIFEST + ".tmp");
+    try (Writer out = Files.newBufferedWriter(temp, charset)) {
+      gson.toJson(manifest, out);
+    }
+    Files.move(temp, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void putControls(Map<String, Double> controls, Table table) {
+    for (Entry<String, Double> control : controls.entrySet()) {
+      table.putDouble("controls/" + control.getKey(), control.getValue());
+    }
+  }
+
+  /** Add every numeric value or series in element to the current row, named by its path. */
+  private static void flatten(String name, JsonElement element, Table table) {
+    if (element.isJsonPrimitive()) {
+      JsonPrimitive value = element.getAsJsonPrimitive();
+      if (value.isNumber()) {
+        table.putDouble(name, value.getAsDouble());
+      } else if (value.isBoolean()) {
+        table.putDouble(name, value.getAsBoolean() ? 1 : 0);
+      }
+    } else if (element.isJsonObject()) {
+      for (Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+        flatten(name + "/" + entry.getKey(), entry.getValue(), table);
+      }
+    } else if (element.isJsonArray()) {
+      JsonArray array = element.getAsJsonArray();
+      int width = seriesWidth(array);
+      if (width >= 0) {
+        table.putSeries(name, array, width);
+      } else {
+        // Arrays of objects, e.g. one per market
+        for (int i = 0; i < array.size(); ++i) {
+          if (array.get(i).isJsonObject()) {
+            flatten(name + "/" + i, array.get(i), table);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The number of numbers in each element if array is a series, zero if it's empty, and negative
+   * if it's not a series.
+   */
+  private static int seriesWidth(JsonArray array) {
+    int width = 0;
+    for (JsonElement element : array) {
+      int elementWidth;
+      if (isNumber(element)) {
+        elementWidth = 1;
+      } else if (element.isJsonArray() && element.getAsJsonArray().size() > 0) {
+        elementWidth = element.getAsJsonArray().size();
+        for (JsonElement inner : element.getAsJsonArray()) {
+          if (!isNumber(inner)) {
+            return -1;
+          }
+        }
+      } else {
+        return -1;
+      }
+      if (width != 0 && width != elementWidth) {
+        return -1;
+      }
+      width = elementWidth;
+    }
+    return width;
+  }
+
+  private static boolean isNumber(JsonElement element) {
+    return element.isJsonPrimitive() && element.getAsJsonPrimitive().isNumber();
+  }
+
+  /** The columns of one table of a chunk. */
+  private static final class Table {
+
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+    private int rows = 0;
+
+    /** Start a new row, filling in anything missing from the last one. */
+    private void startRow() {
+      columns.values().forEach(column -> column.fill(rows));
+      rows++;
+    }
+
+    private void putInt(String name, int value) {
+      Column column = column(name, IntColumn::new);
+      if (column instanceof IntColumn && column.size < rows) {
+        ((IntColumn) column).add(value);
+      }
+    }
+
+    private void putDouble(String name, double value) {
+      Column column = column(name, DoubleColumn::new);
+      if (column instanceof DoubleColumn && column.size < rows) {
+        ((DoubleColumn) column).add(value);
+      }
+    }
+
+    private void putSeries(String name, JsonArray array, int width) {
+      Column column = column(name, SeriesColumn::new);
+      if (column instanceof SeriesColumn && column.size < rows) {
+        ((SeriesColumn) column).add(array, width);
+      }
+    }
+
+    /** The column with name, created and filled up to the current row if it's new. */
+    private Column column(String name, Supplier<Column> create) {
+      return columns.computeIfAbsent(name, n -> {
+        Column column = create.get();
+        column.fill(rows - 1);
+        return column;
+      });
+    }
+
+    private JsonObject write(Path chunkDir, String table) throws IOException {
+      JsonObject descriptions = new JsonObject();
+      int index = 0;
+      for (Entry<String, Column> entry : columns.entrySet()) {
+        Column column = entry.getValue();
+        column.fill(rows);
+        descriptions.add(entry.getKey(), column.write(chunkDir, table + "-" + index++));
+      }
+      return descriptions;
+    }
+
+  }
+
+  private abstract static class Column {
+
+    int size = 0;
+
+    /** Add missing values until there are rows values. */
+    abstract void fill(int rows);
+
+    /** Write the column to files starting with name, and return its manifest description. */
+    abstract JsonObject write(Path chunkDir, String name) throws IOException;
+
+    static DataOutputStream open(Path file) throws IOException {
+      return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+    }
+
+    static JsonObject description(String type, String file) {
+      JsonObject description = new JsonObject();
+      description.addProperty("type", type);
+      description.addProperty("file", file);
+      return description;
+    }
+
+  }
+
+  private static final class IntColumn extends Column {
+
+    private int[] values = new int[16];
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    @Override
+    void fill(int rows) {
+      while (size < rows) {
+        add(-1);
+      }
+    }
+
+    @Override
+    JsonObject write(Path chunkDir, String name) throws IOException {
+      String file = name + ".i4";
+      try (DataOutputStream out = open(chunkDir.resolve(file))) {
+        for (int i = 0; i < size; ++i) {
+          out.writeInt(values[i]);
+        }
+      }
+      return description("i4", file);
+    }
+
+  }
+
+  private static final class DoubleColumn extends Column {
+
+    private double[] values = new double[16];
+
+    void add(double value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    @Override
+    void fill(int rows) {
+      while (size < rows) {
+        add(Double.NaN);
+      }
+    }
+
+    @Override
+    JsonObject write(Path chunkDir, String name) throws IOException {
+      String file = name + ".f8";
+      try (DataOutputStream out = open(chunkDir.resolve(file))) {
+        for (int i = 0; i < size; ++i) {
+          out.writeDouble(values[i]);
+        }
+      }
+      return description("f8", file);
+    }
+
+  }
+
+  private static final class SeriesColumn extends Column {
+
+    private int width = 0;
+    private double[] values = new double[64];
+    private int numValues = 0;
+    // offsets[i] is the first value of row i in units of width, with a final entry for the end
+    private long[] offsets = new long[17];
+
+    void add(JsonArray array, int elementWidth) {
+      if (array.size() > 0 && width == 0) {
+        width = elementWidth;
+      } else if (array.size() > 0 && width != elementWidth) {
+        array = new JsonArray(); // Doesn't match the rest of the column, so it's missing
+      }
+      for (JsonElement element : array) {
+        if (element.isJsonArray()) {
+          for (JsonElement inner : element.getAsJsonArray()) {
+            addValue(inner.getAsDouble());
+          }
+        } else {
+          addValue(element.getAsDouble());
+        }
+      }
+      endRow();
+    }
+
+    private void addValue(double value) {
+      if (numValues == values.length) {
+        values = Arrays.copyOf(values, numValues * 2);
+      }
+      values[numValues++] = value;
+    }
+
+    private void endRow() {
+      if (size + 1 == offsets.length) {
+        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+      }
+      offsets[++size] = numValues;
+    }
+
+    @Override
+    void fill(int rows) {
+      while (size < rows) {
+        endRow();
+      }
+    }
+
+    @Override
+    JsonObject write(Path chunkDir, String name) throws IOException {
+      String file = name + ".f8";
+      String offsetFile = name + ".i8";
+      try (DataOutputStream out = open(chunkDir.resolve(file))) {
+        for (int i = 0; i < numValues; ++i) {
+          out.writeDouble(values[i]);
+        }
+      }
+      try (DataOutputStream out = open(chunkDir.resolve(offsetFile))) {
+        for (int i = 0; i <= size; ++i) {
+          // Stored in units of elements rather than numbers
+          out.writeLong(width == 0 ? 0 : offsets[i] / width);
+        }
+      }
+      JsonObject description = description("series", file);
+      description.addProperty("offsets", offsetFile);
+      description.addProperty("width", Math.max(width, 1));
+      return description;
+    }
+
+  }
+
+}
@@ -20,6 +20,7 @@ import com.github.rvesse.airline.annotations.restrictions.Once;
 import edu.umich.srg.egtaonline.Observation.Player;
 import edu.umich.srg.egtaonline.SimSpec.RoleStrat;
 import edu.umich.srg.egtaonline.spec.Spec;
+import edu.umich.srg.util.ControlVariateStats;
 import edu.umich.srg.util.SummStats;
 
 import java.io.BufferedReader;
@@ -32,21 +33,30 @@ import java.io.Reader;
 import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.PriorityQueue;
+import java.util.TreeMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.ToDoubleBiFunction;
 import java.util.stream.Collectors;
+import java.util.stream.DoubleStream;
 
 import javax.inject.Inject;
 
@@ -54,6 +64,7 @@ import javax.inject.Inject;
 public class CommandLineOptions {
 
   private static final Charset charset = Charset.forName("UTF-8");
+  private static final double summaryAccuracy = 0.001;
 
   @Inject
   public HelpOption<?> help;
@@ -85,6 +96,41 @@ public class CommandLineOptions {
   @Option(name = "--flush", description = "Flush after every observation.")
   public boolean flush = false;
 
+  @Option(name = "--control-variates",
+      description = "When aggregating sims-per-obs simulations, adjust each payoff with the"
+          + " simulator's zero mean controls, e.g. the fundamental shock and private value draws.")
+  public boolean controlVariates = false;
+
+  @Option(name = "--columnar", title = "store-directory",
+      description = "Write every simulation into a columnar store in this directory instead of"
+          + " the observation file, so later analyses only read the columns they need."
+          + " (default: off)")
+  public String columnar = null;
+
+  @Option(name = "--summarize",
+      description = "Instead of writing every observation, write one summary per spec of the"
+          + " mean, standard deviation, and quantiles of payoffs and numeric features over"
+          + " num-observations times sims-per-obs simulations, without keeping them in memory.")
+  public boolean summarize = false;
+
+  @Option(name = "--sweep",
+      description = "Treat each simulation spec as a parameter sweep with a \"sweep\" object of "
+          + "configuration values and assignment counts, and output the aggregate payoffs of "
+          + "num-observations times sims-per-obs simulations at every point. This can't be "
+          + "combined with options that change what's written.")
+  public boolean sweep = false;
+
+  @Option(name = "--target-error", title = "standard-error",
+      description = "Keep running simulations of each spec until the standard error of every role"
+          + " strategy's mean payoff is at most this, starting with num-observations times"
+          + " sims-per-obs. Outputs one aggregate observation per spec. (default: off)")
+  public double targetError = 0;
+
+  @Option(name = "--max-sims", title = "max-simulations",
+      description = "The most simulations to run for one spec with --target-error."
+          + " (default: 10000)")
+  public int maxSims = 10000;
+
   @Once
   @Arguments(title = "num-observations",
       description = "The number of observations to gather from the simulation spec."
@@ -114,11 +160,23 @@ public class CommandLineOptions {
   /** Run an egta script with readers and writers. */
   public static void run(BiFunction<SimSpec, Integer, Observation> sim, Reader specs, Writer writer,
       int numObs, int simsPerObs, int jobs, boolean noFeatures, boolean flush, Package keyPackage) {
+    run(sim, specs, writer, numObs, simsPerObs, jobs, noFeatures, false, flush, keyPackage);
+  }
+
+  /**
+   * Run an egta script with readers and writers.
+   *
+   * @param controlVariates If true and simsPerObs is greater than one, aggregate payoffs are
+   *        control variate estimates using the observations' controls.
+   */
+  public static void run(BiFunction<SimSpec, Integer, Observation> sim, Reader specs, Writer writer,
+      int numObs, int simsPerObs, int jobs, boolean noFeatures, boolean controlVariates,
+      boolean flush, Package keyPackage) {
 
     boolean outputFeatures = simsPerObs == 1 && !noFeatures;
     SpecReader input = new SpecReader(specs, keyPackage);
     Consumer<Entry<JsonObject, Observation>> output =
-        createObsWriter(writer, simsPerObs, outputFeatures, flush);
+        createObsWriter(writer, simsPerObs, outputFeatures, controlVariates, flush);
 
     run(sim, () -> input, output, numObs * simsPerObs, jobs);
 
@@ -140,12 +198,144 @@ public class CommandLineOptions {
         Spec.printKeys(keyPackage, out);
       }
     } else {
+      checkOptions();
       try (Reader in = openin(simSpec); Writer out = openout(observations)) {
-        run(sim, in, out, numObs, simsPerObs, jobs, noFeatures, flush, keyPackage);
+        if (sweep) {
+          sweep(sim, in, out, numObs * simsPerObs, jobs, flush, keyPackage);
+        } else if (summarize) {
+          summaryRun(sim, in, out, numObs * simsPerObs, jobs, flush, keyPackage);
+        } else if (columnar != null) {
+          columnarRun(sim, in, Paths.get(columnar), numObs * simsPerObs, jobs, noFeatures,
+              keyPackage);
+        } else if (targetError > 0) {
+          adaptiveRun(sim, in, out, numObs * simsPerObs, maxSims, targetError, jobs, flush,
+              keyPackage);
+        } else {
+          run(sim, in, out, numObs, simsPerObs, jobs, noFeatures, controlVariates, flush,
+              keyPackage);
+        }
       }
     }
   }
 
+  /** Reject options that would otherwise be silently ignored. */
+  private void checkOptions() {
+    checkArgument(!sweep || (targetError == 0 && !noFeatures && !summarize && columnar == null
+        && !controlVariates),
+        "--sweep only writes aggregate payoffs, so it can't be combined with --target-error,"
+            + " --no-features, --summarize, --columnar, or --control-variates");
+  }
+
+  /** Run an egta script writing every simulation to a columnar store. */
+  public static void columnarRun(BiFunction<SimSpec, Integer, Observation> sim, Reader specs,
+      Path directory, int numSims, int jobs, boolean noFeatures, Package keyPackage)
+      throws IOException {
+    SpecReader input = new SpecReader(specs, keyPackage);
+    try (ColumnarWriter writer =
+        ColumnarWriter.create(directory, ColumnarWriter.DEFAULT_CHUNK_SIZE, !noFeatures)) {
+      run(sim, () -> input, writer, numSims, jobs);
+    }
+  }
+
+  /**
+   * Run numSims simulations of each spec, writing a summary of their payoffs and features per spec.
+   * Simulations add to the summary from whichever thread ran them, so nothing waits for them to be
+   * written in order.
+   */
+  public static void summaryRun(BiFunction<SimSpec, Integer, Observation> sim, Reader specs,
+      Writer writer, int numSims, int jobs, boolean flush, Package keyPackage) {
+    checkArgument(numSims > 0, "total number of simulations must be greater than 0 (%d)", numSims);
+    checkArgument(jobs >= 0, "number of jobs must be nonegative (%d)", jobs);
+    if (jobs == 0) {
+      jobs = Runtime.getRuntime().availableProcessors();
+    }
+
+    Gson gson = new GsonBuilder().serializeSpecialFloatingPointValues().create();
+    SpecReader input = new SpecReader(specs, keyPackage);
+    ExecutorService exec = Executors.newFixedThreadPool(jobs);
+    try {
+      int simNum = 0;
+      while (input.hasNext()) {
+        SimSpec spec = input.next().getValue();
+        ObservationSummary summary = ObservationSummary.create(summaryAccuracy);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < numSims; ++i) {
+          final int num = simNum++;
+          results.add(exec.submit(() -> summary.accept(sim.apply(spec, num))));
+        }
+        for (Future<?> result : results) {
+          result.get();
+        }
+
+        gson.toJson(summary.toJson(), writer);
+        writer.append('\n');
+        if (flush) {
+          writer.flush();
+        }
+      }
+      writer.flush();
+    } catch (Exception ex) {
+      ex.printStackTrace();
+      System.exit(1);
+    } finally {
+      exec.shutdown();
+    }
+  }
+
+  /** Run every point of the parameter sweeps in specs, writing aggregate payoffs per point. */
+  public static void sweep(BiFunction<SimSpec, Integer, Observation> sim, Reader specs,
+      Writer writer, int numObs, int jobs, boolean flush, Package keyPackage) {
+    Gson gson = new GsonBuilder().serializeSpecialFloatingPointValues().create();
+    JsonStreamParser parser = new JsonStreamParser(specs);
+    while (parser.hasNext()) {
+      ParameterSweep sweep = ParameterSweep.read(parser.next().getAsJsonObject(), keyPackage);
+      sweep.run(sim, spec -> numObs, jobs, result -> {
+        gson.toJson(result.toJson(sweep), writer);
+        try {
+          writer.append('\n');
+          if (flush) {
+            writer.flush();
+          }
+        } catch (IOException e) {
+          e.printStackTrace();
+          System.exit(1);
+        }
+      });
+    }
+
+    try {
+      writer.flush();
+    } catch (IOException ex) {
+      ex.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Run each spec until the standard error of its payoffs is below targetError, writing one
+   * aggregate observation per spec.
+   */
+  public static void adaptiveRun(BiFunction<SimSpec, Integer, Observation> sim, Reader specs,
+      Writer writer, int minSims, int maxSims, double targetError, int jobs, boolean flush,
+      Package keyPackage) {
+    Gson gson = new GsonBuilder().serializeSpecialFloatingPointValues().create();
+    SpecReader input = new SpecReader(specs, keyPackage);
+    try (AdaptiveSampler sampler =
+        AdaptiveSampler.create(sim, targetError, minSims, maxSims, jobs)) {
+      while (input.hasNext()) {
+        gson.toJson(sampler.sample(input.next().getValue()).toJson(), writer);
+        writer.append('\n');
+        if (flush) {
+          writer.flush();
+        }
+      }
+      writer.flush();
+    } catch (IOException ex) {
+      ex.printStackTrace();
+      System.exit(1);
+    }
+  }
+
   private static void multiThreadRun(BiFunction<SimSpec, Integer, Observation> sim,
       Iterable<Entry<JsonObject, SimSpec>> specs, Consumer<Entry<JsonObject, Observation>> output,
       int numSims, int jobs) {
@@ -257,7 +447,7 @@ public class CommandLineOptions {
   }
 
   private static Consumer<Entry<JsonObject, Observation>> createObsWriter(Writer output,
-      int simsPerObs, boolean outputFeatures, boolean flush) {
+      int simsPerObs, boolean outputFeatures, boolean controlVariates, boolean flush) {
     if (simsPerObs == 1 && outputFeatures) {
       // Output features one at a time
       Gson gson = new GsonBuilder().serializeSpecialFloatingPointValues().create();
@@ -276,6 +466,61 @@ public class CommandLineOptions {
           System.exit(1);
         }
       };
+    } else if (controlVariates) {
+      // Aggregate observation with control variate estimates of each payoff. The coefficients are
+      // fit over every player with the same role and strategy, as fitting them per player adds
+      // more noise than it removes when there are few simulations per observation.
+      Gson gson = new Gson();
+
+      return new Consumer<Entry<JsonObject, Observation>>() {
+        Multimap<RoleStrat, ControlVariateStats> aggregates = null;
+        Map<RoleStrat, ControlVariateStats> pooled = null;
+        int numProcessed = 0;
+
+        @Override
+        public void accept(Entry<JsonObject, Observation> obs) {
+          double[] obsControls = controlValues(obs.getValue().getControls());
+          if (aggregates == null) {
+            aggregates = ArrayListMultimap.create();
+            pooled = new HashMap<>();
+            for (Player player : obs.getValue().getPlayers()) {
+              RoleStrat roleStrat = RoleStrat.of(player.getRole(), player.getStrategy());
+              int numControls = obsControls.length + player.getControls().size();
+              aggregates.put(roleStrat, ControlVariateStats.empty(numControls));
+              pooled.putIfAbsent(roleStrat, ControlVariateStats.empty(numControls));
+            }
+          }
+          Map<RoleStrat, Iterator<ControlVariateStats>> next = aggregates.asMap().entrySet()
+              .stream().collect(Collectors.toMap(Entry::getKey, e -> e.getValue().iterator()));
+          for (Player player : obs.getValue().getPlayers()) {
+            RoleStrat roleStrat = RoleStrat.of(player.getRole(), player.getStrategy());
+            double[] controls = playerControls(obsControls, player);
+            next.get(roleStrat).next().accept(player.getPayoff(), controls);
+            pooled.get(roleStrat).accept(player.getPayoff(), controls);
+          }
+          numProcessed++;
+
+          if (numProcessed >= simsPerObs) {
+            Map<RoleStrat, double[]> coefficients = pooled.entrySet().stream()
+                .collect(Collectors.toMap(Entry::getKey, e -> e.getValue().getCoefficients()));
+            JsonObject base = new JsonObject();
+            base.add("players", serializeAggregatePlayers(aggregates, obs.getValue().getPlayers(),
+                (roleStrat, stats) -> stats.getAverage(coefficients.get(roleStrat))));
+            gson.toJson(base, output);
+            try {
+              output.append('\n');
+              if (flush) {
+                output.flush();
+              }
+            } catch (IOException e) {
+              e.printStackTrace();
+              System.exit(1);
+            }
+            aggregates = null;
+            numProcessed = 0;
+          }
+        }
+      };
     } else {
       // Aggregate observation and don't output anything but payoffs
       Gson gson = new Gson();
@@ -305,7 +550,10 @@ public class CommandLineOptions {
 
           if (numProcessed >= simsPerObs) {
             JsonObject base = new JsonObject();
-            base.add("players", serializeAggregatePlayers(aggregates, obs.getValue().getPlayers()));
+            // Here we call Optional::get, but it's object is guaranteed to have something, as
+            // there's always at least one element
+            base.add("players", serializeAggregatePlayers(aggregates, obs.getValue().getPlayers(),
+                (roleStrat, stats) -> stats.getAverage().getAsDouble()));
             gson.toJson(base, output);
             try {
               output.append('\n');
@@ -344,22 +592,31 @@ public class CommandLineOptions {
     return serializedPlayers;
   }
 
+  /** Control values ordered by name so they line up between observations. */
+  private static double[] controlValues(Map<String, Double> controls) {
+    return new TreeMap<>(controls).values().stream().mapToDouble(Double::doubleValue).toArray();
+  }
+
+  /** The observation controls followed by the player's own controls. */
+  private static double[] playerControls(double[] obsControls, Player player) {
+    return DoubleStream.concat(Arrays.stream(obsControls),
+        Arrays.stream(controlValues(player.getControls()))).toArray();
+  }
+
   /** Serialize players, but keep the order of the last set of players. */
-  private static JsonElement serializeAggregatePlayers(Multimap<RoleStrat, SummStats> players,
-      Collection<? extends Player> order) {
+  private static <T> JsonElement serializeAggregatePlayers(Multimap<RoleStrat, T> players,
+      Collection<? extends Player> order, ToDoubleBiFunction<? super RoleStrat, ? super T> payoff) {
     JsonArray serializedPlayers = new JsonArray();
-    Map<RoleStrat, Iterator<SummStats>> next = players.asMap().entrySet().stream()
+    Map<RoleStrat, Iterator<T>> next = players.asMap().entrySet().stream()
         .collect(Collectors.toMap(Entry::getKey, e -> e.getValue().iterator()));
 
     for (Player player : order) {
       JsonObject serializedPlayer = new JsonObject();
       serializedPlayer.addProperty("role", player.getRole());
       serializedPlayer.addProperty("strategy", player.getStrategy());
-      // Here we call Optional::get, but it's object is guaranteed to have something, as there's
-      // always at least one element
+      RoleStrat roleStrat = RoleStrat.of(player.getRole(), player.getStrategy());
       serializedPlayer.addProperty("payoff",
-          next.get(RoleStrat.of(player.getRole(), player.getStrategy())).next().getAverage()
-              .getAsDouble());
+          payoff.applyAsDouble(roleStrat, next.get(roleStrat).next()));
       serializedPlayers.add(serializedPlayer);
     }
 
@@ -3,6 +3,8 @@ package edu.umich.srg.egtaonline;
 import com.google.gson.JsonObject;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
 
 public interface Observation {
 
@@ -10,6 +12,14 @@ public interface Observation {
 
   JsonObject getFeatures();
 
+  /**
+   * Cheap observation level values whose expected value is known to be zero, so they can be used as
+   * control variates when aggregating payoffs.
+   */
+  default Map<String, Double> getControls() {
+    return Collections.emptyMap();
+  }
+
   interface Player {
 
     String getRole();
@@ -22,6 +32,11 @@ public interface Observation {
 
     JsonObject getFeatures();
 
+    /** Player level values whose expected value is known to be zero. */
+    default Map<String, Double> getControls() {
+      return Collections.emptyMap();
+    }
+
   }
 
 }
@@ -0,0 +1,138 @@
+package edu.umich.srg.egtaonline;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import edu.umich.srg.egtaonline.Observation.Player;
+import edu.umich.srg.egtaonline.SimSpec.RoleStrat;
+import edu.umich.srg.util.ConcurrentStats;
+import edu.umich.srg.util.QuantileSketch;
+import edu.umich.srg.util.SummStats;
+
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Distributions of payoffs and numeric features over many observations, without keeping the
+ * observations. Observations can be added from any thread. Payoffs are per player, grouped by role
+ * and strategy, and features are named by their path like the columnar store, e.g.
+ * "markets/0/rmsd". Series features aren't summarized.
+ */
+public class ObservationSummary {
+
+  private static final double[] quantiles = {0.05, 0.25, 0.5, 0.75, 0.95};
+
+  private final double relativeAccuracy;
+  private final ConcurrentMap<RoleStrat, ConcurrentStats> payoffs;
+  private final ConcurrentMap<String, ConcurrentStats> features;
+  private final AtomicLong observations;
+
+  private ObservationSummary(double relativeAccuracy) {
+    this.relativeAccuracy = relativeAccuracy;
+    this.payoffs = new ConcurrentSkipListMap<>();
+    this.features = new ConcurrentSkipListMap<>();
+    this.observations = new AtomicLong();
+  }
+
+  /** Create an empty summary with quantiles within relativeAccuracy. */
+  public static ObservationSummary create(double relativeAccuracy) {
+    // Checks the accuracy
+    QuantileSketch.create(relativeAccuracy);
+    return new ObservationSummary(relativeAccuracy);
+  }
+
+  /** Add an observation from any thread. */
+  public void accept(Observation obs) {
+    for (Player player : obs.getPlayers()) {
+      payoffs.computeIfAbsent(RoleStrat.of(player.getRole(), player.getStrategy()),
+          rs -> ConcurrentStats.create(relativeAccuracy)).accept(player.getPayoff());
+    }
+    JsonObject obsFeatures = obs.getFeatures();
+    if (obsFeatures != null) {
+      for (Entry<String, JsonElement> feature : obsFeatures.entrySet()) {
+        addFeature(feature.getKey(), feature.getValue());
+      }
+    }
+    observations.incrementAndGet();
+  }
+
+  public long getObservations() {
+    return observations.get();
+  }
+
+  public ConcurrentStats getPayoffs(RoleStrat roleStrat) {
+    return payoffs.get(roleStrat);
+  }
+
+  public ConcurrentStats getFeature(String name) {
+    return features.get(name);
+  }
+
+  private void addFeature(String name, JsonElement element) {
+    if (element.isJsonPrimitive()) {
+      JsonPrimitive value = element.getAsJsonPrimitive();
+      if (value.isNumber() || value.isBoolean()) {
+        features.computeIfAbsent(name, n -> ConcurrentStats.create(relativeAccuracy))
+            .accept(value.isNumber() ? value.getAsDouble() : value.getAsBoolean() ? 1 : 0);
+      }
+    } else if (element.isJsonObject()) {
+      for (Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+        addFeature(name + "/" + entry.getKey(), entry.getValue());
+      }
+    } else if (element.isJsonArray()) {
+      // Only arrays of objects, e.g. one per market
+      JsonArray array = element.getAsJsonArray();
+      for (int i = 0; i < array.size(); ++i) {
+        if (array.get(i).isJsonObject()) {
+          addFeature(name + "/" + i, array.get(i));
+        }
+      }
+    }
+  }
+
+  /**
+   * The summary as json, with the count, mean, standard deviation, min, max, and quantiles of each
+   * role strategy's payoff and of each feature.
+   */
+  public JsonObject toJson() {
+    JsonObject json = new JsonObject();
+    json.addProperty("observations", observations.get());
+    JsonArray players = new JsonArray();
+    for (Entry<RoleStrat, ConcurrentStats> entry : payoffs.entrySet()) {
+      JsonObject player = new JsonObject();
+      player.addProperty("role", entry.getKey().getRole());
+      player.addProperty("strategy", entry.getKey().getStrategy());
+      player.add("payoff", toJson(entry.getValue()));
+      players.add(player);
+    }
+    json.add("players", players);
+    JsonObject featureJson = new JsonObject();
+    for (Entry<String, ConcurrentStats> entry : features.entrySet()) {
+      featureJson.add(entry.getKey(), toJson(entry.getValue()));
+    }
+    json.add("features", featureJson);
+    return json;
+  }
+
+  private static JsonObject toJson(ConcurrentStats values) {
+    SummStats stats = values.getStats();
+    QuantileSketch sketch = values.getSketch();
+    JsonObject json = new JsonObject();
+    json.addProperty("count", stats.getCount());
+    json.addProperty("mean", stats.getAverage().orElse(Double.NaN));
+    json.addProperty("stddev", stats.getStandardDeviation().orElse(Double.NaN));
+    json.addProperty("min", stats.getMin().orElse(Double.NaN));
+    json.addProperty("max", stats.getMax().orElse(Double.NaN));
+    JsonObject quants = new JsonObject();
+    for (double quantile : quantiles) {
+      quants.addProperty(Double.toString(quantile), sketch.quantile(quantile).orElse(Double.NaN));
+    }
+    json.add("quantiles", quants);
+    return json;
+  }
+
+}
@@ -0,0 +1,423 @@
+package edu.umich.srg.egtaonline;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.math.LongMath;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import edu.umich.srg.egtaonline.Observation.Player;
+import edu.umich.srg.egtaonline.SimSpec.RoleStrat;
+import edu.umich.srg.egtaonline.spec.Spec;
+import edu.umich.srg.util.SummStats;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * A grid of simulation specs around a base spec, where every axis either sets a configuration key
+ * or the count of a role strategy pair. Points are only expanded when they're needed, so a sweep
+ * can be far larger than what would fit in memory, and points are ordered like nested loops with
+ * the last axis varying fastest.
+ *
+ * <p>A sweep is read from json like a simulation spec with an extra "sweep" object that has the
+ * values of each axis:
+ *
+ * <pre>
+ * {"assignment": {"role": {"strat": 10}}, "configuration": {"simLength": "1000"},
+ *  "sweep": {"configuration": {"arrivalRate": ["0.01", "0.05"]},
+ *            "assignment": {"role": {"strat": [5, 10, 20]}}}}
+ * </pre>
+ */
+public class ParameterSweep extends AbstractList<SimSpec> {
+
+  private final JsonObject base;
+  private final SimSpec baseSpec;
+  private final Package keyPackage;
+  private final List<Axis> axes;
+  private final int size;
+
+  private ParameterSweep(JsonObject base, Package keyPackage, List<Axis> axes) {
+    this.base = base;
+    this.baseSpec = SimSpec.read(base, keyPackage);
+    this.keyPackage = keyPackage;
+    this.axes = axes;
+    long size = 1;
+    for (Axis axis : axes) {
+      size = LongMath.checkedMultiply(size, axis.size());
+    }
+    checkArgument(size <= Integer.MAX_VALUE, "Sweep has too many points (%s)", size);
+    this.size = (int) size;
+  }
+
+  /** Create a sweep builder around a base spec in its json form. */
+  public static Builder builder(JsonObject base, Package keyPackage) {
+    return new Builder(base, keyPackage);
+  }
+
+  /** Read a sweep from a spec with a "sweep" object. Without one the sweep is just the spec. */
+  public static ParameterSweep read(JsonObject obj, Package keyPackage) {
+    JsonObject base = obj.deepCopy();
+    JsonElement sweep = base.remove("sweep");
+    Builder builder = builder(base, keyPackage);
+    if (sweep == null) {
+      return builder.build();
+    }
+
+    JsonElement configuration = sweep.getAsJsonObject().get("configuration");
+    if (configuration != null) {
+      for (Entry<String, JsonElement> key : configuration.getAsJsonObject().entrySet()) {
+        ImmutableList.Builder<String> values = ImmutableList.builder();
+        for (JsonElement value : key.getValue().getAsJsonArray()) {
+          values.add(value.getAsString());
+        }
+        builder.vary(key.getKey(), values.build());
+      }
+    }
+    JsonElement assignment = sweep.getAsJsonObject().get("assignment");
+    if (assignment != null) {
+      for (Entry<String, JsonElement> role : assignment.getAsJsonObject().entrySet()) {
+        for (Entry<String, JsonElement> strat : role.getValue().getAsJsonObject().entrySet()) {
+          JsonArray counts = strat.getValue().getAsJsonArray();
+          int[] values = new int[counts.size()];
+          for (int i = 0; i < values.length; ++i) {
+            values[i] = counts.get(i).getAsInt();
+          }
+          builder.varyCount(role.getKey(), strat.getKey(), values);
+        }
+      }
+    }
+    return builder.build();
+  }
+
+  /** The number of points in the sweep. */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /** The spec at a point. */
+  @Override
+  public SimSpec get(int point) {
+    checkElementIndex(point, size);
+    int[] coordinates = coordinates(point);
+
+    Spec.ParsingBuilder configuration = Spec.builder(keyPackage).putAll(baseSpec.configuration);
+    Multiset<RoleStrat> assignment = HashMultiset.create(baseSpec.assignment);
+    for (int i = 0; i < axes.size(); ++i) {
+      axes.get(i).apply(coordinates[i], configuration, assignment);
+    }
+    return SimSpec.create(ImmutableMultiset.copyOf(assignment), configuration.build());
+  }
+
+  /** The spec at a point in the same json form it was read from. */
+  public JsonObject getJson(int point) {
+    checkElementIndex(point, size);
+    int[] coordinates = coordinates(point);
+
+    JsonObject json = base.deepCopy();
+    for (int i = 0; i < axes.size(); ++i) {
+      axes.get(i).apply(coordinates[i], json);
+    }
+    return json;
+  }
+
+  private int[] coordinates(int point) {
+    int[] coordinates = new int[axes.size()];
+    for (int i = axes.size() - 1; i >= 0; --i) {
+      int axisSize = axes.get(i).size();
+      coordinates[i] = point % axisSize;
+      point /= axisSize;
+    }
+    return coordinates;
+  }
+
+  /**
+   * Run every point of the sweep on a work stealing pool, and pass each point's aggregated
+   * payoffs to output in point order. Observations of a point use the same observation numbers as
+   * every other point, so with a fixed random seed the points share their random draws and
+   * differences between them aren't swamped by noise. Only a few points per thread are expanded
+   * at a time, so memory doesn't grow with the size of the sweep.
+   *
+   * @param observations The number of observations to run at each point's spec.
+   */
+  public void run(BiFunction<SimSpec, Integer, Observation> sim,
+      ToIntFunction<? super SimSpec> observations, int jobs, Consumer<? super Result> output) {
+    checkArgument(jobs >= 0, "number of jobs must be nonegative (%d)", jobs);
+    if (jobs == 0) {
+      jobs = Runtime.getRuntime().availableProcessors();
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(jobs);
+    Semaphore inFlight = new Semaphore(2 * jobs);
+    PriorityQueue<Result> pending = new PriorityQueue<>(Comparator.comparingInt(Result::getPoint));
+    int[] nextToOutput = {0};
+
+    try {
+      for (int point = 0; point < size; ++point) {
+        inFlight.acquire();
+        SimSpec spec = get(point);
+        int numObs = observations.applyAsInt(spec);
+        checkArgument(numObs > 0, "number of observations must be positive (%d)", numObs);
+
+        PointRun run = new PointRun(point, spec, numObs, result -> {
+          // Output results in order, and only free a slot when its result is written
+          synchronized (pending) {
+            pending.add(result);
+            while (!pending.isEmpty() && pending.peek().point == nextToOutput[0]) {
+              output.accept(pending.poll());
+              ++nextToOutput[0];
+              inFlight.release();
+            }
+          }
+        });
+        for (int obs = 0; obs < numObs; ++obs) {
+          final int obsNum = obs;
+          pool.execute(() -> {
+            // As in the egta runner, exceptions on worker threads are otherwise easy to lose
+            try {
+              run.accept(sim.apply(spec, obsNum));
+            } catch (Exception ex) {
+              ex.printStackTrace();
+              System.exit(1);
+            }
+          });
+        }
+      }
+
+      pool.shutdown();
+      pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException ex) {
+      pool.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public static class Builder {
+
+    private final JsonObject base;
+    private final Package keyPackage;
+    private final List<Axis> axes;
+
+    private Builder(JsonObject base, Package keyPackage) {
+      this.base = base;
+      this.keyPackage = keyPackage;
+      this.axes = new ArrayList<>();
+    }
+
+    /** Vary a configuration key over values, written as they would be in a spec. */
+    public Builder vary(String key, Iterable<String> values) {
+      List<String> copy = ImmutableList.copyOf(values);
+      checkArgument(!copy.isEmpty(), "%s must have at least one value", key);
+      axes.add(new ConfigurationAxis(key, copy));
+      return this;
+    }
+
+    public Builder vary(String key, String... values) {
+      return vary(key, ImmutableList.copyOf(values));
+    }
+
+    /** Vary an integral configuration key from start up to but not including end. */
+    public Builder range(String key, long start, long end, long step) {
+      checkArgument(step > 0, "step must be positive (%d)", step);
+      ImmutableList.Builder<String> values = ImmutableList.builder();
+      for (long value = start; value < end; value += step) {
+        values.add(Long.toString(value));
+      }
+      return vary(key, values.build());
+    }
+
+    /** Vary the number of players with a role and strategy. */
+    public Builder varyCount(String role, String strategy, int... counts) {
+      checkArgument(counts.length > 0, "%s: %s must have at least one count", role, strategy);
+      for (int count : counts) {
+        checkArgument(count >= 0, "counts must be nonnegative (%d)", count);
+      }
+      axes.add(new CountAxis(RoleStrat.of(role, strategy), counts.clone()));
+      return this;
+    }
+
+    public ParameterSweep build() {
+      return new ParameterSweep(base, keyPackage, ImmutableList.copyOf(axes));
+    }
+
+  }
+
+  /** The aggregated payoffs of one point of a sweep. */
+  public static class Result {
+
+    private final int point;
+    private final SimSpec spec;
+    private final int observations;
+    private final Map<RoleStrat, SummStats> payoffs;
+
+    private Result(int point, SimSpec spec, int observations, Map<RoleStrat, SummStats> payoffs) {
+      this.point = point;
+      this.spec = spec;
+      this.observations = observations;
+      this.payoffs = payoffs;
+    }
+
+    public int getPoint() {
+      return point;
+    }
+
+    public SimSpec getSpec() {
+      return spec;
+    }
+
+    public int getObservations() {
+      return observations;
+    }
+
+    /** Payoffs of every player of each role strategy pair over every observation. */
+    public Map<RoleStrat, SummStats> getPayoffs() {
+      return Collections.unmodifiableMap(payoffs);
+    }
+
+    /** The result with the spec of its point, as written by the command line sweep. */
+    public JsonObject toJson(ParameterSweep sweep) {
+      JsonObject json = sweep.getJson(point);
+      json.addProperty("point", point);
+      json.addProperty("observations", observations);
+      JsonArray players = new JsonArray();
+      for (Entry<RoleStrat, SummStats> entry : payoffs.entrySet()) {
+        JsonObject player = new JsonObject();
+        player.addProperty("role", entry.getKey().getRole());
+        player.addProperty("strategy", entry.getKey().getStrategy());
+        player.addProperty("payoff", entry.getValue().getAverage().orElse(Double.NaN));
+        player.addProperty("payoff_stddev",
+            entry.getValue().getStandardDeviation().orElse(Double.NaN));
+        player.addProperty("count", entry.getValue().getCount());
+        players.add(player);
+      }
+      json.add("players", players);
+      return json;
+    }
+
+  }
+
+  /** Aggregates the observations of one point as they finish. */
+  private static class PointRun implements Consumer<Observation> {
+
+    private final Map<RoleStrat, SummStats> payoffs;
+    private final Result result;
+    private final Consumer<Result> output;
+    private int remaining;
+
+    private PointRun(int point, SimSpec spec, int observations, Consumer<Result> output) {
+      this.payoffs = new TreeMap<>();
+      this.result = new Result(point, spec, observations, payoffs);
+      this.output = output;
+      this.remaining = observations;
+    }
+
+    @Override
+    public void accept(Observation obs) {
+      boolean finished;
+      synchronized (this) {
+        for (Player player : obs.getPlayers()) {
+          payoffs.computeIfAbsent(RoleStrat.of(player.getRole(), player.getStrategy()),
+              rs -> SummStats.empty()).accept(player.getPayoff());
+        }
+        finished = --remaining == 0;
+      }
+      if (finished) {
+        output.accept(result);
+      }
+    }
+
+  }
+
+  private interface Axis {
+
+    int size();
+
+    void apply(int index, Spec.ParsingBuilder configuration, Multiset<RoleStrat> assignment);
+
+    void apply(int index, JsonObject json);
+
+  }
+
+  private static class ConfigurationAxis implements Axis {
+
+    private final String key;
+    private final List<String> values;
+
+    private ConfigurationAxis(String key, List<String> values) {
+      this.key = key;
+      this.values = values;
+    }
+
+    @Override
+    public int size() {
+      return values.size();
+    }
+
+    @Override
+    public void apply(int index, Spec.ParsingBuilder configuration,
+        Multiset<RoleStrat> assignment) {
+      configuration.put(key, values.get(index));
+    }
+
+    @Override
+    public void apply(int index, JsonObject json) {
+      json.getAsJsonObject("configuration").addProperty(key, values.get(index));
+    }
+
+  }
+
+  private static class CountAxis implements Axis {
+
+    private final RoleStrat roleStrat;
+    private final int[] counts;
+
+    private CountAxis(RoleStrat roleStrat, int[] counts) {
+      this.roleStrat = roleStrat;
+      this.counts = counts;
+    }
+
+    @Override
+    public int size() {
+      return counts.length;
+    }
+
+    @Override
+    public void apply(int index, Spec.ParsingBuilder configuration,
+        Multiset<RoleStrat> assignment) {
+      assignment.setCount(roleStrat, counts[index]);
+    }
+
+    @Override
+    public void apply(int index, JsonObject json) {
+      JsonObject assignment = json.getAsJsonObject("assignment");
+      JsonObject role = assignment.getAsJsonObject(roleStrat.getRole());
+      if (role == null) {
+        role = new JsonObject();
+        assignment.add(roleStrat.getRole(), role);
+      }
+      role.addProperty(roleStrat.getStrategy(), counts[index]);
+    }
+
+  }
+
+}
@@ -161,6 +161,11 @@ public class Spec {
     return val.get();
   }
 
+  /** Whether the spec has a value for key. */
+  public boolean contains(Class<? extends Value<?>> key) {
+    return map.containsKey(key);
+  }
+
   public Set<Entry<Class<? extends Value<?>>, Value<?>>> entrySet() {
     return map.entrySet();
   }
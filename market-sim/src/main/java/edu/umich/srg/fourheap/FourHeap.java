@@ -18,6 +18,7 @@ import edu.umich.srg.util.Optionals;
 
 import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -29,6 +30,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.function.ObjIntConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -36,7 +38,8 @@ import java.util.stream.Stream;
  * This class provides an efficient order matching mechanism while also producing valid price quotes
  * in constant time. Unless noted, everything is constant time. `n` is the number of order objects,
  * not the quantity of objects i.e. adding more orders at the same price doesn't increase the
- * complexity.
+ * complexity. Every order is in at most one of the four queues at a time, so a single registry
+ * records which queue each order is in, under what key, and with what quantity.
  */
 
 public class FourHeap<P, O extends IOrder<P>> extends AbstractCollection<O> implements Multiset<O> {
@@ -51,11 +54,16 @@ public class FourHeap<P, O extends IOrder<P>> extends AbstractCollection<O> impl
   private final OrderQueue sellMatched;
   private final OrderQueue sellUnmatched;
   private final Selector<O> selector;
+  private final Map<O, Location> locations;
+
+  private final ClearedOrders buyClear;
+  private final ClearedOrders sellClear;
 
   private long time = Long.MIN_VALUE;
 
   private FourHeap(Selector<O> selector, Comparator<? super P> priceOrder) {
     this.selector = selector;
+    this.locations = new HashMap<>();
     Ordering<Key> keyTime = Ordering.natural().onResultOf(k -> k.time);
     this.sellPrice = Ordering.from(priceOrder).onResultOf(k -> k.price);
     this.sellKey = sellPrice.compound(keyTime);
@@ -66,6 +74,8 @@ public class FourHeap<P, O extends IOrder<P>> extends AbstractCollection<O> impl
     this.buyMatched = new OrderQueue(buyKey.reverse());
     this.sellUnmatched = new OrderQueue(sellKey);
     this.sellMatched = new OrderQueue(sellKey.reverse());
+    this.buyClear = new ClearedOrders();
+    this.sellClear = new ClearedOrders();
   }
 
   public static <P, O extends IOrder<P>> FourHeap<P, O> create(Selector<O> selector,
@@ -153,8 +163,8 @@ public class FourHeap<P, O extends IOrder<P>> extends AbstractCollection<O> impl
   }
 
   /**
-   * Withdraws a specific quantity from an order in the fourheap. Behavior is undefined if the order
-   * isn't already in the fourheap. Complexity: O(log n).
+   * Withdraws a specific quantity from an order in the fourheap, returning the count before removal.
+   * Nothing happens if the order isn't in the fourheap. Complexity: O(log n).
    */
   @SuppressWarnings("unchecked")
   @Override
@@ -176,11 +186,13 @@ public class FourHeap<P, O extends IOrder<P>> extends AbstractCollection<O> impl
 
   private int withdraw(O order, int quantity, OrderQueue ordUnmatched, OrderQueue ordMatched,
       OrderQueue oppUnmatched, OrderQueue oppMatched, Comparator<Key> pord) {
-    // Remove from unmatched, easy
-    int beforeRemoval = ordUnmatched.remove(order, quantity);
-    if (beforeRemoval == 0) { // Order wasn't in unmatched
-      beforeRemoval = ordMatched.remove(order, quantity);
-
+    Location location = locations.get(order);
+    if (location == null) {
+      return 0;
+    }
+    int beforeRemoval = location.queue.remove(order, quantity);
+    // Removing from unmatched is easy, but matched orders need to be replaced
+    if (location.queue == ordMatched) {
       // Fix order books
       while (oppMatched.size() > ordMatched.size()) {
         if (!ordUnmatched.isEmpty()
@@ -208,12 +220,23 @@ public class FourHeap<P, O extends IOrder<P>> extends AbstractCollection<O> impl
    * number of matched orders.
    */
   public Collection<MatchedOrders<P, O>> marketClear() {
+    Builder<MatchedOrders<P, O>> transactions = ImmutableList.builder();
+    marketClear((buy, sell, quantity) -> transactions.add(new MatchedOrders<>(buy, sell, quantity)));
+    return transactions.build();
+  }
+
+  /**
+   * Clears matching orders from the fourheap, passing each pair of matched orders and the quantity
+   * they matched to matches in the same order that {@link #marketClear()} lists them. Returns the
+   * number of matches. Complexity: O(m) where m is the number of matched orders.
+   */
+  public int marketClear(MatchConsumer<? super P, ? super O> matches) {
     // Incriment time every clear
     ++time;
 
     if (buyMatched.isEmpty()) {
       // If one is empty, the other should be, so we don't check
-      return Collections.emptyList();
+      return 0;
     }
 
     int diff = buyMatched.size() - sellMatched.size();
@@ -227,39 +250,39 @@ public class FourHeap<P, O extends IOrder<P>> extends AbstractCollection<O> impl
       sellUnmatched.offer(sell.getKey(), unmatched);
     }
 
-    Iterator<Multiset.Entry<O>> buys =
-        Iterables.concat(buy.getValue().entrySet(), buyMatched.entrySet()).iterator();
-    Iterator<Multiset.Entry<O>> sells =
-        Iterables.concat(sell.getValue().entrySet(), sellMatched.entrySet()).iterator();
+    // Handling a match can clear again, in which case the reusable orders are still in use
+    ClearedOrders buys = buyClear.size == 0 ? buyClear : new ClearedOrders();
+    ClearedOrders sells = sellClear.size == 0 ? sellClear : new ClearedOrders();
+    buys.load(buy.getValue(), buyMatched);
+    sells.load(sell.getValue(), sellMatched);
+    buyMatched.clear();
+    sellMatched.clear();
+    assert invariantsHold();
 
-    O buyOrder = null;
-    O sellOrder = null;
+    matches.clearing(buy.getKey().price, sell.getKey().price);
+    int numMatches = 0;
+    int buyIndex = 0;
+    int sellIndex = 0;
     int buyQuantity = 0;
     int sellQuantity = 0;
-
-    Builder<MatchedOrders<P, O>> transactions = ImmutableList.builder();
-    while (buys.hasNext() || sells.hasNext()) {
+    while (buyIndex < buys.size || sellIndex < sells.size) {
       if (buyQuantity == 0) {
-        Multiset.Entry<O> entry = buys.next();
-        buyOrder = entry.getElement();
-        buyQuantity = entry.getCount();
+        buyQuantity = buys.quantities[buyIndex++];
       }
       if (sellQuantity == 0) {
-        Multiset.Entry<O> entry = sells.next();
-        sellOrder = entry.getElement();
-        sellQuantity = entry.getCount();
+        sellQuantity = sells.quantities[sellIndex++];
       }
 
       int quantity = Math.min(buyQuantity, sellQuantity);
       buyQuantity -= quantity;
       sellQuantity -= quantity;
-      transactions.add(new MatchedOrders<P, O>(buyOrder, sellOrder, quantity));
+      matches.match(buys.order(buyIndex - 1), sells.order(sellIndex - 1), quantity);
+      ++numMatches;
     }
 
-    buyMatched.clear();
-    sellMatched.clear();
-    assert invariantsHold();
-    return transactions.build();
+    buys.release();
+    sells.release();
+    return numMatches;
   }
 
   /**
@@ -280,28 +303,7 @@ public class FourHeap<P, O extends IOrder<P>> extends AbstractCollection<O> impl
    * @return
    */
   public ArrayList<P> getBidVector() {
-    ArrayList<P> bidVector = new ArrayList<>();
-    OrderQueue popSet = new OrderQueue(buyKey);
-    while (!buyUnmatched.isEmpty()) {
-      Map.Entry<FourHeap<P, O>.Key, Multiset<O>> current = buyUnmatched.pollEntry();
-      P currentPrice = current.getKey().price;
-      bidVector.add(currentPrice);
-      if (!popSet.addAll(current.getValue())) {
-        System.err.println("bug in buyUnmatched adding back");
-      }
-
-      Optional<FourHeap<P, O>.Key> next = buyUnmatched.peekKey();
-      // price level
-      //while (next != null && (next.price).equals(currentPrice)) {
-      while (next.isPresent() && next.get().price.equals(currentPrice)) {
-        if (!popSet.addAll(buyUnmatched.pollEntry().getValue())) {
-          System.err.println("bug in buyUnmatched adding back");
-        }
-        next = buyUnmatched.peekKey();
-      }
-    }
-    buyUnmatched.addAll(popSet);
-    return bidVector;
+    return buyUnmatched.distinctPrices();
   }
 
 
@@ -326,42 +328,76 @@ public class FourHeap<P, O extends IOrder<P>> extends AbstractCollection<O> impl
    * @return
    */
   public ArrayList<P> getAskVector() {
-    ArrayList<P> askVector = new ArrayList<>();
-    OrderQueue popSet = new OrderQueue(sellKey);
-    while (!sellUnmatched.isEmpty()) {
-    	Map.Entry<FourHeap<P, O>.Key, Multiset<O>> current = sellUnmatched.pollEntry();
-      P currentPrice = current.getKey().price;
-      askVector.add(currentPrice);
-      if (!popSet.addAll(current.getValue())) {
-        System.err.println("bug in sellUnmatched adding back");
-      }
+    return sellUnmatched.distinctPrices();
+  }
+
+
+  /**
+   * Pass the aggregate quantity of each of the best maxLevels bid prices to levels, best price
+   * first. Both matched and unmatched orders are included. Returns the number of levels passed.
+   * Complexity: O(m) where m is the number of keys in the levels visited.
+   */
+  public int forEachBidLevel(int maxLevels, ObjIntConsumer<? super P> levels) {
+    return forEachLevel(maxLevels, levels, buyMatched, buyUnmatched);
+  }
+
+  /**
+   * Pass the aggregate quantity of each of the best maxLevels ask prices to levels, best price
+   * first. Both matched and unmatched orders are included. Returns the number of levels passed.
+   * Complexity: O(m) where m is the number of keys in the levels visited.
+   */
+  public int forEachAskLevel(int maxLevels, ObjIntConsumer<? super P> levels) {
+    return forEachLevel(maxLevels, levels, sellMatched, sellUnmatched);
+  }
 
-      Optional<FourHeap<P, O>.Key> next = sellUnmatched.peekKey();
-      // if next order is in the bin, continue to hide
-      while (next.isPresent() && next.get().price.equals(currentPrice)) {
-        if (!popSet.addAll(sellUnmatched.pollEntry().getValue())) {
-          System.err.println("bug in sellUnmatched adding back");
+  private int forEachLevel(int maxLevels, ObjIntConsumer<? super P> levels, OrderQueue matched,
+      OrderQueue unmatched) {
+    checkArgument(maxLevels >= 0, "Number of levels must be nonnegative");
+    if (maxLevels == 0) {
+      return 0;
+    }
+    // Matched orders are all better than unmatched, but their queue is ordered worst first
+    int numLevels = 0;
+    P price = null;
+    int quantity = 0;
+    for (Map.Entry<Key, Multiset<O>> entry : Iterables
+        .concat(matched.queue.descendingMap().entrySet(), unmatched.queue.entrySet())) {
+      if (price != null && !price.equals(entry.getKey().price)) {
+        levels.accept(price, quantity);
+        if (++numLevels == maxLevels) {
+          return numLevels;
         }
-        next = sellUnmatched.peekKey();
+        quantity = 0;
       }
+      price = entry.getKey().price;
+      quantity += entry.getValue().size();
+    }
+    if (price != null && numLevels < maxLevels) {
+      levels.accept(price, quantity);
+      ++numLevels;
     }
-    sellUnmatched.addAll(popSet);
-    return askVector;
+    return numLevels;
   }
 
-
   private Stream<OrderQueue> queueStream() {
     return Stream.of(buyUnmatched, buyMatched, sellUnmatched, sellMatched);
   }
 
   @Override
   public boolean contains(Object order) {
-    return queueStream().anyMatch(q -> q.contains(order));
+    return locations.containsKey(order);
   }
 
   @Override
   public int count(Object order) {
-    return queueStream().mapToInt(q -> q.count(order)).sum();
+    Location location = locations.get(order);
+    return location == null ? 0 : location.quantity;
+  }
+
+  /** Returns true if the order is in the fourheap and would transact if the market cleared. */
+  public boolean isMatched(Object order) {
+    Location location = locations.get(order);
+    return location != null && (location.queue == buyMatched || location.queue == sellMatched);
   }
 
   /** Removes all orders from the fourheap. Does not perform a `marketClear`. */
@@ -455,6 +491,8 @@ public class FourHeap<P, O extends IOrder<P>> extends AbstractCollection<O> impl
             || sellMatched.size() - sellMatched.peekSize() < buyMatched.size())
         // Bid and ask depth didn't equal size
         && size() == getBidDepth() + getAskDepth()
+        // Registry didn't agree with queues
+        && locations.values().stream().mapToInt(l -> l.quantity).sum() == size()
         // Buys not all buys
         && buyMatched.elementSet().stream().allMatch(e -> e.getType() == BUY)
         // Buys not all buys
@@ -510,6 +548,60 @@ public class FourHeap<P, O extends IOrder<P>> extends AbstractCollection<O> impl
     }
   }
 
+  /**
+   * The matched orders of one side of a clear in the order they match, kept in arrays that are
+   * reused between clears.
+   */
+  private final class ClearedOrders {
+    private Object[] orders = new Object[16];
+    private int[] quantities = new int[16];
+    private int size = 0;
+
+    /** Load the polled first level followed by the remaining levels of the matched queue. */
+    private void load(Multiset<O> first, OrderQueue rest) {
+      size = 0;
+      append(first);
+      for (Multiset<O> level : rest.queue.values()) {
+        append(level);
+      }
+    }
+
+    private void append(Multiset<O> level) {
+      for (Multiset.Entry<O> entry : level.entrySet()) {
+        if (size == orders.length) {
+          orders = Arrays.copyOf(orders, size * 2);
+          quantities = Arrays.copyOf(quantities, size * 2);
+        }
+        orders[size] = entry.getElement();
+        quantities[size] = entry.getCount();
+        ++size;
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private O order(int index) {
+      return (O) orders[index];
+    }
+
+    /** Drop references to cleared orders. */
+    private void release() {
+      Arrays.fill(orders, 0, size, null);
+      size = 0;
+    }
+  }
+
+  private final class Location {
+    private OrderQueue queue;
+    private final Key key;
+    private int quantity;
+
+    private Location(OrderQueue queue, Key key, int quantity) {
+      this.queue = queue;
+      this.key = key;
+      this.quantity = quantity;
+    }
+  }
+
   /*
    * TODO Ideally this would be a Multimap since the Key is now an integral piece of this, however,
    * that requires appropriate creation of several delegates to keep track of information that is
@@ -519,12 +611,10 @@ public class FourHeap<P, O extends IOrder<P>> extends AbstractCollection<O> impl
   private class OrderQueue extends AbstractCollection<O> implements Multiset<O> {
 
     private final NavigableMap<Key, Multiset<O>> queue;
-    private final Map<O, Key> keyMap;
     private int size;
 
     private OrderQueue(Comparator<? super Key> comp) {
       this.queue = new TreeMap<>(comp);
-      this.keyMap = new HashMap<>();
     }
 
     public Optional<Key> peekKey() {
@@ -535,17 +625,21 @@ public class FourHeap<P, O extends IOrder<P>> extends AbstractCollection<O> impl
       return queue.firstEntry().getValue().size();
     }
 
+    /** Remove the first entry, and all of its orders from the fourheap. */
     private Map.Entry<Key, Multiset<O>> pollEntry() {
       Map.Entry<Key, Multiset<O>> result = queue.pollFirstEntry();
       size -= result.getValue().size();
-      result.getValue().elementSet().forEach(keyMap::remove);
+      result.getValue().elementSet().forEach(locations::remove);
       return result;
     }
 
     private void offer(Key key, Multiset<O> orders) {
-      checkArgument(
-          orders.elementSet().stream().map(o -> keyMap.put(o, key)).allMatch(Objects::isNull),
-          "Some orders were already present");
+      for (Multiset.Entry<O> entry : orders.entrySet()) {
+        checkArgument(
+            Objects.isNull(
+                locations.put(entry.getElement(), new Location(this, key, entry.getCount()))),
+            "Some orders were already present");
+      }
       checkArgument(Objects.isNull(queue.put(key, orders)), "Key already existed in queue");
       size += orders.size();
 
@@ -553,9 +647,28 @@ public class FourHeap<P, O extends IOrder<P>> extends AbstractCollection<O> impl
       assert orders.entrySet().stream().allMatch(o -> o.getElement().getPrice().equals(key.price));
     }
 
+    /** Move the first entry to another queue, only updating the queue of each order's location. */
     public void pushTo(OrderQueue to) {
-      Map.Entry<Key, Multiset<O>> entry = pollEntry();
-      to.offer(entry.getKey(), entry.getValue());
+      Map.Entry<Key, Multiset<O>> entry = queue.pollFirstEntry();
+      size -= entry.getValue().size();
+      for (O order : entry.getValue().elementSet()) {
+        locations.get(order).queue = to;
+      }
+      checkArgument(Objects.isNull(to.queue.put(entry.getKey(), entry.getValue())),
+          "Key already existed in queue");
+      to.size += entry.getValue().size();
+    }
+
+    /** The distinct prices in the queue from first to last. */
+    private ArrayList<P> distinctPrices() {
+      ArrayList<P> prices = new ArrayList<>();
+      for (Key key : queue.keySet()) {
+        // Keys are ordered by price first, so equal prices are adjacent
+        if (prices.isEmpty() || !prices.get(prices.size() - 1).equals(key.price)) {
+          prices.add(key.price);
+        }
+      }
+      return prices;
     }
 
     @Override
@@ -567,10 +680,11 @@ public class FourHeap<P, O extends IOrder<P>> extends AbstractCollection<O> impl
     @Override
     public int add(O order, int quantity) {
       Key key = new Key(order.getPrice());
-      checkArgument(Objects.isNull(keyMap.put(order, key)), "Order was already in this queue");
-      int countBefore = queue.computeIfAbsent(key, k -> HashMultiset.create()).add(order, quantity);
+      checkArgument(Objects.isNull(locations.putIfAbsent(order, new Location(this, key, quantity))),
+          "Order was already in the fourheap");
+      queue.computeIfAbsent(key, k -> HashMultiset.create()).add(order, quantity);
       size += quantity;
-      return countBefore;
+      return 0;
     }
 
     @Override
@@ -579,35 +693,31 @@ public class FourHeap<P, O extends IOrder<P>> extends AbstractCollection<O> impl
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public int remove(Object obj, int quantity) {
-      if (obj == null || !(obj instanceof IOrder<?>)) {
+      Location location = locations.get(obj);
+      if (location == null || location.queue != this) {
         return 0;
       }
-      O order = (O) obj;
-      Key key = keyMap.get(order);
-      if (key == null) {
-        return 0;
-      }
-      Multiset<O> set = queue.get(key);
-      if (set == null) {
-        return 0;
-      }
-      int result = set.remove(order, quantity);
+      Multiset<O> set = queue.get(location.key);
+      int result = set.remove(obj, quantity);
       if (set.isEmpty()) {
-        queue.remove(key);
+        queue.remove(location.key);
       }
-      if (!set.contains(order)) {
-        keyMap.remove(order);
+      location.quantity -= Math.min(result, quantity);
+      if (location.quantity == 0) {
+        locations.remove(obj);
       }
       size -= Math.min(result, quantity);
       return result;
     }
 
+    /** Removes every order in this queue from the fourheap. */
     @Override
     public void clear() {
+      for (Multiset<O> set : queue.values()) {
+        set.elementSet().forEach(locations::remove);
+      }
       queue.clear();
-      keyMap.clear();
       size = 0;
     }
 
@@ -621,40 +731,16 @@ public class FourHeap<P, O extends IOrder<P>> extends AbstractCollection<O> impl
       return size;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public boolean contains(Object obj) {
-      if (obj == null || !(obj instanceof IOrder<?>)) {
-        return false;
-      }
-      O order = (O) obj;
-      Key key = keyMap.get(order);
-      if (key == null) {
-        return false;
-      }
-      Multiset<O> set = queue.get(key);
-      if (set == null) {
-        return false;
-      }
-      return set.contains(order);
+      Location location = locations.get(obj);
+      return location != null && location.queue == this;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public int count(Object obj) {
-      if (obj == null || !(obj instanceof IOrder<?>)) {
-        return 0;
-      }
-      O order = (O) obj;
-      Key key = keyMap.get(order);
-      if (key == null) {
-        return 0;
-      }
-      Multiset<O> set = queue.get(key);
-      if (set == null) {
-        return 0;
-      }
-      return set.count(order);
+      Location location = locations.get(obj);
+      return location != null && location.queue == this ? location.quantity : 0;
     }
 
     @Override
@@ -688,36 +774,18 @@ public class FourHeap<P, O extends IOrder<P>> extends AbstractCollection<O> impl
           stream().map(Object::toString).collect(Collectors.joining(", ")));
     }
 
+    /*
+     * Setting counts isn't used by the fourheap, and would need to move orders between queues to
+     * keep the registry consistent.
+     */
     @Override
     public int setCount(O order, int count) {
-      Key key = keyMap.getOrDefault(order, new Key(order.getPrice()));
-      Multiset<O> atKey = queue.computeIfAbsent(key, k -> HashMultiset.create());
-      int countBefore = atKey.setCount(order, count);
-      if (atKey.isEmpty()) {
-        queue.remove(key);
-      }
-      if (!atKey.contains(order)) {
-        keyMap.remove(order);
-      }
-      size += count - countBefore;
-      return countBefore;
+      throw new UnsupportedOperationException();
     }
 
     @Override
     public boolean setCount(O order, int oldCount, int newCount) {
-      Key key = keyMap.getOrDefault(order, new Key(order.getPrice()));
-      Multiset<O> atKey = queue.computeIfAbsent(key, k -> HashMultiset.create());
-      boolean changed = atKey.setCount(order, oldCount, newCount);
-      if (changed) {
-        size += newCount - oldCount;
-        if (atKey.isEmpty()) {
-          queue.remove(key);
-        }
-      }
-      if (!atKey.contains(order)) {
-        keyMap.remove(order);
-      }
-      return changed;
+      throw new UnsupportedOperationException();
     }
 
   }
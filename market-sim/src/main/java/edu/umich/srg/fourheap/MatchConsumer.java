@@ -0,0 +1,19 @@
+package edu.umich.srg.fourheap;
+
+/**
+ * Receives the matches of a fourheap clear as they're made, so clearing doesn't need to create an
+ * object for every match.
+ */
+@FunctionalInterface
+public interface MatchConsumer<P, O> {
+
+  /**
+   * Called once before the matches of a clear that has any, with the price of the worst matched buy
+   * and the price of the worst matched sell.
+   */
+  default void clearing(P buyPrice, P sellPrice) {}
+
+  /** Called for every match with quantity of buy and sell matched together. */
+  void match(O buy, O sell, int quantity);
+
+}
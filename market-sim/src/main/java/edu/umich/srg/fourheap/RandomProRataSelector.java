@@ -1,15 +1,11 @@
 package edu.umich.srg.fourheap;
 
-import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Multiset;
-import com.google.common.collect.Multiset.Entry;
-import com.google.common.collect.Multisets;
 import com.google.common.collect.Ordering;
 
 import edu.umich.srg.distributions.Hypergeometric;
 
 import java.util.Comparator;
-import java.util.List;
 import java.util.Random;
 
 /**
@@ -17,17 +13,19 @@ import java.util.Random;
  * `element.count() * quantity / original.size()` will be selected from each element, but it could
  * be any feasible number. The advantage of this implementation is that large orders are treated
  * identically to small orders, whereas in the reduced variance version, large orders have reduced
- * variance. If all orders are the same size, this is identical to ProRataSelector.
+ * variance. If all orders are the same size, this is identical to ProRataSelector. The level is
+ * processed in reusable primitive arrays, so a selector shouldn't be shared between threads.
  */
 public class RandomProRataSelector<E> implements Selector<E> {
 
-  private final Ordering<Entry<E>> order;
+  private final Comparator<? super E> comparator;
   private final Random rand;
+  private final SelectionBuffer<E> level;
 
-  private RandomProRataSelector(Ordering<? super E> ordering, Random rand) {
-    this.order = Ordering.natural().onResultOf(Entry<E>::getCount)
-        .compound(ordering.onResultOf(Entry::getElement));
+  private RandomProRataSelector(Comparator<? super E> comparator, Random rand) {
+    this.comparator = comparator;
     this.rand = rand;
+    this.level = new SelectionBuffer<>();
   }
 
   public static <E extends Comparable<? super E>> RandomProRataSelector<E> create(Random rand) {
@@ -35,25 +33,25 @@ public class RandomProRataSelector<E> implements Selector<E> {
   }
 
   public static <E> RandomProRataSelector<E> create(Comparator<? super E> comparator, Random rand) {
-    return new RandomProRataSelector<>(Ordering.from(comparator), rand);
+    return new RandomProRataSelector<>(comparator, rand);
   }
 
   @Override
   public Multiset<E> select(Multiset<E> original, int quantity) {
-    Multiset<E> result = HashMultiset.create();
+    int size = level.load(original);
     int total = original.size();
 
     // This sorting guarantees consistent application of randomness at a slight performance penalty
-    List<Entry<E>> entries = order.immutableSortedCopy(original.entrySet());
-    for (Entry<E> entry : entries) {
-      int sample = Hypergeometric.with(total, entry.getCount(), quantity).sample(rand);
-      total -= entry.getCount();
+    level.sort(comparator);
+    for (int i = 0; i < size; ++i) {
+      int count = level.count(i);
+      int sample = Hypergeometric.sample(total, count, quantity, rand);
+      total -= count;
       quantity -= sample;
-      result.add(entry.getElement(), sample);
+      level.select(i, sample);
     }
 
-    Multisets.removeOccurrences(original, result);
-    return result;
+    return level.removeSelected(original);
   }
 
 }
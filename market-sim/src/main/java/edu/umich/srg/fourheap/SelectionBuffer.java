@@ -0,0 +1,131 @@
+package edu.umich.srg.fourheap;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Primitive storage for the orders at a price level while a selector decides how many of each to
+ * select. The arrays are reused between selections, so a selector that owns one isn't thread safe.
+ * Entries are referred to by their position, which is the order they were loaded in until they're
+ * sorted or shuffled.
+ */
+final class SelectionBuffer<E> {
+
+  private static final int initialCapacity = 16;
+
+  private Object[] elements;
+  private int[] counts;
+  private int[] selected;
+  private int[] order; // Index of the entry at each position
+  private int[] scratch;
+  private int size;
+
+  SelectionBuffer() {
+    this.elements = new Object[initialCapacity];
+    this.counts = new int[initialCapacity];
+    this.selected = new int[initialCapacity];
+    this.order = new int[initialCapacity];
+    this.scratch = new int[initialCapacity];
+    this.size = 0;
+  }
+
+  /** Load the entries of a multiset, and return the number of distinct elements. */
+  int load(Multiset<E> original) {
+    size = 0;
+    for (Multiset.Entry<E> entry : original.entrySet()) {
+      if (size == elements.length) {
+        grow();
+      }
+      elements[size] = entry.getElement();
+      counts[size] = entry.getCount();
+      selected[size] = 0;
+      order[size] = size;
+      ++size;
+    }
+    return size;
+  }
+
+  /** The count of the entry at position. */
+  int count(int position) {
+    return counts[order[position]];
+  }
+
+  /** Select quantity of the entry at position. */
+  void select(int position, int quantity) {
+    selected[order[position]] = quantity;
+  }
+
+  /**
+   * Stable sort the entries by count and then by element. This is identical to sorting the entries
+   * with a stable sort, so a selector will make the same random choices as one that did.
+   */
+  void sort(Comparator<? super E> comparator) {
+    for (int width = 1; width < size; width *= 2) {
+      for (int low = 0; low < size - width; low += 2 * width) {
+        merge(low, low + width, Math.min(low + 2 * width, size), comparator);
+      }
+    }
+  }
+
+  /** Shuffle the entries using the same random draws as {@link java.util.Collections#shuffle}. */
+  void shuffle(Random rand) {
+    for (int i = size; i > 1; --i) {
+      int swap = rand.nextInt(i);
+      int temp = order[i - 1];
+      order[i - 1] = order[swap];
+      order[swap] = temp;
+    }
+  }
+
+  /**
+   * Remove the selected quantity of every element from original, and return them in a new
+   * multiset.
+   */
+  @SuppressWarnings("unchecked")
+  Multiset<E> removeSelected(Multiset<E> original) {
+    Multiset<E> result = HashMultiset.create(size);
+    for (int i = 0; i < size; ++i) {
+      if (selected[i] > 0) {
+        E element = (E) elements[i];
+        original.remove(element, selected[i]);
+        result.add(element, selected[i]);
+      }
+    }
+    Arrays.fill(elements, 0, size, null); // Don't retain orders between selections
+    size = 0;
+    return result;
+  }
+
+  private void merge(int low, int mid, int high, Comparator<? super E> comparator) {
+    System.arraycopy(order, low, scratch, low, high - low);
+    int left = low;
+    int right = mid;
+    for (int i = low; i < high; ++i) {
+      if (left < mid && (right >= high || compare(scratch[left], scratch[right], comparator) <= 0)) {
+        order[i] = scratch[left++];
+      } else {
+        order[i] = scratch[right++];
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private int compare(int first, int second, Comparator<? super E> comparator) {
+    int result = Integer.compare(counts[first], counts[second]);
+    return result != 0 ? result : comparator.compare((E) elements[first], (E) elements[second]);
+  }
+
+  private void grow() {
+    int capacity = elements.length * 2;
+    elements = Arrays.copyOf(elements, capacity);
+    counts = Arrays.copyOf(counts, capacity);
+    selected = Arrays.copyOf(selected, capacity);
+    order = Arrays.copyOf(order, capacity);
+    scratch = Arrays.copyOf(scratch, capacity);
+  }
+
+}
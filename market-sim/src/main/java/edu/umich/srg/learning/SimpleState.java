@@ -2,11 +2,6 @@ package edu.umich.srg.learning;
 
 import java.util.ArrayList;
 
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map.Entry;
-
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
@@ -15,8 +10,9 @@ import edu.umich.srg.egtaonline.spec.Spec;
 import edu.umich.srg.fourheap.OrderType;
 import edu.umich.srg.marketsim.Price;
 import edu.umich.srg.marketsim.Sim;
-import edu.umich.srg.marketsim.TimeStamp;
 import edu.umich.srg.marketsim.Keys.ViewBookDepth;
+import edu.umich.srg.marketsim.market.TradeWindowStats;
+import edu.umich.srg.marketsim.market.TransactionHistory;
 import edu.umich.srg.marketsim.market.Market.MarketView;
 import edu.umich.srg.marketsim.privatevalue.PrivateValue;
 import edu.umich.srg.marketsim.Keys.StateSpaceFlags;
@@ -44,7 +40,8 @@ public class SimpleState implements State{
 	
 	protected ArrayList<Price> bid_vector;
 	protected ArrayList<Price> ask_vector;
-	protected ArrayList<Price> transactions;
+	protected TransactionHistory.Window transactions;
+	protected double transactionPadding;
 	
 	protected MatrixLibrary mtxLib;
 	
@@ -64,7 +61,8 @@ public class SimpleState implements State{
 	    
 	    this.bid_vector = new ArrayList<Price>();
 	    this.ask_vector = new ArrayList<Price>();
-	    this.transactions = new ArrayList<Price>();
+	    this.transactions = market.getCurrentTransactions().last(0);
+	    this.transactionPadding = 0;
 	    
 	    this.mtxLib = new MatrixLibrary();
 	    
@@ -125,10 +123,10 @@ public class SimpleState implements State{
 	    
 	    if(stateFlags.get("transactionHistory").getAsBoolean()) {
 	    	this.getTransactionHistory(finalEstimate);
-		    for(int i = 0; i < transactions.size();i++) {
-		    	//state.add(transactions.get(i).doubleValue());
-		    	//state.add(Math.log(transactions.get(i).doubleValue()));
-		    	state.add(transactions.get(i).doubleValue() - finalEstimate);
+		    for(int i = 0; i < this.transactionDepth;i++) {
+		    	//state.add(recentTransaction(i));
+		    	//state.add(Math.log(recentTransaction(i)));
+		    	state.add(recentTransaction(i) - finalEstimate);
 		    }
 		}
 	    
@@ -243,8 +241,8 @@ public class SimpleState implements State{
 	    if(stateFlags.get("transactionHistory").getAsBoolean()) {
 	    	this.getTransactionHistory(finalEstimate);
 	    	ArrayList<Double> trans_double = new ArrayList<Double>();
-	    	for(int i = 0; i < transactions.size();i++) {
-		    	trans_double.add(transactions.get(i).doubleValue() - finalEstimate);
+	    	for(int i = 0; i < this.transactionDepth;i++) {
+		    	trans_double.add(recentTransaction(i) - finalEstimate);
 		    }
 	    	state.addProperty("transactionHistory", trans_double.toString());	
 		}
@@ -347,41 +345,29 @@ public class SimpleState implements State{
 	}
 	
 	protected void getTransactionHistory(double finalEstimate) {
-		this.transactions = new ArrayList<>(Arrays.asList(new Price[this.transactionDepth]));
-	    Collections.fill(this.transactions, Price.of(finalEstimate));
-	    List<Entry<TimeStamp, Price>> allTransactions = market.getCurrentTransactions();
-	    int larger = Math.max(0, allTransactions.size() - this.transactionDepth);
-	    int j = 0;
-	    for (int i=allTransactions.size()-1; i >= larger; i--) {   	
-	    	Price p = allTransactions.get(i).getValue();
-	    	this.transactions.set(j, p);
-	    	j++;
-	    }
+	    this.transactions = market.getCurrentTransactions().last(this.transactionDepth);
+	    this.transactionPadding = Price.of(finalEstimate).doubleValue();
+	}
+	
+	/** The price of the ith most recent transaction, padded with the final estimate if there were fewer. */
+	protected double recentTransaction(int i) {
+	    int index = this.transactions.size() - 1 - i;
+	    return index >= 0 ? this.transactions.getPrice(index) : this.transactionPadding;
 	}
 	
 	protected double omegaRatio(final double cutoff) {
 	    	final int minLength = 2;
-	    	List<Entry<TimeStamp, Price>> allTransactions = market.getCurrentTransactions();
-	    	if (allTransactions.size() <= minLength) {
+	    	TradeWindowStats recentTrades = market.getCurrentTransactions().windowStats(this.omegaDepth);
+	    	if (recentTrades.size() <= minLength) {
 	    		// too little history to have a meaningful
 	    		// omega ratio. return default placeholder of 1.0.
 	    		return 1.0;
 	    	}
-	    	if (allTransactions.size() > this.omegaDepth) {
-	    		allTransactions.subList(allTransactions.size() - this.omegaDepth, allTransactions.size());
-	    	}
 	    	// let num = sum over values >= cutoff of (value - cutoff).
 	    	// let denom = sum over values < cutoff of (cutoff - value).
 	    	// return num / denom.
-	    	double num = 0.0;
-	    	double denom = 0.0;
-	    	for(Entry<TimeStamp, Price> trade: allTransactions) {
-	    		if (trade.getValue().doubleValue() < cutoff) {
-	    			denom += cutoff - trade.getValue().doubleValue();
-	    		} else {
-	    			num += trade.getValue().doubleValue() - cutoff;
-	    		}
-	    	}
+	    	double num = recentTrades.gainsAbove(cutoff);
+	    	double denom = recentTrades.lossesBelow(cutoff);
 	    	if (denom == 0) {
 	    		return num;
 	    	}
@@ -2,11 +2,6 @@ package edu.umich.srg.learning;
 
 import java.util.ArrayList;
 
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map.Entry;
-
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 
@@ -14,9 +9,10 @@ import edu.umich.srg.egtaonline.spec.Spec;
 import edu.umich.srg.fourheap.OrderType;
 import edu.umich.srg.marketsim.Price;
 import edu.umich.srg.marketsim.Sim;
-import edu.umich.srg.marketsim.TimeStamp;
 import edu.umich.srg.marketsim.Keys.MaxVectorDepth;
 import edu.umich.srg.marketsim.Keys.OmegaDepth;
+import edu.umich.srg.marketsim.market.TradeWindowStats;
+import edu.umich.srg.marketsim.market.TransactionHistory;
 import edu.umich.srg.marketsim.market.Market.MarketView;
 import edu.umich.srg.marketsim.privatevalue.PrivateValue;
 import edu.umich.srg.marketsim.Keys.FundamentalObservationVariance;
@@ -47,7 +43,8 @@ public class TensorFlowState implements State{
 	
 	protected ArrayList<Price> bid_vector;
 	protected ArrayList<Price> ask_vector;
-	protected ArrayList<Price> transactions;
+	protected TransactionHistory.Window transactions;
+	protected double transactionPadding;
 	
 	protected MatrixLibrary mtxLib;
 	
@@ -71,7 +68,8 @@ public class TensorFlowState implements State{
 	    
 	    this.bid_vector = new ArrayList<Price>();
 	    this.ask_vector = new ArrayList<Price>();
-	    this.transactions = new ArrayList<Price>();
+	    this.transactions = market.getCurrentTransactions().last(0);
+	    this.transactionPadding = 0;
 	    
 	    this.mtxLib = new MatrixLibrary();
 		
@@ -151,34 +149,32 @@ public class TensorFlowState implements State{
     	this.getTransactionHistory(finalEstimate);
     	ArrayList<Double> trans_double = new ArrayList<Double>();
     	JsonArray trans_json = new JsonArray();
-    	for(int i = 0; i < transactions.size();i++) {
+    	for(int i = 0; i < this.maxVectorDepth;i++) {
     		if (side == 1) {
-    			trans_double.add((finalEstimate + privateBidBenefit) - transactions.get(i).doubleValue());
-    	    	trans_json.add((finalEstimate + privateBidBenefit) - transactions.get(i).doubleValue());
+    			trans_double.add((finalEstimate + privateBidBenefit) - recentTransaction(i));
+    	    	trans_json.add((finalEstimate + privateBidBenefit) - recentTransaction(i));
     		}
     		else {
-    			trans_double.add(transactions.get(i).doubleValue() - (finalEstimate + privateAskBenefit));
-    	    	trans_json.add(transactions.get(i).doubleValue() - (finalEstimate + privateAskBenefit));
+    			trans_double.add(recentTransaction(i) - (finalEstimate + privateAskBenefit));
+    	    	trans_json.add(recentTransaction(i) - (finalEstimate + privateAskBenefit));
     		}
 	    }
     	//state.addProperty("transactionHistory", trans_double.toString());
     	state.add("transactionHistory", trans_json);
 	    
-	    List<Entry<TimeStamp, Price>> allTransactions = market.getCurrentTransactions();
-    	allTransactions.size();
+	    TransactionHistory.Window allTransactions = market.getCurrentTransactions().all();
 	    
-	    double omega_bid = this.omegaRatio(finalEstimate + privateBidBenefit, allTransactions);
+	    double omega_bid = this.omegaRatio(finalEstimate + privateBidBenefit);
     	state.addProperty("omegaRatioBid",omega_bid);
 	    
-    	double omega_ask = this.omegaRatio(finalEstimate + privateAskBenefit, allTransactions);
+    	double omega_ask = this.omegaRatio(finalEstimate + privateAskBenefit);
 	    state.addProperty("omegaRatioAsk",omega_ask);
 	    
 	    long currentTime = sim.getCurrentTime().get();
 	    
 	    long timeOfLastTrade = 0;
 	    if (allTransactions.size() > 0) {
-	    	Entry<TimeStamp, Price> lastTrade = allTransactions.get(allTransactions.size()-1);
-	    	timeOfLastTrade = lastTrade.getKey().get();
+	    	timeOfLastTrade = allTransactions.getTime(allTransactions.size()-1);
 	    }
 	    long timeSinceLastTrade = currentTime - timeOfLastTrade;
 	    state.addProperty("timeSinceLastTrade", timeSinceLastTrade);
@@ -237,41 +233,29 @@ public class TensorFlowState implements State{
 	}
 	
 	protected void getTransactionHistory(double finalEstimate) {
-		this.transactions = new ArrayList<>(Arrays.asList(new Price[this.maxVectorDepth]));
-	    Collections.fill(this.transactions, Price.of(finalEstimate));
-	    List<Entry<TimeStamp, Price>> allTransactions = market.getCurrentTransactions();
-	    int larger = Math.max(0, allTransactions.size() - this.maxVectorDepth);
-	    int j = 0;
-	    for (int i=allTransactions.size()-1; i >= larger; i--) {   	
-	    	Price p = allTransactions.get(i).getValue();
-	    	this.transactions.set(j, p);
-	    	j++;
-	    }
+	    this.transactions = market.getCurrentTransactions().last(this.maxVectorDepth);
+	    this.transactionPadding = Price.of(finalEstimate).doubleValue();
+	}
+	
+	/** The price of the ith most recent transaction, padded with the final estimate if there were fewer. */
+	protected double recentTransaction(int i) {
+	    int index = this.transactions.size() - 1 - i;
+	    return index >= 0 ? this.transactions.getPrice(index) : this.transactionPadding;
 	}
 	
-	protected double omegaRatio(final double cutoff, List<Entry<TimeStamp, Price>> allTransactions) {
+	protected double omegaRatio(final double cutoff) {
     	final int minLength = 2;
-    	//List<Entry<TimeStamp, Price>> allTransactions = market.getCurrentTransactions();
-    	if (allTransactions.size() <= minLength) {
+    	TradeWindowStats recentTrades = market.getCurrentTransactions().windowStats(this.omegaDepth);
+    	if (recentTrades.size() <= minLength) {
     		// too little history to have a meaningful
     		// omega ratio. return default placeholder of 1.0.
     		return 1.0;
     	}
-    	if (allTransactions.size() > this.omegaDepth) {
-    		allTransactions.subList(allTransactions.size() - this.omegaDepth, allTransactions.size());
-    	}
     	// let num = sum over values >= cutoff of (value - cutoff).
     	// let denom = sum over values < cutoff of (cutoff - value).
     	// return num / denom.
-    	double num = 0.0;
-    	double denom = 0.0;
-    	for(Entry<TimeStamp, Price> trade: allTransactions) {
-    		if (trade.getValue().doubleValue() < cutoff) {
-    			denom += cutoff - trade.getValue().doubleValue();
-    		} else {
-    			num += trade.getValue().doubleValue() - cutoff;
-    		}
-    	}
+    	double num = recentTrades.gainsAbove(cutoff);
+    	double denom = recentTrades.lossesBelow(cutoff);
     	if (denom == 0) {
     		return num;
     	}
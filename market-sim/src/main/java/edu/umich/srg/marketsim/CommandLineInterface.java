@@ -1,9 +1,16 @@
 package edu.umich.srg.marketsim;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static edu.umich.srg.fourheap.OrderType.BUY;
+import static edu.umich.srg.fourheap.OrderType.SELL;
+
 import com.google.common.base.Splitter;
 import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMultiset;
+import com.google.common.collect.LinkedHashMultiset;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.Multiset.Entry;
 import com.google.gson.JsonObject;
@@ -21,24 +28,35 @@ import edu.umich.srg.egtaonline.SimSpec.RoleStrat;
 import edu.umich.srg.egtaonline.spec.Spec;
 import edu.umich.srg.marketsim.EntityBuilder.AgentCreator;
 import edu.umich.srg.marketsim.EntityBuilder.MarketCreator;
+import edu.umich.srg.marketsim.EntityBuilder.PopulationCreator;
+import edu.umich.srg.marketsim.Keys.AntitheticFundamental;
+import edu.umich.srg.marketsim.Keys.CommonRandomNumbers;
+import edu.umich.srg.marketsim.Keys.CommunicationLatency;
 import edu.umich.srg.marketsim.Keys.FundamentalMean;
 import edu.umich.srg.marketsim.Keys.FundamentalMeanReversion;
 import edu.umich.srg.marketsim.Keys.FundamentalShockVar;
 import edu.umich.srg.marketsim.Keys.Markets;
+import edu.umich.srg.marketsim.Keys.NbboLatency;
+import edu.umich.srg.marketsim.Keys.ParallelMarkets;
+import edu.umich.srg.marketsim.Keys.Population;
+import edu.umich.srg.marketsim.Keys.RandomGenerator;
 import edu.umich.srg.marketsim.Keys.RandomSeed;
 import edu.umich.srg.marketsim.Keys.SimLength;
 import edu.umich.srg.marketsim.agent.Agent;
+import edu.umich.srg.marketsim.agent.AgentPopulation;
 import edu.umich.srg.marketsim.fundamental.Fundamental;
 import edu.umich.srg.marketsim.fundamental.GaussianMeanReverting;
 import edu.umich.srg.marketsim.market.Market;
 import edu.umich.srg.marketsim.market.Market.AgentInfo;
 import edu.umich.srg.util.PositionalSeed;
+import edu.umich.srg.util.RandomSource;
 
 import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -85,19 +103,36 @@ public class CommandLineInterface extends CommandLineOptions {
    */
   public static Observation simulate(SimSpec spec, int simNum) {
     Spec configuration = spec.configuration.withDefault(Keys.DEFAULT_KEYS);
-    long seed = PositionalSeed.with(configuration.get(RandomSeed.class)).getSeed(simNum);
-    Random rand = new Random(seed);
+    // Antithetic pairs share every random number, and the odd one negates the fundamental shocks
+    boolean antithetic = configuration.get(AntitheticFundamental.class);
+    long seed = PositionalSeed.with(configuration.get(RandomSeed.class))
+        .getSeed(antithetic ? simNum / 2 : simNum);
+    Random rand = configuration.get(RandomGenerator.class).create(seed);
 
-    Fundamental fundamental = GaussianMeanReverting.create(new Random(rand.nextLong()),
+    Fundamental fundamental = GaussianMeanReverting.create(RandomSource.split(rand),
         configuration.get(SimLength.class), configuration.get(FundamentalMean.class),
         configuration.get(FundamentalMeanReversion.class),
-        configuration.get(FundamentalShockVar.class));
-    MarketSimulator sim = MarketSimulator.create(fundamental, new Random(rand.nextLong()));
+        configuration.get(FundamentalShockVar.class), antithetic && simNum % 2 == 1);
+    long latency = configuration.get(CommunicationLatency.class);
+    boolean parallel = configuration.get(ParallelMarkets.class);
+    checkArgument(!parallel || latency > 0,
+        "ParallelMarkets requires a positive CommunicationLatency");
+    MarketSimulator sim = parallel
+        ? MarketSimulator.createPartitioned(fundamental, RandomSource.split(rand),
+            TimeStamp.of(latency))
+        : MarketSimulator.create(fundamental, RandomSource.split(rand));
 
     final List<Market> markets = addMarkets(sim, fundamental, spec.configuration.get(Markets.class),
         configuration, rand.nextLong());
-    final List<PlayerInfo> playerInfo =
-        addPlayers(sim, fundamental, spec.assignment, markets, configuration, rand.nextLong());
+    if (markets.size() > 1) {
+      // Added before agents so that they can read the nbbo from their partition
+      TimeStamp nbboLatency = configuration.get(NbboLatency.class);
+      checkArgument(!parallel || nbboLatency.get() >= latency,
+          "NbboLatency must be at least CommunicationLatency with ParallelMarkets");
+      sim.addSip(nbboLatency);
+    }
+    final List<PlayerInfo> playerInfo = addPlayers(sim, fundamental, spec.assignment, markets,
+        configuration, rand.nextLong(), configuration.get(CommonRandomNumbers.class));
 
     sim.initialize();
     sim.executeUntil(TimeStamp.of(configuration.get(SimLength.class)));
@@ -113,6 +148,9 @@ public class CommandLineInterface extends CommandLineOptions {
       info.features = info.agent.getFeatures();
       info.features.addProperty("holdings", pays.getHoldings());
       info.features.addProperty("holdings_abs", Math.abs(pays.getHoldings()));
+      // Midpoint of the marginal values around position zero, zero mean for symmetric draws
+      info.controls = ImmutableMap.of("private_value",
+          (info.agent.payoffForExchange(0, BUY) - info.agent.payoffForExchange(0, SELL)) / 2);
       
       double runningReward = info.agent.getRunningPayoff();
       if (Math.floor(runningReward) != Math.floor(info.payoff) && runningReward != -1) {
@@ -120,6 +158,11 @@ public class CommandLineInterface extends CommandLineOptions {
       }
     }
 
+    // Every fundamental starts at its mean and has zero mean shocks
+    long simLength = configuration.get(SimLength.class);
+    Map<String, Double> controls = ImmutableMap.of("fundamental",
+        fundamental.getValueAt(simLength) - fundamental.getValueAt(0));
+
     return new Observation() {
 
       @Override
@@ -132,12 +175,18 @@ public class CommandLineInterface extends CommandLineOptions {
         return sim.getFeatures();
       }
 
+      @Override
+      public Map<String, Double> getControls() {
+        return controls;
+      }
+
     };
   }
 
   private static List<Market> addMarkets(MarketSimulator sim, Fundamental fundamental,
       Iterable<String> marketSpecs, Spec configuration, long baseSeed) {
-    Random orderRand = new Random(baseSeed);
+    RandomSource source = configuration.get(RandomGenerator.class);
+    Random orderRand = source.create(baseSeed);
     PositionalSeed seed = PositionalSeed.with(baseSeed);
     List<MarketOrder> markets = HashMultiset.create(marketSpecs).entrySet().stream().sequential()
         .map(e -> new MarketOrder(orderRand.nextDouble(), e.getElement(), e.getCount()))
@@ -148,11 +197,12 @@ public class CommandLineInterface extends CommandLineOptions {
     for (MarketOrder spec : markets) {
       MarketCreator creator = EntityBuilder.getMarketCreator(getType(spec.stringSpec));
       Spec marketSpec = getSpec(spec.stringSpec).withDefault(configuration);
-      Random rand = new Random(seed.getSeed(spec.stringSpec.hashCode()));
+      Random rand = source.create(seed.getSeed(spec.stringSpec.hashCode()));
       for (int i = 0; i < spec.num; ++i) {
+        Sim partition = sim.createPartition();
         Market market =
-            creator.createMarket(sim, fundamental, marketSpec, new Random(rand.nextLong()));
-        sim.addMarket(market);
+            creator.createMarket(partition, fundamental, marketSpec, RandomSource.split(rand));
+        sim.addMarket(market, partition);
         marketBuilder.add(market);
       }
     }
@@ -194,24 +244,65 @@ public class CommandLineInterface extends CommandLineOptions {
    * be dependent on the simulation spec. This has a side effect of making player output also
    * deterministic based off of random seed, meaning the output of identical specs should be closer
    * to identical.
+   *
+   * <p>With common random numbers, each player instead gets its own seed from its role and its
+   * position among the players of that role, with strategies in sorted order. Then two profiles
+   * that differ in the strategy of a few players give every other player the same market, arrival
+   * order, and random stream, so the noise in comparing them mostly cancels.
+   *
+   * <p>Strategies with Population set pick each player's market the same way, but then the players
+   * in each market are created as one population, and are ordered among the other players
+   * individually.
    */
   private static List<PlayerInfo> addPlayers(MarketSimulator sim, Fundamental fundamental,
       Multiset<RoleStrat> assignment, Collection<Market> markets, Spec configuration,
-      long baseSeed) {
+      long baseSeed, boolean commonRandomNumbers) {
+    RandomSource source = configuration.get(RandomGenerator.class);
     PositionalSeed seed = PositionalSeed.with(baseSeed);
     Uniform<Market> marketSelection = Uniform.over(markets);
+    Map<String, PositionalSeed> roleSeeds = new HashMap<>();
+    Multiset<String> roleSlots = HashMultiset.create();
 
     ArrayList<PlayerOrder> players = new ArrayList<>();
-    for (Entry<RoleStrat> roleStratCounts : assignment.entrySet()) {
+    for (Entry<RoleStrat> roleStratCounts : commonRandomNumbers
+        ? ImmutableSortedMultiset.copyOf(assignment).entrySet() : assignment.entrySet()) {
       RoleStrat roleStrat = roleStratCounts.getElement();
       String strategy = roleStrat.getStrategy();
-      AgentCreator creator = EntityBuilder.getAgentCreator(getType(strategy));
       Spec agentSpec = getSpec(strategy).withDefault(configuration);
-      Random rand = new Random(seed.getSeed(roleStratCounts.getElement().hashCode()));
+      Random rand = source.create(seed.getSeed(roleStratCounts.getElement().hashCode()));
+
+      if (agentSpec.get(Population.class)) {
+        PopulationCreator populationCreator =
+            EntityBuilder.getPopulationCreator(getType(strategy));
+        Multiset<Market> marketCounts = LinkedHashMultiset.create();
+        for (int i = 0; i < roleStratCounts.getCount(); ++i) {
+          marketCounts.add(marketSelection.sample(rand));
+        }
+        int num = 0;
+        for (Entry<Market> marketCount : marketCounts.entrySet()) {
+          Market market = marketCount.getElement();
+          AgentPopulation population = populationCreator.createPopulation(
+              sim.getPartition(market), fundamental, markets, market, agentSpec,
+              marketCount.getCount(), RandomSource.split(rand));
+          for (Agent agent : population.getAgents()) {
+            players.add(new PlayerOrder(rand.nextDouble(), roleStrat, num++,
+                new PlayerInfo(roleStrat, agent)));
+          }
+        }
+        continue;
+      }
+
+      AgentCreator creator = EntityBuilder.getAgentCreator(getType(strategy));
 
       for (int i = 0; i < roleStratCounts.getCount(); ++i) {
-        Agent agent = creator.createAgent(sim, fundamental, markets, marketSelection.sample(rand),
-            agentSpec, new Random(rand.nextLong()));
+        if (commonRandomNumbers) {
+          PositionalSeed roleSeed = roleSeeds.computeIfAbsent(roleStrat.getRole(),
+              role -> PositionalSeed.with(seed.getSeed(role.hashCode())));
+          rand = source.create(roleSeed.getSeed(roleSlots.add(roleStrat.getRole(), 1)));
+        }
+        Market market = marketSelection.sample(rand);
+        Agent agent = creator.createAgent(sim.getPartition(market), fundamental, markets, market,
+            agentSpec, RandomSource.split(rand));
         players.add(
             new PlayerOrder(rand.nextDouble(), roleStrat, i, new PlayerInfo(roleStrat, agent)));
       }
@@ -270,6 +361,7 @@ public class CommandLineInterface extends CommandLineOptions {
     private final Agent agent;
     private double payoff;
     private JsonObject features;
+    private Map<String, Double> controls;
 
     private PlayerInfo(RoleStrat roleAndStrategy, Agent agent) {
       this.role = roleAndStrategy.getRole();
@@ -277,6 +369,7 @@ public class CommandLineInterface extends CommandLineOptions {
       this.agent = agent;
       this.payoff = 0;
       this.features = null;
+      this.controls = ImmutableMap.of();
     }
 
     @Override
@@ -299,6 +392,11 @@ public class CommandLineInterface extends CommandLineOptions {
       return features;
     }
 
+    @Override
+    public Map<String, Double> getControls() {
+      return controls;
+    }
+
     @Override
     public String toString() {
       return role + ": " + strategy + " (" + payoff + ") " + features;
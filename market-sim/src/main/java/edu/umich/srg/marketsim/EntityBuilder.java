@@ -6,6 +6,7 @@ import com.google.common.collect.Iterables;
 
 import edu.umich.srg.egtaonline.spec.Spec;
 import edu.umich.srg.marketsim.agent.Agent;
+import edu.umich.srg.marketsim.agent.AgentPopulation;
 import edu.umich.srg.marketsim.fundamental.Fundamental;
 import edu.umich.srg.marketsim.market.Market;
 
@@ -41,6 +42,11 @@ final class EntityBuilder {
         Spec spec, Random rand);
   }
 
+  public interface PopulationCreator {
+    AgentPopulation createPopulation(Sim sim, Fundamental fundamental, Collection<Market> markets,
+        Market market, Spec spec, int size, Random rand);
+  }
+
   public interface MarketCreator {
     Market createMarket(Sim sim, Fundamental fundamental, Spec spec, Random rand);
   }
@@ -50,6 +56,11 @@ final class EntityBuilder {
         "\"%s\" is not a defined agent name in EntityBuilder", name).getValue();
   }
 
+  static PopulationCreator getPopulationCreator(String name) {
+    return checkNotNull(populationNameMap.get(name),
+        "\"%s\" is not a defined population name in EntityBuilder", name).getValue();
+  }
+
   static MarketCreator getMarketCreator(String name) {
     return checkNotNull(marketNameMap.get(name),
         "\"%s\" is not a defined market name in EntityBuilder", name).getValue();
@@ -58,15 +69,18 @@ final class EntityBuilder {
   private static final Map<String, Entry<Class<?>, AgentCreator>> agentNameMap =
       classCreatorMap(AgentCreator.class, "createFromSpec", nameTweaks);
 
+  private static final Map<String, Entry<Class<?>, PopulationCreator>> populationNameMap =
+      classCreatorMap(PopulationCreator.class, "createFromSpec", nameTweaks);
+
   private static final Map<String, Entry<Class<?>, MarketCreator>> marketNameMap =
       classCreatorMap(MarketCreator.class, "createFromSpec", nameTweaks);
 
   /**
    * If a bunch of classes follow a standard static interface, this method can be used to generate
-   * human readable strings that map to those interfaces. This function will find all non-abstract
-   * classes that are subclasses of the return type of `functionClass`, and have a public static
-   * method named `interfaceName` that implements that interface but returns the class they're
-   * defined in (e.g. factory constructors). For each method that fits these criteria, this will
+   * human readable strings that map to those interfaces. This function will find all public
+   * non-abstract classes that are subclasses of the return type of `functionClass`, and have a
+   * public static method named `interfaceName` that implements that interface but returns the class
+   * they're defined in (e.g. factory constructors). For each method that fits these criteria, this will
    * insert them into a map with human strings mapping to the functions. By default, the strings are
    * the simpleClassNames less a suffix equal to the functional interface return type class. Every
    * function in `nameTweaks` will be applied to those strings, and any unique strings will be
@@ -89,7 +103,8 @@ final class EntityBuilder {
     Map<String, Map<Class<?>, F>> dupMap = new HashMap<>();
 
     for (Class<?> cls : new Reflections(pack).getSubTypesOf(base)) {
-      if (cls.isInterface() || Modifier.isAbstract(cls.getModifiers())) {
+      if (cls.isInterface() || Modifier.isAbstract(cls.getModifiers())
+          || !Modifier.isPublic(cls.getModifiers())) {
         continue;
       }
 
@@ -16,6 +16,7 @@ import edu.umich.srg.egtaonline.spec.ValueHelp;
 import edu.umich.srg.fourheap.OrderType;
 import edu.umich.srg.marketsim.agent.ZiAgent.OrderStyle;
 import edu.umich.srg.marketsim.market.Benchmark.BenchmarkStyle;
+import edu.umich.srg.util.RandomSource;
 
 /**
  * This file contains all of the type safe keys used in Spec object for initializing agents and
@@ -36,6 +37,14 @@ public interface Keys {
   class RandomSeed extends LongValue {
   }
 
+  @ValueHelp("The random number generator every random draw is derived from, either JAVA, which "
+      + "reproduces earlier results for the same seed, or SPLITMIX, which is faster.")
+  class RandomGenerator extends EnumValue<RandomSource> {
+    public RandomGenerator() {
+      super(RandomSource.class);
+    }
+  }
+
   @ValueHelp("The number of time steps in the simulator.")
   class SimLength extends LongValue {
   }
@@ -44,6 +53,27 @@ public interface Keys {
   class Markets extends StringsValue {
   }
 
+  @ValueHelp("Run every market and its agents in their own parallel partition. The partitions are "
+      + "synchronized every CommunicationLatency time steps, so this requires a positive latency.")
+  class ParallelMarkets extends BoolValue {
+  }
+
+  @ValueHelp("The time it takes for market quotes to reach the sip that publishes the nbbo.")
+  class NbboLatency extends TimeValue {
+  }
+
+  @ValueHelp("Seed each player by its role and its position in that role instead of by its "
+      + "strategy. Profiles that only differ in strategies then share the private values, arrivals, "
+      + "and markets of players in the same position, so payoff differences between them are less "
+      + "noisy.")
+  class CommonRandomNumbers extends BoolValue {
+  }
+
+  @ValueHelp("Pair up observations so that each odd observation uses the same random numbers as "
+      + "the even one before it, but with every shock of the fundamental negated.")
+  class AntitheticFundamental extends BoolValue {
+  }
+
   @ValueHelp("The mean of the gaussain fundamental.")
   class FundamentalMean extends DoubleValue {
   }
@@ -80,6 +110,15 @@ public interface Keys {
   class ClearInterval extends LongValue {
   }
 
+  @ValueHelp("The number of price levels per side in a market's depth snapshots, 0 to disable.")
+  class DepthLevels extends IntValue {
+  }
+
+  @ValueHelp("The time between a market's depth snapshots, 0 to take one whenever the quote "
+      + "changes.")
+  class DepthInterval extends LongValue {
+  }
+
   // ------
   // Agents
   // ------
@@ -126,6 +165,12 @@ public interface Keys {
   class SubmitDepth extends IntValue {
   }
 
+  @ValueHelp("Simulate every player of a strategy in the same market as one population that shares "
+      + "arrays of state and a single arrival stream. Only strategies with a population type can "
+      + "use this, and common random numbers don't apply to them.")
+  class Population extends BoolValue {
+  }
+
   // -------------------------
   // Specific agent parameters
   // -------------------------
@@ -334,7 +379,6 @@ public interface Keys {
   // public static class NumMarkets extends IntValue {};
 
   // Latency
-  // public static class NbboLatency extends TimeValue {};
   // public static class MarketLatency extends TimeValue {};
   // public static class LaLatency extends TimeValue {};
   // public static class FundamentalLatency extends TimeValue {};
@@ -432,13 +476,17 @@ public interface Keys {
    */
   Spec DEFAULT_KEYS = Spec.builder() //
       .put(RandomSeed.class, System.nanoTime()) // Set seed from clock
+      .put(RandomGenerator.class, RandomSource.JAVA) // Same draws as earlier versions
       .put(FundamentalMean.class, 1e9) // Approximately half of Integer.MAX_VALUE
       .put(FundamentalObservationVariance.class, 0d) // Perfect revelation
 
       .put(Pricing.class, 0.5) // Even call market
+      .put(DepthLevels.class, 0) // Don't record depth snapshots
+      .put(DepthInterval.class, 0L) // Record depth on quote changes
 
       .put(Sides.class, OrderStyle.RANDOM) // Submit orders randomly (legacy)
       .put(SubmitDepth.class, 1) // Submit one order per arrival (legacy)
+      .put(Population.class, false) // Simulate every agent on its own
       .put(Thresh.class, 1d) // No threshold
       .put(BenchmarkThresh.class, 1d) // No threshold
       .put(ContractHoldings.class, 0.0)
@@ -456,6 +504,10 @@ public interface Keys {
       .put(OUTheta.class, 0.0) // Assign arbitrary number for OU parameter theta
       .put(EpsilonDecay.class, 0.0) // Assign arbitrary number for epsilon decay for DRL
       .put(CommunicationLatency.class, 0L) // Assign zero latency for RL agent
+      .put(ParallelMarkets.class, false) // Execute every market on one event queue
+      .put(NbboLatency.class, TimeStamp.ZERO) // Sip sees quotes immediately
+      .put(CommonRandomNumbers.class, false) // Seed players by strategy
+      .put(AntitheticFundamental.class, false) // Independent observations
       .put(BenchmarkType.class, BenchmarkStyle.VWAP) //Use volume-weighted price average (VWAP) as a market benchmark
       .build();
 
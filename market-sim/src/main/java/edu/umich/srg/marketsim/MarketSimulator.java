@@ -1,9 +1,14 @@
 package edu.umich.srg.marketsim;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
 import static edu.umich.srg.fourheap.OrderType.BUY;
 import static edu.umich.srg.fourheap.OrderType.SELL;
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.JsonObject;
 
 import edu.umich.srg.fourheap.OrderType;
@@ -12,37 +17,112 @@ import edu.umich.srg.marketsim.event.EventQueue;
 import edu.umich.srg.marketsim.fundamental.Fundamental;
 import edu.umich.srg.marketsim.market.Market;
 import edu.umich.srg.marketsim.market.Market.AgentInfo;
+import edu.umich.srg.marketsim.sip.Sip;
+import edu.umich.srg.util.RandomSource;
 
-import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Optional;
 import java.util.Random;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The simulator holds all of the markets and agents and executes their activities in time order.
+ * Normally everything runs on a single event queue. A partitioned simulator instead gives every
+ * market its own partition with an event queue, and agents are placed in the partition of the market
+ * they trade in. Partitions run in parallel over windows of simulation time that are as long as the
+ * lookahead, and activities that one partition schedules in another are buffered and delivered
+ * between windows. This is conservative and exact as long as nothing crosses partitions with a delay
+ * shorter than the lookahead, which is checked when the activity is scheduled.
+ */
 public class MarketSimulator implements Sim {
 
+  /** The partition whose activities are currently executing on this thread. */
+  private static final ThreadLocal<Partition> executing = new ThreadLocal<>();
+
   private final Collection<Market> markets;
   private final Collection<Agent> agents;
   private final Fundamental fundamental;
-  private final EventQueue eventQueue;
+  private final Random rand;
+  private final Partition root;
+  private final List<Partition> partitions;
+  private final Map<Market, Sim> marketPartitions;
+  private final long lookahead;
+  // Runs partitions for every window of the simulation, created on first partitioned execution
+  private ExecutorService exec;
 
   private Map<Agent, ? extends AgentInfo> agentPayoffs;
 
-  // FIXME Still need SIP
-
-  private MarketSimulator(Fundamental fundamental, Random rand) {
+  private MarketSimulator(Fundamental fundamental, Random rand, long lookahead) {
     this.fundamental = fundamental;
     this.markets = new ArrayList<>();
     this.agents = new ArrayList<>();
-    this.eventQueue = new EventQueue(rand);
+    this.rand = rand;
+    this.partitions = new ArrayList<>();
+    this.marketPartitions = new HashMap<>();
+    this.lookahead = lookahead;
+    this.exec = null;
+    this.root = new Partition(0, new EventQueue(rand));
+    this.partitions.add(root);
 
     this.agentPayoffs = null;
   }
 
   public static MarketSimulator create(Fundamental fundamental, Random rand) {
-    return new MarketSimulator(fundamental, rand);
+    return new MarketSimulator(fundamental, rand, 0);
+  }
+
+  /**
+   * Create a simulator that executes markets in parallel partitions. Lookahead must be positive,
+   * and should be the smallest latency that any activity has between markets.
+   */
+  public static MarketSimulator createPartitioned(Fundamental fundamental, Random rand,
+      TimeStamp lookahead) {
+    checkArgument(lookahead.get() > 0, "Partitioned execution requires a positive lookahead");
+    return new MarketSimulator(fundamental, rand, lookahead.get());
+  }
+
+  /**
+   * Create a new partition with its own event queue for a market and its agents. If this
+   * simulator isn't partitioned, this returns the simulator itself.
+   */
+  public Sim createPartition() {
+    if (lookahead == 0) {
+      return this;
+    }
+    Partition partition =
+        new Partition(partitions.size(), new EventQueue(RandomSource.split(rand)));
+    partitions.add(partition);
+    return partition;
+  }
+
+  /**
+   * Consolidate the quotes of every market added so far into an nbbo that reaches agents after
+   * latency, see {@link #getSip}. Every partition gets its own sip, whose updates are scheduled as
+   * activities in that partition, so agents never see a quote before it could have reached them.
+   * In a partitioned simulator the latency must be at least the lookahead.
+   */
+  public void addSip(TimeStamp latency) {
+    checkState(partitions.stream().noneMatch(p -> p.sip.isPresent()), "Sip was already added");
+    checkArgument(latency.get() >= lookahead,
+        "Sip latency %s must be at least the lookahead %s", latency, lookahead);
+    for (Partition partition : partitions) {
+      partition.sip = Optional.of(Sip.create(partition, markets, latency));
+    }
+  }
+
+  /** The partition that a market was added to, or this simulator if it wasn't partitioned. */
+  public Sim getPartition(Market market) {
+    return marketPartitions.getOrDefault(market, this);
   }
 
   /**
@@ -60,10 +140,49 @@ public class MarketSimulator implements Sim {
     for (Market market : markets) {
       market.clear();
     }
+    if (exec != null) {
+      exec.shutdown();
+      exec = null;
+    }
   }
 
+  /** Execute all activities up to and including final time. */
   public void executeUntil(TimeStamp finalTime) {
-    eventQueue.executeUntil(finalTime);
+    if (partitions.size() == 1) {
+      root.queue.executeUntil(finalTime);
+      return;
+    }
+
+    if (exec == null) {
+      exec = Executors.newFixedThreadPool(
+          Math.min(partitions.size(), Runtime.getRuntime().availableProcessors()),
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("partition-%d").build());
+    }
+    try {
+      for (long windowStart = getCurrentTime().get(); windowStart <= finalTime.get();
+          windowStart += lookahead) {
+        TimeStamp windowEnd = TimeStamp.of(Math.min(windowStart + lookahead - 1, finalTime.get()));
+        List<Callable<Void>> windows = new ArrayList<>(partitions.size());
+        for (Partition partition : partitions) {
+          windows.add(() -> {
+            partition.executeUntil(windowEnd);
+            return null;
+          });
+        }
+        for (Future<Void> window : exec.invokeAll(windows)) {
+          window.get();
+        }
+        for (Partition partition : partitions) {
+          partition.deliver();
+        }
+      }
+    } catch (ExecutionException ex) {
+      Throwables.throwIfUnchecked(ex.getCause());
+      throw new IllegalStateException(ex.getCause());
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(ex);
+    }
   }
 
   public Market addMarket(Market market) {
@@ -71,6 +190,12 @@ public class MarketSimulator implements Sim {
     return market;
   }
 
+  /** Add a market that was created with a partition returned from createPartition. */
+  public Market addMarket(Market market, Sim partition) {
+    marketPartitions.put(market, partition);
+    return addMarket(market);
+  }
+
   public void addAgent(Agent agent) {
     agents.add(agent);
   }
@@ -130,12 +255,102 @@ public class MarketSimulator implements Sim {
 
   @Override
   public void scheduleIn(TimeStamp delay, Runnable activity) {
-    eventQueue.scheduleActivityIn(delay, activity);
+    root.scheduleIn(delay, activity);
   }
 
   @Override
   public TimeStamp getCurrentTime() {
-    return eventQueue.getCurrentTime();
+    return root.getCurrentTime();
+  }
+
+  @Override
+  public Optional<Sip> getSip() {
+    return root.getSip();
+  }
+
+  private class Partition implements Sim {
+
+    private final int index;
+    private final EventQueue queue;
+    private final List<Delivery> inbox;
+    private long sent;
+    private Optional<Sip> sip;
+
+    private Partition(int index, EventQueue queue) {
+      this.index = index;
+      this.queue = queue;
+      this.inbox = new ArrayList<>();
+      this.sent = 0;
+      this.sip = Optional.empty();
+    }
+
+    @Override
+    public void scheduleIn(TimeStamp delay, Runnable activity) {
+      Partition source = executing.get();
+      if (source == null || source == this) {
+        queue.scheduleActivityIn(delay, activity);
+      } else {
+        checkState(delay.get() >= lookahead,
+            "Activity scheduled across partitions with delay %s shorter than lookahead %s", delay,
+            lookahead);
+        Delivery delivery = new Delivery(source.getCurrentTime().get() + delay.get(), source.index,
+            source.sent++, activity);
+        synchronized (inbox) {
+          inbox.add(delivery);
+        }
+      }
+    }
+
+    @Override
+    public TimeStamp getCurrentTime() {
+      return queue.getCurrentTime();
+    }
+
+    @Override
+    public Optional<Sip> getSip() {
+      return sip;
+    }
+
+    private void executeUntil(TimeStamp time) {
+      executing.set(this);
+      try {
+        queue.executeUntil(time);
+      } finally {
+        executing.remove();
+      }
+    }
+
+    /** Schedule activities from other partitions in an order that doesn't depend on threading. */
+    private void deliver() {
+      Collections.sort(inbox);
+      for (Delivery delivery : inbox) {
+        queue.scheduleActivityAt(TimeStamp.of(delivery.time), delivery.activity);
+      }
+      inbox.clear();
+    }
+
+  }
+
+  private static class Delivery implements Comparable<Delivery> {
+
+    private final long time;
+    private final int source;
+    private final long sequence;
+    private final Runnable activity;
+
+    private Delivery(long time, int source, long sequence, Runnable activity) {
+      this.time = time;
+      this.source = source;
+      this.sequence = sequence;
+      this.activity = activity;
+    }
+
+    @Override
+    public int compareTo(Delivery that) {
+      return ComparisonChain.start().compare(this.time, that.time).compare(this.source, that.source)
+          .compare(this.sequence, that.sequence).result();
+    }
+
   }
 
   private static class SimAgentInfo implements AgentInfo {
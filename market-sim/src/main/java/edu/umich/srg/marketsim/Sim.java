@@ -1,9 +1,18 @@
 package edu.umich.srg.marketsim;
 
+import edu.umich.srg.marketsim.sip.Sip;
+
+import java.util.Optional;
+
 public interface Sim {
 
   void scheduleIn(TimeStamp delay, Runnable activity);
 
   TimeStamp getCurrentTime();
 
+  /** The sip that publishes the nbbo to activities in this sim, if the simulation has one. */
+  default Optional<Sip> getSip() {
+    return Optional.empty();
+  }
+
 }
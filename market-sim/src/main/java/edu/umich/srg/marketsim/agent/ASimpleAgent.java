@@ -5,16 +5,13 @@ import static java.math.RoundingMode.CEILING;
 import static java.math.RoundingMode.FLOOR;
 
 import com.google.common.base.Supplier;
-import com.google.common.collect.ImmutableList;
 import com.google.common.math.DoubleMath;
 import com.google.gson.JsonObject;
 
 import edu.umich.srg.distributions.Distribution;
-import edu.umich.srg.distributions.Geometric;
 import edu.umich.srg.distributions.Uniform;
 import edu.umich.srg.egtaonline.spec.Spec;
 import edu.umich.srg.fourheap.OrderType;
-import edu.umich.srg.marketsim.Keys.ArrivalRate;
 import edu.umich.srg.marketsim.Keys.MaxPosition;
 import edu.umich.srg.marketsim.Keys.PrivateValueVar;
 import edu.umich.srg.marketsim.Keys.Sides;
@@ -55,7 +52,7 @@ public abstract class ASimpleAgent implements Agent {
   private final int maxPosition;
   private final SurplusThreshold threshold;
   private final PrivateValue privateValue;
-  private final Geometric arrivalDistribution;
+  private final ArrivalSchedule arrivals;
   private final Supplier<Set<OrderType>> side;
   private final int ordersPerSide;
 
@@ -74,7 +71,7 @@ public abstract class ASimpleAgent implements Agent {
     this.threshold = SurplusThreshold.create(spec.get(Thresh.class));
     this.privateValue = PrivateValues.gaussianPrivateValue(rand, spec.get(MaxPosition.class),
         spec.get(PrivateValueVar.class));
-    this.arrivalDistribution = Geometric.withSuccessProbability(spec.get(ArrivalRate.class));
+    this.arrivals = ArrivalSchedule.fromSpec(spec, rand);
     switch (spec.get(Sides.class)) {
       case RANDOM:
         this.side = () -> Collections.singleton(randomOrder.sample(rand));
@@ -94,11 +91,13 @@ public abstract class ASimpleAgent implements Agent {
   }
 
   private void scheduleNextArrival() {
-    sim.scheduleIn(TimeStamp.of(1 + arrivalDistribution.sample(rand)), this::strategy);
+    if (arrivals.hasNext()) {
+      sim.scheduleIn(TimeStamp.of(arrivals.next() - sim.getCurrentTime().get()), this::strategy);
+    }
   }
 
   protected final void strategy() {
-    ImmutableList.copyOf(market.getActiveOrders().entrySet()).forEach(market::withdrawOrder);
+    market.withdrawOrders(market.getActiveOrders().elementSet());
 
     Set<OrderType> sides = side.get();
     double finalEstimate = getFinalFundamentalEstiamte();
@@ -0,0 +1,15 @@
+package edu.umich.srg.marketsim.agent;
+
+import java.util.List;
+
+/**
+ * A group of statistically identical agents that are simulated together. The population keeps the
+ * state of its members in shared arrays and arrives to the market once for all of the members that
+ * arrive at a time, but each member is still an agent with its own payoff and features.
+ */
+public interface AgentPopulation {
+
+  /** The members of the population, which should each be added to the simulator. */
+  List<? extends Agent> getAgents();
+
+}
@@ -0,0 +1,126 @@
+package edu.umich.srg.marketsim.agent;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import edu.umich.srg.distributions.Geometric;
+import edu.umich.srg.egtaonline.spec.Spec;
+import edu.umich.srg.marketsim.Keys.ArrivalRate;
+import edu.umich.srg.marketsim.Keys.SimLength;
+import edu.umich.srg.util.RandomSource;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The times an agent arrives to the market. The gaps between arrivals are geometric with the
+ * arrival rate, i.e. a discrete Poisson process, and are drawn in bulk into a primitive array
+ * instead of one sample per arrival. With a horizon, every arrival up to it is generated when the
+ * schedule is created, so the number of arrivals in a simulation is known before it starts. Without
+ * one, arrivals are generated in blocks as they're consumed.
+ */
+public final class ArrivalSchedule {
+
+  private static final int blockSize = 64;
+
+  private final Geometric gaps;
+  private final Random rand;
+  private final long horizon;
+
+  private long[] times;
+  private long[] buffer;
+  private int size;
+  private int position;
+  private long last;
+  private boolean exhausted;
+
+  private ArrivalSchedule(double arrivalRate, long horizon, Random rand) {
+    checkArgument(0 <= arrivalRate && arrivalRate <= 1, "Arrival rate must be a probability (%s)",
+        arrivalRate);
+    checkArgument(horizon >= 0, "Horizon must be nonnegative (%s)", horizon);
+    this.gaps = Geometric.withSuccessProbability(arrivalRate);
+    this.rand = rand;
+    this.horizon = horizon;
+    this.times = new long[0];
+    this.buffer = new long[0];
+    this.size = 0;
+    this.position = 0;
+    this.last = 0;
+    this.exhausted = arrivalRate == 0; // Never arrives
+  }
+
+  /** Every arrival up to and including horizon, starting from time zero. */
+  public static ArrivalSchedule create(double arrivalRate, long horizon, Random rand) {
+    ArrivalSchedule schedule = new ArrivalSchedule(arrivalRate, horizon, rand);
+    // The expected number of arrivals with some room, so it's almost always a single draw
+    double expected = horizon * arrivalRate;
+    int block = (int) Math.min(1 << 20, Math.max(blockSize, expected + 4 * Math.sqrt(expected)));
+    while (schedule.draw(block)) {
+    }
+    // Every arrival is drawn, so the scratch space isn't needed for the rest of the simulation
+    schedule.buffer = new long[0];
+    return schedule;
+  }
+
+  /** Arrivals that never end, generated as they're needed. */
+  public static ArrivalSchedule unbounded(double arrivalRate, Random rand) {
+    return new ArrivalSchedule(arrivalRate, Long.MAX_VALUE, rand);
+  }
+
+  /**
+   * The arrivals of an agent with spec, up to the end of the simulation if the spec has a
+   * SimLength. The draws come from a stream split from rand, so they don't shift the agent's other
+   * random draws.
+   */
+  public static ArrivalSchedule fromSpec(Spec spec, Random rand) {
+    double arrivalRate = spec.get(ArrivalRate.class);
+    Random arrivalRand = RandomSource.split(rand);
+    return spec.contains(SimLength.class)
+        ? create(arrivalRate, spec.get(SimLength.class), arrivalRand)
+        : unbounded(arrivalRate, arrivalRand);
+  }
+
+  /** Whether there is another arrival in the schedule. */
+  public boolean hasNext() {
+    if (position == size && !exhausted) {
+      // Only unbounded schedules get here, so consumed arrivals can be dropped
+      size = 0;
+      position = 0;
+      draw(blockSize);
+    }
+    return position < size;
+  }
+
+  /** The absolute time of the next arrival. */
+  public long next() {
+    checkState(hasNext(), "No more arrivals");
+    return times[position++];
+  }
+
+  /** The number of arrivals generated, which is every arrival if there's a horizon. */
+  public int size() {
+    return size;
+  }
+
+  /** Append count arrivals, returning false once the horizon is passed. */
+  private boolean draw(int count) {
+    if (buffer.length < count) {
+      buffer = new long[count];
+    }
+    if (times.length < size + count) {
+      times = Arrays.copyOf(times, Math.max(size + count, 2 * times.length));
+    }
+    gaps.sample(rand, buffer, count);
+    for (int i = 0; i < count; ++i) {
+      // The next arrival would be after the horizon, written to avoid overflow
+      if (buffer[i] >= horizon - last) {
+        exhausted = true;
+        return false;
+      }
+      last += 1 + buffer[i];
+      times[size++] = last;
+    }
+    return true;
+  }
+
+}
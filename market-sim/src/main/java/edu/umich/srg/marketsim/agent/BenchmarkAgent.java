@@ -5,17 +5,14 @@ import static java.math.RoundingMode.CEILING;
 import static java.math.RoundingMode.FLOOR;
 
 import com.google.common.base.Supplier;
-import com.google.common.collect.ImmutableList;
 import com.google.common.math.DoubleMath;
 import com.google.gson.JsonObject;
 
 import edu.umich.srg.distributions.Distribution;
-import edu.umich.srg.distributions.Geometric;
 import edu.umich.srg.distributions.Uniform;
 import edu.umich.srg.distributions.Uniform.IntUniform;
 import edu.umich.srg.egtaonline.spec.Spec;
 import edu.umich.srg.fourheap.OrderType;
-import edu.umich.srg.marketsim.Keys.ArrivalRate;
 import edu.umich.srg.marketsim.Keys.MaxPosition;
 import edu.umich.srg.marketsim.Keys.PrivateValueVar;
 import edu.umich.srg.marketsim.Keys.Sides;
@@ -43,6 +40,7 @@ import edu.umich.srg.marketsim.observer.MarkovObserver;
 import edu.umich.srg.marketsim.privatevalue.PrivateValue;
 import edu.umich.srg.marketsim.privatevalue.PrivateValues;
 import edu.umich.srg.marketsim.strategy.SurplusBenchmark;
+import edu.umich.srg.marketsim.strategy.SharedEstimators;
 import edu.umich.srg.marketsim.strategy.SharedGaussianView;
 import edu.umich.srg.util.SummStats;
 
@@ -74,7 +72,7 @@ public class BenchmarkAgent implements Agent {
 	  //private final SurplusBenchmark contract;
 	  private final SurplusBenchmark threshold;
 	  private final PrivateValue privateValue;
-	  private final Geometric arrivalDistribution;
+	  private final ArrivalSchedule arrivals;
 	  private final Supplier<Set<OrderType>> side;
 	  private final int ordersPerSide;
 	  private final GaussianFundamentalView fundamental;
@@ -99,7 +97,7 @@ public class BenchmarkAgent implements Agent {
 	    this.threshold = SurplusBenchmark.create(spec.get(BenchmarkThresh.class));
 	    this.privateValue = PrivateValues.gaussianPrivateValue(rand, spec.get(MaxPosition.class),
 	        spec.get(PrivateValueVar.class));
-	    this.arrivalDistribution = Geometric.withSuccessProbability(spec.get(ArrivalRate.class));
+	    this.arrivals = ArrivalSchedule.fromSpec(spec, rand);
 	    switch (spec.get(Sides.class)) {
 	      case RANDOM:
 	        this.side = () -> Collections.singleton(randomOrder.sample(rand));
@@ -121,19 +119,22 @@ public class BenchmarkAgent implements Agent {
 	    this.contractHoldings = spec.get(ContractHoldings.class);
 	    this.benchmarkDir = spec.get(BenchmarkDir.class);
 	    
+	    double priceVarEst = spec.get(PriceVarEst.class);
 	    if (spec.get(ShareEstimates.class)) {
 	      this.fundamental = SharedGaussianView.create(sim, fundamental, rand,
 	          spec.get(FundamentalObservationVariance.class));
+	      if (Double.isFinite(priceVarEst)) {
+	        market.addTransactionObserver(MarkovObserver.create(this.fundamental, priceVarEst));
+	      }
+	    } else if (Double.isFinite(priceVarEst)) {
+	      this.fundamental = SharedEstimators.create(sim, fundamental, market, rand,
+	          spec.get(FundamentalObservationVariance.class), priceVarEst);
 	    } else {
 	      this.fundamental = ((GaussableView) fundamental.getView(sim)).addNoise(rand,
 	          spec.get(FundamentalObservationVariance.class));
 	    }
 	    this.shadingDistribution = Uniform.closed(spec.get(Rmin.class), spec.get(Rmax.class));
 	    
-	    double priceVarEst = spec.get(PriceVarEst.class);
-	    if (Double.isFinite(priceVarEst)) {
-	      market.addTransactionObserver(MarkovObserver.create(this.fundamental, priceVarEst));
-	    }
 	  }
 	  
 	  public static BenchmarkAgent createFromSpec(Sim sim, Fundamental fundamental,
@@ -142,11 +143,13 @@ public class BenchmarkAgent implements Agent {
 	  } 
 
 	  private void scheduleNextArrival() {
-	    sim.scheduleIn(TimeStamp.of(1 + arrivalDistribution.sample(rand)), this::strategy);
+	    if (arrivals.hasNext()) {
+	      sim.scheduleIn(TimeStamp.of(arrivals.next() - sim.getCurrentTime().get()), this::strategy);
+	    }
 	  }
 
 	  protected final void strategy() {
-	    ImmutableList.copyOf(market.getActiveOrders().entrySet()).forEach(market::withdrawOrder);
+	    market.withdrawOrders(market.getActiveOrders().elementSet());
 
 	    Set<OrderType> sides = side.get();
 	    double finalEstimate = fundamental.getEstimatedFinalFundamental();
@@ -1,12 +1,7 @@
 package edu.umich.srg.marketsim.agent;
 
-import com.google.common.collect.ImmutableList;
-
-import edu.umich.srg.distributions.Distribution.LongDistribution;
-import edu.umich.srg.distributions.Geometric;
 import edu.umich.srg.egtaonline.spec.Spec;
 import edu.umich.srg.fourheap.OrderType;
-import edu.umich.srg.marketsim.Keys.ArrivalRate;
 import edu.umich.srg.marketsim.Keys.NumRungs;
 import edu.umich.srg.marketsim.Keys.RungSep;
 import edu.umich.srg.marketsim.Keys.RungThickness;
@@ -18,20 +13,19 @@ import edu.umich.srg.marketsim.fundamental.Fundamental;
 import edu.umich.srg.marketsim.fundamental.Fundamental.FundamentalView;
 import edu.umich.srg.marketsim.market.Market;
 import edu.umich.srg.marketsim.market.Market.MarketView;
-import edu.umich.srg.marketsim.market.OrderRecord;
 import edu.umich.srg.marketsim.strategy.MarketMakerLadder;
 
 import java.util.Collection;
 import java.util.Random;
+import java.util.stream.Collectors;
 
 public class FundamentalMarketMaker implements Agent {
   // TODO Add truncation
 
-  private final Random rand;
   private final int id;
   private final Sim sim;
   private final MarketView market;
-  private final LongDistribution arrivalDistribution;
+  private final ArrivalSchedule arrivals;
 
   private final FundamentalView fundamental;
 
@@ -45,14 +39,13 @@ public class FundamentalMarketMaker implements Agent {
     this.sim = sim;
     this.id = rand.nextInt();
     this.market = market.getView(this, TimeStamp.ZERO);
-    this.arrivalDistribution = Geometric.withSuccessProbability(spec.get(ArrivalRate.class));
+    this.arrivals = ArrivalSchedule.fromSpec(spec, rand);
     this.fundamental = fundamental.getView(sim);
 
     this.halfSpread = spec.get(Spread.class) / 2;
     this.rungThickness = spec.get(RungThickness.class);
     this.strategy =
         new MarketMakerLadder(spec.get(RungSep.class), spec.get(NumRungs.class), false, false);
-    this.rand = rand;
   }
 
   public static FundamentalMarketMaker createFromSpec(Sim sim, Fundamental fundamental,
@@ -61,19 +54,17 @@ public class FundamentalMarketMaker implements Agent {
   }
 
   private void scheduleNextArrival() {
-    sim.scheduleIn(TimeStamp.of(1 + arrivalDistribution.sample(rand)), this::strategy);
+    if (arrivals.hasNext()) {
+      sim.scheduleIn(TimeStamp.of(arrivals.next() - sim.getCurrentTime().get()), this::strategy);
+    }
   }
 
   private void strategy() {
-    for (OrderRecord o : ImmutableList.copyOf(market.getActiveOrders())) {
-      market.withdrawOrder(o);
-    }
-
     double fundamentalPrice = fundamental.getEstimatedFinalFundamental();
-    strategy.createLadder(Price.of(fundamentalPrice - halfSpread),
-        Price.of(fundamentalPrice + halfSpread)).forEach(order -> {
-          market.submitOrder(order.getType(), order.getPrice(), rungThickness);
-        });
+    market.replaceOrders(market.getActiveOrders().elementSet(),
+        strategy.createLadder(Price.of(fundamentalPrice - halfSpread),
+            Price.of(fundamentalPrice + halfSpread)).collect(Collectors.toList()),
+        rungThickness);
 
     scheduleNextArrival();
   }
@@ -14,6 +14,7 @@ import edu.umich.srg.marketsim.fundamental.GaussianFundamentalView;
 import edu.umich.srg.marketsim.fundamental.GaussianFundamentalView.GaussableView;
 import edu.umich.srg.marketsim.market.Market;
 import edu.umich.srg.marketsim.observer.MarkovObserver;
+import edu.umich.srg.marketsim.strategy.SharedEstimators;
 import edu.umich.srg.marketsim.strategy.SharedGaussianView;
 
 import java.util.Collection;
@@ -31,18 +32,21 @@ public class MarkovAgent extends ASimpleAgent {
   /** Standard constructor for the Markov agent. */
   public MarkovAgent(Sim sim, Market market, Fundamental fundamental, Spec spec, Random rand) {
     super(sim, market, fundamental, spec, rand);
+    double priceVarEst = spec.get(PriceVarEst.class);
     if (spec.get(ShareEstimates.class)) {
       this.fundamental = SharedGaussianView.create(sim, fundamental, rand,
           spec.get(FundamentalObservationVariance.class));
+      if (Double.isFinite(priceVarEst)) {
+        market.addTransactionObserver(MarkovObserver.create(this.fundamental, priceVarEst));
+      }
+    } else if (Double.isFinite(priceVarEst)) {
+      this.fundamental = SharedEstimators.create(sim, fundamental, market, rand,
+          spec.get(FundamentalObservationVariance.class), priceVarEst);
     } else {
       this.fundamental = ((GaussableView) fundamental.getView(sim)).addNoise(rand,
           spec.get(FundamentalObservationVariance.class));
     }
     this.shadingDistribution = Uniform.closed(spec.get(Rmin.class), spec.get(Rmax.class));
-    double priceVarEst = spec.get(PriceVarEst.class);
-    if (Double.isFinite(priceVarEst)) {
-      market.addTransactionObserver(MarkovObserver.create(this.fundamental, priceVarEst));
-    }
   }
 
   public static MarkovAgent createFromSpec(Sim sim, Fundamental fundamental,
@@ -4,14 +4,12 @@ import com.google.common.collect.ImmutableList;
 import com.google.gson.JsonObject;
 
 import edu.umich.srg.distributions.Distribution;
-import edu.umich.srg.distributions.Geometric;
 import edu.umich.srg.distributions.Multinomial;
 import edu.umich.srg.distributions.Multinomial.IntMultinomial;
 import edu.umich.srg.distributions.Uniform;
 import edu.umich.srg.distributions.Uniform.IntUniform;
 import edu.umich.srg.egtaonline.spec.Spec;
 import edu.umich.srg.fourheap.OrderType;
-import edu.umich.srg.marketsim.Keys.ArrivalRate;
 import edu.umich.srg.marketsim.Price;
 import edu.umich.srg.marketsim.Sim;
 import edu.umich.srg.marketsim.TimeStamp;
@@ -19,6 +17,7 @@ import edu.umich.srg.marketsim.fundamental.Fundamental;
 import edu.umich.srg.marketsim.market.Market;
 import edu.umich.srg.marketsim.market.Market.MarketView;
 import edu.umich.srg.marketsim.market.OrderRecord;
+import edu.umich.srg.marketsim.strategy.OrderDesc;
 
 import java.util.Collection;
 import java.util.Random;
@@ -38,7 +37,7 @@ public class NoiseAgent implements Agent {
   private final int id;
   private final MarketView market;
   private final Random rand;
-  private final Geometric arrivalDistribution;
+  private final ArrivalSchedule arrivals;
 
   // Features
   private int numTransactions;
@@ -48,7 +47,7 @@ public class NoiseAgent implements Agent {
     this.sim = sim;
     this.id = rand.nextInt();
     this.market = market.getView(this, TimeStamp.ZERO);
-    this.arrivalDistribution = Geometric.withSuccessProbability(spec.get(ArrivalRate.class));
+    this.arrivals = ArrivalSchedule.fromSpec(spec, rand);
     this.rand = rand;
 
     this.numTransactions = 0;
@@ -65,7 +64,9 @@ public class NoiseAgent implements Agent {
    * every strategy.
    */
   private void scheduleNextArrival() {
-    sim.scheduleIn(TimeStamp.of(1 + arrivalDistribution.sample(rand)), this::strategy);
+    if (arrivals.hasNext()) {
+      sim.scheduleIn(TimeStamp.of(arrivals.next() - sim.getCurrentTime().get()), this::strategy);
+    }
   }
 
   /**
@@ -74,11 +75,10 @@ public class NoiseAgent implements Agent {
    * arrival.
    */
   private void strategy() {
-    for (OrderRecord order : ImmutableList.copyOf(market.getActiveOrders())) {
-      market.withdrawOrder(order);
-    }
-    market.submitOrder(orderTypeDistribution.sample(rand),
-        Price.of(orderPriceDistribution.sample(rand)), quantityDistribution.sample(rand) + 1);
+    market.replaceOrders(market.getActiveOrders().elementSet(),
+        ImmutableList.of(OrderDesc.of(orderTypeDistribution.sample(rand),
+            Price.of(orderPriceDistribution.sample(rand)))),
+        quantityDistribution.sample(rand) + 1);
     scheduleNextArrival();
   }
 
@@ -1,12 +1,10 @@
 package edu.umich.srg.marketsim.agent;
 
 import edu.umich.srg.distributions.Distribution;
-import edu.umich.srg.distributions.Geometric;
 import edu.umich.srg.distributions.Uniform;
 import edu.umich.srg.distributions.Uniform.IntUniform;
 import edu.umich.srg.egtaonline.spec.Spec;
 import edu.umich.srg.fourheap.OrderType;
-import edu.umich.srg.marketsim.Keys.ArrivalRate;
 import edu.umich.srg.marketsim.Keys.BenchmarkDir;
 import edu.umich.srg.marketsim.Keys.BenchmarkImpact;
 import edu.umich.srg.marketsim.Keys.ContractHoldings;
@@ -32,6 +30,7 @@ import edu.umich.srg.marketsim.market.Market.MarketView;
 import edu.umich.srg.marketsim.observer.MarkovObserver;
 import edu.umich.srg.marketsim.privatevalue.PrivateValue;
 import edu.umich.srg.marketsim.privatevalue.PrivateValues;
+import edu.umich.srg.marketsim.strategy.SharedEstimators;
 import edu.umich.srg.marketsim.strategy.SharedGaussianView;
 import edu.umich.srg.util.SummStats;
 import edu.umich.srg.learning.BenchmarkState;
@@ -50,7 +49,6 @@ import java.util.Random;
 import java.util.Set;
 
 import com.google.common.base.Supplier;
-import com.google.common.collect.ImmutableList;
 import com.google.common.math.DoubleMath;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
@@ -70,7 +68,7 @@ public class RLBenchmarkAgentOld implements Agent {
 	private final MarketView market;
 	private int maxPosition;
 	  private PrivateValue privateValue;
-	  private final Geometric arrivalDistribution;
+	  private final ArrivalSchedule arrivals;
 	  private final Supplier<Set<OrderType>> side;
 	  private final int ordersPerSide;
 	
@@ -110,7 +108,7 @@ public class RLBenchmarkAgentOld implements Agent {
     this.maxPosition = spec.get(MaxPosition.class);
     this.privateValue = PrivateValues.gaussianPrivateValue(rand, spec.get(MaxPosition.class),
         spec.get(PrivateValueVar.class));
-    this.arrivalDistribution = Geometric.withSuccessProbability(spec.get(ArrivalRate.class));
+    this.arrivals = ArrivalSchedule.fromSpec(spec, rand);
     switch (spec.get(Sides.class)) {
       case RANDOM:
         this.side = () -> Collections.singleton(randomOrder.sample(rand));
@@ -128,9 +126,16 @@ public class RLBenchmarkAgentOld implements Agent {
     this.shadingStats = SummStats.empty();
     this.fundamentalError = SummStats.empty();
     
+    double priceVarEst = spec.get(PriceVarEst.class);
     if (spec.get(ShareEstimates.class)) {
         this.fundamental = SharedGaussianView.create(sim, fundamental, rand,
             spec.get(FundamentalObservationVariance.class));
+        if (Double.isFinite(priceVarEst)) {
+            market.addTransactionObserver(MarkovObserver.create(this.fundamental, priceVarEst));
+        }
+    } else if (Double.isFinite(priceVarEst)) {
+        this.fundamental = SharedEstimators.create(sim, fundamental, market, rand,
+            spec.get(FundamentalObservationVariance.class), priceVarEst);
     } else {
         this.fundamental = ((GaussableView) fundamental.getView(sim)).addNoise(rand,
             spec.get(FundamentalObservationVariance.class));
@@ -154,10 +159,6 @@ public class RLBenchmarkAgentOld implements Agent {
     this.action = new JsonArray();
   
     this.shadingDistribution = Uniform.closed(spec.get(Rmin.class), spec.get(Rmax.class));
-    double priceVarEst = spec.get(PriceVarEst.class);
-    if (Double.isFinite(priceVarEst)) {
-      market.addTransactionObserver(MarkovObserver.create(this.fundamental, priceVarEst));
-    }
       
     this.benchmarkImpact = spec.get(BenchmarkImpact.class);
     this.contractHoldings = spec.get(ContractHoldings.class);
@@ -173,11 +174,13 @@ public class RLBenchmarkAgentOld implements Agent {
 	  }
   
   private void scheduleNextArrival() {
-	    sim.scheduleIn(TimeStamp.of(1 + arrivalDistribution.sample(rand)), this::strategy);
+	    if (arrivals.hasNext()) {
+	      sim.scheduleIn(TimeStamp.of(arrivals.next() - sim.getCurrentTime().get()), this::strategy);
+	    }
 	  }
 
   protected final void strategy() {
-    ImmutableList.copyOf(market.getActiveOrders().entrySet()).forEach(market::withdrawOrder);
+    market.withdrawOrders(market.getActiveOrders().elementSet());
     
     JsonObject curr_obs = new JsonObject();
 
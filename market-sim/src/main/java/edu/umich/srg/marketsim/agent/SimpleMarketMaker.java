@@ -1,12 +1,7 @@
 package edu.umich.srg.marketsim.agent;
 
-import com.google.common.collect.ImmutableList;
-
-import edu.umich.srg.distributions.Distribution.LongDistribution;
-import edu.umich.srg.distributions.Geometric;
 import edu.umich.srg.egtaonline.spec.Spec;
 import edu.umich.srg.fourheap.OrderType;
-import edu.umich.srg.marketsim.Keys.ArrivalRate;
 import edu.umich.srg.marketsim.Keys.NumRungs;
 import edu.umich.srg.marketsim.Keys.RungSep;
 import edu.umich.srg.marketsim.Keys.RungThickness;
@@ -25,18 +20,18 @@ import edu.umich.srg.marketsim.strategy.MarketMakerLadder;
 import java.util.Collection;
 import java.util.Optional;
 import java.util.Random;
+import java.util.stream.Collectors;
 
 public class SimpleMarketMaker implements Agent {
 
   private Optional<Price> lastBid;
   private Optional<Price> lastAsk;
 
-  private final Random rand;
   private final int id;
   private final Sim sim;
   private final MarketView market;
   private final GetQuoteObserver quoteInfo;
-  private final LongDistribution arrivalDistribution;
+  private final ArrivalSchedule arrivals;
   private final int rungThickness;
   private final MarketMakerLadder strategy;
 
@@ -46,12 +41,11 @@ public class SimpleMarketMaker implements Agent {
     this.id = rand.nextInt();
     this.market = market.getView(this, TimeStamp.ZERO);
     this.quoteInfo = market.addQuoteObserver(GetQuoteObserver.create(market));
-    this.arrivalDistribution = Geometric.withSuccessProbability(spec.get(ArrivalRate.class));
+    this.arrivals = ArrivalSchedule.fromSpec(spec, rand);
     this.rungThickness = spec.get(RungThickness.class);
     this.strategy = new MarketMakerLadder(spec.get(RungSep.class), spec.get(NumRungs.class),
         spec.get(TickImprovement.class), spec.get(TickOutside.class));
     this.lastBid = this.lastAsk = Optional.empty();
-    this.rand = rand;
   }
 
   public static SimpleMarketMaker createFromSpec(Sim sim, Fundamental fundamental,
@@ -60,18 +54,20 @@ public class SimpleMarketMaker implements Agent {
   }
 
   private void scheduleNextArrival() {
-    sim.scheduleIn(TimeStamp.of(1 + arrivalDistribution.sample(rand)), this::strategy);
+    if (arrivals.hasNext()) {
+      sim.scheduleIn(TimeStamp.of(arrivals.next() - sim.getCurrentTime().get()), this::strategy);
+    }
   }
 
   private void strategy() {
     updateQuote();
-    ImmutableList.copyOf(market.getActiveOrders().entrySet()).forEach(market::withdrawOrder);
+    market.withdrawOrders(market.getActiveOrders().elementSet());
     updateQuote();
 
     if (lastBid.isPresent() && lastAsk.isPresent()) {
-      strategy.createLadder(lastBid.get(), lastAsk.get()).forEach(order -> {
-        market.submitOrder(order.getType(), order.getPrice(), rungThickness);
-      });
+      market.submitOrders(
+          strategy.createLadder(lastBid.get(), lastAsk.get()).collect(Collectors.toList()),
+          rungThickness);
     }
 
     scheduleNextArrival();
@@ -5,11 +5,9 @@ import com.google.gson.JsonObject;
 
 import edu.umich.srg.distributions.Distribution;
 import edu.umich.srg.distributions.Gaussian;
-import edu.umich.srg.distributions.Geometric;
 import edu.umich.srg.distributions.Uniform;
 import edu.umich.srg.egtaonline.spec.Spec;
 import edu.umich.srg.fourheap.OrderType;
-import edu.umich.srg.marketsim.Keys.ArrivalRate;
 import edu.umich.srg.marketsim.Keys.FundamentalObservationVariance;
 import edu.umich.srg.marketsim.Keys.MaxPosition;
 import edu.umich.srg.marketsim.Keys.PriceVarEst;
@@ -31,6 +29,7 @@ import edu.umich.srg.marketsim.market.Market.MarketView;
 import edu.umich.srg.marketsim.observer.MarkovObserver;
 import edu.umich.srg.marketsim.privatevalue.PrivateValue;
 import edu.umich.srg.marketsim.privatevalue.PrivateValues;
+import edu.umich.srg.marketsim.strategy.SharedEstimators;
 import edu.umich.srg.marketsim.strategy.SharedGaussianView;
 import edu.umich.srg.util.SummStats;
 import edu.umich.srg.learning.TensorFlowState;
@@ -49,7 +48,6 @@ import java.util.Random;
 import java.util.Set;
 
 import com.google.common.base.Supplier;
-import com.google.common.collect.ImmutableList;
 import com.google.common.math.DoubleMath;
 
 /**
@@ -67,7 +65,7 @@ public class TensorFlowRLAgent implements Agent {
   protected final MarketView market;
   private int maxPosition;
   protected PrivateValue privateValue;
-  private final Geometric arrivalDistribution;
+  private final ArrivalSchedule arrivals;
   private final Supplier<Set<OrderType>> side;
   private final int ordersPerSide;
 
@@ -110,7 +108,7 @@ public class TensorFlowRLAgent implements Agent {
     this.maxPosition = spec.get(MaxPosition.class);
     this.privateValue = PrivateValues.gaussianPrivateValue(rand, spec.get(MaxPosition.class),
         spec.get(PrivateValueVar.class));
-    this.arrivalDistribution = Geometric.withSuccessProbability(spec.get(ArrivalRate.class));
+    this.arrivals = ArrivalSchedule.fromSpec(spec, rand);
     switch (spec.get(Sides.class)) {
       case RANDOM:
         this.side = () -> Collections.singleton(randomOrder.sample(rand));
@@ -128,9 +126,16 @@ public class TensorFlowRLAgent implements Agent {
     this.shadingStats = SummStats.empty();
     this.fundamentalError = SummStats.empty();
     
+    double priceVarEst = spec.get(PriceVarEst.class);
     if (spec.get(ShareEstimates.class)) {
         this.fundamental = SharedGaussianView.create(sim, fundamental, rand,
             spec.get(FundamentalObservationVariance.class));
+        if (Double.isFinite(priceVarEst)) {
+            market.addTransactionObserver(MarkovObserver.create(this.fundamental, priceVarEst));
+        }
+    } else if (Double.isFinite(priceVarEst)) {
+        this.fundamental = SharedEstimators.create(sim, fundamental, market, rand,
+            spec.get(FundamentalObservationVariance.class), priceVarEst);
     } else {
         this.fundamental = ((GaussableView) fundamental.getView(sim)).addNoise(rand,
             spec.get(FundamentalObservationVariance.class));
@@ -162,10 +167,6 @@ public class TensorFlowRLAgent implements Agent {
     this.fund_h = 0.0;
     this.fund_cash = 0.0;
   
-    double priceVarEst = spec.get(PriceVarEst.class);
-    if (Double.isFinite(priceVarEst)) {
-      market.addTransactionObserver(MarkovObserver.create(this.fundamental, priceVarEst));
-    }
   }
   
   public static TensorFlowRLAgent createFromSpec(Sim sim, Fundamental fundamental,
@@ -174,11 +175,13 @@ public class TensorFlowRLAgent implements Agent {
 	  }
   
   private void scheduleNextArrival() {
-    sim.scheduleIn(TimeStamp.of(1 + arrivalDistribution.sample(rand)), this::strategy);
+    if (arrivals.hasNext()) {
+      sim.scheduleIn(TimeStamp.of(arrivals.next() - sim.getCurrentTime().get()), this::strategy);
+    }
   }
 
   protected final void strategy() {
-    ImmutableList.copyOf(market.getActiveOrders().entrySet()).forEach(market::withdrawOrder);
+    market.withdrawOrders(market.getActiveOrders().elementSet());
     
     JsonObject curr_obs = new JsonObject();
 
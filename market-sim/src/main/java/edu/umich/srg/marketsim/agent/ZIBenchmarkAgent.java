@@ -17,6 +17,7 @@ import edu.umich.srg.marketsim.fundamental.GaussianFundamentalView;
 import edu.umich.srg.marketsim.fundamental.GaussianFundamentalView.GaussableView;
 import edu.umich.srg.marketsim.market.Market;
 import edu.umich.srg.marketsim.observer.MarkovObserver;
+import edu.umich.srg.marketsim.strategy.SharedEstimators;
 import edu.umich.srg.marketsim.strategy.SharedGaussianView;
 
 import java.util.Collection;
@@ -38,9 +39,16 @@ public class ZIBenchmarkAgent extends ASimpleAgent {
   /** Standard constructor for the Markov agent. */
   public ZIBenchmarkAgent(Sim sim, Market market, Fundamental fundamental, Spec spec, Random rand) {
     super(sim, market, fundamental, spec, rand);
+    double priceVarEst = spec.get(PriceVarEst.class);
     if (spec.get(ShareEstimates.class)) {
       this.fundamental = SharedGaussianView.create(sim, fundamental, rand,
           spec.get(FundamentalObservationVariance.class));
+      if (Double.isFinite(priceVarEst)) {
+        market.addTransactionObserver(MarkovObserver.create(this.fundamental, priceVarEst));
+      }
+    } else if (Double.isFinite(priceVarEst)) {
+      this.fundamental = SharedEstimators.create(sim, fundamental, market, rand,
+          spec.get(FundamentalObservationVariance.class), priceVarEst);
     } else {
       this.fundamental = ((GaussableView) fundamental.getView(sim)).addNoise(rand,
           spec.get(FundamentalObservationVariance.class));
@@ -51,10 +59,6 @@ public class ZIBenchmarkAgent extends ASimpleAgent {
     this.benchmarkDir = spec.get(BenchmarkDir.class);
     
     this.shadingDistribution = Uniform.closed(spec.get(Rmin.class), spec.get(Rmax.class));
-    double priceVarEst = spec.get(PriceVarEst.class);
-    if (Double.isFinite(priceVarEst)) {
-      market.addTransactionObserver(MarkovObserver.create(this.fundamental, priceVarEst));
-    }
   }
 
   public static ZIBenchmarkAgent createFromSpec(Sim sim, Fundamental fundamental,
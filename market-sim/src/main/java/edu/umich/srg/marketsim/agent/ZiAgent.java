@@ -5,17 +5,14 @@ import static java.math.RoundingMode.CEILING;
 import static java.math.RoundingMode.FLOOR;
 
 import com.google.common.base.Supplier;
-import com.google.common.collect.ImmutableList;
 import com.google.common.math.DoubleMath;
 import com.google.gson.JsonObject;
 
 import edu.umich.srg.distributions.Distribution;
-import edu.umich.srg.distributions.Geometric;
 import edu.umich.srg.distributions.Uniform;
 import edu.umich.srg.distributions.Uniform.IntUniform;
 import edu.umich.srg.egtaonline.spec.Spec;
 import edu.umich.srg.fourheap.OrderType;
-import edu.umich.srg.marketsim.Keys.ArrivalRate;
 import edu.umich.srg.marketsim.Keys.FundamentalObservationVariance;
 import edu.umich.srg.marketsim.Keys.MaxPosition;
 import edu.umich.srg.marketsim.Keys.PrivateValueVar;
@@ -61,7 +58,7 @@ public class ZiAgent implements Agent {
   private final int maxPosition;
   private final SurplusThreshold threshold;
   private final PrivateValue privateValue;
-  private final Geometric arrivalDistribution;
+  private final ArrivalSchedule arrivals;
   private final Supplier<Set<OrderType>> side;
   private final int ordersPerSide;
   private final IntUniform shadingDistribution;
@@ -80,7 +77,7 @@ public class ZiAgent implements Agent {
     this.threshold = SurplusThreshold.create(spec.get(Thresh.class));
     this.privateValue = PrivateValues.gaussianPrivateValue(rand, spec.get(MaxPosition.class),
         spec.get(PrivateValueVar.class));
-    this.arrivalDistribution = Geometric.withSuccessProbability(spec.get(ArrivalRate.class));
+    this.arrivals = ArrivalSchedule.fromSpec(spec, rand);
     this.shadingDistribution = Uniform.closed(spec.get(Rmin.class), spec.get(Rmax.class));
     this.fundamental =
         spec.get(FundamentalObservationVariance.class).isInfinite() ? fundamental.getView(sim)
@@ -109,11 +106,13 @@ public class ZiAgent implements Agent {
   }
 
   private void scheduleNextArrival() {
-    sim.scheduleIn(TimeStamp.of(1 + arrivalDistribution.sample(rand)), this::strategy);
+    if (arrivals.hasNext()) {
+      sim.scheduleIn(TimeStamp.of(arrivals.next() - sim.getCurrentTime().get()), this::strategy);
+    }
   }
 
   protected void strategy() {
-    ImmutableList.copyOf(market.getActiveOrders().entrySet()).forEach(market::withdrawOrder);
+    market.withdrawOrders(market.getActiveOrders().elementSet());
 
     Set<OrderType> sides = side.get();
     double finalEstimate = fundamental.getEstimatedFinalFundamental();
@@ -0,0 +1,355 @@
+package edu.umich.srg.marketsim.agent;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static edu.umich.srg.fourheap.OrderType.BUY;
+import static java.math.RoundingMode.CEILING;
+import static java.math.RoundingMode.FLOOR;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.math.DoubleMath;
+import com.google.gson.JsonObject;
+
+import edu.umich.srg.distributions.Distribution;
+import edu.umich.srg.distributions.Geometric;
+import edu.umich.srg.distributions.Uniform;
+import edu.umich.srg.distributions.Uniform.IntUniform;
+import edu.umich.srg.egtaonline.spec.Spec;
+import edu.umich.srg.fourheap.OrderType;
+import edu.umich.srg.marketsim.Keys.ArrivalRate;
+import edu.umich.srg.marketsim.Keys.FundamentalObservationVariance;
+import edu.umich.srg.marketsim.Keys.MaxPosition;
+import edu.umich.srg.marketsim.Keys.PrivateValueVar;
+import edu.umich.srg.marketsim.Keys.Rmax;
+import edu.umich.srg.marketsim.Keys.Rmin;
+import edu.umich.srg.marketsim.Keys.Sides;
+import edu.umich.srg.marketsim.Keys.SimLength;
+import edu.umich.srg.marketsim.Keys.SubmitDepth;
+import edu.umich.srg.marketsim.Keys.Thresh;
+import edu.umich.srg.marketsim.Price;
+import edu.umich.srg.marketsim.Sim;
+import edu.umich.srg.marketsim.TimeStamp;
+import edu.umich.srg.marketsim.fundamental.Fundamental;
+import edu.umich.srg.marketsim.fundamental.Fundamental.FundamentalView;
+import edu.umich.srg.marketsim.fundamental.GaussianFundamentalView.GaussableView;
+import edu.umich.srg.marketsim.market.Market;
+import edu.umich.srg.marketsim.market.Market.MarketView;
+import edu.umich.srg.marketsim.observer.GetQuoteObserver;
+import edu.umich.srg.marketsim.privatevalue.PrivateValues;
+import edu.umich.srg.marketsim.strategy.SurplusThreshold;
+import edu.umich.srg.util.RandomSource;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A population of zero intelligence agents with the same spec in one market. Each member behaves
+ * like a {@link ZiAgent}, but the members' private values, bookkeeping, and next arrival times are
+ * kept in primitive arrays indexed by member instead of in an object per agent, and the population
+ * schedules a single event for every member that arrives at a time instead of one per member. This
+ * makes large background populations cheaper to create and simulate. Members that arrive at the
+ * same time act consecutively in a random order. Holdings are still tracked by each member's view
+ * of the market.
+ */
+public class ZiAgentPopulation implements AgentPopulation {
+
+  private static final Distribution<OrderType> randomOrder = Uniform.over(OrderType.values());
+  private static final Set<OrderType> allOrders = EnumSet.allOf(OrderType.class);
+
+  private final Sim sim;
+  private final Random rand;
+  private final Random arrivalRand;
+  private final GetQuoteObserver quoteInfo;
+  private final int maxPosition;
+  private final SurplusThreshold threshold;
+  private final Supplier<Set<OrderType>> side;
+  private final int ordersPerSide;
+  private final IntUniform shadingDistribution;
+  private final Geometric gaps;
+  private final boolean arrives;
+  private final long horizon;
+  private final List<Agent> members;
+
+  // Member state, indexed by member, or by member * 2 * maxPosition for private values
+  private final MarketView[] views;
+  private final FundamentalView[] fundamentals;
+  private final double[] privateValues;
+  private final long[] nextArrival;
+  private final long[] shadingCounts;
+  private final double[] shadingSums;
+
+  // Members with a next arrival, as a min heap by time
+  private final int[] heap;
+  private int heapSize;
+  private final int[] arriving;
+  private boolean initialized;
+
+  private ZiAgentPopulation(Sim sim, Market market, Fundamental fundamental, Spec spec, int size,
+      Random rand) {
+    checkArgument(size >= 0, "Population size must be nonnegative (%s)", size);
+    double arrivalRate = spec.get(ArrivalRate.class);
+    checkArgument(0 <= arrivalRate && arrivalRate <= 1, "Arrival rate must be a probability (%s)",
+        arrivalRate);
+
+    this.sim = sim;
+    this.rand = rand;
+    this.arrivalRand = RandomSource.split(rand);
+    this.quoteInfo = market.addQuoteObserver(GetQuoteObserver.create(market));
+    this.maxPosition = spec.get(MaxPosition.class);
+    this.threshold = SurplusThreshold.create(spec.get(Thresh.class));
+    this.shadingDistribution = Uniform.closed(spec.get(Rmin.class), spec.get(Rmax.class));
+    this.gaps = Geometric.withSuccessProbability(arrivalRate);
+    this.arrives = arrivalRate > 0;
+    this.horizon = spec.contains(SimLength.class) ? spec.get(SimLength.class) : Long.MAX_VALUE;
+
+    switch (spec.get(Sides.class)) {
+      case RANDOM:
+        this.side = () -> Collections.singleton(randomOrder.sample(rand));
+        break;
+      case BOTH:
+        this.side = () -> allOrders;
+        break;
+      default:
+        throw new IllegalArgumentException("Sides was null");
+    }
+    this.ordersPerSide = spec.get(SubmitDepth.class);
+
+    ImmutableList.Builder<Agent> builder = ImmutableList.builder();
+    for (int i = 0; i < size; ++i) {
+      builder.add(new Member(i, rand.nextInt()));
+    }
+    this.members = builder.build();
+
+    this.views = new MarketView[size];
+    for (int i = 0; i < size; ++i) {
+      views[i] = market.getView(members.get(i), TimeStamp.ZERO);
+    }
+
+    // Without noise every member sees the same thing, so they can share one view
+    double observationVariance = spec.get(FundamentalObservationVariance.class);
+    this.fundamentals = new FundamentalView[size];
+    if (observationVariance == Double.POSITIVE_INFINITY) {
+      Arrays.fill(fundamentals, fundamental.getView(sim));
+    } else {
+      for (int i = 0; i < size; ++i) {
+        fundamentals[i] =
+            ((GaussableView) fundamental.getView(sim)).addNoise(rand, observationVariance);
+      }
+    }
+
+    // Each member's row of private values makes the same draws as a ZiAgent's private value
+    double privateValueVar = spec.get(PrivateValueVar.class);
+    this.privateValues = new double[size * 2 * maxPosition];
+    for (int i = 0; i < size; ++i) {
+      PrivateValues.gaussianMarginalBuys(rand, maxPosition, privateValueVar, privateValues,
+          i * 2 * maxPosition);
+    }
+
+    this.nextArrival = new long[size];
+    this.shadingCounts = new long[size];
+    this.shadingSums = new double[size];
+    this.heap = new int[size];
+    this.heapSize = 0;
+    this.arriving = new int[size];
+    this.initialized = false;
+  }
+
+  public static ZiAgentPopulation createFromSpec(Sim sim, Fundamental fundamental,
+      Collection<Market> markets, Market market, Spec spec, int size, Random rand) {
+    return new ZiAgentPopulation(sim, market, fundamental, spec, size, rand);
+  }
+
+  @Override
+  public List<Agent> getAgents() {
+    return members;
+  }
+
+  /** Draws every member's first arrival. Every member calls this, but only the first call acts. */
+  private void initialize() {
+    if (initialized) {
+      return;
+    }
+    initialized = true;
+    if (!arrives) {
+      return;
+    }
+    long[] firstGaps = new long[members.size()];
+    gaps.sample(arrivalRand, firstGaps, firstGaps.length);
+    for (int member = 0; member < firstGaps.length; ++member) {
+      scheduleArrival(member, 0, firstGaps[member]);
+    }
+    scheduleNextArrival();
+  }
+
+  /** Every member whose next arrival is now acts, in a random order. */
+  private void arrive() {
+    long now = sim.getCurrentTime().get();
+    int numArriving = 0;
+    while (heapSize > 0 && nextArrival[heap[0]] <= now) {
+      arriving[numArriving++] = pop();
+    }
+    for (int i = numArriving - 1; i > 0; --i) {
+      int swap = rand.nextInt(i + 1);
+      int member = arriving[i];
+      arriving[i] = arriving[swap];
+      arriving[swap] = member;
+    }
+    for (int i = 0; i < numArriving; ++i) {
+      strategy(arriving[i]);
+    }
+    for (int i = 0; i < numArriving; ++i) {
+      scheduleArrival(arriving[i], now, gaps.sample(arrivalRand));
+    }
+    scheduleNextArrival();
+  }
+
+  private void scheduleArrival(int member, long now, long gap) {
+    // The arrival would be after the horizon, written to avoid overflow
+    if (gap < horizon - now) {
+      nextArrival[member] = now + 1 + gap;
+      push(member);
+    }
+  }
+
+  private void scheduleNextArrival() {
+    if (heapSize > 0) {
+      sim.scheduleIn(TimeStamp.of(nextArrival[heap[0]] - sim.getCurrentTime().get()),
+          this::arrive);
+    }
+  }
+
+  private void strategy(int member) {
+    MarketView market = views[member];
+    market.withdrawOrders(market.getActiveOrders().elementSet());
+
+    Set<OrderType> sides = side.get();
+    double finalEstimate = fundamentals[member].getEstimatedFinalFundamental();
+    double demandedSurplus = shadingDistribution.sample(rand);
+
+    for (OrderType type : sides) {
+      for (int num = 0; num < ordersPerSide; num++) {
+        if (Math.abs(market.getHoldings() + (num + 1) * type.sign()) <= maxPosition) {
+
+          double privateBenefit = type.sign()
+              * valueForExchange(member, market.getHoldings() + num * type.sign(), type);
+          double estimatedValue = finalEstimate + privateBenefit;
+
+          double toSubmit =
+              threshold.shadePrice(type, quoteInfo.getQuote(), estimatedValue, demandedSurplus);
+          long rounded = DoubleMath.roundToLong(toSubmit, type == BUY ? FLOOR : CEILING);
+          shadingCounts[member]++;
+          shadingSums[member] += Math.abs(estimatedValue - toSubmit);
+
+          if (rounded > 0) {
+            market.submitOrder(type, Price.of(rounded), 1);
+          }
+        }
+      }
+    }
+  }
+
+  private double valueForExchange(int member, int position, OrderType type) {
+    return PrivateValues.valueForExchange(privateValues, member * 2 * maxPosition, maxPosition,
+        position, type);
+  }
+
+  // -------------------------
+  // Heap of arriving members
+  // -------------------------
+
+  private boolean before(int first, int second) {
+    return nextArrival[first] < nextArrival[second]
+        || (nextArrival[first] == nextArrival[second] && first < second);
+  }
+
+  private void push(int member) {
+    int pos = heapSize++;
+    while (pos > 0 && before(member, heap[(pos - 1) / 2])) {
+      heap[pos] = heap[(pos - 1) / 2];
+      pos = (pos - 1) / 2;
+    }
+    heap[pos] = member;
+  }
+
+  private int pop() {
+    int top = heap[0];
+    int last = heap[--heapSize];
+    int pos = 0;
+    while (2 * pos + 1 < heapSize) {
+      int child = 2 * pos + 1;
+      if (child + 1 < heapSize && before(heap[child + 1], heap[child])) {
+        child++;
+      }
+      if (!before(heap[child], last)) {
+        break;
+      }
+      heap[pos] = heap[child];
+      pos = child;
+    }
+    heap[pos] = last;
+    return top;
+  }
+
+  /** A member of the population, which is a zero intelligence agent in every other way. */
+  private class Member implements Agent {
+
+    private final int index;
+    private final int id;
+
+    private Member(int index, int id) {
+      this.index = index;
+      this.id = id;
+    }
+
+    @Override
+    public void initilaize() {
+      initialize();
+    }
+
+    @Override
+    public double payoffForExchange(int position, OrderType type) {
+      return valueForExchange(index, position, type);
+    }
+
+    @Override
+    public JsonObject getFeatures() {
+      JsonObject feats = Agent.super.getFeatures();
+      long count = shadingCounts[index];
+      feats.addProperty("count_shading", count);
+      feats.addProperty("mean_shading", count == 0 ? 0.0 : shadingSums[index] / count);
+      return feats;
+    }
+
+    @Override
+    public int getBenchmarkDir() {
+      return 0;
+    }
+
+    @Override
+    public double getContractHoldings() {
+      return 0;
+    }
+
+    @Override
+    public double getRunningPayoff() {
+      return -1;
+    }
+
+    @Override
+    public int getId() {
+      return id;
+    }
+
+    @Override
+    public String toString() {
+      return "ZI " + Integer.toUnsignedString(id, 36).toUpperCase();
+    }
+
+  }
+
+}
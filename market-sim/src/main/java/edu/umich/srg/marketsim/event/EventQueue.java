@@ -81,6 +81,16 @@ public class EventQueue {
     pendingScheduledActivities.put(TimeStamp.of(currentTime.get() + delay.get()), act);
   }
 
+  /**
+   * Schedule an activity to happen at an absolute time that is not before the current time. This is
+   * used to deliver activities scheduled by another event queue, where a relative delay would be
+   * measured from the wrong clock.
+   */
+  public void scheduleActivityAt(TimeStamp time, Runnable act) {
+    checkArgument(time.compareTo(currentTime) >= 0, "Can't schedule activities in the past");
+    pendingScheduledActivities.put(time, act);
+  }
+
   public TimeStamp getCurrentTime() {
     return currentTime;
   }
@@ -6,6 +6,7 @@ import com.google.common.primitives.Ints;
 
 import edu.umich.srg.marketsim.Sim;
 import edu.umich.srg.marketsim.fundamental.GaussianFundamentalView.GaussableView;
+import edu.umich.srg.marketsim.fundamental.GaussianFundamentalView.SharedObservations;
 
 import java.io.Serializable;
 import java.util.Collections;
@@ -44,7 +45,8 @@ public class ConstantFundamental implements Fundamental, Serializable {
     return view;
   }
 
-  private class ConstantView implements GaussableView, GaussianFundamentalView {
+  private class ConstantView
+      implements GaussableView, GaussianFundamentalView, SharedObservations {
 
     @Override
     public double getEstimatedFinalFundamental() {
@@ -54,11 +56,19 @@ public class ConstantFundamental implements Fundamental, Serializable {
     @Override
     public void addObservation(double observation, double variance, int quantity) {}
 
+    @Override
+    public void addObservation(double observation, int quantity) {}
+
     @Override
     public GaussianFundamentalView addNoise(Random rand, double variance) {
       return this;
     }
 
+    @Override
+    public SharedObservations shareObservations(double variance) {
+      return this;
+    }
+
   }
 
   private static final long serialVersionUID = 1;
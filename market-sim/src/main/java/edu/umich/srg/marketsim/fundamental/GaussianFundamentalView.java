@@ -12,6 +12,24 @@ public interface GaussianFundamentalView extends FundamentalView {
 
     GaussianFundamentalView addNoise(Random rand, double variance);
 
+    /** Observations with variance that can be shared by many views. */
+    SharedObservations shareObservations(double variance);
+
+  }
+
+  /**
+   * Observations of the fundamental, e.g. transaction prices, that every view created from this
+   * sees. Each observation only updates one shared estimate, no matter how many views there are,
+   * and views only keep their own estimate once they make a private observation, which then catches
+   * up on the shared observations since its last one.
+   */
+  interface SharedObservations {
+
+    void addObservation(double observation, int quantity);
+
+    /** A view that also sees the shared observations, like GaussableView.addNoise. */
+    GaussianFundamentalView addNoise(Random rand, double variance);
+
   }
 
 }
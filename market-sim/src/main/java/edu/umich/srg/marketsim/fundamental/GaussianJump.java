@@ -76,7 +76,7 @@ public class GaussianJump implements Fundamental, Serializable {
   }
 
   @Override
-  public double getValueAt(long time) {
+  public synchronized double getValueAt(long time) {
     checkArgument(time <= fundamental.lastEntry().getKey(), "Can't ask for time beyond final time");
 
     Entry<Long, FundObs> before = fundamental.floorEntry(time);
@@ -174,7 +174,7 @@ public class GaussianJump implements Fundamental, Serializable {
   }
 
   @Override
-  public FundamentalView getView(Sim sim) {
+  public synchronized FundamentalView getView(Sim sim) {
     return cachedViews.computeIfAbsent(sim, GaussianJumpView::new);
   }
 
@@ -10,10 +10,12 @@ import com.google.common.primitives.Ints;
 import edu.umich.srg.distributions.Gaussian;
 import edu.umich.srg.marketsim.Sim;
 import edu.umich.srg.marketsim.fundamental.GaussianFundamentalView.GaussableView;
+import edu.umich.srg.marketsim.fundamental.GaussianFundamentalView.SharedObservations;
 import edu.umich.srg.util.PositionalSeed;
 
 import java.io.Serializable;
 import java.util.AbstractMap;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -31,7 +33,8 @@ import java.util.TreeMap;
  * It is also randomly stable, that is, two fundamentals with the same random generator will produce
  * the same value at every point independent of query order. This costs a logarithmic factor to do,
  * but the stability is generally worth it, and the log factor is tiny in terms of actual time
- * costs. More detail on the math for sampling from the fundamental is in the docs folder.
+ * costs. More detail on the math for sampling from the fundamental is in the docs folder. Queries
+ * are synchronized so that the partitions of a parallel simulation can share a fundamental.
  */
 
 public abstract class GaussianMeanReverting implements Fundamental, Serializable {
@@ -43,29 +46,42 @@ public abstract class GaussianMeanReverting implements Fundamental, Serializable
   /** Create a standard Gaussian mean reverting fundamental stochastic process. */
   public static Fundamental create(Random rand, long finalTime, double mean, double meanReversion,
       double shockVar) {
+    return create(rand, finalTime, mean, meanReversion, shockVar, false);
+  }
+
+  /**
+   * Create a Gaussian mean reverting fundamental that can be antithetic. An antithetic fundamental
+   * negates every gaussian draw, so with the same random generator it's the reflection of the
+   * standard fundamental about the mean, and the pair have perfectly negatively correlated shocks.
+   */
+  public static Fundamental create(Random rand, long finalTime, double mean, double meanReversion,
+      double shockVar, boolean antithetic) {
+    double shockSign = antithetic ? -1 : 1;
     if (shockVar == 0) {
       return ConstantFundamental.create(mean, finalTime);
     } else if (meanReversion == 0) {
-      return new RandomWalk(rand, finalTime, mean, shockVar);
+      return new RandomWalk(rand, finalTime, mean, shockVar, shockSign);
     } else {
-      return new MeanReverting(rand, finalTime, mean, shockVar, meanReversion);
+      return new MeanReverting(rand, finalTime, mean, shockVar, meanReversion, shockSign);
     }
   }
 
   protected final NavigableMap<Long, Double> fundamental;
   protected final long finalTime;
   protected final double initial;
+  protected final double shockSign;
 
-  private GaussianMeanReverting(long finalTime, double start, double end) {
+  private GaussianMeanReverting(long finalTime, double start, double end, double shockSign) {
     this.fundamental = new TreeMap<>();
     this.finalTime = finalTime;
     this.initial = start;
+    this.shockSign = shockSign;
     fundamental.put(0L, start);
     fundamental.put(finalTime, end);
   }
 
   @Override
-  public double getValueAt(long time) {
+  public synchronized double getValueAt(long time) {
     checkArgument(time <= fundamental.lastEntry().getKey(), "Can't ask for time beyond final time");
 
     Entry<Long, Double> before = fundamental.floorEntry(time);
@@ -127,6 +143,11 @@ public abstract class GaussianMeanReverting implements Fundamental, Serializable
   protected abstract double getIntermediateValue(long time, double priceBefore, long timeBefore,
       double priceAfter, long timeAfter);
 
+  /** Sample a gaussian whose standard draw is negated if antithetic. */
+  private static double sample(Random rand, double mean, double variance, double shockSign) {
+    return rand.nextGaussian() * shockSign * Math.sqrt(variance) + mean;
+  }
+
   private static class RandomWalk extends GaussianMeanReverting implements Serializable {
 
     private final PositionalSeed seed;
@@ -134,8 +155,9 @@ public abstract class GaussianMeanReverting implements Fundamental, Serializable
     private final double shockVar;
     private final Map<Sim, GaussableView> cachedViews;
 
-    private RandomWalk(Random rand, long finalTime, double mean, double shockVar) {
-      super(finalTime, mean, Gaussian.withMeanVariance(mean, shockVar * finalTime).sample(rand));
+    private RandomWalk(Random rand, long finalTime, double mean, double shockVar,
+        double shockSign) {
+      super(finalTime, mean, sample(rand, mean, shockVar * finalTime, shockSign), shockSign);
       this.seed = PositionalSeed.with(rand.nextLong());
       this.shockVar = shockVar;
       this.rand = rand;
@@ -146,14 +168,14 @@ public abstract class GaussianMeanReverting implements Fundamental, Serializable
     public double getIntermediateValue(long time, double priceBefore, long timeBefore,
         double priceAfter, long timeAfter) {
       rand.setSeed(seed.getSeed(time));
-      return Gaussian.withMeanVariance(
+      return sample(rand,
           (priceBefore * timeAfter + priceAfter * timeBefore) / (timeBefore + timeAfter),
-          timeBefore * timeAfter / (double) (timeBefore + timeAfter) * shockVar).sample(rand);
+          timeBefore * timeAfter / (double) (timeBefore + timeAfter) * shockVar, shockSign);
     }
 
 
     @Override
-    public GaussableView getView(Sim sim) {
+    public synchronized GaussableView getView(Sim sim) {
       return cachedViews.computeIfAbsent(sim, RandomWalkView::new);
     }
 
@@ -198,8 +220,9 @@ public abstract class GaussianMeanReverting implements Fundamental, Serializable
     private final Map<Sim, FundamentalView> cachedViews;
 
     private MeanReverting(Random rand, long finalTime, double mean, double shockVar,
-        double meanReversion) {
-      super(finalTime, mean, getFinalValue(rand, mean, finalTime, 1 - meanReversion, shockVar));
+        double meanReversion, double shockSign) {
+      super(finalTime, mean,
+          getFinalValue(rand, mean, finalTime, 1 - meanReversion, shockVar, shockSign), shockSign);
       this.seed = PositionalSeed.with(rand.nextLong());
       this.mean = mean;
       this.shockVar = shockVar;
@@ -209,11 +232,11 @@ public abstract class GaussianMeanReverting implements Fundamental, Serializable
     }
 
     private static double getFinalValue(Random rand, double mean, long finalTime, double kappac,
-        double shockVar) {
+        double shockVar, double shockSign) {
       double kappacToPower = Math.pow(kappac, finalTime);
       double stepMean = (1 - kappacToPower) * mean + kappacToPower * mean;
       double stepVar = (1 - kappacToPower * kappacToPower) / (1 - kappac * kappac);
-      return Gaussian.withMeanVariance(stepMean, shockVar * stepVar).sample(rand);
+      return sample(rand, stepMean, shockVar * stepVar, shockSign);
     }
 
     @Override
@@ -230,11 +253,11 @@ public abstract class GaussianMeanReverting implements Fundamental, Serializable
       double stepVariance = (kappacPowerBefore * kappacPowerBefore - 1)
           * (kappacPowerAfter * kappacPowerAfter - 1) / ((kappac * kappac - 1)
               * (kappacPowerBefore * kappacPowerBefore * kappacPowerAfter * kappacPowerAfter - 1));
-      return Gaussian.withMeanVariance(stepMean, stepVariance * shockVar).sample(rand);
+      return sample(rand, stepMean, stepVariance * shockVar, shockSign);
     }
 
     @Override
-    public FundamentalView getView(Sim sim) {
+    public synchronized FundamentalView getView(Sim sim) {
       return cachedViews.computeIfAbsent(sim, MeanRevertingView::new);
     }
 
@@ -297,6 +320,11 @@ public abstract class GaussianMeanReverting implements Fundamental, Serializable
       }
     }
 
+    @Override
+    public SharedObservations shareObservations(double variance) {
+      return new SharedEstimator(this, generateEstimator(), variance);
+    }
+
     protected abstract double finalFromMean(long time, double current);
 
     protected abstract GaussianEstimator generateEstimator();
@@ -352,6 +380,130 @@ public abstract class GaussianMeanReverting implements Fundamental, Serializable
 
   }
 
+  /**
+   * Updates one estimator with every shared observation, and keeps a log of them so that views with
+   * private observations can apply them in order.
+   */
+  private class SharedEstimator implements SharedObservations {
+
+    private final GaussianMeanRevertingView view;
+    private final GaussianEstimator estimator;
+    private final double variance;
+
+    // Log of observations
+    private long[] times;
+    private double[] observations;
+    private int[] quantities;
+    private int size;
+
+    private SharedEstimator(GaussianMeanRevertingView view, GaussianEstimator estimator,
+        double variance) {
+      this.view = view;
+      this.estimator = estimator;
+      this.variance = variance;
+      this.times = new long[16];
+      this.observations = new double[16];
+      this.quantities = new int[16];
+      this.size = 0;
+    }
+
+    @Override
+    public void addObservation(double observation, int quantity) {
+      long time = view.sim.getCurrentTime().get();
+      estimator.advanceTime(time);
+      estimator.observationUpdate(observation, variance, quantity);
+
+      if (size == times.length) {
+        times = Arrays.copyOf(times, 2 * size);
+        observations = Arrays.copyOf(observations, 2 * size);
+        quantities = Arrays.copyOf(quantities, 2 * size);
+      }
+      times[size] = time;
+      observations[size] = observation;
+      quantities[size] = quantity;
+      size++;
+    }
+
+    @Override
+    public GaussianFundamentalView addNoise(Random rand, double variance) {
+      return new SharedNoisyView(this, rand, variance);
+    }
+
+  }
+
+  /**
+   * A noisy view whose estimate also includes a shared estimator's observations. Until it has a
+   * private observation the shared estimate is its estimate. After that it keeps its own estimate,
+   * and applies the shared observations it hasn't seen before each private one.
+   */
+  private class SharedNoisyView implements GaussianFundamentalView {
+
+    private final SharedEstimator shared;
+    private final Random rand;
+    private final Gaussian dist; // Null if there are no noisy observations
+    private GaussianEstimator estimator; // Null until there's a private observation
+    private int seen;
+
+    private SharedNoisyView(SharedEstimator shared, Random rand, double variance) {
+      this.shared = shared;
+      this.rand = rand;
+      this.dist = Double.isInfinite(variance) ? null : Gaussian.withMeanVariance(0, variance);
+      this.estimator = null;
+      this.seen = 0;
+    }
+
+    @Override
+    public double getEstimatedFinalFundamental() {
+      if (dist == null && estimator == null) {
+        return shared.view.finalFromMean(shared.estimator.lastUpdate,
+            shared.estimator.posteriorMean);
+      }
+      long time = shared.view.sim.getCurrentTime().get();
+      if (dist != null && dist.getVariance() == 0) {
+        // The observation replaces the estimate, so there's nothing to catch up on
+        privateEstimator().advanceTime(time);
+        seen = shared.size;
+      } else {
+        catchUp();
+        estimator.advanceTime(time);
+      }
+      if (dist != null) {
+        double obs = getValueAt(time) + dist.sample(rand);
+        estimator.observationUpdate(obs, dist.getVariance(), 1);
+      }
+      return shared.view.finalFromMean(estimator.lastUpdate, estimator.posteriorMean);
+    }
+
+    @Override
+    public void addObservation(double observation, double variance, int quantity) {
+      catchUp();
+      estimator.advanceTime(shared.view.sim.getCurrentTime().get());
+      estimator.observationUpdate(observation, variance, quantity);
+    }
+
+    /** Apply every shared observation that this view hasn't seen to its own estimate. */
+    private void catchUp() {
+      GaussianEstimator own = privateEstimator();
+      for (; seen < shared.size; ++seen) {
+        own.advanceTime(shared.times[seen]);
+        own.observationUpdate(shared.observations[seen], shared.variance, shared.quantities[seen]);
+      }
+    }
+
+    /** The view's own estimate, which starts as a copy of the shared one. */
+    private GaussianEstimator privateEstimator() {
+      if (estimator == null) {
+        estimator = shared.view.generateEstimator();
+        estimator.lastUpdate = shared.estimator.lastUpdate;
+        estimator.posteriorMean = shared.estimator.posteriorMean;
+        estimator.posteriorVariance = shared.estimator.posteriorVariance;
+        seen = shared.size;
+      }
+      return estimator;
+    }
+
+  }
+
   private abstract class GaussianEstimator {
     protected long lastUpdate;
     protected double posteriorMean;
@@ -0,0 +1,42 @@
+package edu.umich.srg.marketsim.itch;
+
+import edu.umich.srg.fourheap.OrderType;
+
+/**
+ * Callbacks for the order messages of an ITCH 4 feed. All arguments are primitives decoded directly
+ * from the underlying buffer, so a handler that doesn't retain them never causes an allocation.
+ * Times are nanoseconds since midnight, stocks are the eight ascii bytes of the symbol packed into a
+ * long (see {@link ItchReader#stock(String)}), and prices are the raw ITCH fixed point values with
+ * four implied decimal places. Every method defaults to doing nothing so handlers only need to
+ * implement the messages they care about.
+ */
+public interface ItchHandler {
+
+  /** An add order message, either 'A' or the attributed 'F'. */
+  default void addOrder(long time, long reference, OrderType type, int shares, long stock,
+      long price) {}
+
+  /**
+   * An order executed message. Execution with price messages ('C') are reported with the price of
+   * the execution, otherwise price is negative and the execution happened at the order's price.
+   */
+  default void orderExecuted(long time, long reference, int shares, long match, long price) {}
+
+  /** A partial cancellation of shares from an existing order. */
+  default void orderCancelled(long time, long reference, int shares) {}
+
+  /** The removal of all remaining shares of an existing order. */
+  default void orderDeleted(long time, long reference) {}
+
+  /**
+   * The replacement of an existing order with a new order on the same side. The original order is
+   * removed and the new order loses its time priority.
+   */
+  default void orderReplaced(long time, long oldReference, long newReference, int shares,
+      long price) {}
+
+  /** A trade against a non displayed order. */
+  default void trade(long time, long reference, OrderType type, int shares, long stock,
+      long price, long match) {}
+
+}
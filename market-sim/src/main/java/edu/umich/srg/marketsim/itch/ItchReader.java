@@ -0,0 +1,221 @@
+package edu.umich.srg.marketsim.itch;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import edu.umich.srg.fourheap.OrderType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a binary ITCH 4 file in the same framing as the old nasdaq_parsing tool, a one byte message
+ * type immediately followed by the big endian message body. The file is memory mapped and every
+ * message is decoded in place from the mapped buffer, so reading doesn't copy or allocate per
+ * message. Files larger than a single mapping are read through a sliding window. Order messages are
+ * passed to an {@link ItchHandler}, system, directory, and other administrative messages are
+ * skipped, and like the original tool, unknown type bytes are skipped one at a time.
+ */
+public class ItchReader implements Closeable {
+
+  private static final long nanosPerSecond = 1000000000L;
+  /** The largest window mapped at once, rounded down to a page boundary. */
+  private static final long maxWindow = Integer.MAX_VALUE & ~0xFFF;
+  /** The longest message body, a net order imbalance message. */
+  private static final int maxBodyLength = 43;
+
+  private final FileChannel channel;
+  private final long fileSize;
+  private long windowStart;
+  private ByteBuffer buffer;
+  private long seconds;
+
+  private ItchReader(FileChannel channel, long fileSize, ByteBuffer buffer) {
+    this.channel = channel;
+    this.fileSize = fileSize;
+    this.windowStart = 0;
+    this.buffer = buffer.order(ByteOrder.BIG_ENDIAN);
+    this.seconds = 0;
+  }
+
+  /** Memory map an ITCH file for reading. */
+  public static ItchReader open(Path file) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    long size = channel.size();
+    return new ItchReader(channel, size,
+        channel.map(MapMode.READ_ONLY, 0, Math.min(size, maxWindow)));
+  }
+
+  /** Read ITCH messages from the remaining bytes of an existing buffer. */
+  public static ItchReader wrap(ByteBuffer buffer) {
+    return new ItchReader(null, buffer.remaining(), buffer.slice());
+  }
+
+  /** Decode messages until the end of the file, passing order messages to handler. */
+  public void readAll(ItchHandler handler) throws IOException {
+    while (next(handler)) {
+    }
+  }
+
+  /**
+   * Decode the next message passing it to handler if it's an order message. Returns false if there
+   * are no more messages. A truncated trailing message is treated as the end of the file.
+   */
+  public boolean next(ItchHandler handler) throws IOException {
+    ensureWindow();
+    if (!buffer.hasRemaining()) {
+      return false;
+    }
+    int start = buffer.position();
+    byte type = buffer.get();
+    int length = bodyLength(type);
+    if (length < 0) {
+      return true; // Unknown byte, skip it
+    } else if (buffer.remaining() < length) {
+      buffer.position(buffer.limit());
+      return false;
+    }
+
+    switch (type) {
+      case 'T':
+        seconds = Integer.toUnsignedLong(buffer.getInt());
+        break;
+      case 'A':
+      case 'F':
+        handler.addOrder(time(), buffer.getLong(), side(buffer.get()), buffer.getInt(),
+            buffer.getLong(), Integer.toUnsignedLong(buffer.getInt()));
+        break;
+      case 'E':
+        handler.orderExecuted(time(), buffer.getLong(), buffer.getInt(), buffer.getLong(), -1);
+        break;
+      case 'C': {
+        long time = time();
+        long reference = buffer.getLong();
+        int shares = buffer.getInt();
+        long match = buffer.getLong();
+        buffer.get(); // Printable
+        handler.orderExecuted(time, reference, shares, match,
+            Integer.toUnsignedLong(buffer.getInt()));
+        break;
+      }
+      case 'X':
+        handler.orderCancelled(time(), buffer.getLong(), buffer.getInt());
+        break;
+      case 'D':
+        handler.orderDeleted(time(), buffer.getLong());
+        break;
+      case 'U':
+        handler.orderReplaced(time(), buffer.getLong(), buffer.getLong(), buffer.getInt(),
+            Integer.toUnsignedLong(buffer.getInt()));
+        break;
+      case 'P':
+        handler.trade(time(), buffer.getLong(), side(buffer.get()), buffer.getInt(),
+            buffer.getLong(), Integer.toUnsignedLong(buffer.getInt()), buffer.getLong());
+        break;
+      default:
+        break; // Non order message
+    }
+    buffer.position(start + 1 + length);
+    return true;
+  }
+
+  /** The seconds since midnight of the last decoded time stamp message. */
+  public long getSeconds() {
+    return seconds;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+    }
+  }
+
+  /** Pack an ascii stock symbol into the long used to identify it in handler callbacks. */
+  public static long stock(String symbol) {
+    checkArgument(symbol.length() <= 8, "symbol longer than 8 characters");
+    byte[] bytes = new byte[8];
+    for (int i = 0; i < bytes.length; ++i) {
+      bytes[i] = i < symbol.length() ? (byte) symbol.charAt(i) : (byte) ' ';
+    }
+    return ByteBuffer.wrap(bytes).getLong();
+  }
+
+  /** The symbol of a packed stock without its space padding. */
+  public static String stockSymbol(long stock) {
+    return new String(ByteBuffer.allocate(8).putLong(stock).array(), StandardCharsets.US_ASCII)
+        .trim();
+  }
+
+  // Nanoseconds are the first four bytes of every order message
+  private long time() {
+    return seconds * nanosPerSecond + Integer.toUnsignedLong(buffer.getInt());
+  }
+
+  private static OrderType side(byte indicator) {
+    return indicator == 'S' ? OrderType.SELL : OrderType.BUY;
+  }
+
+  /** Remap the window if the next message might cross its end. */
+  private void ensureWindow() throws IOException {
+    long position = windowStart + buffer.position();
+    if (channel == null || buffer.remaining() >= maxBodyLength + 1
+        || windowStart + buffer.limit() >= fileSize) {
+      return;
+    }
+    windowStart = position;
+    buffer = channel.map(MapMode.READ_ONLY, position, Math.min(fileSize - position, maxWindow))
+        .order(ByteOrder.BIG_ENDIAN);
+  }
+
+  /** The number of bytes following the type byte, or -1 if the type is unknown. */
+  private static int bodyLength(byte type) {
+    switch (type) {
+      case 'T':
+        return 4;
+      case 'S':
+        return 5;
+      case 'R':
+        return 19;
+      case 'H':
+        return 18;
+      case 'Y':
+        return 13;
+      case 'L':
+        return 19;
+      case 'A':
+        return 29;
+      case 'F':
+        return 33;
+      case 'E':
+        return 24;
+      case 'C':
+        return 29;
+      case 'X':
+        return 16;
+      case 'D':
+        return 12;
+      case 'U':
+        return 28;
+      case 'P':
+        return 37;
+      case 'Q':
+        return 33;
+      case 'B':
+        return 12;
+      case 'I':
+        return maxBodyLength;
+      case 'N':
+        return 13;
+      default:
+        return -1;
+    }
+  }
+
+}
@@ -0,0 +1,91 @@
+package edu.umich.srg.marketsim.itch;
+
+import edu.umich.srg.fourheap.OrderType;
+import edu.umich.srg.marketsim.Price;
+import edu.umich.srg.marketsim.market.Market.MarketView;
+import edu.umich.srg.marketsim.market.OrderRecord;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An ITCH handler that rebuilds the book of a single stock in a simulated market. Added orders are
+ * submitted through the view, and cancellations, deletions, and executions withdraw the affected
+ * shares so that the resting book matches the historical one. Executions are replayed as
+ * withdrawals because the aggressing side of a historical trade never appears as a resting order.
+ * Prices are passed through unchanged, so one simulated price unit is one ten thousandth of a
+ * dollar.
+ */
+public class ItchReplay implements ItchHandler {
+
+  private final MarketView view;
+  private final long stock;
+  private final Map<Long, OrderRecord> orders;
+
+  private ItchReplay(MarketView view, long stock) {
+    this.view = view;
+    this.stock = stock;
+    this.orders = new HashMap<>();
+  }
+
+  public static ItchReplay create(MarketView view, String symbol) {
+    return new ItchReplay(view, ItchReader.stock(symbol));
+  }
+
+  @Override
+  public void addOrder(long time, long reference, OrderType type, int shares, long stock,
+      long price) {
+    if (stock == this.stock) {
+      orders.put(reference, view.submitOrder(type, Price.of(price), shares));
+    }
+  }
+
+  @Override
+  public void orderExecuted(long time, long reference, int shares, long match, long price) {
+    withdraw(reference, shares);
+  }
+
+  @Override
+  public void orderCancelled(long time, long reference, int shares) {
+    withdraw(reference, shares);
+  }
+
+  @Override
+  public void orderDeleted(long time, long reference) {
+    OrderRecord record = orders.remove(reference);
+    if (record != null) {
+      view.withdrawOrder(record);
+    }
+  }
+
+  @Override
+  public void orderReplaced(long time, long oldReference, long newReference, int shares,
+      long price) {
+    OrderRecord record = orders.remove(oldReference);
+    if (record != null) {
+      view.withdrawOrder(record);
+      orders.put(newReference, view.submitOrder(record.getType(), Price.of(price), shares));
+    }
+  }
+
+  /** The number of historical orders currently resting in the simulated book. */
+  public int getNumOrders() {
+    return orders.size();
+  }
+
+  private void withdraw(long reference, int shares) {
+    OrderRecord record = orders.get(reference);
+    if (record == null) {
+      return; // Another stock, or the order already transacted in the simulated market
+    }
+    int remaining = view.getQuantity(record);
+    int quantity = Math.min(shares, remaining);
+    if (quantity > 0) {
+      view.withdrawOrder(record, quantity);
+    }
+    if (shares >= remaining) {
+      orders.remove(reference);
+    }
+  }
+
+}
@@ -1,22 +1,20 @@
 package edu.umich.srg.marketsim.market;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import com.google.common.collect.BiMap;
 import com.google.common.collect.ComparisonChain;
-import com.google.common.collect.HashBiMap;
 import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.Multisets;
-import com.google.common.primitives.Ints;
-import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 
 import edu.umich.srg.fourheap.FourHeap;
 import edu.umich.srg.fourheap.IOrder;
-import edu.umich.srg.fourheap.MatchedOrders;
+import edu.umich.srg.fourheap.MatchConsumer;
 import edu.umich.srg.fourheap.OrderType;
 import edu.umich.srg.fourheap.Selector;
 //import edu.umich.srg.fourheap.FourHeap.OrderQueue;
@@ -29,12 +27,14 @@ import edu.umich.srg.marketsim.fundamental.Fundamental.FundamentalView;
 import edu.umich.srg.marketsim.market.MarketObserver.QuoteObserver;
 import edu.umich.srg.marketsim.market.MarketObserver.TransactionObserver;
 import edu.umich.srg.marketsim.market.Benchmark;
-import edu.umich.srg.marketsim.market.Benchmark.BenchmarkStyle;
+import edu.umich.srg.marketsim.strategy.OrderDesc;
 import edu.umich.srg.util.SummStats;
+import edu.umich.srg.util.TimeWeightedQuantiles;
 
 import java.io.Serializable;
-import java.util.AbstractMap;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -42,20 +42,23 @@ import java.util.List;
 import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
-import java.util.function.Function;
 //import java.util.stream.Stream;
 
 /**
  * Base class for all markets. This class provides almost all market functionality that one should
  * need for creating a market. The only thing an abstract market needs is a pricing rule. That is,
- * given a set of matched orders, what price is assigned to each transaction. By default the only
+ * given a pair of matched orders, what price is assigned to their transaction. By default the only
  * methods that schedules more activities is a clear and a quoteUpdate.
  */
 abstract class AMarket implements Market, Serializable {
 
+  private static final int initialHandles = 16;
+  private static final int initialMessages = 16;
+
   final Sim sim;
   private final FourHeap<Price, AOrder> orderbook;
   private final PricingRule pricing;
+  private final MatchConsumer<Price, AOrder> trades;
   private long sequenceNum;
 
   // Bookkeeping
@@ -63,56 +66,60 @@ abstract class AMarket implements Market, Serializable {
   private final Collection<AMarketView> views;
   private final Set<QuoteObserver> quoteObservers;
   private final Set<TransactionObserver> transactionObservers;
-  private final List<Entry<TimeStamp, Price>> prices;
+  private final TransactionHistory prices;
 
   // Features
   private final SummStats rmsd;
   private double maxDiff;
   private final SummStats transPrice;
-  private long lastSpreadUpdate;
-  private double lastSpread;
-  private final Multiset<Double> spreads;
+  private final TimeWeightedQuantiles spreads;
   private final SummStats executionTimes;
   private long volume;
   private final SummStats priceDiff;
   private final SummStats bidDepth;
   private final SummStats askDepth;
+  private final TimeWeightedQuantiles bidDepths;
+  private final TimeWeightedQuantiles askDepths;
+  private DepthSnapshots depth;
   
   // Benchmark
   private final Benchmark benchType;
   private double benchmark;
   private int num_transactions;
 
-  AMarket(Sim sim, Fundamental fundamental, PricingRule pricing, Selector<AOrder> selector, BenchmarkStyle benchmarkType) {
+  AMarket(Sim sim, Fundamental fundamental, PricingRule pricing, Selector<AOrder> selector,
+      Benchmark benchmark) {
     this.sim = sim;
     this.orderbook = FourHeap.create(selector);
     this.pricing = pricing;
+    this.trades = new Trades();
     this.sequenceNum = Long.MIN_VALUE;
 
     this.fundView = fundamental.getView(sim);
     this.views = new ArrayList<>();
     this.quoteObservers = new LinkedHashSet<>();
     this.transactionObservers = new LinkedHashSet<>();
-    this.prices = new ArrayList<>();
+    this.prices = TransactionHistory.empty();
 
     this.rmsd = SummStats.empty();
     this.maxDiff = 0;
     this.transPrice = SummStats.empty();
-    this.lastSpreadUpdate = 0;
-    this.lastSpread = Double.POSITIVE_INFINITY;
-    this.spreads = HashMultiset.create();
+    this.spreads = TimeWeightedQuantiles.create(Double.POSITIVE_INFINITY);
     this.executionTimes = SummStats.empty();
     this.volume = 0;
     this.priceDiff = SummStats.empty();
     this.bidDepth = SummStats.empty();
     this.askDepth = SummStats.empty();
-    this.benchType = Benchmark.create(benchmarkType);
+    this.bidDepths = TimeWeightedQuantiles.create(0);
+    this.askDepths = TimeWeightedQuantiles.create(0);
+    this.depth = DepthSnapshots.disabled(sim, orderbook);
+    this.benchType = benchmark;
     this.benchmark = 0;
     this.num_transactions = 0;
   }
 
   AOrder submitOrder(AMarketView submitter, OrderType buyOrSell, Price price, int quantity) {
-    AOrder order = new AOrder(submitter, buyOrSell, price, sim.getCurrentTime(), sequenceNum++);
+    AOrder order = createOrder(submitter, buyOrSell, price, submitter.submittingHandle());
     orderbook.add(order, quantity);
     return order;
   }
@@ -121,43 +128,74 @@ abstract class AMarket implements Market, Serializable {
     orderbook.remove(order, quantity);
   }
 
-  @Override
-  public void clear() {
-    Collection<MatchedOrders<Price, AOrder>> matches = orderbook.marketClear();
-    num_transactions = num_transactions + matches.size();
-    for (Entry<MatchedOrders<Price, AOrder>, Price> pricedTrade : pricing.apply(matches)) {
+  /** Create an order to submit as part of a batch, see {@link #replaceOrders}. */
+  AOrder createOrder(AMarketView submitter, OrderType buyOrSell, Price price, int handle) {
+    return new AOrder(submitter, buyOrSell, price, sim.getCurrentTime(), sequenceNum++, handle);
+  }
 
-      MatchedOrders<Price, AOrder> matched = pricedTrade.getKey();
-      Price price = pricedTrade.getValue();
-      
-      // Notify buyer
-      AOrder buy = matched.getBuy();
-      buy.submitter.transacted(buy, price, matched.getQuantity());
+  /**
+   * Withdraw and then submit several orders as a single change to the book. Nothing else happens
+   * until the whole batch is in the book, and then the market reacts once in
+   * {@link #batchApplied}, or in {@link #withdrawalsApplied} if the batch only withdrew orders. An
+   * empty batch doesn't change the book, so the market doesn't react at all.
+   */
+  void replaceOrders(Multiset<AOrder> withdrawals, List<AOrder> submissions, int quantity) {
+    if (withdrawals.isEmpty() && submissions.isEmpty()) {
+      return;
+    }
+    for (Multiset.Entry<AOrder> withdrawal : withdrawals.entrySet()) {
+      orderbook.remove(withdrawal.getElement(), withdrawal.getCount());
+    }
+    for (AOrder order : submissions) {
+      orderbook.add(order, quantity);
+    }
+    if (submissions.isEmpty()) {
+      withdrawalsApplied();
+    } else {
+      batchApplied();
+    }
+  }
 
+  /** Called once after a batch that submitted orders has been applied to the book. */
+  void batchApplied() {}
 
-      // Notify seller
-      AOrder sell = matched.getSell();
-      sell.submitter.transacted(sell, price, matched.getQuantity());
+  /** Called once after a batch that only withdrew orders has been applied to the book. */
+  void withdrawalsApplied() {}
 
-      // Notify all agents of transaction
-      for (TransactionObserver obs : transactionObservers) {
-        obs.notifyTransaction(price, matched.getQuantity());
-      }
+  /** Record snapshots of the top levels of the book, see {@link DepthSnapshots}. */
+  void sampleDepth(int levels, TimeStamp interval) {
+    depth = new DepthSnapshots(sim, orderbook, levels, interval);
+  }
+
+  @Override
+  public void clear() {
+    num_transactions = num_transactions + orderbook.marketClear(trades);
+    benchmark = benchType.calcBenchmark(prices.all());
+  }
 
-      // Bookkeeping
-      prices.add(new AbstractMap.SimpleImmutableEntry<>(sim.getCurrentTime(), price));
-      double diff = price.doubleValue() - fundView.getEstimatedFinalFundamental();
-      rmsd.acceptNTimes(diff * diff, matched.getQuantity());
-      maxDiff = Double.max(maxDiff, Math.abs(diff));
-      transPrice.acceptNTimes(price, matched.getQuantity());
-      long currentTime = sim.getCurrentTime().get();
-      executionTimes.accept(currentTime - buy.getSubmitTime().get());
-      executionTimes.accept(currentTime - sell.getSubmitTime().get());
-      volume += matched.getQuantity();
-      priceDiff.accept(diff);
+  private void transact(AOrder buy, AOrder sell, Price price, int quantity) {
+    // Notify buyer
+    buy.submitter.transacted(buy, price, quantity);
+
+    // Notify seller
+    sell.submitter.transacted(sell, price, quantity);
+
+    // Notify all agents of transaction
+    for (TransactionObserver obs : transactionObservers) {
+      obs.notifyTransaction(price, quantity);
     }
-    benchmark = benchType.calcBenchmark(prices);
 
+    // Bookkeeping
+    prices.add(sim.getCurrentTime(), price, quantity);
+    double diff = price.doubleValue() - fundView.getEstimatedFinalFundamental();
+    rmsd.acceptNTimes(diff * diff, quantity);
+    maxDiff = Double.max(maxDiff, Math.abs(diff));
+    transPrice.acceptNTimes(price, quantity);
+    long currentTime = sim.getCurrentTime().get();
+    executionTimes.accept(currentTime - buy.getSubmitTime().get());
+    executionTimes.accept(currentTime - sell.getSubmitTime().get());
+    volume += quantity;
+    priceDiff.accept(diff);
   }
 
   void updateQuote() {
@@ -165,13 +203,12 @@ abstract class AMarket implements Market, Serializable {
         orderbook.getAskQuote(), orderbook.getAskDepth());
 
     long currentTime = sim.getCurrentTime().get();
-    spreads.remove(lastSpread);
-    spreads.add(lastSpread, Ints.checkedCast(currentTime - lastSpreadUpdate));
-    lastSpreadUpdate = currentTime;
-    lastSpread = quote.getSpread();
-    spreads.add(lastSpread);
+    spreads.update(currentTime, quote.getSpread());
     bidDepth.accept(quote.getBidDepth());
     askDepth.accept(quote.getAskDepth());
+    bidDepths.update(currentTime, quote.getBidDepth());
+    askDepths.update(currentTime, quote.getAskDepth());
+    depth.quoteUpdated();
 
     for (QuoteObserver obs : quoteObservers) {
       obs.notifyQuote(quote);
@@ -212,22 +249,20 @@ abstract class AMarket implements Market, Serializable {
     features.addProperty("rmsd", Math.sqrt(rmsd.getAverage().orElse(Double.NaN)));
     features.addProperty("max_diff", maxDiff);
     features.addProperty("trans_vol", transPrice.getStandardDeviation().orElse(Double.NaN));
-    features.addProperty("median_spread", SummStats.median(spreads).orElse(Double.NaN));
+    features.addProperty("median_spread", spreads.median().orElse(Double.NaN));
     features.addProperty("mean_exec_time", executionTimes.getAverage().orElse(Double.NaN));
     features.addProperty("volume", volume);
     features.addProperty("price_var", priceDiff.getVariance().orElse(Double.NaN));
     features.addProperty("bid_depth", bidDepth.getAverage().orElse(Double.NaN));
     features.addProperty("ask_depth", askDepth.getAverage().orElse(Double.NaN));
+    features.addProperty("median_bid_depth", bidDepths.median().orElse(Double.NaN));
+    features.addProperty("median_ask_depth", askDepths.median().orElse(Double.NaN));
     features.addProperty("benchmark", benchmark);
-
-    JsonArray jprices = new JsonArray();
-    for (Entry<TimeStamp, Price> obs : prices) {
-      JsonArray point = new JsonArray();
-      point.add(obs.getKey().get());
-      point.add(obs.getValue().doubleValue());
-      jprices.add(point);
+    if (depth.isEnabled()) {
+      features.add("depth", depth.toJson());
     }
-    features.add("prices", jprices);
+
+    features.add("prices", prices.toJson());
 
     return features;
   }
@@ -237,6 +272,11 @@ abstract class AMarket implements Market, Serializable {
   	return benchmark;
   }
 
+  @Override
+  public DepthSnapshots getDepthSnapshots() {
+    return depth;
+  }
+
   @Override
   public String toString() {
     return Integer.toUnsignedString(System.identityHashCode(this), 36).toUpperCase();
@@ -256,9 +296,31 @@ abstract class AMarket implements Market, Serializable {
 
     int getTrueVolume();
 
+    /** The handle of the order this view is currently submitting, or -1 if it doesn't use them. */
+    int submittingHandle();
+
   }
 
+  /**
+   * A market view where every message between the agent and the market takes latency to arrive.
+   * Submissions reach the market after the latency, and the agent can only withdraw an order once
+   * the market's acknowledgement would have returned, twice the latency after submitting it.
+   * Transactions change the true profit and holdings immediately, but the agent only observes them
+   * after the latency.
+   *
+   * <p>
+   * Each order is identified by a handle that indexes arrays of its market side state, so checking
+   * whether an order is still in the book is constant time. Handles are reused once an order is out
+   * of the book and no messages about it are in flight. Since every message has the same latency,
+   * messages in both directions arrive in the order they were sent, so they wait in a single queue
+   * and the view only ever has one activity scheduled, for the arrival of the oldest message.
+   */
   class ALatentMarketView implements AMarketView {
+    private static final byte SUBMIT = 0;
+    private static final byte WITHDRAW = 1;
+    private static final byte TRANSACT = 2;
+    private static final byte BATCH = 3;
+
     private final TimeStamp latency;
     private final Agent agent;
     private double profit;
@@ -267,8 +329,22 @@ abstract class AMarket implements Market, Serializable {
     private int submissions;
     private int volume;
     private int observedHoldings;
-    private Multiset<OrderRecord> orders;
-    private final BiMap<OrderRecord, AOrder> recordMap;
+    private final Multiset<OrderRecord> orders;
+
+    // Market side state indexed by handle
+    private Rec[] records;
+    private AOrder[] marketOrders;
+    private int[] live; // Quantity still in the order book
+    private int[] pending; // Number of messages in flight
+    private int numHandles;
+    private int[] freeHandles;
+    private int numFree;
+    private int submitting;
+
+    private final MessageQueue inFlight;
+    private final Queue<Batch> batches;
+    private final Runnable delivery;
+    private boolean deliveryScheduled;
 
     ALatentMarketView(Agent agent, TimeStamp latency) {
       this.latency = latency;
@@ -280,9 +356,22 @@ abstract class AMarket implements Market, Serializable {
       this.volume = 0;
       this.observedHoldings = 0;
       this.orders = HashMultiset.create();
-      this.recordMap = HashBiMap.create();
+
+      this.records = new Rec[initialHandles];
+      this.marketOrders = new AOrder[initialHandles];
+      this.live = new int[initialHandles];
+      this.pending = new int[initialHandles];
+      this.numHandles = 0;
+      this.freeHandles = new int[initialHandles];
+      this.numFree = 0;
+      this.submitting = -1;
+
+      this.inFlight = new MessageQueue();
+      this.batches = new ArrayDeque<>();
+      this.delivery = this::deliver;
+      this.deliveryScheduled = false;
     }
-    
+
     @Override
     public TimeStamp getLatency() {
       return latency;
@@ -290,37 +379,55 @@ abstract class AMarket implements Market, Serializable {
 
     @Override
     public OrderRecord submitOrder(OrderType buyOrSell, Price price, int quantity) {
-      OrderRecord record = new Rec(buyOrSell, price);
+      Rec record = newRecord(buyOrSell, price);
       orders.add(record, quantity);
-
-      sim.scheduleIn(latency, () -> {
-        AOrder order = AMarket.this.submitOrder(this, buyOrSell, price, quantity);
-        submissions += quantity;
-
-        sim.scheduleIn(latency, () -> {
-          recordMap.put(record, order);
-        });
-      });
-
+      send(SUBMIT, record.handle, null, quantity);
       return record;
     }
 
     @Override
     public void withdrawOrder(OrderRecord record, int quantity) {
       orders.remove(record, quantity);
-      AOrder order = recordMap.get(record);
-      if (order == null) {
-        return; // This will happen if the order transacted, but that information hasn't reached the
-                // agent yet
+      if (canWithdraw(record)) {
+        send(WITHDRAW, ((Rec) record).handle, null, quantity);
       }
+    }
 
-      sim.scheduleIn(latency, () -> {
-        AMarket.this.withdrawOrder(order, quantity);
-        if (!orderbook.contains(order)) {
-          recordMap.remove(record);
+    @Override
+    public List<OrderRecord> replaceOrders(Collection<? extends OrderRecord> withdrawals,
+        Collection<OrderDesc> submissions, int quantity) {
+      checkArgument(submissions.isEmpty() || quantity > 0, "Quantity must be positive");
+      Batch batch = new Batch(withdrawals.size(), submissions.size(), quantity);
+      for (OrderRecord record : ImmutableList.copyOf(withdrawals)) {
+        int count = orders.count(record);
+        orders.remove(record, count);
+        if (count > 0 && canWithdraw(record)) {
+          batch.withdrawHandles[batch.numWithdrawals] = ((Rec) record).handle;
+          batch.withdrawQuantities[batch.numWithdrawals++] = count;
         }
-      });
+      }
 
+      ImmutableList.Builder<OrderRecord> records = ImmutableList.builder();
+      int index = 0;
+      for (OrderDesc desc : submissions) {
+        Rec record = newRecord(desc.getType(), desc.getPrice());
+        orders.add(record, quantity);
+        batch.submitHandles[index++] = record.handle;
+        records.add(record);
+      }
+
+      if (batch.numWithdrawals == 0 && submissions.isEmpty()) {
+        return ImmutableList.of(); // Nothing for the market to do
+      }
+      batches.add(batch);
+      send(BATCH, -1, null, quantity);
+      for (int i = 0; i < batch.numWithdrawals; ++i) {
+        ++pending[batch.withdrawHandles[i]];
+      }
+      for (int handle : batch.submitHandles) {
+        ++pending[handle];
+      }
+      return records.build();
     }
 
     @Override
@@ -352,27 +459,27 @@ abstract class AMarket implements Market, Serializable {
     public int getTrueVolume() {
       return volume;
     }
-    
+
     @Override
     public double getCurrentBenchmark() {
         return benchmark;
     }
-    
+
     @Override
     public int getCurrentNumTransactions() {
     	return num_transactions;
     }
-    
+
     @Override
-    public List<Entry<TimeStamp, Price>> getCurrentTransactions() {
+    public TransactionHistory getCurrentTransactions() {
     	return prices;
     }
-    
+
     @Override
     public ArrayList<Price> getBidVector() {
     	return orderbook.getBidVector();
     }
-    
+
     @Override
     public ArrayList<Price> getAskVector() {
     	return orderbook.getAskVector();
@@ -389,41 +496,196 @@ abstract class AMarket implements Market, Serializable {
     }
 
     @Override
-    public void transacted(AOrder order, Price price, int quantity) {
-      OrderRecord record = recordMap.inverse().get(order);
-      double profitChange = -order.getType().sign() * price.doubleValue() * quantity;
-      int holdingsChange = order.getType().sign() * quantity;
+    public int submittingHandle() {
+      return submitting;
+    }
 
-      profit += profitChange;
-      holdings += holdingsChange;
+    @Override
+    public void transacted(AOrder order, Price price, int quantity) {
+      profit -= order.getType().sign() * price.doubleValue() * quantity;
+      holdings += order.getType().sign() * quantity;
       volume += quantity;
+      live[order.handle] -= quantity;
+      send(TRANSACT, order.handle, price, quantity);
+    }
+
+    @Override
+    public Agent getAgent() {
+      return agent;
+    }
 
-      if (!orderbook.contains(order)) {
-        recordMap.remove(record);
+    private Rec newRecord(OrderType buyOrSell, Price price) {
+      int handle = allocateHandle();
+      Rec record =
+          new Rec(handle, buyOrSell, price, sim.getCurrentTime().get() + 2 * latency.get());
+      records[handle] = record;
+      return record;
+    }
+
+    /**
+     * Whether a withdrawal should be sent to the market, which is only true if the record is for an
+     * order from this view, the agent would know the order is in the book, and it hasn't left it.
+     */
+    private boolean canWithdraw(OrderRecord record) {
+      if (!(record instanceof Rec)) {
+        return false;
       }
+      int handle = ((Rec) record).handle;
+      return handle < numHandles && records[handle] == record && live[handle] > 0
+          && sim.getCurrentTime().get() >= records[handle].acknowledged;
+    }
 
-      sim.scheduleIn(latency, () -> {
-        observedProfit += profitChange;
-        observedHoldings += holdingsChange;
-        orders.remove(record, quantity);
+    /** Send a message about handle to the market, or a batch if handle is negative. */
+    private void send(byte type, int handle, Price price, int quantity) {
+      inFlight.add(sim.getCurrentTime().get() + latency.get(), type, handle, price, quantity);
+      if (handle >= 0) {
+        ++pending[handle];
+      }
+      if (!deliveryScheduled) {
+        deliveryScheduled = true;
+        sim.scheduleIn(latency, delivery);
+      }
+    }
 
-        agent.notifyOrderTransacted(record, price, quantity);
-      });
+    /** Deliver every message that has arrived, and schedule the arrival of the next one. */
+    private void deliver() {
+      long time = sim.getCurrentTime().get();
+      while (!inFlight.isEmpty() && inFlight.peekArrival() <= time) {
+        byte type = inFlight.peekType();
+        int handle = inFlight.peekHandle();
+        Price price = inFlight.peekPrice();
+        int quantity = inFlight.peekQuantity();
+        inFlight.remove();
+        if (type == BATCH) {
+          deliverBatch(batches.remove());
+          continue;
+        }
+        Rec record = records[handle];
+
+        switch (type) {
+          case SUBMIT:
+            // The market may transact the order before submit returns, so it must already be live
+            live[handle] = quantity;
+            submitting = handle;
+            marketOrders[handle] =
+                AMarket.this.submitOrder(this, record.type, record.price, quantity);
+            submitting = -1;
+            submissions += quantity;
+            break;
+          case WITHDRAW:
+            if (live[handle] > 0) {
+              AMarket.this.withdrawOrder(marketOrders[handle], quantity);
+              live[handle] = Math.max(live[handle] - quantity, 0);
+            }
+            break;
+          case TRANSACT:
+            observedProfit -= record.type.sign() * price.doubleValue() * quantity;
+            observedHoldings += record.type.sign() * quantity;
+            orders.remove(record, quantity);
+            agent.notifyOrderTransacted(record, price, quantity);
+            break;
+          default:
+            throw new IllegalStateException("Unknown message type " + type);
+        }
+
+        settle(handle);
+      }
+
+      if (inFlight.isEmpty()) {
+        deliveryScheduled = false;
+      } else {
+        sim.scheduleIn(TimeStamp.of(inFlight.peekArrival() - time), delivery);
+      }
     }
 
-    @Override
-    public Agent getAgent() {
-      return agent;
+    private void deliverBatch(Batch batch) {
+      Multiset<AOrder> withdrawals = HashMultiset.create(batch.numWithdrawals);
+      for (int i = 0; i < batch.numWithdrawals; ++i) {
+        int handle = batch.withdrawHandles[i];
+        int quantity = Math.min(batch.withdrawQuantities[i], live[handle]);
+        if (quantity > 0) {
+          withdrawals.add(marketOrders[handle], quantity);
+          live[handle] -= quantity;
+        }
+      }
+      List<AOrder> submissions = new ArrayList<>(batch.submitHandles.length);
+      for (int handle : batch.submitHandles) {
+        Rec record = records[handle];
+        marketOrders[handle] = AMarket.this.createOrder(this, record.type, record.price, handle);
+        live[handle] = batch.quantity;
+        submissions.add(marketOrders[handle]);
+      }
+      this.submissions += batch.quantity * submissions.size();
+
+      AMarket.this.replaceOrders(withdrawals, submissions, batch.quantity);
+
+      for (int i = 0; i < batch.numWithdrawals; ++i) {
+        settle(batch.withdrawHandles[i]);
+      }
+      for (int handle : batch.submitHandles) {
+        settle(handle);
+      }
+    }
+
+    /** Mark that a message about handle was delivered, and release it if it's no longer used. */
+    private void settle(int handle) {
+      if (--pending[handle] == 0 && live[handle] == 0) {
+        releaseHandle(handle);
+      }
+    }
+
+    private int allocateHandle() {
+      if (numFree > 0) {
+        return freeHandles[--numFree];
+      }
+      if (numHandles == records.length) {
+        int capacity = records.length * 2;
+        records = Arrays.copyOf(records, capacity);
+        marketOrders = Arrays.copyOf(marketOrders, capacity);
+        live = Arrays.copyOf(live, capacity);
+        pending = Arrays.copyOf(pending, capacity);
+        freeHandles = Arrays.copyOf(freeHandles, capacity);
+      }
+      return numHandles++;
+    }
+
+    private void releaseHandle(int handle) {
+      records[handle] = null;
+      marketOrders[handle] = null;
+      freeHandles[numFree++] = handle;
+    }
+
+    /** Handles of the orders in a batch, waiting to reach the market. */
+    private class Batch {
+
+      private final int[] withdrawHandles;
+      private final int[] withdrawQuantities;
+      private int numWithdrawals;
+      private final int[] submitHandles;
+      private final int quantity;
+
+      private Batch(int maxWithdrawals, int numSubmissions, int quantity) {
+        this.withdrawHandles = new int[maxWithdrawals];
+        this.withdrawQuantities = new int[maxWithdrawals];
+        this.numWithdrawals = 0;
+        this.submitHandles = new int[numSubmissions];
+        this.quantity = quantity;
+      }
+
     }
 
     private class Rec implements OrderRecord {
 
+      private final int handle;
       private final Price price;
       private final OrderType type;
+      private final long acknowledged; // Time the agent knows the order is in the book
 
-      private Rec(OrderType type, Price price) {
+      private Rec(int handle, OrderType type, Price price, long acknowledged) {
+        this.handle = handle;
         this.type = type;
         this.price = price;
+        this.acknowledged = acknowledged;
       }
 
       @Override
@@ -445,6 +707,93 @@ abstract class AMarket implements Market, Serializable {
 
   }
 
+  /**
+   * A first in first out queue of messages between a latent view and the market, stored in
+   * circular primitive arrays so that sending a message doesn't allocate.
+   */
+  private static final class MessageQueue {
+
+    private long[] arrivals;
+    private byte[] types;
+    private int[] handles;
+    private Price[] prices;
+    private int[] quantities;
+    private int head;
+    private int size;
+
+    private MessageQueue() {
+      this.arrivals = new long[initialMessages];
+      this.types = new byte[initialMessages];
+      this.handles = new int[initialMessages];
+      this.prices = new Price[initialMessages];
+      this.quantities = new int[initialMessages];
+      this.head = 0;
+      this.size = 0;
+    }
+
+    private boolean isEmpty() {
+      return size == 0;
+    }
+
+    private void add(long arrival, byte type, int handle, Price price, int quantity) {
+      if (size == arrivals.length) {
+        grow();
+      }
+      int tail = (head + size) & (arrivals.length - 1);
+      arrivals[tail] = arrival;
+      types[tail] = type;
+      handles[tail] = handle;
+      prices[tail] = price;
+      quantities[tail] = quantity;
+      ++size;
+    }
+
+    private long peekArrival() {
+      return arrivals[head];
+    }
+
+    private byte peekType() {
+      return types[head];
+    }
+
+    private int peekHandle() {
+      return handles[head];
+    }
+
+    private Price peekPrice() {
+      return prices[head];
+    }
+
+    private int peekQuantity() {
+      return quantities[head];
+    }
+
+    private void remove() {
+      prices[head] = null;
+      head = (head + 1) & (arrivals.length - 1);
+      --size;
+    }
+
+    /** Double the capacity, unrolling the queue so the head is at index zero. */
+    private void grow() {
+      int capacity = arrivals.length * 2;
+      arrivals = unroll(arrivals, new long[capacity]);
+      types = unroll(types, new byte[capacity]);
+      handles = unroll(handles, new int[capacity]);
+      prices = unroll(prices, new Price[capacity]);
+      quantities = unroll(quantities, new int[capacity]);
+      head = 0;
+    }
+
+    // Only called when full, so size is the length of source
+    private <A> A unroll(A source, A dest) {
+      System.arraycopy(source, head, dest, 0, size - head);
+      System.arraycopy(source, 0, dest, size - head, head);
+      return dest;
+    }
+
+  }
+
   /** A market view when there is no latency between market access. */
   class AImmediateMarketView implements AMarketView {
     private final Agent agent;
@@ -496,6 +845,41 @@ abstract class AMarket implements Market, Serializable {
       AMarket.this.withdrawOrder((AOrder) order, quantity);
     }
 
+    @Override
+    public List<OrderRecord> replaceOrders(Collection<? extends OrderRecord> withdrawals,
+        Collection<OrderDesc> submissions, int quantity) {
+      checkArgument(submissions.isEmpty() || quantity > 0, "Quantity must be positive");
+      Multiset<AOrder> toWithdraw = HashMultiset.create(withdrawals.size());
+      for (OrderRecord record : withdrawals) {
+        int count = orders.count(record);
+        if (count > 0) {
+          toWithdraw.setCount((AOrder) record, count);
+        }
+      }
+      List<AOrder> toSubmit = new ArrayList<>(submissions.size());
+      for (OrderDesc desc : submissions) {
+        toSubmit.add(AMarket.this.createOrder(this, desc.getType(), desc.getPrice(), -1));
+      }
+
+      inSubmission = true;
+      AMarket.this.replaceOrders(toWithdraw, toSubmit, quantity);
+      for (Multiset.Entry<AOrder> withdrawal : toWithdraw.entrySet()) {
+        orders.remove(withdrawal.getElement(), withdrawal.getCount());
+      }
+      for (AOrder order : toSubmit) {
+        orders.add(order, quantity);
+      }
+      this.submissions += quantity * toSubmit.size();
+      inSubmission = false;
+
+      while (!queuedTransactions.isEmpty()) {
+        QueuedTransaction trans = queuedTransactions.poll();
+        transacted(trans.transactedOrder, trans.transactedPrice, trans.transactedQuantity);
+      }
+
+      return ImmutableList.<OrderRecord>copyOf(toSubmit);
+    }
+
     @Override
     public double getProfit() {
       return profit;
@@ -537,7 +921,7 @@ abstract class AMarket implements Market, Serializable {
     }
     
     @Override
-    public List<Entry<TimeStamp, Price>> getCurrentTransactions() {
+    public TransactionHistory getCurrentTransactions() {
     	return prices;
     }
     
@@ -561,6 +945,11 @@ abstract class AMarket implements Market, Serializable {
       return orders.count(record);
     }
 
+    @Override
+    public int submittingHandle() {
+      return -1;
+    }
+
     @Override
     public void transacted(AOrder order, Price price, int quantity) {
       if (inSubmission) {
@@ -604,17 +993,20 @@ abstract class AMarket implements Market, Serializable {
   protected static class AOrder implements IOrder<Price>, OrderRecord, Comparable<AOrder> {
 
     protected final long sequence;
+    final int handle;
     private final Price price;
     private final TimeStamp submitTime;
     private final OrderType type;
     private final AMarketView submitter;
 
-    AOrder(AMarketView submiter, OrderType type, Price price, TimeStamp submitTime, long sequence) {
+    AOrder(AMarketView submiter, OrderType type, Price price, TimeStamp submitTime, long sequence,
+        int handle) {
       this.submitter = checkNotNull(submiter);
       this.price = checkNotNull(price);
       this.submitTime = checkNotNull(submitTime);
       this.type = checkNotNull(type);
       this.sequence = sequence;
+      this.handle = handle;
     }
 
     @Override
@@ -651,8 +1043,33 @@ abstract class AMarket implements Market, Serializable {
 
   }
 
-  public interface PricingRule extends Function<Collection<MatchedOrders<Price, AOrder>>, //
-      Iterable<Entry<MatchedOrders<Price, AOrder>, Price>>> {
+  /** Prices each match of a clear and then transacts it. */
+  private class Trades implements MatchConsumer<Price, AOrder> {
+
+    @Override
+    public void clearing(Price buyPrice, Price sellPrice) {
+      pricing.clearing(buyPrice, sellPrice);
+    }
+
+    @Override
+    public void match(AOrder buy, AOrder sell, int quantity) {
+      transact(buy, sell, pricing.price(buy, sell), quantity);
+    }
+
+  }
+
+  /** Given a pair of matched orders, what price they transact at. */
+  @FunctionalInterface
+  public interface PricingRule {
+
+    /**
+     * Called before pricing the matches of a clear with the price of the worst matched buy and the
+     * price of the worst matched sell.
+     */
+    default void clearing(Price buyPrice, Price sellPrice) {}
+
+    Price price(AOrder buy, AOrder sell);
+
   }
 
   private static final long serialVersionUID = 8806298743451593261L;
@@ -1,12 +1,15 @@
 package edu.umich.srg.marketsim.market;
 
-import java.util.HashMap;
+import static com.google.common.base.Preconditions.checkArgument;
+
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.primitives.Ints;
+
+import edu.umich.srg.util.RandomSource;
 
-import edu.umich.srg.marketsim.Price;
-import edu.umich.srg.marketsim.TimeStamp;
 import java.util.Random;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -17,19 +20,40 @@ public class Benchmark {
 	    VWAP, VWMP, TWAP, RVWAP, RTWAP
 	  }
 	
-	private static final Map<BenchmarkStyle, Benchmark> memoized = new HashMap<>();
+	// Shared by the markets of every simulation, which may be on different threads
+	private static final Map<BenchmarkStyle, Benchmark> memoized = new ConcurrentHashMap<>();
 	
 	private final BenchmarkStyle benchType; //Add final once it is a key
+	private final Random rand; // Only for RVWAP and RTWAP
 	
-	private Benchmark (BenchmarkStyle benchType) {
+	private Benchmark (BenchmarkStyle benchType, Random rand) {
 		this.benchType = benchType;
+		this.rand = rand;
 	}
 	
+	/** A benchmark that doesn't draw random numbers. */
 	public static Benchmark create(BenchmarkStyle benchType) {
-	    return memoized.computeIfAbsent(benchType, Benchmark::new);
-	  }
+		checkArgument(!isRandom(benchType), "%s needs a source of randomness", benchType);
+		return memoized.computeIfAbsent(benchType, type -> new Benchmark(type, null));
+	}
+	
+	/**
+	 * A benchmark for one market. The random benchmarks get their own stream split from rand, so
+	 * they're reproducible from the market's seed, and the rest are shared without drawing from rand.
+	 */
+	public static Benchmark create(BenchmarkStyle benchType, Random rand) {
+		if (isRandom(benchType)) {
+			return new Benchmark(benchType, RandomSource.split(rand));
+		} else {
+			return create(benchType);
+		}
+	}
+	
+	private static boolean isRandom(BenchmarkStyle benchType) {
+		return benchType == BenchmarkStyle.RVWAP || benchType == BenchmarkStyle.RTWAP;
+	}
 	
-	public double calcBenchmark (List<Entry<TimeStamp, Price>> prices) {
+	public double calcBenchmark (TransactionHistory.Window prices) {
 		if (benchType.equals(BenchmarkStyle.VWAP)) {
 			return vwap(prices);
 		} 
@@ -50,13 +74,12 @@ public class Benchmark {
 		}
 	}
 	
-	private double vwap (List<Entry<TimeStamp, Price>> prices) {
+	private double vwap (TransactionHistory.Window prices) {
 		int bench = 0;
 		double count = 0;
 		int price;
-		for (Entry<TimeStamp, Price> p : prices) {
-			TimeStamp t = p.getKey();
-			price = p.getValue().intValue();
+		for (int i = 0; i < prices.size(); ++i) {
+			price = Ints.saturatedCast(prices.getPrice(i));
 			bench += price;
 			count += 1;
 		}
@@ -68,13 +91,12 @@ public class Benchmark {
 		}
 	}
 	
-	private double vwmp (List<Entry<TimeStamp, Price>> prices) {
+	private double vwmp (TransactionHistory.Window prices) {
 		double count = 0;
 		int price;
 		List<Integer> p_only = new ArrayList<Integer>();
-		for (Entry<TimeStamp, Price> p : prices) {
-			TimeStamp t = p.getKey();
-			price = p.getValue().intValue();
+		for (int i = 0; i < prices.size(); ++i) {
+			price = Ints.saturatedCast(prices.getPrice(i));
 			p_only.add(price);
 			count += 1;
 			System.out.println(price);
@@ -94,17 +116,16 @@ public class Benchmark {
 	}
 	
 	
-	private double twap (List<Entry<TimeStamp, Price>> prices) {
+	private double twap (TransactionHistory.Window prices) {
 		int bench = 0;
 		double count = 0;
 		// TODO: add sim length
 		int partitions = 100;
 		int price;
 		int weight;
-		for (Entry<TimeStamp, Price> p : prices) {
-			TimeStamp t = p.getKey();
-			price = p.getValue().intValue();
-			weight = (int)t.get() / partitions;
+		for (int i = 0; i < prices.size(); ++i) {
+			price = Ints.saturatedCast(prices.getPrice(i));
+			weight = (int)prices.getTime(i) / partitions;
 			bench += price * weight;
 			count += weight;
 		}
@@ -115,17 +136,16 @@ public class Benchmark {
 		}
 	}
 	
-	private double rvwap (List<Entry<TimeStamp, Price>> prices) {
+	private double rvwap (TransactionHistory.Window prices) {
 		int bench = 0;
 		int price;
 		double percent = 0.1;
 		// subsection of trades analyzed for benchmark should be 1/10th size of total trades
 		int subSize = (int)(prices.size() * percent);
-		Random rand = new Random();
 		// start of random range should be in first 9/10ths of trades
 		int subStart = rand.nextInt((int)(prices.size() - subSize));
 		for (int i = subStart; i < subStart + subSize; ++i) {
-			price = prices.get(i).getValue().intValue();
+			price = Ints.saturatedCast(prices.getPrice(i));
 			bench += price;
 		}
 		if (subSize > 0) {
@@ -135,7 +155,7 @@ public class Benchmark {
 		}
 	}
 	
-	private double rtwap (List<Entry<TimeStamp, Price>> prices) {
+	private double rtwap (TransactionHistory.Window prices) {
 		int bench = 0;
 		double count = 0;
 		// min of weight range
@@ -144,10 +164,8 @@ public class Benchmark {
 		int weightMax = 10;
 		int price;
 		int weight;
-		Random rand = new Random();
-		for (Entry<TimeStamp, Price> p : prices) {
-			TimeStamp t = p.getKey();
-			price = p.getValue().intValue();
+		for (int i = 0; i < prices.size(); ++i) {
+			price = Ints.saturatedCast(prices.getPrice(i));
 			weight = rand.nextInt(weightMax - weightMin + 1) + weightMin;
 			bench += price * weight;
 			count += weight;
@@ -6,11 +6,12 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 
 import edu.umich.srg.egtaonline.spec.Spec;
-import edu.umich.srg.fourheap.MatchedOrders;
 import edu.umich.srg.fourheap.OrderType;
 import edu.umich.srg.fourheap.RandomProRataSelector;
 import edu.umich.srg.marketsim.Keys.BenchmarkType;
 import edu.umich.srg.marketsim.Keys.ClearInterval;
+import edu.umich.srg.marketsim.Keys.DepthInterval;
+import edu.umich.srg.marketsim.Keys.DepthLevels;
 import edu.umich.srg.marketsim.Keys.Pricing;
 import edu.umich.srg.marketsim.Price;
 import edu.umich.srg.marketsim.Sim;
@@ -18,9 +19,6 @@ import edu.umich.srg.marketsim.TimeStamp;
 import edu.umich.srg.marketsim.fundamental.Fundamental;
 import edu.umich.srg.marketsim.market.Benchmark.BenchmarkStyle;
 
-import java.util.AbstractMap;
-import java.util.Collection;
-import java.util.Map.Entry;
 import java.util.Random;
 
 /**
@@ -33,7 +31,8 @@ public class CallMarket extends AMarket {
 
   private CallMarket(Sim sim, Fundamental fundamental, CallPricing pricing, long clearInterval,
       Random rand, BenchmarkStyle benchmarkType) {
-    super(sim, fundamental, pricing, RandomProRataSelector.create(rand), benchmarkType);
+    super(sim, fundamental, pricing, RandomProRataSelector.create(rand),
+        Benchmark.create(benchmarkType, rand));
     this.clearInterval = clearInterval;
     this.nextClearScheduled = false;
   }
@@ -50,7 +49,10 @@ public class CallMarket extends AMarket {
 
   public static CallMarket createFromSpec(Sim sim, Fundamental fundamental, Spec spec,
       Random rand) {
-    return create(sim, fundamental, spec.get(Pricing.class), spec.get(ClearInterval.class), rand, spec.get(BenchmarkType.class));
+    CallMarket market = create(sim, fundamental, spec.get(Pricing.class),
+        spec.get(ClearInterval.class), rand, spec.get(BenchmarkType.class));
+    market.sampleDepth(spec.get(DepthLevels.class), TimeStamp.of(spec.get(DepthInterval.class)));
+    return market;
   }
 
   public long getClearingInterval() {
@@ -89,6 +91,16 @@ public class CallMarket extends AMarket {
     super.withdrawOrder(order, quantity);
   }
 
+  @Override
+  void batchApplied() {
+    scheduleClear();
+  }
+
+  @Override
+  void withdrawalsApplied() {
+    scheduleClear();
+  }
+
   @Override
   public void clear() {
     this.nextClearScheduled = false;
@@ -111,6 +123,7 @@ public class CallMarket extends AMarket {
   private static class CallPricing implements PricingRule {
 
     private final double pricing;
+    private Price price; // Uniform price of the current clear
 
     private CallPricing(double pricing) {
       checkArgument(pricing >= 0 && pricing <= 1,
@@ -119,17 +132,13 @@ public class CallMarket extends AMarket {
     }
 
     @Override
-    public Iterable<Entry<MatchedOrders<Price, AOrder>, Price>> apply(
-        Collection<MatchedOrders<Price, AOrder>> matches) {
-      double sell =
-          matches.stream().mapToDouble(m -> m.getSell().getPrice().doubleValue()).max().orElse(0);
-      double buy =
-          matches.stream().mapToDouble(m -> m.getBuy().getPrice().doubleValue()).min().orElse(0);
-      Price price = Price.of(pricing * sell + (1 - pricing) * buy);
-
-      return () -> matches.stream().<Entry<MatchedOrders<Price, AOrder>, Price>>map(
-          m -> new AbstractMap.SimpleImmutableEntry<MatchedOrders<Price, AOrder>, Price>(m, price))
-          .iterator();
+    public void clearing(Price buyPrice, Price sellPrice) {
+      price = Price.of(pricing * sellPrice.doubleValue() + (1 - pricing) * buyPrice.doubleValue());
+    }
+
+    @Override
+    public Price price(AOrder buy, AOrder sell) {
+      return price;
     }
 
   }
@@ -1,47 +1,47 @@
 package edu.umich.srg.marketsim.market;
 
-import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 
 import edu.umich.srg.egtaonline.spec.Spec;
-import edu.umich.srg.fourheap.MatchedOrders;
 import edu.umich.srg.fourheap.OrderType;
 import edu.umich.srg.fourheap.PrioritySelector;
 import edu.umich.srg.marketsim.Price;
 import edu.umich.srg.marketsim.Sim;
+import edu.umich.srg.marketsim.TimeStamp;
 import edu.umich.srg.marketsim.fundamental.Fundamental;
 import edu.umich.srg.marketsim.market.Benchmark.BenchmarkStyle;
 import edu.umich.srg.marketsim.Keys.BenchmarkType;
+import edu.umich.srg.marketsim.Keys.DepthInterval;
+import edu.umich.srg.marketsim.Keys.DepthLevels;
 import edu.umich.srg.marketsim.Keys.Markets;
 import edu.umich.srg.marketsim.Keys.Rmin;
 
-import java.util.Collection;
-import java.util.Map.Entry;
 import java.util.Random;
 
 public class CdaMarket extends AMarket {
 
   private static final Ordering<AOrder> priceOrder = Ordering.natural().onResultOf(o -> o.sequence);
 
-  private static Iterable<Entry<MatchedOrders<Price, AOrder>, Price>> pricingRule(
-      Collection<MatchedOrders<Price, AOrder>> matches) {
-    return () -> matches.stream().map(match -> Maps.immutableEntry(match,
-        priceOrder.min(match.getBuy(), match.getSell()).getPrice())).iterator();
+  private static Price pricingRule(AOrder buy, AOrder sell) {
+    return priceOrder.min(buy, sell).getPrice();
   }
 
-  private CdaMarket(Sim sim, Fundamental fundamental, BenchmarkStyle benchmarkType) {
+  private CdaMarket(Sim sim, Fundamental fundamental, Benchmark benchmark) {
     // We can use an arbitrary selector, since there won't be ties on time
-    super(sim, fundamental, CdaMarket::pricingRule, PrioritySelector.create(), benchmarkType);
+    super(sim, fundamental, CdaMarket::pricingRule, PrioritySelector.create(), benchmark);
   }
 
   public static CdaMarket create(Sim sim, Fundamental fundamental) {
-    return new CdaMarket(sim, fundamental, BenchmarkStyle.VWAP);
+    return new CdaMarket(sim, fundamental, Benchmark.create(BenchmarkStyle.VWAP));
   }
 
   public static CdaMarket createFromSpec(Sim sim, Fundamental fundamental, Spec spec, Random rand) {
-    return new CdaMarket(sim, fundamental, spec.get(BenchmarkType.class));
+    CdaMarket market =
+        new CdaMarket(sim, fundamental, Benchmark.create(spec.get(BenchmarkType.class), rand));
+    market.sampleDepth(spec.get(DepthLevels.class), TimeStamp.of(spec.get(DepthInterval.class)));
+    return market;
   }
 
   @Override
@@ -57,6 +57,16 @@ public class CdaMarket extends AMarket {
     updateQuote();
   }
 
+  @Override
+  void batchApplied() {
+    clear();
+  }
+
+  @Override
+  void withdrawalsApplied() {
+    updateQuote();
+  }
+
   @Override
   public void clear() {
     super.clear();
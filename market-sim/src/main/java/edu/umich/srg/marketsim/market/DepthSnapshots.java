@@ -0,0 +1,188 @@
+package edu.umich.srg.marketsim.market;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import com.google.gson.JsonArray;
+
+import edu.umich.srg.fourheap.FourHeap;
+import edu.umich.srg.marketsim.Price;
+import edu.umich.srg.marketsim.Sim;
+import edu.umich.srg.marketsim.TimeStamp;
+import edu.umich.srg.marketsim.market.AMarket.AOrder;
+
+import java.util.Arrays;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A series of level two snapshots of a market's order book. Each snapshot has the aggregate
+ * quantity at the best few price levels on each side. Snapshots are either taken on every quote
+ * update, in which case several updates at the same time only keep the last, or at a fixed
+ * interval. Everything is stored in flat primitive arrays that only grow by doubling, so taking a
+ * snapshot doesn't allocate, and the latest snapshot can be read in constant time. Levels that
+ * don't exist in the book have a quantity of zero.
+ */
+public class DepthSnapshots {
+
+  private static final int initialCapacity = 64;
+
+  private final Sim sim;
+  private final FourHeap<Price, AOrder> orderbook;
+  private final int levels;
+  private final long interval;
+  private final ObjIntConsumer<Price> bidLevel;
+  private final ObjIntConsumer<Price> askLevel;
+
+  private long[] times;
+  private long[] bidPrices;
+  private int[] bidQuantities;
+  private long[] askPrices;
+  private int[] askQuantities;
+  private int size;
+  private int offset; // Offset of the level being filled
+
+  DepthSnapshots(Sim sim, FourHeap<Price, AOrder> orderbook, int levels, TimeStamp interval) {
+    checkArgument(levels >= 0, "Number of levels must be nonnegative");
+    checkArgument(interval.get() >= 0, "Interval must be nonnegative");
+    this.sim = sim;
+    this.orderbook = orderbook;
+    this.levels = levels;
+    this.interval = interval.get();
+    this.bidLevel = (price, quantity) -> {
+      bidPrices[offset] = price.longValue();
+      bidQuantities[offset++] = quantity;
+    };
+    this.askLevel = (price, quantity) -> {
+      askPrices[offset] = price.longValue();
+      askQuantities[offset++] = quantity;
+    };
+
+    int capacity = levels == 0 ? 0 : initialCapacity;
+    this.times = new long[capacity];
+    this.bidPrices = new long[capacity * levels];
+    this.bidQuantities = new int[capacity * levels];
+    this.askPrices = new long[capacity * levels];
+    this.askQuantities = new int[capacity * levels];
+    this.size = 0;
+
+    if (levels > 0 && this.interval > 0) {
+      sim.scheduleIn(interval, this::sampleAtInterval);
+    }
+  }
+
+  /** Snapshots that never sample anything. */
+  static DepthSnapshots disabled(Sim sim, FourHeap<Price, AOrder> orderbook) {
+    return new DepthSnapshots(sim, orderbook, 0, TimeStamp.ZERO);
+  }
+
+  /** Whether this samples any levels at all. */
+  public boolean isEnabled() {
+    return levels > 0;
+  }
+
+  /** The number of price levels per side in each snapshot. */
+  public int getLevels() {
+    return levels;
+  }
+
+  /** The number of snapshots taken so far. */
+  public int size() {
+    return size;
+  }
+
+  public long getTime(int snapshot) {
+    checkElementIndex(snapshot, size);
+    return times[snapshot];
+  }
+
+  public long getBidPrice(int snapshot, int level) {
+    return bidPrices[index(snapshot, level)];
+  }
+
+  public int getBidQuantity(int snapshot, int level) {
+    return bidQuantities[index(snapshot, level)];
+  }
+
+  public long getAskPrice(int snapshot, int level) {
+    return askPrices[index(snapshot, level)];
+  }
+
+  public int getAskQuantity(int snapshot, int level) {
+    return askQuantities[index(snapshot, level)];
+  }
+
+  /** The index of the most recent snapshot, or -1 if none have been taken. */
+  public int latest() {
+    return size - 1;
+  }
+
+  /** Called by the market every time its quote changes. */
+  void quoteUpdated() {
+    if (levels > 0 && interval == 0) {
+      if (size > 0 && times[size - 1] == sim.getCurrentTime().get()) {
+        --size; // Only keep the final book at any time
+      }
+      sample();
+    }
+  }
+
+  /** The snapshots as a json array of [time, bid price, bid quantity, ..., ask price, ...]. */
+  JsonArray toJson() {
+    JsonArray series = new JsonArray();
+    for (int i = 0; i < size; ++i) {
+      JsonArray snapshot = new JsonArray();
+      snapshot.add(times[i]);
+      for (int level = 0; level < levels; ++level) {
+        snapshot.add(bidPrices[i * levels + level]);
+        snapshot.add(bidQuantities[i * levels + level]);
+      }
+      for (int level = 0; level < levels; ++level) {
+        snapshot.add(askPrices[i * levels + level]);
+        snapshot.add(askQuantities[i * levels + level]);
+      }
+      series.add(snapshot);
+    }
+    return series;
+  }
+
+  private void sampleAtInterval() {
+    sample();
+    sim.scheduleIn(TimeStamp.of(interval), this::sampleAtInterval);
+  }
+
+  private void sample() {
+    if (size == times.length) {
+      grow();
+    }
+    int start = size * levels;
+    times[size] = sim.getCurrentTime().get();
+
+    offset = start;
+    orderbook.forEachBidLevel(levels, bidLevel);
+    Arrays.fill(bidPrices, offset, start + levels, 0);
+    Arrays.fill(bidQuantities, offset, start + levels, 0);
+
+    offset = start;
+    orderbook.forEachAskLevel(levels, askLevel);
+    Arrays.fill(askPrices, offset, start + levels, 0);
+    Arrays.fill(askQuantities, offset, start + levels, 0);
+
+    ++size;
+  }
+
+  private void grow() {
+    int capacity = times.length * 2;
+    times = Arrays.copyOf(times, capacity);
+    bidPrices = Arrays.copyOf(bidPrices, capacity * levels);
+    bidQuantities = Arrays.copyOf(bidQuantities, capacity * levels);
+    askPrices = Arrays.copyOf(askPrices, capacity * levels);
+    askQuantities = Arrays.copyOf(askQuantities, capacity * levels);
+  }
+
+  private int index(int snapshot, int level) {
+    checkElementIndex(snapshot, size);
+    checkElementIndex(level, levels);
+    return snapshot * levels + level;
+  }
+
+}
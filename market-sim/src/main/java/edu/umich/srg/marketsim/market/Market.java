@@ -1,5 +1,6 @@
 package edu.umich.srg.marketsim.market;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Multiset;
 import com.google.gson.JsonObject;
 
@@ -9,9 +10,11 @@ import edu.umich.srg.marketsim.TimeStamp;
 import edu.umich.srg.marketsim.agent.Agent;
 import edu.umich.srg.marketsim.market.MarketObserver.QuoteObserver;
 import edu.umich.srg.marketsim.market.MarketObserver.TransactionObserver;
+import edu.umich.srg.marketsim.strategy.OrderDesc;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map.Entry;
 
@@ -36,6 +39,9 @@ public interface Market {
   
   double getBenchmark();
 
+  /** Snapshots of the top of this market's book, shared by every agent that reads them. */
+  DepthSnapshots getDepthSnapshots();
+
   // FIXME Remove market view, and instead make latency an agent feature that it can add
   interface MarketView {
 	  
@@ -53,6 +59,25 @@ public interface Market {
       withdrawOrder(entry.getElement(), entry.getCount());
     }
 
+    /**
+     * Withdraw all of every order in withdrawals, and then submit quantity of every order in
+     * submissions. The market applies the whole batch as one change to its book, so it only clears
+     * and updates its quote once, and none of the orders in the batch see the book in between.
+     * Returns the records of the submitted orders in the same order as submissions.
+     */
+    List<OrderRecord> replaceOrders(Collection<? extends OrderRecord> withdrawals,
+        Collection<OrderDesc> submissions, int quantity);
+
+    /** Submit quantity of every order in submissions as one batch, see {@link #replaceOrders}. */
+    default List<OrderRecord> submitOrders(Collection<OrderDesc> submissions, int quantity) {
+      return replaceOrders(ImmutableList.of(), submissions, quantity);
+    }
+
+    /** Withdraw all of every order in withdrawals as one batch, see {@link #replaceOrders}. */
+    default void withdrawOrders(Collection<? extends OrderRecord> withdrawals) {
+      replaceOrders(withdrawals, ImmutableList.of(), 0);
+    }
+
     Multiset<OrderRecord> getActiveOrders();
 
     int getQuantity(OrderRecord record);
@@ -65,7 +90,7 @@ public interface Market {
     
     int getCurrentNumTransactions();
     
-    List<Entry<TimeStamp, Price>> getCurrentTransactions();
+    TransactionHistory getCurrentTransactions();
     
     ArrayList<Price> getBidVector();
     
@@ -0,0 +1,115 @@
+package edu.umich.srg.marketsim.market;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+
+/**
+ * Statistics over the prices of a market's most recent transactions. The prices in the window are
+ * kept sorted with prefix sums, so threshold queries like the partial sums of an omega ratio are
+ * O(log k) for a window of k transactions. The window catches up with the market's transaction
+ * history when it's queried, and is shared by everything that asks the history for the same depth,
+ * so each transaction costs O(k) once regardless of how many agents look at it.
+ */
+public class TradeWindowStats {
+
+  private final TransactionHistory history;
+  private final int depth;
+  private final long[] sorted;
+  private final long[] prefix; // prefix[i] is the sum of the i smallest prices
+  private int size;
+  private int synced; // Number of transactions in the history that have been seen
+
+  TradeWindowStats(TransactionHistory history, int depth) {
+    checkArgument(depth >= 0, "Depth must be nonnegative");
+    this.history = history;
+    this.depth = depth;
+    this.sorted = new long[depth];
+    this.prefix = new long[depth + 1];
+    this.size = 0;
+    this.synced = 0;
+  }
+
+  /** The maximum number of transactions in the window. */
+  public int getDepth() {
+    return depth;
+  }
+
+  /** The number of transactions currently in the window. */
+  public int size() {
+    sync();
+    return size;
+  }
+
+  /** The number of prices in the window strictly below cutoff. */
+  public int countBelow(double cutoff) {
+    sync();
+    return position(cutoff);
+  }
+
+  /** The sum over prices in the window at or above cutoff of price - cutoff. */
+  public double gainsAbove(double cutoff) {
+    sync();
+    int below = position(cutoff);
+    return (prefix[size] - prefix[below]) - cutoff * (size - below);
+  }
+
+  /** The sum over prices in the window below cutoff of cutoff - price. */
+  public double lossesBelow(double cutoff) {
+    sync();
+    int below = position(cutoff);
+    return cutoff * below - prefix[below];
+  }
+
+  private void sync() {
+    int end = history.size();
+    if (end - synced >= depth) {
+      // The whole window has been replaced
+      size = 0;
+      synced = end - depth;
+    }
+    for (; synced < end; ++synced) {
+      if (size == depth) {
+        remove(history.price(synced - depth));
+      }
+      insert(history.price(synced));
+    }
+  }
+
+  private void insert(long price) {
+    int index = position(price);
+    System.arraycopy(sorted, index, sorted, index + 1, size - index);
+    sorted[index] = price;
+    ++size;
+    updatePrefix(index);
+  }
+
+  private void remove(long price) {
+    int index = Arrays.binarySearch(sorted, 0, size, price);
+    System.arraycopy(sorted, index + 1, sorted, index, size - index - 1);
+    --size;
+    updatePrefix(index);
+  }
+
+  private void updatePrefix(int from) {
+    for (int i = from; i < size; ++i) {
+      prefix[i + 1] = prefix[i] + sorted[i];
+    }
+  }
+
+  /** The number of prices in the window below price. */
+  private int position(double price) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (sorted[mid] < price) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+}
@@ -0,0 +1,171 @@
+package edu.umich.srg.marketsim.market;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import com.google.gson.JsonArray;
+
+import edu.umich.srg.marketsim.Price;
+import edu.umich.srg.marketsim.TimeStamp;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Every transaction in a market in the order they happened. Times, prices, and quantities are
+ * stored in flat primitive arrays that only grow by doubling, so recording a transaction doesn't
+ * allocate. Transactions are only ever appended, so a window of them never changes, and windows
+ * read the history's arrays instead of copying them.
+ */
+public class TransactionHistory {
+
+  private static final int initialCapacity = 64;
+
+  private long[] times;
+  private long[] prices;
+  private int[] quantities;
+  private int size;
+  private final Map<Integer, TradeWindowStats> windowStats;
+
+  private TransactionHistory() {
+    this.times = new long[initialCapacity];
+    this.prices = new long[initialCapacity];
+    this.quantities = new int[initialCapacity];
+    this.size = 0;
+    this.windowStats = new HashMap<>();
+  }
+
+  static TransactionHistory empty() {
+    return new TransactionHistory();
+  }
+
+  /** The number of transactions so far. */
+  public int size() {
+    return size;
+  }
+
+  /** Every transaction so far. */
+  public Window all() {
+    return new Window(0, size);
+  }
+
+  /** The most recent count transactions, or all of them if there have been fewer. */
+  public Window last(int count) {
+    checkArgument(count >= 0, "Count must be nonnegative");
+    return new Window(Math.max(0, size - count), size);
+  }
+
+  /** The transactions at or after time. Complexity: O(log n). */
+  public Window since(TimeStamp time) {
+    return new Window(firstAtOrAfter(time.get(), 0, size), size);
+  }
+
+  /**
+   * Statistics over the most recent depth transactions. Everything that asks for the same depth
+   * shares the same statistics, so they're only updated once per transaction.
+   */
+  public TradeWindowStats windowStats(int depth) {
+    return windowStats.computeIfAbsent(depth, d -> new TradeWindowStats(this, d));
+  }
+
+  void add(TimeStamp time, Price price, int quantity) {
+    if (size == times.length) {
+      grow();
+    }
+    times[size] = time.get();
+    prices[size] = price.longValue();
+    quantities[size] = quantity;
+    ++size;
+  }
+
+  long price(int transaction) {
+    checkElementIndex(transaction, size);
+    return prices[transaction];
+  }
+
+  /** The transactions as a json array of [time, price]. */
+  JsonArray toJson() {
+    JsonArray series = new JsonArray();
+    for (int i = 0; i < size; ++i) {
+      JsonArray point = new JsonArray();
+      point.add(times[i]);
+      point.add((double) prices[i]);
+      series.add(point);
+    }
+    return series;
+  }
+
+  private int firstAtOrAfter(long time, int low, int high) {
+    // Times never decrease, so the first index with a later time can be found by bisection
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (times[mid] < time) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private void grow() {
+    int capacity = times.length * 2;
+    times = Arrays.copyOf(times, capacity);
+    prices = Arrays.copyOf(prices, capacity);
+    quantities = Arrays.copyOf(quantities, capacity);
+  }
+
+  /**
+   * A contiguous run of transactions, indexed from zero for the oldest. A window only covers the
+   * transactions that had happened when it was taken.
+   */
+  public class Window {
+
+    private final int start;
+    private final int end;
+
+    private Window(int start, int end) {
+      this.start = start;
+      this.end = end;
+    }
+
+    public int size() {
+      return end - start;
+    }
+
+    public boolean isEmpty() {
+      return start == end;
+    }
+
+    public long getTime(int transaction) {
+      return times[index(transaction)];
+    }
+
+    public long getPrice(int transaction) {
+      return prices[index(transaction)];
+    }
+
+    public int getQuantity(int transaction) {
+      return quantities[index(transaction)];
+    }
+
+    /** The most recent count transactions of this window. */
+    public Window last(int count) {
+      checkArgument(count >= 0, "Count must be nonnegative");
+      return new Window(Math.max(start, end - count), end);
+    }
+
+    /** The transactions of this window at or after time. Complexity: O(log n). */
+    public Window since(TimeStamp time) {
+      return new Window(firstAtOrAfter(time.get(), start, end), end);
+    }
+
+    private int index(int transaction) {
+      checkElementIndex(transaction, end - start);
+      return start + transaction;
+    }
+
+  }
+
+}
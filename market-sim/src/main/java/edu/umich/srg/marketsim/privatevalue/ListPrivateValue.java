@@ -8,7 +8,6 @@ import edu.umich.srg.fourheap.OrderType;
 
 import java.util.Arrays;
 import java.util.Random;
-import java.util.stream.DoubleStream;
 
 /**
  * This class allows storage of an agent's private value. In general it is constructed by passing it
@@ -47,26 +46,13 @@ class ListPrivateValue implements PrivateValue {
   }
 
   ListPrivateValue(DoubleDistribution dist, int maxPosition, Random rand) {
-    this(DoubleStream.generate(() -> -dist.sample(rand)).limit(2 * maxPosition).sorted()
-        .map(x -> -x).toArray(), maxPosition);
+    this(sampleDescending(dist, rand, new double[2 * maxPosition], 0, 2 * maxPosition),
+        maxPosition);
   }
 
   @Override
   public double valueForExchange(int position, OrderType type) {
-    int index = position + offset - (requireNonNull(type) == SELL ? 1 : 0);
-    //System.out.println(12345);
-    //System.out.println(position);
-	//System.out.println(type.sign());
-    //System.out.println(index);
-    //System.out.println(values.length);
-    //System.out.println(values[index] * type.sign());
-    if (index >= values.length) {
-      return extraBuy * type.sign();
-    } else if (index < 0) {
-      return extraSell * type.sign();
-    } else {
-      return values[index] * type.sign();
-    }
+    return valueForExchange(values, 0, values.length, offset, position, type);
   }
 
   @Override
@@ -85,6 +71,39 @@ class ListPrivateValue implements PrivateValue {
     return value;
   }
 
+  /**
+   * Fill values from start to start + length with draws taken one at a time, sorted from largest to
+   * smallest, and return values. Bulk draws come from a different gaussian sampler, so they would
+   * change seeded private values.
+   */
+  static double[] sampleDescending(DoubleDistribution dist, Random rand, double[] values,
+      int start, int length) {
+    for (int i = start; i < start + length; ++i) {
+      values[i] = -dist.sample(rand);
+    }
+    Arrays.sort(values, start, start + length);
+    for (int i = start; i < start + length; ++i) {
+      values[i] = -values[i];
+    }
+    return values;
+  }
+
+  /**
+   * The value for exchange of the private value whose marginal buys are stored from start to start
+   * + length of values, and whose buy at position 0 is at start + offset.
+   */
+  static double valueForExchange(double[] values, int start, int length, int offset, int position,
+      OrderType type) {
+    int index = position + offset - (requireNonNull(type) == SELL ? 1 : 0);
+    if (index >= length) {
+      return (length == 0 ? 0 : Math.min(values[start + length - 1], 0)) * type.sign();
+    } else if (index < 0) {
+      return (length == 0 ? 0 : Math.max(values[start], 0)) * type.sign();
+    } else {
+      return values[start + index] * type.sign();
+    }
+  }
+
   /** Verifies an array of doubles is decreasing. */
   private static boolean isDecreasing(double[] values) {
     double last = Double.POSITIVE_INFINITY;
@@ -1,6 +1,7 @@
 package edu.umich.srg.marketsim.privatevalue;
 
 import edu.umich.srg.distributions.Gaussian;
+import edu.umich.srg.fourheap.OrderType;
 
 import java.util.Random;
 
@@ -10,6 +11,27 @@ public final class PrivateValues {
     return new ListPrivateValue(Gaussian.withMeanVariance(0, variance), maxPosition, rand);
   }
 
+  /**
+   * Fill values from start to start + 2 * maxPosition with the marginal buys of a gaussian private
+   * value, making the same draws as {@link #gaussianPrivateValue}. This lets many private values
+   * share one array.
+   */
+  public static void gaussianMarginalBuys(Random rand, int maxPosition, double variance,
+      double[] values, int start) {
+    ListPrivateValue.sampleDescending(Gaussian.withMeanVariance(0, variance), rand, values, start,
+        2 * maxPosition);
+  }
+
+  /**
+   * The value for exchange of a gaussian private value whose marginal buys were stored at start by
+   * {@link #gaussianMarginalBuys}.
+   */
+  public static double valueForExchange(double[] values, int start, int maxPosition, int position,
+      OrderType type) {
+    return ListPrivateValue.valueForExchange(values, start, 2 * maxPosition, maxPosition, position,
+        type);
+  }
+
   public static PrivateValue fromMarginalBuys(double[] marginalBuys) {
     return new ListPrivateValue(marginalBuys);
   }
@@ -0,0 +1,80 @@
+package edu.umich.srg.marketsim.sip;
+
+import edu.umich.srg.marketsim.Price;
+import edu.umich.srg.marketsim.TimeStamp;
+import edu.umich.srg.marketsim.market.Market;
+import edu.umich.srg.util.Optionals;
+
+import java.util.Optional;
+
+/**
+ * An immutable national best bid and offer. A new one is only created when the best prices change,
+ * so agents reading the current nbbo never allocate.
+ */
+public class Nbbo {
+
+  private static final Nbbo empty =
+      new Nbbo(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(),
+          TimeStamp.ZERO);
+
+  private final Optional<Price> bid;
+  private final Optional<Market> bidMarket;
+  private final Optional<Price> ask;
+  private final Optional<Market> askMarket;
+  private final TimeStamp updateTime;
+
+  Nbbo(Optional<Price> bid, Optional<Market> bidMarket, Optional<Price> ask,
+      Optional<Market> askMarket, TimeStamp updateTime) {
+    this.bid = bid;
+    this.bidMarket = bidMarket;
+    this.ask = ask;
+    this.askMarket = askMarket;
+    this.updateTime = updateTime;
+  }
+
+  public static Nbbo empty() {
+    return empty;
+  }
+
+  public Optional<Price> getBidPrice() {
+    return bid;
+  }
+
+  /** The market with the best bid, ties go to the market that was added to the sip first. */
+  public Optional<Market> getBidMarket() {
+    return bidMarket;
+  }
+
+  public Optional<Price> getAskPrice() {
+    return ask;
+  }
+
+  /** The market with the best ask, ties go to the market that was added to the sip first. */
+  public Optional<Market> getAskMarket() {
+    return askMarket;
+  }
+
+  /** The simulation time that the sip published this nbbo. */
+  public TimeStamp getUpdateTime() {
+    return updateTime;
+  }
+
+  /** bid-ask spread of the nbbo. */
+  public double getSpread() {
+    return Optionals.apply((aq, bq) -> aq.doubleValue() - bq.doubleValue(), ask, bid)
+        .orElse(Double.POSITIVE_INFINITY);
+  }
+
+  /** Return the midquote. */
+  public double getMidquote() {
+    return Optionals.apply((aq, bq) -> (aq.doubleValue() + bq.doubleValue()) / 2, ask, bid)
+        .orElse(Double.NaN);
+  }
+
+  @Override
+  public String toString() {
+    return "(Bid: " + (bid.isPresent() ? bid.get() : "- ") + ", Ask: "
+        + (ask.isPresent() ? ask.get() : "- ") + ')';
+  }
+
+}
@@ -0,0 +1,174 @@
+package edu.umich.srg.marketsim.sip;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.umich.srg.marketsim.Price;
+import edu.umich.srg.marketsim.Sim;
+import edu.umich.srg.marketsim.TimeStamp;
+import edu.umich.srg.marketsim.market.Market;
+import edu.umich.srg.marketsim.market.Quote;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * The securities information processor consolidates the quotes of every market into a national best
+ * bid and offer. Quote updates reach the sip as activities scheduled in its sim after its latency,
+ * and the best prices are tracked incrementally in a heap per side, so an update costs logarithmic
+ * time in the number of markets instead of a rescan. The current nbbo is an immutable snapshot that
+ * is only replaced when the best prices change. It's only written by the sip's own activities, so
+ * anything else scheduled in the same sim can read it. A parallel simulator gives each partition its
+ * own sip, see {@link edu.umich.srg.marketsim.MarketSimulator#addSip}.
+ */
+public class Sip {
+
+  private final Sim sim;
+  private final TimeStamp latency;
+  private final ImmutableList<Market> markets;
+  private final Price[] bids;
+  private final Price[] asks;
+  private final PriceHeap bestBids;
+  private final PriceHeap bestAsks;
+  private Nbbo nbbo;
+
+  private Sip(Sim sim, Collection<Market> markets, TimeStamp latency) {
+    this.sim = sim;
+    this.latency = latency;
+    this.markets = ImmutableList.copyOf(markets);
+    this.bids = new Price[markets.size()];
+    this.asks = new Price[markets.size()];
+    this.bestBids = new PriceHeap(markets.size());
+    this.bestAsks = new PriceHeap(markets.size());
+    this.nbbo = Nbbo.empty();
+
+    for (int i = 0; i < this.markets.size(); ++i) {
+      final int index = i;
+      this.markets.get(i).addQuoteObserver(quote -> {
+        if (latency.equals(TimeStamp.ZERO)) {
+          update(index, quote);
+        } else {
+          sim.scheduleIn(latency, () -> update(index, quote));
+        }
+      });
+    }
+  }
+
+  /**
+   * Create a sip for a collection of markets whose updates are scheduled in sim. With no latency
+   * the sip updates as soon as a market's quote changes, so sim must be the sim of every market.
+   */
+  public static Sip create(Sim sim, Collection<Market> markets, TimeStamp latency) {
+    return new Sip(sim, markets, latency);
+  }
+
+  /** The most recently published nbbo. */
+  public Nbbo getNbbo() {
+    return nbbo;
+  }
+
+  public TimeStamp getLatency() {
+    return latency;
+  }
+
+  private void update(int market, Quote quote) {
+    bids[market] = quote.getBidPrice().orElse(null);
+    asks[market] = quote.getAskPrice().orElse(null);
+    // Bids are negated so that the best price on both sides is the smallest
+    boolean changed = bestBids.update(market,
+        bids[market] == null ? Long.MAX_VALUE : -bids[market].longValue());
+    changed |= bestAsks.update(market,
+        asks[market] == null ? Long.MAX_VALUE : asks[market].longValue());
+    if (changed) {
+      int bestBid = bestBids.best();
+      int bestAsk = bestAsks.best();
+      nbbo = new Nbbo(Optional.ofNullable(bids[bestBid]),
+          Optional.ofNullable(bids[bestBid] == null ? null : markets.get(bestBid)),
+          Optional.ofNullable(asks[bestAsk]),
+          Optional.ofNullable(asks[bestAsk] == null ? null : markets.get(bestAsk)),
+          sim.getCurrentTime());
+    }
+  }
+
+  /**
+   * An indexed binary min heap of one price per market. Ties are broken by market index so the
+   * best market is deterministic.
+   */
+  private static final class PriceHeap {
+
+    private final long[] prices;
+    private final int[] heap;
+    private final int[] positions;
+
+    private PriceHeap(int size) {
+      this.prices = new long[size];
+      this.heap = new int[size];
+      this.positions = new int[size];
+      Arrays.fill(prices, Long.MAX_VALUE);
+      for (int i = 0; i < size; ++i) {
+        heap[i] = i;
+        positions[i] = i;
+      }
+    }
+
+    private int best() {
+      return heap[0];
+    }
+
+    /** Set the price of a market, and return true if the best market or its price changed. */
+    private boolean update(int market, long price) {
+      int oldBest = heap[0];
+      long oldPrice = prices[oldBest];
+      long previous = prices[market];
+      prices[market] = price;
+      if (price < previous) {
+        siftUp(positions[market]);
+      } else if (price > previous) {
+        siftDown(positions[market]);
+      }
+      return heap[0] != oldBest || prices[heap[0]] != oldPrice;
+    }
+
+    private boolean less(int first, int second) {
+      return prices[first] < prices[second]
+          || (prices[first] == prices[second] && first < second);
+    }
+
+    private void siftUp(int pos) {
+      int market = heap[pos];
+      while (pos > 0) {
+        int parent = (pos - 1) / 2;
+        if (!less(market, heap[parent])) {
+          break;
+        }
+        place(heap[parent], pos);
+        pos = parent;
+      }
+      place(market, pos);
+    }
+
+    private void siftDown(int pos) {
+      int market = heap[pos];
+      int half = heap.length / 2;
+      while (pos < half) {
+        int child = 2 * pos + 1;
+        if (child + 1 < heap.length && less(heap[child + 1], heap[child])) {
+          ++child;
+        }
+        if (!less(heap[child], market)) {
+          break;
+        }
+        place(heap[child], pos);
+        pos = child;
+      }
+      place(market, pos);
+    }
+
+    private void place(int market, int pos) {
+      heap[pos] = market;
+      positions[market] = pos;
+    }
+
+  }
+
+}
@@ -0,0 +1,59 @@
+package edu.umich.srg.marketsim.strategy;
+
+import edu.umich.srg.marketsim.Sim;
+import edu.umich.srg.marketsim.fundamental.Fundamental;
+import edu.umich.srg.marketsim.fundamental.GaussianFundamentalView;
+import edu.umich.srg.marketsim.fundamental.GaussianFundamentalView.GaussableView;
+import edu.umich.srg.marketsim.fundamental.GaussianFundamentalView.SharedObservations;
+import edu.umich.srg.marketsim.market.Market;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.WeakHashMap;
+
+/**
+ * Fundamental estimates that use a market's transactions as observations, shared by every agent
+ * that observes that market's transactions with the same variance. Each transaction is observed by
+ * one estimator that's registered with the market, instead of by one per agent, so the cost of a
+ * transaction doesn't depend on the number of agents. Each agent's view only adds its own noisy
+ * observations of the fundamental to the shared estimate.
+ */
+public final class SharedEstimators {
+
+  // Estimators reference their simulation, and so the market, so they're only weakly held. The
+  // market's observer keeps them alive as long as the market is.
+  private static final Map<Market, Map<Double, WeakReference<SharedObservations>>> estimators =
+      new WeakHashMap<>();
+
+  private SharedEstimators() {}
+
+  /**
+   * A view of the fundamental with noisy observations of observationVariance that also observes
+   * every transaction in market with transactionVariance.
+   */
+  public static GaussianFundamentalView create(Sim sim, Fundamental fundamental, Market market,
+      Random rand, double observationVariance, double transactionVariance) {
+    return getEstimator(sim, fundamental, market, transactionVariance).addNoise(rand,
+        observationVariance);
+  }
+
+  private static synchronized SharedObservations getEstimator(Sim sim, Fundamental fundamental,
+      Market market, double transactionVariance) {
+    Map<Double, WeakReference<SharedObservations>> byVariance =
+        estimators.computeIfAbsent(market, m -> new HashMap<>());
+    WeakReference<SharedObservations> ref = byVariance.get(transactionVariance);
+    SharedObservations shared = ref == null ? null : ref.get();
+    if (shared == null) {
+      SharedObservations created =
+          ((GaussableView) fundamental.getView(sim)).shareObservations(transactionVariance);
+      market.addTransactionObserver(
+          (price, quantity) -> created.addObservation(price.doubleValue(), quantity));
+      byVariance.put(transactionVariance, new WeakReference<>(created));
+      shared = created;
+    }
+    return shared;
+  }
+
+}
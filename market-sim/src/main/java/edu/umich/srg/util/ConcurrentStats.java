@@ -0,0 +1,109 @@
+package edu.umich.srg.util;
+
+import java.util.OptionalDouble;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Thread safe summary statistics and quantiles. Every thread accumulates into its own
+ * {@link SummStats} and {@link QuantileSketch}, so threads never wait on each other, and the parts
+ * are only combined when a result is read. This keeps no data, so it can aggregate values over any
+ * number of observations from the multi-threaded runner.
+ */
+public class ConcurrentStats implements DoubleConsumer {
+
+  private final double relativeAccuracy;
+  private final Queue<Cell> cells;
+  private final ThreadLocal<Cell> local;
+
+  private ConcurrentStats(double relativeAccuracy) {
+    this.relativeAccuracy = relativeAccuracy;
+    this.cells = new ConcurrentLinkedQueue<>();
+    this.local = ThreadLocal.withInitial(() -> register(new Cell(relativeAccuracy)));
+  }
+
+  /** Create empty stats with quantiles within relativeAccuracy. */
+  public static ConcurrentStats create(double relativeAccuracy) {
+    // Checks the accuracy
+    QuantileSketch.create(relativeAccuracy);
+    return new ConcurrentStats(relativeAccuracy);
+  }
+
+  /** Add a value from any thread. NaNs are ignored. */
+  @Override
+  public void accept(double value) {
+    if (!Double.isNaN(value)) {
+      local.get().accept(value);
+    }
+  }
+
+  /** Merge other values into this. */
+  public ConcurrentStats combine(ConcurrentStats other) {
+    Cell cell = new Cell(relativeAccuracy);
+    cell.stats.combine(other.getStats());
+    cell.sketch.combine(other.getSketch());
+    register(cell);
+    return this;
+  }
+
+  /** A snapshot of the summary statistics of every value so far. */
+  public SummStats getStats() {
+    SummStats stats = SummStats.empty();
+    for (Cell cell : cells) {
+      synchronized (cell) {
+        stats.combine(cell.stats);
+      }
+    }
+    return stats;
+  }
+
+  /** A snapshot of the quantiles of every value so far. */
+  public QuantileSketch getSketch() {
+    QuantileSketch sketch = QuantileSketch.create(relativeAccuracy);
+    for (Cell cell : cells) {
+      synchronized (cell) {
+        sketch.combine(cell.sketch);
+      }
+    }
+    return sketch;
+  }
+
+  public OptionalDouble quantile(double quantile) {
+    return getSketch().quantile(quantile);
+  }
+
+  public long getCount() {
+    return getStats().getCount();
+  }
+
+  private Cell register(Cell cell) {
+    cells.add(cell);
+    return cell;
+  }
+
+  @Override
+  public String toString() {
+    return getStats().toString();
+  }
+
+  // Only ever contended when a result is read while a thread is adding
+  private static final class Cell implements DoubleConsumer {
+
+    private final SummStats stats;
+    private final QuantileSketch sketch;
+
+    private Cell(double relativeAccuracy) {
+      this.stats = SummStats.empty();
+      this.sketch = QuantileSketch.create(relativeAccuracy);
+    }
+
+    @Override
+    public synchronized void accept(double value) {
+      stats.accept(value);
+      sketch.accept(value);
+    }
+
+  }
+
+}
@@ -0,0 +1,168 @@
+package edu.umich.srg.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+
+/**
+ * Online control variate estimate of a mean. Every value comes with controls whose expected value
+ * is known to be zero, and the estimate is the sample mean of the values minus the part explained
+ * by the sample means of the controls. The regression coefficients are fit from running
+ * covariances, so this only stores a {@link CovarStats} for every pair of controls and every
+ * control with the value.
+ */
+public class ControlVariateStats {
+
+  private static final double singularTolerance = 1e-12;
+  private static final double significantF = 4;
+
+  private final SummStats values;
+  // Lower triangle including the diagonal, x is the larger index
+  private final CovarStats[][] controlCovars;
+  // x is the control and y is the value
+  private final CovarStats[] valueCovars;
+
+  private ControlVariateStats(int numControls) {
+    this.values = SummStats.empty();
+    this.controlCovars = new CovarStats[numControls][];
+    this.valueCovars = new CovarStats[numControls];
+    for (int i = 0; i < numControls; ++i) {
+      controlCovars[i] = new CovarStats[i + 1];
+      for (int j = 0; j <= i; ++j) {
+        controlCovars[i][j] = CovarStats.empty();
+      }
+      valueCovars[i] = CovarStats.empty();
+    }
+  }
+
+  /** Create an empty estimate with a number of zero mean controls. */
+  public static ControlVariateStats empty(int numControls) {
+    checkArgument(numControls >= 0, "number of controls must be nonnegative (%d)", numControls);
+    return new ControlVariateStats(numControls);
+  }
+
+  /** Accept a value with its controls. */
+  public void accept(double value, double... controls) {
+    checkArgument(controls.length == valueCovars.length, "expected %d controls, but got %d",
+        valueCovars.length, controls.length);
+    values.accept(value);
+    for (int i = 0; i < controls.length; ++i) {
+      for (int j = 0; j <= i; ++j) {
+        controlCovars[i][j].accept(controls[i], controls[j]);
+      }
+      valueCovars[i].accept(controls[i], value);
+    }
+  }
+
+  public long getCount() {
+    return values.getCount();
+  }
+
+  public int getNumControls() {
+    return valueCovars.length;
+  }
+
+  /** The sample mean of the values without any adjustment. */
+  public double getUnadjustedAverage() {
+    return values.getAverage().orElse(Double.NaN);
+  }
+
+  /**
+   * The regression coefficients of the value on each control. Controls that don't vary, or that
+   * are linear combinations of earlier controls, get a coefficient of zero. All coefficients are
+   * also zero unless the controls are significantly correlated with the values, i.e. the F
+   * statistic of the regression is above about the 5% level. Fitting coefficients to controls that
+   * don't matter makes the estimate worse, not better.
+   */
+  public double[] getCoefficients() {
+    int num = valueCovars.length;
+    double[] coefficients = new double[num];
+    long count = values.getCount();
+    if (count <= num + 2) {
+      return coefficients;
+    }
+
+    // Gaussian elimination with partial pivoting on the covariance matrix of the controls
+    double[][] system = new double[num][num + 1];
+    for (int i = 0; i < num; ++i) {
+      for (int j = 0; j <= i; ++j) {
+        system[i][j] = system[j][i] = controlCovars[i][j].getCovariance();
+      }
+      system[i][num] = valueCovars[i].getCovariance();
+    }
+    double scale = 0;
+    for (int i = 0; i < num; ++i) {
+      scale = Math.max(scale, Math.abs(system[i][i]));
+    }
+
+    int[] pivotColumns = new int[num];
+    int rank = 0;
+    for (int col = 0; col < num && rank < num; ++col) {
+      int pivot = rank;
+      for (int row = rank + 1; row < num; ++row) {
+        if (Math.abs(system[row][col]) > Math.abs(system[pivot][col])) {
+          pivot = row;
+        }
+      }
+      if (Math.abs(system[pivot][col]) <= singularTolerance * scale) {
+        continue; // Degenerate control, leave its coefficient at zero
+      }
+      double[] swap = system[pivot];
+      system[pivot] = system[rank];
+      system[rank] = swap;
+      for (int row = 0; row < num; ++row) {
+        if (row != rank) {
+          double factor = system[row][col] / system[rank][col];
+          for (int k = col; k <= num; ++k) {
+            system[row][k] -= factor * system[rank][k];
+          }
+        }
+      }
+      pivotColumns[rank++] = col;
+    }
+    double explained = 0;
+    for (int i = 0; i < rank; ++i) {
+      coefficients[pivotColumns[i]] = system[i][num] / system[i][pivotColumns[i]];
+      explained += coefficients[pivotColumns[i]] * valueCovars[pivotColumns[i]].getCovariance();
+    }
+
+    double rsquared = explained / values.getVariance().orElse(0);
+    // An exact fit can round to an r squared just over one
+    double fstatistic = rsquared / rank / (Math.max(1 - rsquared, 0) / (count - rank - 1));
+    if (rank == 0 || !(fstatistic > significantF)) {
+      Arrays.fill(coefficients, 0);
+    }
+    return coefficients;
+  }
+
+  /**
+   * The control variate estimate of the mean. This is the unadjusted mean if the controls aren't
+   * worth using.
+   */
+  public double getAverage() {
+    return getAverage(getCoefficients());
+  }
+
+  /**
+   * The control variate estimate of the mean using coefficients fit elsewhere, e.g. pooled over
+   * several estimates that share controls.
+   */
+  public double getAverage(double[] coefficients) {
+    checkArgument(coefficients.length == valueCovars.length, "expected %d coefficients, but got %d",
+        valueCovars.length, coefficients.length);
+    double average = getUnadjustedAverage();
+    for (int i = 0; i < coefficients.length; ++i) {
+      if (coefficients[i] != 0) {
+        average -= coefficients[i] * valueCovars[i].getXAverage();
+      }
+    }
+    return average;
+  }
+
+  @Override
+  public String toString() {
+    return "<n: " + getCount() + ", mean: " + getAverage() + ", unadjusted mean: "
+        + getUnadjustedAverage() + ">";
+  }
+
+}
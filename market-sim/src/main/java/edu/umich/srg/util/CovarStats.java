@@ -144,6 +144,9 @@ public class CovarStats {
 
   /** Merge other values into this. */
   public CovarStats combine(CovarStats that) {
+    if (that.count == 0) {
+      return this; // Would divide zero by zero if this is empty too
+    }
     count += that.count;
     final double deltaX = that.averageX - averageX;
     final double deltaY = that.averageY - averageY;
@@ -155,7 +158,7 @@ public class CovarStats {
 
     jointSquaredError += that.jointSquaredError + deltaY * (that.averageX - averageX) * that.count;
 
-    averageY += deltaX * that.count / count;
+    averageY += deltaY * that.count / count;
     squaredErrorY += that.squaredErrorY + deltaY * (that.averageY - averageY) * that.count;
     minY = Math.min(minY, that.minY);
     maxY = Math.max(maxY, that.maxY);
@@ -0,0 +1,237 @@
+package edu.umich.srg.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.OptionalDouble;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Streaming quantiles with a bounded relative error and without keeping the data. Values are
+ * counted in buckets whose bounds grow geometrically, so any quantile is within relativeAccuracy of
+ * a value at that rank. Counts are kept in primitive arrays over the range of buckets seen, and two
+ * sketches with the same accuracy merge exactly by adding counts, so a sketch built from parts in
+ * any order has the same quantiles as one built from all of the data.
+ *
+ * <p>If values span so many orders of magnitude that a side would need more than maxBuckets, the
+ * buckets of the smallest magnitudes are collapsed together, so only those lose accuracy (and
+ * merging is no longer exact for them). Infinite values are counted apart from the buckets, so
+ * they're only ever the most extreme quantiles. NaNs are ignored.
+ */
+public class QuantileSketch implements DoubleConsumer {
+
+  private static final int maxBuckets = 4096;
+  // Smaller magnitudes count as zero
+  private static final double minMagnitude = Double.MIN_NORMAL;
+
+  private final double relativeAccuracy;
+  private final double logGamma;
+  private final Buckets positive;
+  private final Buckets negative;
+  private long zeros;
+  private long negativeInfinities;
+  private long positiveInfinities;
+  private long count;
+  private double min;
+  private double max;
+
+  private QuantileSketch(double relativeAccuracy) {
+    this.relativeAccuracy = relativeAccuracy;
+    this.logGamma = Math.log((1 + relativeAccuracy) / (1 - relativeAccuracy));
+    this.positive = new Buckets();
+    this.negative = new Buckets();
+    this.zeros = 0;
+    this.negativeInfinities = 0;
+    this.positiveInfinities = 0;
+    this.count = 0;
+    this.min = Double.POSITIVE_INFINITY;
+    this.max = Double.NEGATIVE_INFINITY;
+  }
+
+  /** Create an empty sketch where quantiles are within relativeAccuracy, e.g. 0.01. */
+  public static QuantileSketch create(double relativeAccuracy) {
+    checkArgument(0 < relativeAccuracy && relativeAccuracy < 1,
+        "relative accuracy must be in (0, 1) (%s)", relativeAccuracy);
+    return new QuantileSketch(relativeAccuracy);
+  }
+
+  @Override
+  public void accept(double value) {
+    acceptNTimes(value, 1);
+  }
+
+  /** Accept a value several times. */
+  public void acceptNTimes(double value, long times) {
+    checkArgument(times >= 0);
+    if (Double.isNaN(value) || times == 0) {
+      return;
+    } else if (value == Double.POSITIVE_INFINITY) {
+      positiveInfinities += times;
+    } else if (value == Double.NEGATIVE_INFINITY) {
+      negativeInfinities += times;
+    } else if (value >= minMagnitude) {
+      positive.add(index(value), times);
+    } else if (value <= -minMagnitude) {
+      negative.add(index(-value), times);
+    } else {
+      zeros += times;
+    }
+    count += times;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+  }
+
+  /** Merge other values into this. Both sketches must have the same accuracy. */
+  public QuantileSketch combine(QuantileSketch other) {
+    checkArgument(relativeAccuracy == other.relativeAccuracy,
+        "can only combine sketches with the same accuracy (%s vs %s)", relativeAccuracy,
+        other.relativeAccuracy);
+    positive.addAll(other.positive);
+    negative.addAll(other.negative);
+    zeros += other.zeros;
+    negativeInfinities += other.negativeInfinities;
+    positiveInfinities += other.positiveInfinities;
+    count += other.count;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+    return this;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public double getRelativeAccuracy() {
+    return relativeAccuracy;
+  }
+
+  /**
+   * The value at rank quantile * (count - 1), within the relative accuracy. The extreme quantiles
+   * are the exact min and max.
+   */
+  public OptionalDouble quantile(double quantile) {
+    checkArgument(0 <= quantile && quantile <= 1, "Quantile must be between 0 and 1");
+    if (count == 0) {
+      return OptionalDouble.empty();
+    } else if (quantile == 0) {
+      return OptionalDouble.of(min);
+    } else if (quantile == 1) {
+      return OptionalDouble.of(max);
+    }
+
+    long rank = (long) (quantile * (count - 1)) - negativeInfinities;
+    double value;
+    if (rank < 0) {
+      return OptionalDouble.of(Double.NEGATIVE_INFINITY);
+    } else if (rank < negative.total) {
+      // Negative buckets from the largest magnitude down
+      value = -value(negative.indexFromTop(rank));
+    } else if (rank < negative.total + zeros) {
+      value = 0;
+    } else if (rank < negative.total + zeros + positive.total) {
+      value = value(positive.indexFromBottom(rank - negative.total - zeros));
+    } else {
+      return OptionalDouble.of(Double.POSITIVE_INFINITY);
+    }
+    return OptionalDouble.of(Math.max(min, Math.min(max, value)));
+  }
+
+  public OptionalDouble median() {
+    return quantile(0.5);
+  }
+
+  public OptionalDouble getMin() {
+    return count == 0 ? OptionalDouble.empty() : OptionalDouble.of(min);
+  }
+
+  public OptionalDouble getMax() {
+    return count == 0 ? OptionalDouble.empty() : OptionalDouble.of(max);
+  }
+
+  /** Bucket i holds magnitudes in (gamma^(i - 1), gamma^i]. */
+  private int index(double magnitude) {
+    return (int) Math.ceil(Math.log(magnitude) / logGamma);
+  }
+
+  /** The value in bucket index with the smallest relative error to anything in it. */
+  private double value(int index) {
+    return 2 * Math.exp(index * logGamma) / (1 + Math.exp(logGamma));
+  }
+
+  @Override
+  public String toString() {
+    return "<n: " + count + ", median: " + median() + ">";
+  }
+
+  /** Counts for a dense range of bucket indices. */
+  private static final class Buckets {
+
+    private long[] counts = new long[0];
+    private int offset = 0; // Index of counts[0]
+    private long total = 0;
+
+    private void add(int index, long times) {
+      if (counts.length == 0) {
+        counts = new long[16];
+        offset = index - counts.length / 2;
+      }
+      if (index < offset) {
+        grow(index, offset + counts.length - 1);
+      } else if (index >= offset + counts.length) {
+        grow(offset, index);
+      }
+      // Anything below the range was collapsed into the lowest bucket
+      counts[Math.max(index, offset) - offset] += times;
+      total += times;
+    }
+
+    private void addAll(Buckets other) {
+      for (int i = 0; i < other.counts.length; ++i) {
+        if (other.counts[i] > 0) {
+          add(other.offset + i, other.counts[i]);
+        }
+      }
+    }
+
+    /** Make the range cover [low, high], collapsing the lowest buckets if it's too wide. */
+    private void grow(int low, int high) {
+      low = Math.max(low, high - maxBuckets + 1);
+      int length = Math.min(maxBuckets, Math.max(counts.length * 2, high - low + 1));
+      // Any extra room goes on the side that's growing
+      int newOffset = low < offset ? high - length + 1 : low;
+      long[] grown = new long[length];
+      for (int i = 0; i < counts.length; ++i) {
+        grown[Math.max(offset + i, newOffset) - newOffset] += counts[i];
+      }
+      counts = grown;
+      offset = newOffset;
+    }
+
+    private int indexFromBottom(long rank) {
+      for (int i = 0; i < counts.length; ++i) {
+        rank -= counts[i];
+        if (rank < 0) {
+          return offset + i;
+        }
+      }
+      throw new IllegalStateException("rank out of range");
+    }
+
+    private int indexFromTop(long rank) {
+      for (int i = counts.length - 1; i >= 0; --i) {
+        rank -= counts[i];
+        if (rank < 0) {
+          return offset + i;
+        }
+      }
+      throw new IllegalStateException("rank out of range");
+    }
+
+    @Override
+    public String toString() {
+      return offset + ": " + Arrays.toString(counts);
+    }
+
+  }
+
+}
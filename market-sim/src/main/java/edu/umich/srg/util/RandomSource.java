@@ -0,0 +1,47 @@
+package edu.umich.srg.util;
+
+import java.util.Random;
+
+/**
+ * The kinds of generator the simulator can draw its random numbers from. Only the root generator
+ * of an observation is created from a source, everything else is derived from it with
+ * {@link #split} or seeded with {@link #create} of the same source, so one setting switches the
+ * generator of the whole simulation.
+ */
+public enum RandomSource {
+
+  /** {@link Random}, which reproduces the observations of earlier versions for the same seed. */
+  JAVA {
+    @Override
+    public Random create(long seed) {
+      return new Random(seed);
+    }
+  },
+
+  /** {@link SplitMixRandom}, which is faster and splits into independent streams. */
+  SPLITMIX {
+    @Override
+    public Random create(long seed) {
+      return SplitMixRandom.create(seed);
+    }
+  };
+
+  /** Create a generator of this kind from a seed. */
+  public abstract Random create(long seed);
+
+  /** The source a generator came from. */
+  public static RandomSource of(Random rand) {
+    return rand instanceof SplitMixRandom ? SPLITMIX : JAVA;
+  }
+
+  /**
+   * Create a generator for an independent stream from parent, deterministically given the state of
+   * the parent, and of the same kind. A java Random is seeded with parent.nextLong() like the
+   * simulator has always done.
+   */
+  public static Random split(Random parent) {
+    return parent instanceof SplitMixRandom ? ((SplitMixRandom) parent).split()
+        : new Random(parent.nextLong());
+  }
+
+}
@@ -0,0 +1,143 @@
+package edu.umich.srg.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Random;
+
+/**
+ * A fast splittable generator with the SplitMix64 algorithm from "Fast Splittable Pseudorandom
+ * Number Generators" - G. L. Steele, D. Lea, and C. H. Flood (2014), the same one behind
+ * {@link java.util.SplittableRandom}. It extends {@link Random} so it can be used anywhere the
+ * simulator takes a Random, but unlike Random it keeps plain 64 bit state without any
+ * synchronization, so each instance must only be used by one thread at a time. Independent streams
+ * for other threads or subsystems come from {@link #split}, which is deterministic given the state
+ * of this generator.
+ */
+public final class SplitMixRandom extends Random {
+
+  private static final long goldenGamma = 0x9e3779b97f4a7c15L;
+
+  // Not initialized here, because Random's constructor sets them through setSeed
+  private long state;
+  private long gamma;
+  private double nextGaussian;
+  private boolean haveNextGaussian;
+
+  private SplitMixRandom(long seed, long gamma) {
+    super(seed);
+    this.state = seed;
+    this.gamma = gamma;
+  }
+
+  public static SplitMixRandom create(long seed) {
+    return new SplitMixRandom(seed, goldenGamma);
+  }
+
+  /**
+   * Create a new generator whose stream is independent of this one's, advancing this generator
+   * twice.
+   */
+  public SplitMixRandom split() {
+    return new SplitMixRandom(nextLong(), mixGamma(nextSeed()));
+  }
+
+  /** Restart from seed, as if this was created by {@link #create(long)}. */
+  @Override
+  public void setSeed(long seed) {
+    this.state = seed;
+    this.gamma = goldenGamma;
+    this.haveNextGaussian = false;
+  }
+
+  @Override
+  protected int next(int bits) {
+    return (int) (nextLong() >>> (Long.SIZE - bits));
+  }
+
+  @Override
+  public int nextInt() {
+    return mix32(nextSeed());
+  }
+
+  @Override
+  public int nextInt(int bound) {
+    checkArgument(bound > 0, "bound must be positive");
+    int result = mix32(nextSeed());
+    int mask = bound - 1;
+    if ((bound & mask) == 0) {
+      return result & mask;
+    }
+    // Reject the top partial range so every value is equally likely
+    for (int bits = result >>> 1; bits + mask - (result = bits % bound) < 0;
+        bits = mix32(nextSeed()) >>> 1) {
+    }
+    return result;
+  }
+
+  @Override
+  public long nextLong() {
+    return mix64(nextSeed());
+  }
+
+  @Override
+  public boolean nextBoolean() {
+    return mix32(nextSeed()) < 0;
+  }
+
+  @Override
+  public float nextFloat() {
+    return (mix32(nextSeed()) >>> 8) * 0x1.0p-24f;
+  }
+
+  @Override
+  public double nextDouble() {
+    return (mix64(nextSeed()) >>> 11) * 0x1.0p-53;
+  }
+
+  /** Same polar method as Random, but without the lock. */
+  @Override
+  public double nextGaussian() {
+    if (haveNextGaussian) {
+      haveNextGaussian = false;
+      return nextGaussian;
+    }
+    double first;
+    double second;
+    double squares;
+    do {
+      first = 2 * nextDouble() - 1;
+      second = 2 * nextDouble() - 1;
+      squares = first * first + second * second;
+    } while (squares >= 1 || squares == 0);
+    double multiplier = Math.sqrt(-2 * Math.log(squares) / squares);
+    nextGaussian = second * multiplier;
+    haveNextGaussian = true;
+    return first * multiplier;
+  }
+
+  private long nextSeed() {
+    return state += gamma;
+  }
+
+  private static long mix64(long value) {
+    value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+    value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+    return value ^ (value >>> 31);
+  }
+
+  private static int mix32(long value) {
+    value = (value ^ (value >>> 33)) * 0x62a9d9ed799705f5L;
+    return (int) (((value ^ (value >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+  }
+
+  /** An odd gamma with enough bit transitions to give a good stream. */
+  private static long mixGamma(long value) {
+    value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+    value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    value = (value ^ (value >>> 33)) | 1L;
+    return Long.bitCount(value ^ (value >>> 1)) < 24 ? value ^ 0xaaaaaaaaaaaaaaaaL : value;
+  }
+
+  private static final long serialVersionUID = 1;
+
+}
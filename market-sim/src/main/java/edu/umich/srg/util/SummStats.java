@@ -142,6 +142,9 @@ public class SummStats implements DoubleConsumer, Consumer<Entry<? extends Numbe
 
   /** Merge other values into this. */
   public SummStats combine(SummStats other) {
+    if (other.count == 0) {
+      return this; // Would divide zero by zero if this is empty too
+    }
     count += other.count;
     double delta = other.average - average;
     average += delta * other.count / count;
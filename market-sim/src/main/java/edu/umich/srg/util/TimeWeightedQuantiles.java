@@ -0,0 +1,201 @@
+package edu.umich.srg.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.OptionalDouble;
+
+/**
+ * Quantiles of a value that changes over time, where every value is weighted by how long it lasted
+ * and the current value counts for one unit of time. Values must be integral or infinite, which
+ * covers anything measured in ticks or shares, and their weights are kept exactly in a primitive
+ * open addressing table, so an update is constant time and only allocates when the table grows.
+ * Quantiles sort the distinct values, so they're O(d log d) in the number of distinct values.
+ */
+public class TimeWeightedQuantiles {
+
+  private static final int initialCapacity = 64; // Must be a power of two
+
+  private long[] keys;
+  private long[] weights;
+  private boolean[] occupied;
+  private int distinct;
+  private long negativeInfinite;
+  private long positiveInfinite;
+  private long total;
+
+  private double current;
+  private long lastUpdate;
+  private boolean updated;
+
+  private TimeWeightedQuantiles(double initial) {
+    this.keys = new long[initialCapacity];
+    this.weights = new long[initialCapacity];
+    this.occupied = new boolean[initialCapacity];
+    this.distinct = 0;
+    this.negativeInfinite = 0;
+    this.positiveInfinite = 0;
+    this.total = 0;
+    this.current = checkValue(initial);
+    this.lastUpdate = 0;
+    this.updated = false;
+  }
+
+  /**
+   * Create quantiles where the value starts as initial at time zero. Until the first update the
+   * initial value isn't counted as current, so there are no quantiles.
+   */
+  public static TimeWeightedQuantiles create(double initial) {
+    return new TimeWeightedQuantiles(initial);
+  }
+
+  /** Change the value at time, which can't be before the last update. */
+  public void update(long time, double value) {
+    checkArgument(time >= lastUpdate, "Updates must be in time order");
+    add(current, time - lastUpdate);
+    current = checkValue(value);
+    lastUpdate = time;
+    updated = true;
+  }
+
+  /** The current value. */
+  public double getCurrent() {
+    return current;
+  }
+
+  /** The total weight of every value, including the current one. */
+  public long getTotalWeight() {
+    return total + (updated ? 1 : 0);
+  }
+
+  /**
+   * The weighted quantile, linearly interpolated between the two closest values. The median (0.5)
+   * with an even total weight is the average of the middle two values.
+   */
+  public OptionalDouble quantile(double quantile) {
+    checkArgument(0 <= quantile && quantile <= 1, "Quantile must be between 0 and 1");
+    long totalWeight = getTotalWeight();
+    if (totalWeight == 0) {
+      return OptionalDouble.empty();
+    }
+    long[] sorted = sortedValues();
+    double position = quantile * (totalWeight - 1);
+    long rank = (long) position;
+    double lower = valueAt(rank, sorted);
+    if (position == rank) {
+      return OptionalDouble.of(lower);
+    }
+    double upper = valueAt(rank + 1, sorted);
+    double fraction = position - rank;
+    return OptionalDouble.of(lower == upper ? lower : (1 - fraction) * lower + fraction * upper);
+  }
+
+  public OptionalDouble median() {
+    return quantile(0.5);
+  }
+
+  private void add(double value, long weight) {
+    if (weight == 0) {
+      return;
+    } else if (value == Double.NEGATIVE_INFINITY) {
+      negativeInfinite += weight;
+    } else if (value == Double.POSITIVE_INFINITY) {
+      positiveInfinite += weight;
+    } else {
+      int index = slot((long) value); // Claiming a slot can replace the arrays
+      weights[index] += weight;
+    }
+    total += weight;
+  }
+
+  /** The slot for key, claiming an empty slot if it isn't present. */
+  private int slot(long key) {
+    int index = find(key);
+    if (!occupied[index]) {
+      if (2 * (distinct + 1) > keys.length) {
+        grow();
+        index = find(key);
+      }
+      occupied[index] = true;
+      keys[index] = key;
+      ++distinct;
+    }
+    return index;
+  }
+
+  /** The slot that key is in, or the empty slot where it would go. */
+  private int find(long key) {
+    int mask = keys.length - 1;
+    int index = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    while (occupied[index] && keys[index] != key) {
+      index = (index + 1) & mask;
+    }
+    return index;
+  }
+
+  private long weight(long key) {
+    int index = find(key);
+    return occupied[index] ? weights[index] : 0;
+  }
+
+  private long currentWeight(double value) {
+    return updated && current == value ? 1 : 0;
+  }
+
+  /** The distinct finite values with any weight in increasing order. */
+  private long[] sortedValues() {
+    boolean currentMissing = updated && !Double.isInfinite(current) && weight((long) current) == 0;
+    long[] sorted = new long[distinct + (currentMissing ? 1 : 0)];
+    int size = 0;
+    for (int i = 0; i < keys.length; ++i) {
+      if (occupied[i] && weights[i] > 0) {
+        sorted[size++] = keys[i];
+      }
+    }
+    if (currentMissing) {
+      sorted[size++] = (long) current;
+    }
+    sorted = Arrays.copyOf(sorted, size);
+    Arrays.sort(sorted);
+    return sorted;
+  }
+
+  /** The value at rank when every unit of weight is laid out in increasing order. */
+  private double valueAt(long rank, long[] sorted) {
+    long seen = negativeInfinite + currentWeight(Double.NEGATIVE_INFINITY);
+    if (rank < seen) {
+      return Double.NEGATIVE_INFINITY;
+    }
+    for (long value : sorted) {
+      seen += weight(value) + currentWeight(value);
+      if (rank < seen) {
+        return value;
+      }
+    }
+    return Double.POSITIVE_INFINITY;
+  }
+
+  private void grow() {
+    long[] oldKeys = keys;
+    long[] oldWeights = weights;
+    boolean[] oldOccupied = occupied;
+    keys = new long[oldKeys.length * 2];
+    weights = new long[oldKeys.length * 2];
+    occupied = new boolean[oldKeys.length * 2];
+    for (int i = 0; i < oldKeys.length; ++i) {
+      if (oldOccupied[i]) {
+        int index = find(oldKeys[i]);
+        occupied[index] = true;
+        keys[index] = oldKeys[i];
+        weights[index] = oldWeights[i];
+      }
+    }
+  }
+
+  private static double checkValue(double value) {
+    checkArgument(Double.isInfinite(value) || (double) (long) value == value,
+        "Values must be integral or infinite, was %s", value);
+    return value;
+  }
+
+}
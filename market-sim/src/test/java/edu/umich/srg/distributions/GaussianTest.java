@@ -0,0 +1,71 @@
+package edu.umich.srg.distributions;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class GaussianTest {
+
+  private static final int samples = 1000000;
+
+  @Test
+  public void bulkMomentsTest() {
+    Random rand = new Random(1);
+    double[] draws = new double[samples];
+    Gaussian.withMeanStandardDeviation(5, 2).sample(rand, draws, samples);
+
+    double sum = 0;
+    for (double draw : draws) {
+      sum += draw;
+    }
+    double mean = sum / samples;
+    double squares = 0;
+    double fourths = 0;
+    for (double draw : draws) {
+      double diff = draw - mean;
+      squares += diff * diff;
+      fourths += diff * diff * diff * diff;
+    }
+    double variance = squares / samples;
+
+    assertEquals(5, mean, 0.01);
+    assertEquals(4, variance, 0.02);
+    assertEquals(3, fourths / samples / (variance * variance), 0.02);
+  }
+
+  /** Compare the fraction below several points, including in the tail, to the standard cdf. */
+  @Test
+  public void zigguratCdfTest() {
+    double[] points = {-4, -3.5, -2, -1, -0.25, 0, 0.5, 1.5, 3.5};
+    double[] cdf = {3.16712e-5, 2.32629e-4, 0.0227501, 0.158655, 0.401294, 0.5, 0.691462,
+        0.933193, 0.999767};
+    long[] below = new long[points.length];
+
+    Random rand = new Random(2);
+    double[] draws = new double[samples];
+    Ziggurat.sample(rand, draws, samples);
+    for (double draw : draws) {
+      for (int i = 0; i < points.length; ++i) {
+        if (draw < points[i]) {
+          below[i]++;
+        }
+      }
+    }
+
+    for (int i = 0; i < points.length; ++i) {
+      double stddev = Math.sqrt(cdf[i] * (1 - cdf[i]) / samples);
+      assertEquals("Wrong fraction below " + points[i], cdf[i], below[i] / (double) samples,
+          5 * stddev);
+    }
+  }
+
+  @Test
+  public void bulkFillsOnlyNTest() {
+    double[] draws = new double[] {-1, -1, -1};
+    Gaussian.withMeanVariance(0, 1).sample(new Random(), draws, 2);
+    assertEquals(-1, draws[2], 0);
+  }
+
+}
@@ -0,0 +1,130 @@
+package edu.umich.srg.egtaonline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.gson.JsonObject;
+
+import edu.umich.srg.egtaonline.Observation.Player;
+import edu.umich.srg.egtaonline.SimSpec.RoleStrat;
+import edu.umich.srg.egtaonline.spec.Spec;
+import edu.umich.srg.util.PositionalSeed;
+
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Random;
+import java.util.function.BiFunction;
+
+public class AdaptiveSamplerTest {
+
+  private static final RoleStrat quiet = RoleStrat.of("role", "quiet");
+  private static final RoleStrat noisy = RoleStrat.of("role", "noisy");
+  private static final SimSpec quietSpec =
+      SimSpec.create(ImmutableMultiset.of(quiet, quiet), Spec.empty());
+  private static final SimSpec noisySpec =
+      SimSpec.create(ImmutableMultiset.of(quiet, noisy), Spec.empty());
+
+  /** Quiet players always get 1, noisy ones get a standard gaussian times 10. */
+  private static final BiFunction<SimSpec, Integer, Observation> sim = (spec, simNum) -> {
+    Random rand = new Random(PositionalSeed.with(0).getSeed(simNum));
+    ImmutableList.Builder<Player> players = ImmutableList.builder();
+    for (RoleStrat roleStrat : spec.assignment) {
+      players.add(player(roleStrat, roleStrat.equals(noisy) ? 10 * rand.nextGaussian() : 1));
+    }
+    return observation(players.build());
+  };
+
+  @Test
+  public void quietTest() {
+    try (AdaptiveSampler sampler = AdaptiveSampler.create(sim, 0.1, 5, 1000, 1)) {
+      AdaptiveSampler.Estimate estimate = sampler.sample(quietSpec);
+      assertEquals(5, estimate.getObservations());
+      assertEquals(1, estimate.getPayoffs().get(quiet).getAverage().getAsDouble(), 0);
+      assertEquals(0, estimate.getMaxStandardError(), 0);
+    }
+  }
+
+  @Test
+  public void noisyTest() {
+    try (AdaptiveSampler sampler = AdaptiveSampler.create(sim, 1, 5, 1000, 1)) {
+      AdaptiveSampler.Estimate estimate = sampler.sample(noisySpec);
+      // Should need about 100
+      assertTrue(estimate.getObservations() > 50);
+      assertTrue(estimate.getObservations() < 1000);
+      assertTrue(estimate.getStandardError(noisy) <= 1);
+      assertEquals(0, estimate.getStandardError(quiet), 0);
+    }
+  }
+
+  @Test
+  public void budgetTest() {
+    try (AdaptiveSampler sampler = AdaptiveSampler.create(sim, 0.01, 5, 40, 1)) {
+      AdaptiveSampler.Estimate estimate = sampler.sample(noisySpec);
+      assertEquals(40, estimate.getObservations());
+      assertTrue(estimate.getMaxStandardError() > 0.01);
+    }
+  }
+
+  @Test
+  public void threadsTest() {
+    AdaptiveSampler.Estimate first = sampleWithThreads(4);
+    AdaptiveSampler.Estimate second = sampleWithThreads(4);
+    // Scheduling doesn't change the result
+    assertEquals(first.getObservations(), second.getObservations());
+    assertEquals(first.getPayoffs(), second.getPayoffs());
+    assertTrue(first.getStandardError(noisy) <= 1);
+  }
+
+  private static AdaptiveSampler.Estimate sampleWithThreads(int jobs) {
+    try (AdaptiveSampler sampler = AdaptiveSampler.create(sim, 1, 5, 1000, jobs)) {
+      sampler.sample(quietSpec);
+      return sampler.sample(noisySpec);
+    }
+  }
+
+  private static Player player(RoleStrat roleStrat, double payoff) {
+    return new Player() {
+
+      @Override
+      public String getRole() {
+        return roleStrat.getRole();
+      }
+
+      @Override
+      public String getStrategy() {
+        return roleStrat.getStrategy();
+      }
+
+      @Override
+      public double getPayoff() {
+        return payoff;
+      }
+
+      @Override
+      public JsonObject getFeatures() {
+        return new JsonObject();
+      }
+
+    };
+  }
+
+  private static Observation observation(Collection<Player> players) {
+    return new Observation() {
+
+      @Override
+      public Collection<? extends Player> getPlayers() {
+        return players;
+      }
+
+      @Override
+      public JsonObject getFeatures() {
+        return new JsonObject();
+      }
+
+    };
+  }
+
+}
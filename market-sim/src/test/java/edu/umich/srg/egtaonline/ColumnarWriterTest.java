@@ -0,0 +1,258 @@
+package edu.umich.srg.egtaonline;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import edu.umich.srg.egtaonline.Observation.Player;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public class ColumnarWriterTest {
+
+  private static final JsonObject spec = new JsonObject();
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void chunkTest() throws IOException {
+    Path dir = folder.getRoot().toPath();
+    try (ColumnarWriter writer = ColumnarWriter.create(dir, 2, true)) {
+      for (int i = 0; i < 3; ++i) {
+        writer.accept(entry(observation(i)));
+      }
+    }
+
+    JsonObject manifest = manifest(dir);
+    assertEquals(3, manifest.get("observations").getAsInt());
+    assertEquals(6, manifest.get("players").getAsInt());
+    assertEquals(ImmutableList.of("buy", "sell"), strings(manifest.getAsJsonArray("roles")));
+    JsonArray chunks = manifest.getAsJsonArray("chunks");
+    assertEquals(2, chunks.size());
+    assertEquals(2, chunks.get(0).getAsJsonObject().get("observations").getAsInt());
+    assertEquals(1, chunks.get(1).getAsJsonObject().get("observations").getAsInt());
+
+    assertArrayEquals(new double[] {0, -1, 1, -2}, doubles(dir, chunks, 0, "players", "payoff"),
+        0);
+    assertArrayEquals(new double[] {2, -3}, doubles(dir, chunks, 1, "players", "payoff"), 0);
+    assertArrayEquals(new int[] {2, 2}, ints(dir, chunks, 1, "players", "observation"));
+    assertArrayEquals(new double[] {0, 2},
+        doubles(dir, chunks, 0, "observations", "features/markets/0/volume"), 0);
+    assertArrayEquals(new double[] {0, 0, 1, 1},
+        doubles(dir, chunks, 0, "players", "controls/private_value"), 0);
+  }
+
+  @Test
+  public void seriesTest() throws IOException {
+    Path dir = folder.getRoot().toPath();
+    try (ColumnarWriter writer = ColumnarWriter.create(dir, 10, true)) {
+      for (int i = 0; i < 3; ++i) {
+        writer.accept(entry(observation(i)));
+      }
+    }
+
+    JsonArray chunks = manifest(dir).getAsJsonArray("chunks");
+    JsonObject column = column(chunks, 0, "observations", "features/fundamental");
+    assertEquals("series", column.get("type").getAsString());
+    assertEquals(2, column.get("width").getAsInt());
+    // Observation i has i + 1 [time, value] pairs
+    assertArrayEquals(new long[] {0, 1, 3, 6}, longs(dir, chunks, 0, column.get("offsets")
+        .getAsString()));
+    assertArrayEquals(new double[] {0, 100, 0, 100, 1, 101, 0, 100, 1, 101, 2, 102},
+        readDoubles(dir, chunks, 0, column.get("file").getAsString()), 0);
+  }
+
+  @Test
+  public void missingTest() throws IOException {
+    // A feature that only some observations have is NaN for the rest
+    Path dir = folder.getRoot().toPath();
+    try (ColumnarWriter writer = ColumnarWriter.create(dir, 10, true)) {
+      for (int i = 0; i < 3; ++i) {
+        Observation obs = observation(i);
+        if (i == 1) {
+          obs.getFeatures().addProperty("rare", 5);
+        }
+        writer.accept(entry(obs));
+      }
+    }
+
+    JsonArray chunks = manifest(dir).getAsJsonArray("chunks");
+    assertArrayEquals(new double[] {Double.NaN, 5, Double.NaN},
+        doubles(dir, chunks, 0, "observations", "features/rare"), 0);
+  }
+
+  @Test
+  public void noFeaturesTest() throws IOException {
+    Path dir = folder.getRoot().toPath();
+    try (ColumnarWriter writer = ColumnarWriter.create(dir, 10, false)) {
+      writer.accept(entry(observation(0)));
+    }
+
+    JsonObject columns = manifest(dir).getAsJsonArray("chunks").get(0).getAsJsonObject()
+        .getAsJsonObject("columns").getAsJsonObject("observations");
+    assertEquals(ImmutableList.of("spec", "controls/fundamental"),
+        new ArrayList<>(columns.keySet()));
+  }
+
+  /** Observation i has a buyer with payoff i and a seller with payoff -i - 1. */
+  private static Observation observation(int num) {
+    JsonArray fundamental = new JsonArray();
+    for (int i = 0; i <= num; ++i) {
+      JsonArray point = new JsonArray();
+      point.add(i);
+      point.add(100 + i);
+      fundamental.add(point);
+    }
+    JsonObject market = new JsonObject();
+    market.addProperty("volume", 2 * num);
+    JsonArray markets = new JsonArray();
+    markets.add(market);
+    JsonObject features = new JsonObject();
+    features.add("fundamental", fundamental);
+    features.add("markets", markets);
+
+    Collection<Player> players =
+        ImmutableList.of(player("buy", num, num), player("sell", -num - 1, num));
+    return new Observation() {
+
+      @Override
+      public Collection<? extends Player> getPlayers() {
+        return players;
+      }
+
+      @Override
+      public JsonObject getFeatures() {
+        return features;
+      }
+
+      @Override
+      public Map<String, Double> getControls() {
+        return ImmutableMap.of("fundamental", (double) num);
+      }
+
+    };
+  }
+
+  private static Player player(String role, double payoff, int num) {
+    JsonObject features = new JsonObject();
+    features.addProperty("holdings", num);
+    return new Player() {
+
+      @Override
+      public String getRole() {
+        return role;
+      }
+
+      @Override
+      public String getStrategy() {
+        return "strat";
+      }
+
+      @Override
+      public double getPayoff() {
+        return payoff;
+      }
+
+      @Override
+      public JsonObject getFeatures() {
+        return features;
+      }
+
+      @Override
+      public Map<String, Double> getControls() {
+        return ImmutableMap.of("private_value", (double) num);
+      }
+
+    };
+  }
+
+  private static Map.Entry<JsonObject, Observation> entry(Observation obs) {
+    return new AbstractMap.SimpleImmutableEntry<>(spec, obs);
+  }
+
+  private static JsonObject manifest(Path dir) throws IOException {
+    try (Reader reader = Files.newBufferedReader(dir.resolve(ColumnarWriter.MANIFEST))) {
+      return new JsonParser().parse(reader).getAsJsonObject();
+    }
+  }
+
+  private static List<String> strings(JsonArray array) {
+    List<String> strings = new ArrayList<>();
+    array.forEach(element -> strings.add(element.getAsString()));
+    return strings;
+  }
+
+  private static JsonObject column(JsonArray chunks, int chunk, String table, String name) {
+    return chunks.get(chunk).getAsJsonObject().getAsJsonObject("columns")
+        .getAsJsonObject(table).getAsJsonObject(name);
+  }
+
+  private static DataInputStream open(Path dir, JsonArray chunks, int chunk, String file)
+      throws IOException {
+    return new DataInputStream(new BufferedInputStream(Files.newInputStream(dir
+        .resolve(chunks.get(chunk).getAsJsonObject().get("path").getAsString()).resolve(file))));
+  }
+
+  private static double[] doubles(Path dir, JsonArray chunks, int chunk, String table,
+      String name) throws IOException {
+    JsonObject column = column(chunks, chunk, table, name);
+    assertEquals("f8", column.get("type").getAsString());
+    return readDoubles(dir, chunks, chunk, column.get("file").getAsString());
+  }
+
+  private static double[] readDoubles(Path dir, JsonArray chunks, int chunk, String file)
+      throws IOException {
+    List<Double> values = new ArrayList<>();
+    try (DataInputStream in = open(dir, chunks, chunk, file)) {
+      while (in.available() > 0) {
+        values.add(in.readDouble());
+      }
+    }
+    return values.stream().mapToDouble(Double::doubleValue).toArray();
+  }
+
+  private static int[] ints(Path dir, JsonArray chunks, int chunk, String table, String name)
+      throws IOException {
+    JsonObject column = column(chunks, chunk, table, name);
+    assertEquals("i4", column.get("type").getAsString());
+    List<Integer> values = new ArrayList<>();
+    try (DataInputStream in = open(dir, chunks, chunk, column.get("file").getAsString())) {
+      while (in.available() > 0) {
+        values.add(in.readInt());
+      }
+    }
+    return values.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  private static long[] longs(Path dir, JsonArray chunks, int chunk, String file)
+      throws IOException {
+    List<Long> values = new ArrayList<>();
+    try (DataInputStream in = open(dir, chunks, chunk, file)) {
+      while (in.available() > 0) {
+        values.add(in.readLong());
+      }
+    }
+    return values.stream().mapToLong(Long::longValue).toArray();
+  }
+
+}
@@ -0,0 +1,127 @@
+package edu.umich.srg.egtaonline;
+
+import static org.junit.Assert.assertEquals;
+
+import com.github.rvesse.airline.HelpOption;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import edu.umich.srg.egtaonline.Observation.Player;
+import edu.umich.srg.egtaonline.SimSpec.RoleStrat;
+import edu.umich.srg.marketsim.Keys;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CommandLineOptionsTest {
+
+  private static final Package keyPackage = Keys.class.getPackage();
+  private static final JsonParser parser = new JsonParser();
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void sweepSimsPerObsTest() throws IOException {
+    AtomicInteger sims = new AtomicInteger();
+    CommandLineOptions options = sweepOptions();
+    options.numObs = 2;
+    options.simsPerObs = 3;
+    options.run((spec, obs) -> {
+      sims.incrementAndGet();
+      return observation(spec);
+    }, keyPackage);
+
+    List<String> lines =
+        Files.readAllLines(Paths.get(options.observations), StandardCharsets.UTF_8);
+    assertEquals(2, lines.size());
+    assertEquals(12, sims.get());
+    for (String line : lines) {
+      assertEquals(6, parser.parse(line).getAsJsonObject().get("observations").getAsInt());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void sweepTargetErrorTest() throws IOException {
+    CommandLineOptions options = sweepOptions();
+    options.targetError = 1;
+    options.run((spec, obs) -> observation(spec), keyPackage);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void sweepNoFeaturesTest() throws IOException {
+    CommandLineOptions options = sweepOptions();
+    options.noFeatures = true;
+    options.run((spec, obs) -> observation(spec), keyPackage);
+  }
+
+  /** Options to sweep over two sim lengths with one job. */
+  private CommandLineOptions sweepOptions() throws IOException {
+    Path spec = folder.newFile().toPath();
+    Files.write(spec, ImmutableList.of("{\"assignment\": {\"role\": {\"zi\": 2}},"
+        + " \"configuration\": {},"
+        + " \"sweep\": {\"configuration\": {\"simLength\": [\"5\", \"10\"]}}}"),
+        StandardCharsets.UTF_8);
+    CommandLineOptions options = new CommandLineOptions();
+    options.help = new HelpOption<>();
+    options.simSpec = spec.toString();
+    options.observations = folder.newFile().toString();
+    options.sweep = true;
+    options.jobs = 1;
+    return options;
+  }
+
+  private static Observation observation(SimSpec spec) {
+    ImmutableList.Builder<Player> players = ImmutableList.builder();
+    for (RoleStrat roleStrat : spec.assignment) {
+      players.add(new Player() {
+
+        @Override
+        public String getRole() {
+          return roleStrat.getRole();
+        }
+
+        @Override
+        public String getStrategy() {
+          return roleStrat.getStrategy();
+        }
+
+        @Override
+        public double getPayoff() {
+          return 1;
+        }
+
+        @Override
+        public JsonObject getFeatures() {
+          return new JsonObject();
+        }
+
+      });
+    }
+    List<Player> built = players.build();
+    return new Observation() {
+
+      @Override
+      public List<Player> getPlayers() {
+        return built;
+      }
+
+      @Override
+      public JsonObject getFeatures() {
+        return new JsonObject();
+      }
+
+    };
+  }
+
+}
@@ -0,0 +1,148 @@
+package edu.umich.srg.egtaonline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import edu.umich.srg.egtaonline.Observation.Player;
+import edu.umich.srg.egtaonline.SimSpec.RoleStrat;
+import edu.umich.srg.marketsim.Keys;
+import edu.umich.srg.marketsim.Keys.ArrivalRate;
+import edu.umich.srg.marketsim.Keys.SimLength;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class ParameterSweepTest {
+
+  private static final Package keyPackage = Keys.class.getPackage();
+  private static final JsonParser parser = new JsonParser();
+  private static final RoleStrat zi = RoleStrat.of("role", "zi");
+  private static final RoleStrat noop = RoleStrat.of("role", "noop");
+
+  @Test
+  public void noSweepTest() {
+    ParameterSweep sweep = ParameterSweep.read(json("{\"assignment\": {\"role\": {\"zi\": 2}},"
+        + " \"configuration\": {\"simLength\": \"10\"}}"), keyPackage);
+
+    assertEquals(1, sweep.size());
+    assertEquals(2, sweep.get(0).assignment.count(zi));
+    assertEquals(10, (long) sweep.get(0).configuration.get(SimLength.class));
+  }
+
+  @Test
+  public void expansionTest() {
+    ParameterSweep sweep = ParameterSweep.read(json("{\"assignment\": {\"role\": {\"zi\": 2}},"
+        + " \"configuration\": {\"simLength\": \"10\"},"
+        + " \"sweep\": {\"configuration\": {\"arrivalRate\": [\"0.1\", \"0.5\"]},"
+        + " \"assignment\": {\"role\": {\"noop\": [0, 1, 3]}}}}"), keyPackage);
+
+    assertEquals(6, sweep.size());
+    // Last axis varies fastest
+    SimSpec spec = sweep.get(4);
+    assertEquals(0.5, spec.configuration.get(ArrivalRate.class), 0);
+    assertEquals(1, spec.assignment.count(noop));
+    assertEquals(2, spec.assignment.count(zi));
+    assertEquals(10, (long) spec.configuration.get(SimLength.class));
+
+    JsonObject point = sweep.getJson(2);
+    assertEquals("0.1", point.getAsJsonObject("configuration").get("arrivalRate").getAsString());
+    assertEquals(3,
+        point.getAsJsonObject("assignment").getAsJsonObject("role").get("noop").getAsInt());
+    assertFalse(point.has("sweep"));
+    assertEquals(sweep.get(2).assignment, SimSpec.read(point, keyPackage).assignment);
+  }
+
+  @Test
+  public void rangeTest() {
+    ParameterSweep sweep = ParameterSweep.builder(json("{\"assignment\": {},"
+        + " \"configuration\": {}}"), keyPackage).range("simLength", 10, 40, 10)
+        .varyCount("role", "zi", 1, 2).build();
+
+    assertEquals(6, sweep.size());
+    assertEquals(20, (long) sweep.get(3).configuration.get(SimLength.class));
+    assertEquals(2, sweep.get(3).assignment.count(zi));
+  }
+
+  @Test
+  public void runTest() {
+    ParameterSweep sweep = ParameterSweep.builder(json("{\"assignment\": {\"role\": {\"zi\": 2}},"
+        + " \"configuration\": {}}"), keyPackage).range("simLength", 0, 20, 1).build();
+    List<ParameterSweep.Result> results = new ArrayList<>();
+
+    // Payoff is the sim length plus the observation number, more observations at longer lengths
+    sweep.run((spec, obs) -> observation(spec, spec.configuration.get(SimLength.class) + obs),
+        spec -> 1 + (int) (long) spec.configuration.get(SimLength.class) % 3, 4, results::add);
+
+    assertEquals(20, results.size());
+    for (int i = 0; i < 20; ++i) {
+      ParameterSweep.Result result = results.get(i);
+      int observations = 1 + i % 3;
+      assertEquals(i, result.getPoint());
+      assertEquals(observations, result.getObservations());
+      assertEquals(2 * observations, result.getPayoffs().get(zi).getCount());
+      assertEquals(i + (observations - 1) / 2.0,
+          result.getPayoffs().get(zi).getAverage().getAsDouble(), 1e-8);
+    }
+
+    JsonObject json = results.get(5).toJson(sweep);
+    assertEquals(5, json.get("point").getAsInt());
+    assertEquals("5", json.getAsJsonObject("configuration").get("simLength").getAsString());
+    assertEquals(6,
+        json.getAsJsonArray("players").get(0).getAsJsonObject().get("payoff").getAsDouble(), 1e-8);
+  }
+
+  private static JsonObject json(String json) {
+    return parser.parse(json).getAsJsonObject();
+  }
+
+  private static Observation observation(SimSpec spec, double payoff) {
+    ImmutableList.Builder<Player> players = ImmutableList.builder();
+    for (RoleStrat roleStrat : spec.assignment) {
+      players.add(new Player() {
+
+        @Override
+        public String getRole() {
+          return roleStrat.getRole();
+        }
+
+        @Override
+        public String getStrategy() {
+          return roleStrat.getStrategy();
+        }
+
+        @Override
+        public double getPayoff() {
+          return payoff;
+        }
+
+        @Override
+        public JsonObject getFeatures() {
+          return new JsonObject();
+        }
+
+      });
+    }
+    Collection<Player> built = players.build();
+    return new Observation() {
+
+      @Override
+      public Collection<? extends Player> getPlayers() {
+        return built;
+      }
+
+      @Override
+      public JsonObject getFeatures() {
+        return new JsonObject();
+      }
+
+    };
+  }
+
+}
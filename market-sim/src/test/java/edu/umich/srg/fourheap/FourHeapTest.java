@@ -8,6 +8,7 @@ import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Ordering;
 
@@ -22,7 +23,9 @@ import org.junit.experimental.theories.Theories;
 import org.junit.experimental.theories.Theory;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Random;
 
 @RunWith(Theories.class)
@@ -432,6 +435,64 @@ public class FourHeapTest {
     assertTrue(three);
   }
 
+  @Test
+  public void streamingClearTest() {
+    Ord os = new Ord(SELL, 5);
+    Ord ob = new Ord(BUY, 7);
+    fh.add(os, 3);
+    fh.add(new Ord(SELL, 6), 2);
+    fh.add(new Ord(SELL, 8), 1);
+    fh.add(ob, 4);
+
+    List<Integer> clearing = new ArrayList<>();
+    List<Ord> buys = new ArrayList<>();
+    List<Integer> quantities = new ArrayList<>();
+    int numMatches = fh.marketClear(new MatchConsumer<Integer, Ord>() {
+
+      @Override
+      public void clearing(Integer buyPrice, Integer sellPrice) {
+        clearing.add(buyPrice);
+        clearing.add(sellPrice);
+      }
+
+      @Override
+      public void match(Ord buy, Ord sell, int quantity) {
+        buys.add(buy);
+        quantities.add(quantity);
+      }
+
+    });
+
+    assertEquals(2, numMatches);
+    assertEquals(ImmutableList.of(7, 6), clearing);
+    assertEquals(ImmutableList.of(ob, ob), buys);
+    assertEquals(4, quantities.stream().mapToInt(Integer::intValue).sum());
+    assertEquals(2, fh.size());
+    assertFalse(fh.contains(os));
+    assertEquals(0, fh.marketClear((buy, sell, quantity) -> fail("Nothing should match")));
+  }
+
+  @Test
+  public void reentrantClearTest() {
+    fh.add(new Ord(SELL, 5), 1);
+    fh.add(new Ord(SELL, 6), 1);
+    fh.add(new Ord(BUY, 7), 2);
+
+    List<Integer> nested = new ArrayList<>();
+    int numMatches = fh.marketClear((buy, sell, quantity) -> {
+      // Responding to a match can submit orders that clear again
+      if (nested.isEmpty()) {
+        fh.add(new Ord(SELL, 3), 1);
+        fh.add(new Ord(BUY, 4), 1);
+        nested.add(fh.marketClear((b, s, q) -> nested.add(s.price)));
+      }
+    });
+
+    assertEquals(2, numMatches);
+    assertEquals(ImmutableList.of(3, 1), nested);
+    assertEquals(0, fh.size());
+  }
+
   @Test
   public void containsTest() {
     Ord ob = new Ord(BUY, 5);
@@ -596,6 +657,72 @@ public class FourHeapTest {
     }
   }
 
+  @Test
+  public void levelsTest() {
+    fh.add(new Ord(BUY, 5), 2);
+    fh.add(new Ord(BUY, 5), 1);
+    fh.add(new Ord(BUY, 3), 4);
+    fh.add(new Ord(BUY, 1), 1);
+    fh.add(new Ord(SELL, 4), 2);
+    fh.add(new Ord(SELL, 6), 1);
+
+    // The sell at 4 is matched with the buys at 5, but they're still levels
+    List<String> bids = new ArrayList<>();
+    assertEquals(2, fh.forEachBidLevel(2, (price, quantity) -> bids.add(price + "x" + quantity)));
+    assertEquals(ImmutableList.of("5x3", "3x4"), bids);
+
+    List<String> asks = new ArrayList<>();
+    assertEquals(2, fh.forEachAskLevel(5, (price, quantity) -> asks.add(price + "x" + quantity)));
+    assertEquals(ImmutableList.of("4x2", "6x1"), asks);
+  }
+
+  @Test
+  public void registryTest() {
+    Ord buy = new Ord(BUY, 5);
+    Ord sell = new Ord(SELL, 4);
+    Ord other = new Ord(SELL, 7);
+    fh.add(buy, 3);
+    assertTrue(fh.contains(buy));
+    assertFalse(fh.isMatched(buy));
+    assertEquals(3, fh.count(buy));
+
+    fh.add(sell, 2);
+    fh.add(other, 1);
+    assertTrue(fh.isMatched(buy));
+    assertTrue(fh.isMatched(sell));
+    assertFalse(fh.isMatched(other));
+    assertEquals(3, fh.count(buy));
+    assertEquals(2, fh.count(sell));
+
+    assertEquals(2, fh.remove(sell, 1));
+    assertEquals(1, fh.count(sell));
+    assertEquals(1, fh.marketClear().size());
+    assertEquals(2, fh.count(buy));
+    assertFalse(fh.isMatched(buy));
+    assertFalse(fh.contains(sell));
+    assertEquals(0, fh.count(sell));
+    assertEquals(0, fh.remove(sell, 1));
+
+    assertEquals(2, fh.remove(buy, 5));
+    assertFalse(fh.contains(buy));
+    assertEquals(1, fh.size());
+  }
+
+  @Test
+  public void priceVectorTest() {
+    fh.add(new Ord(BUY, 5), 2);
+    fh.add(new Ord(BUY, 5), 1);
+    fh.add(new Ord(BUY, 3), 4);
+    fh.add(new Ord(SELL, 8), 1);
+    fh.add(new Ord(SELL, 9), 1);
+
+    assertEquals(ImmutableList.of(5, 3), fh.getBidVector());
+    assertEquals(ImmutableList.of(8, 9), fh.getAskVector());
+    // Computing the vectors doesn't change the book
+    assertEquals(ImmutableList.of(5, 3), fh.getBidVector());
+    assertEquals(7, fh.getBidDepth());
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void negativeQuantitySubmitTest() {
     fh.add(new Ord(BUY, 3), 0);
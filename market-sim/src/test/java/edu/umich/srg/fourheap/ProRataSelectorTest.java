@@ -71,6 +71,29 @@ public class ProRataSelectorTest {
     assertEquals(selection1, selection2);
   }
 
+  /** Test that reusing a selector after a larger level selects like a new one. */
+  @Repeat(1000)
+  @Test
+  public void reusedSelectorTest() {
+    long seed = rand.nextLong();
+    int size = rand.nextInt(10) + 10;
+    int selectSize = rand.nextInt(size - 1) + 1;
+    Multiset<Integer> initial1 = randomMultiset(size);
+    Multiset<Integer> initial2 = HashMultiset.create(initial1);
+
+    Random rand = new Random();
+    ProRataSelector<Integer> reused = ProRataSelector.create(rand);
+    reused.select(randomMultiset(400), 200);
+
+    rand.setSeed(seed);
+    Multiset<Integer> selection1 = reused.select(initial1, selectSize);
+    Multiset<Integer> selection2 =
+        ProRataSelector.<Integer>create(new Random(seed)).select(initial2, selectSize);
+
+    assertEquals(initial1, initial2);
+    assertEquals(selection1, selection2);
+  }
+
   private static Multiset<Integer> randomMultiset(int size) {
     int sampleSize = Math.max(size / 2, 3);
     Multiset<Integer> result = HashMultiset.create();
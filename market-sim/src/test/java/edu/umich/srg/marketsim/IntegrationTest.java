@@ -27,12 +27,16 @@ import edu.umich.srg.egtaonline.SimSpec;
 import edu.umich.srg.egtaonline.SimSpec.RoleStrat;
 import edu.umich.srg.egtaonline.spec.Spec;
 import edu.umich.srg.egtaonline.spec.Value;
+import edu.umich.srg.marketsim.Keys.AntitheticFundamental;
 import edu.umich.srg.marketsim.Keys.ArrivalRate;
 import edu.umich.srg.marketsim.Keys.ClearInterval;
+import edu.umich.srg.marketsim.Keys.CommonRandomNumbers;
+import edu.umich.srg.marketsim.Keys.FundamentalMean;
 import edu.umich.srg.marketsim.Keys.FundamentalMeanReversion;
 import edu.umich.srg.marketsim.Keys.FundamentalShockVar;
 import edu.umich.srg.marketsim.Keys.Markets;
 import edu.umich.srg.marketsim.Keys.MaxPosition;
+import edu.umich.srg.marketsim.Keys.ParallelMarkets;
 import edu.umich.srg.marketsim.Keys.PrivateValueVar;
 import edu.umich.srg.marketsim.Keys.RandomSeed;
 import edu.umich.srg.marketsim.Keys.Rmax;
@@ -375,6 +379,28 @@ public class IntegrationTest {
     assertFalse(it2.hasNext());
   }
 
+  /** Tests that control variates don't change aggregate payoffs when the controls don't vary. */
+  @Test
+  public void constantControlVariatesTest() {
+    long seed = rand.nextLong();
+    Spec agentSpec = Spec.fromPairs(ArrivalRate.class, 0.5);
+    Spec configuration = Spec.builder().put(SimLength.class, 10l)
+        .put(Markets.class, ImmutableList.of("cda")).put(FundamentalMeanReversion.class, 0d)
+        .put(FundamentalShockVar.class, 0d).put(RandomSeed.class, seed).build();
+    Multiset<RoleStrat> assignment = ImmutableMultiset.<RoleStrat>builder()
+        .addCopies(RoleStrat.of("role", toStratString("noise", agentSpec)), 5).build();
+    SimSpec spec = SimSpec.create(assignment, configuration);
+
+    StringWriter plain = new StringWriter();
+    CommandLineOptions.run(CommandLineInterface::simulate, toReader(spec), plain, 2, 10, 1, true,
+        false, false, keyPackage);
+    StringWriter adjusted = new StringWriter();
+    CommandLineOptions.run(CommandLineInterface::simulate, toReader(spec), adjusted, 2, 10, 1, true,
+        true, false, keyPackage);
+
+    assertEquals(plain.toString(), adjusted.toString());
+  }
+
   /** Tests that differently order spec files produce identical results. */
   @Theory
   public void specOrderingTest(@TestInts({1, 10}) int numObs, @TestInts({1, 10}) int simsPerObs) {
@@ -596,6 +622,132 @@ public class IntegrationTest {
         .get("median_spread").getAsDouble(), 1e-7);
   }
 
+  /** Odd antithetic observations mirror the fundamental of the one before about the mean. */
+  @Test
+  public void antitheticFundamentalTest() {
+    double mean = 1000;
+    Spec configuration = Spec.builder().put(SimLength.class, 100l)
+        .put(Markets.class, ImmutableList.of("cda")).put(FundamentalMean.class, mean)
+        .put(FundamentalMeanReversion.class, 0.05).put(FundamentalShockVar.class, 100d)
+        .put(RandomSeed.class, rand.nextLong()).build();
+    Multiset<RoleStrat> assignment = ImmutableMultiset.of(
+        RoleStrat.of("role", toStratString("noise", Spec.fromPairs(ArrivalRate.class, 0.5))));
+    SimSpec standard = SimSpec.create(assignment, configuration);
+    SimSpec antithetic = SimSpec.create(assignment, Spec.builder().putAll(configuration)
+        .put(AntitheticFundamental.class, true).build());
+
+    JsonArray first = CommandLineInterface.simulate(antithetic, 0).getFeatures()
+        .getAsJsonArray("fundamental");
+    JsonArray second = CommandLineInterface.simulate(antithetic, 1).getFeatures()
+        .getAsJsonArray("fundamental");
+    double firstFinal = first.get(first.size() - 1).getAsJsonArray().get(1).getAsDouble();
+    double secondFinal = second.get(second.size() - 1).getAsJsonArray().get(1).getAsDouble();
+
+    assertEquals(2 * mean, firstFinal + secondFinal, 1e-6);
+    assertFalse(Math.abs(firstFinal - mean) < tol);
+    // The first of a pair is a standard observation
+    assertEquals(CommandLineInterface.simulate(standard, 0).getFeatures(),
+        CommandLineInterface.simulate(antithetic, 0).getFeatures());
+  }
+
+  /**
+   * With common random numbers, players are seeded by their position in their role, so strategies
+   * that are written differently but create the same agents produce the same observation.
+   */
+  @Test
+  public void commonRandomNumbersTest() {
+    Spec configuration = Spec.builder().put(SimLength.class, 100l)
+        .put(Markets.class, ImmutableList.of("cda")).put(FundamentalMeanReversion.class, 0.05)
+        .put(FundamentalShockVar.class, 100d).put(RandomSeed.class, rand.nextLong())
+        .put(CommonRandomNumbers.class, true).build();
+    SimSpec spec = SimSpec.create(ImmutableMultiset.<RoleStrat>builder()
+        .addCopies(RoleStrat.of("role", "noise:arrivalRate_0.5"), 5).build(), configuration);
+    SimSpec renamed = SimSpec.create(ImmutableMultiset.<RoleStrat>builder()
+        .addCopies(RoleStrat.of("role", "noise:arrivalRate_0.50"), 5).build(), configuration);
+
+    Observation obs = CommandLineInterface.simulate(spec, 3);
+    Observation renamedObs = CommandLineInterface.simulate(renamed, 3);
+
+    assertEquals(obs.getFeatures(), renamedObs.getFeatures());
+    assertEquals(
+        obs.getPlayers().stream().map(Player::getPayoff).collect(Collectors.toList()),
+        renamedObs.getPlayers().stream().map(Player::getPayoff).collect(Collectors.toList()));
+  }
+
+  /**
+   * With common random numbers, changing one player's strategy leaves the arrivals and private
+   * values of every other player unchanged. Players are seeded by their position in the role, so
+   * the deviating player keeps its own stream too, even though it moves to another strategy.
+   */
+  @Test
+  public void commonRandomNumbersDeviationTest() {
+    Spec configuration = Spec.builder().put(SimLength.class, 100l)
+        .put(Markets.class, ImmutableList.of("cda")).put(FundamentalMeanReversion.class, 0.05)
+        .put(FundamentalShockVar.class, 100d).put(ArrivalRate.class, 0.2)
+        .put(MaxPosition.class, 100).put(PrivateValueVar.class, 1e6).put(Rmin.class, 0)
+        .put(RandomSeed.class, rand.nextLong()).put(CommonRandomNumbers.class, true).build();
+    SimSpec spec = SimSpec.create(ImmutableMultiset.<RoleStrat>builder()
+        .addCopies(RoleStrat.of("role", "zi:rmax_500"), 4)
+        .addCopies(RoleStrat.of("role", "zi:rmax_600"), 1).build(), configuration);
+    SimSpec deviation = SimSpec.create(ImmutableMultiset.<RoleStrat>builder()
+        .addCopies(RoleStrat.of("role", "zi:rmax_500"), 3)
+        .addCopies(RoleStrat.of("role", "zi:rmax_600"), 2).build(), configuration);
+
+    Multiset<String> draws = arrivalsAndPrivateValues(CommandLineInterface.simulate(spec, 2));
+    assertEquals(5, draws.elementSet().size());
+    assertEquals(draws, arrivalsAndPrivateValues(CommandLineInterface.simulate(deviation, 2)));
+  }
+
+  /**
+   * Test that a strategy with population set creates a member for every player, alongside players
+   * of strategies that are created individually.
+   */
+  @Test
+  public void populationTest() {
+    Spec configuration = Spec.builder().put(SimLength.class, 100l)
+        .put(Markets.class, ImmutableList.of("cda", "cda")).put(FundamentalMeanReversion.class, 0d)
+        .put(FundamentalShockVar.class, 0d).put(MaxPosition.class, 10)
+        .put(PrivateValueVar.class, 1e6).put(Rmin.class, 0).put(Rmax.class, 500)
+        .put(RandomSeed.class, rand.nextLong()).build();
+    SimSpec spec = SimSpec.create(ImmutableMultiset.<RoleStrat>builder()
+        .addCopies(RoleStrat.of("role", "zi:population_true_arrivalRate_0.2"), 12)
+        .addCopies(RoleStrat.of("role", "zi:arrivalRate_0.2"), 3).build(), configuration);
+
+    Observation obs = CommandLineInterface.simulate(spec, 0);
+
+    List<Player> members = obs.getPlayers().stream()
+        .filter(p -> p.getStrategy().equals("zi:population_true_arrivalRate_0.2"))
+        .collect(Collectors.toList());
+    assertEquals(15, obs.getPlayers().size());
+    assertEquals(12, members.size());
+    assertTrue(members.stream()
+        .mapToLong(p -> p.getFeatures().get("count_shading").getAsLong()).sum() > 0);
+
+    Observation repeated = CommandLineInterface.simulate(spec, 0);
+    assertEquals(
+        obs.getPlayers().stream().map(Player::getPayoff).collect(Collectors.toList()),
+        repeated.getPlayers().stream().map(Player::getPayoff).collect(Collectors.toList()));
+  }
+
+  /** Parallel markets synchronize on the latency, so they can't silently run without one. */
+  @Test(expected = IllegalArgumentException.class)
+  public void parallelWithoutLatencyTest() {
+    Spec configuration = Spec.builder().put(SimLength.class, 10l)
+        .put(Markets.class, ImmutableList.of("cda", "cda")).put(FundamentalMeanReversion.class, 0d)
+        .put(FundamentalShockVar.class, 0d).put(ParallelMarkets.class, true).build();
+    SimSpec spec = SimSpec.create(ImmutableMultiset.<RoleStrat>builder()
+        .addCopies(RoleStrat.of("role", "noise:arrivalRate_0.5"), 4).build(), configuration);
+    CommandLineInterface.simulate(spec, 0);
+  }
+
+  /** The number of arrivals and the private value of every zi player. */
+  private static Multiset<String> arrivalsAndPrivateValues(Observation obs) {
+    return obs.getPlayers().stream()
+        .map(p -> p.getFeatures().get("count_shading").getAsLong() + " "
+            + p.getControls().get("private_value"))
+        .collect(Collectors.toCollection(HashMultiset::create));
+  }
+
   private static String toStratString(String name, Spec spec) {
     return name + ':' + spec.entrySet().stream()
         .map(e -> e.getKey().getSimpleName() + '_' + e.getValue()).collect(Collectors.joining("_"));
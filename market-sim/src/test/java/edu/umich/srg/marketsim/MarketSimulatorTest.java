@@ -0,0 +1,81 @@
+package edu.umich.srg.marketsim;
+
+import static org.junit.Assert.assertEquals;
+
+import edu.umich.srg.marketsim.fundamental.ConstantFundamental;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class MarketSimulatorTest {
+
+  private static final Random rand = new Random();
+
+  @Test
+  public void serialPartitionTest() {
+    MarketSimulator sim =
+        MarketSimulator.create(ConstantFundamental.create(0, 100), new Random(rand.nextLong()));
+    assertEquals(sim, sim.createPartition());
+  }
+
+  @Test
+  public void crossPartitionTest() {
+    MarketSimulator sim = MarketSimulator.createPartitioned(ConstantFundamental.create(0, 100),
+        new Random(rand.nextLong()), TimeStamp.of(5));
+    Sim first = sim.createPartition();
+    Sim second = sim.createPartition();
+    List<Long> received = new ArrayList<>();
+
+    first.scheduleIn(TimeStamp.of(3), () -> second.scheduleIn(TimeStamp.of(5),
+        () -> received.add(second.getCurrentTime().get())));
+    first.scheduleIn(TimeStamp.of(12), () -> second.scheduleIn(TimeStamp.of(7),
+        () -> received.add(second.getCurrentTime().get())));
+    sim.executeUntil(TimeStamp.of(50));
+
+    assertEquals(2, received.size());
+    assertEquals(8, (long) received.get(0));
+    assertEquals(19, (long) received.get(1));
+    assertEquals(50, sim.getCurrentTime().get());
+    assertEquals(50, second.getCurrentTime().get());
+  }
+
+  /** Test that partitioned execution can stop and resume several times in one simulation. */
+  @Test
+  public void resumePartitionTest() {
+    MarketSimulator sim = MarketSimulator.createPartitioned(ConstantFundamental.create(0, 100),
+        new Random(rand.nextLong()), TimeStamp.of(5));
+    Sim first = sim.createPartition();
+    Sim second = sim.createPartition();
+    List<Long> received = new ArrayList<>();
+
+    first.scheduleIn(TimeStamp.of(3), () -> second.scheduleIn(TimeStamp.of(5),
+        () -> received.add(second.getCurrentTime().get())));
+    first.scheduleIn(TimeStamp.of(12), () -> second.scheduleIn(TimeStamp.of(7),
+        () -> received.add(second.getCurrentTime().get())));
+    for (long time = 4; time <= 50; time += 4) {
+      sim.executeUntil(TimeStamp.of(time));
+    }
+    sim.after();
+
+    assertEquals(2, received.size());
+    assertEquals(8, (long) received.get(0));
+    assertEquals(19, (long) received.get(1));
+    assertEquals(48, second.getCurrentTime().get());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void lookaheadViolationTest() {
+    MarketSimulator sim = MarketSimulator.createPartitioned(ConstantFundamental.create(0, 100),
+        new Random(rand.nextLong()), TimeStamp.of(5));
+    Sim first = sim.createPartition();
+    Sim second = sim.createPartition();
+
+    first.scheduleIn(TimeStamp.of(3), () -> second.scheduleIn(TimeStamp.of(1), () -> {
+    }));
+    sim.executeUntil(TimeStamp.of(50));
+  }
+
+}
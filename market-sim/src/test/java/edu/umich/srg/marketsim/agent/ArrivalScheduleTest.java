@@ -0,0 +1,59 @@
+package edu.umich.srg.marketsim.agent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class ArrivalScheduleTest {
+
+  @Test
+  public void horizonTest() {
+    ArrivalSchedule schedule = ArrivalSchedule.create(0.1, 100000, new Random(1));
+    int count = 0;
+    long last = 0;
+    while (schedule.hasNext()) {
+      long time = schedule.next();
+      assertTrue(time > last);
+      assertTrue(time <= 100000);
+      last = time;
+      count++;
+    }
+    assertEquals(schedule.size(), count);
+    // Expected 10000 with standard deviation about 95
+    assertEquals(10000, count, 500);
+  }
+
+  @Test
+  public void unboundedMatchesHorizonTest() {
+    ArrivalSchedule bounded = ArrivalSchedule.create(0.05, 10000, new Random(2));
+    ArrivalSchedule unbounded = ArrivalSchedule.unbounded(0.05, new Random(2));
+    while (bounded.hasNext()) {
+      assertTrue(unbounded.hasNext());
+      assertEquals(bounded.next(), unbounded.next());
+    }
+    // Unbounded keeps going past the horizon
+    for (int i = 0; i < 1000; ++i) {
+      assertTrue(unbounded.next() > 10000);
+    }
+  }
+
+  @Test
+  public void everyStepTest() {
+    ArrivalSchedule schedule = ArrivalSchedule.create(1, 10, new Random());
+    for (long time = 1; time <= 10; ++time) {
+      assertEquals(time, schedule.next());
+    }
+    assertFalse(schedule.hasNext());
+  }
+
+  @Test
+  public void neverTest() {
+    assertFalse(ArrivalSchedule.create(0, 10, new Random()).hasNext());
+    assertFalse(ArrivalSchedule.unbounded(0, new Random()).hasNext());
+  }
+
+}
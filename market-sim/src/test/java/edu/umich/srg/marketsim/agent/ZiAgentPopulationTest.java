@@ -0,0 +1,161 @@
+package edu.umich.srg.marketsim.agent;
+
+import static edu.umich.srg.fourheap.OrderType.BUY;
+import static edu.umich.srg.fourheap.OrderType.SELL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import edu.umich.srg.egtaonline.spec.Spec;
+import edu.umich.srg.marketsim.Keys;
+import edu.umich.srg.marketsim.Keys.ArrivalRate;
+import edu.umich.srg.marketsim.Keys.FundamentalMeanReversion;
+import edu.umich.srg.marketsim.Keys.MaxPosition;
+import edu.umich.srg.marketsim.Keys.PrivateValueVar;
+import edu.umich.srg.marketsim.Keys.Rmax;
+import edu.umich.srg.marketsim.Keys.Rmin;
+import edu.umich.srg.marketsim.Keys.SimLength;
+import edu.umich.srg.marketsim.MarketSimulator;
+import edu.umich.srg.marketsim.TimeStamp;
+import edu.umich.srg.marketsim.fundamental.Fundamental;
+import edu.umich.srg.marketsim.fundamental.GaussianMeanReverting;
+import edu.umich.srg.marketsim.market.CdaMarket;
+import edu.umich.srg.marketsim.market.Market;
+import edu.umich.srg.marketsim.market.Market.AgentInfo;
+import edu.umich.srg.util.SummStats;
+
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public class ZiAgentPopulationTest {
+
+  private static final Random rand = new Random();
+  private static final long simLength = 100;
+  private static final Spec base =
+      Spec.builder().putAll(Keys.DEFAULT_KEYS).put(ArrivalRate.class, 0.2).put(Rmin.class, 100)
+          .put(Rmax.class, 500).put(MaxPosition.class, 5).put(PrivateValueVar.class, 1e6)
+          .put(SimLength.class, simLength).put(FundamentalMeanReversion.class, 0d).build();
+
+  @Test
+  public void integrationTest() {
+    int numAgents = 50;
+
+    Map<Agent, ? extends AgentInfo> payoffs = simulate(base, numAgents, rand.nextLong(), true);
+    assertEquals(numAgents, payoffs.size());
+
+    long arrivals = 0;
+    for (Agent agent : payoffs.keySet()) {
+      arrivals += agent.getFeatures().get("count_shading").getAsLong();
+    }
+    assertTrue(arrivals > 0);
+  }
+
+  /**
+   * Test that a population trades like a profile of individual ZiAgents with the same spec. They
+   * draw in a different order, so this compares the mean total surplus and volume over many
+   * simulations.
+   */
+  @Test
+  public void matchesIndividualAgentsTest() {
+    int numAgents = 20;
+    int numSims = 200;
+
+    SummStats populationSurplus = SummStats.empty();
+    SummStats individualSurplus = SummStats.empty();
+    SummStats populationVolume = SummStats.empty();
+    SummStats individualVolume = SummStats.empty();
+    for (int i = 0; i < numSims; ++i) {
+      Collection<? extends AgentInfo> population =
+          simulate(base, numAgents, rand.nextLong(), true).values();
+      populationSurplus.accept(population.stream().mapToDouble(AgentInfo::getProfit).sum());
+      populationVolume.accept(population.stream().mapToInt(AgentInfo::getVolumeTraded).sum());
+
+      Collection<? extends AgentInfo> individual =
+          simulate(base, numAgents, rand.nextLong(), false).values();
+      individualSurplus.accept(individual.stream().mapToDouble(AgentInfo::getProfit).sum());
+      individualVolume.accept(individual.stream().mapToInt(AgentInfo::getVolumeTraded).sum());
+    }
+
+    assertSameMean(populationSurplus, individualSurplus);
+    assertSameMean(populationVolume, individualVolume);
+  }
+
+  @Test
+  public void noArrivalsTest() {
+    Spec spec = Spec.fromDefaultPairs(base, ArrivalRate.class, 0d);
+    for (Agent agent : simulate(spec, 10, rand.nextLong()).keySet()) {
+      assertEquals(0, agent.getFeatures().get("count_shading").getAsLong());
+    }
+  }
+
+  /** Test that each member's private value is a decreasing marginal value like ZiAgent's. */
+  @Test
+  public void privateValueTest() {
+    Fundamental fundamental = GaussianMeanReverting.create(rand, simLength, 1e9, 0, 0);
+    MarketSimulator sim = MarketSimulator.create(fundamental, rand);
+    Market cda = sim.addMarket(CdaMarket.create(sim, fundamental));
+    ZiAgentPopulation population = ZiAgentPopulation.createFromSpec(sim, fundamental,
+        Collections.singleton(cda), cda, base, 10, rand);
+
+    for (Agent agent : population.getAgents()) {
+      double last = Double.POSITIVE_INFINITY;
+      for (int position = -7; position <= 7; ++position) {
+        double buy = agent.payoffForExchange(position, BUY);
+        assertTrue(buy <= last);
+        assertEquals(-buy, agent.payoffForExchange(position + 1, SELL), 0);
+        last = buy;
+      }
+    }
+  }
+
+  @Test
+  public void deterministicTest() {
+    long seed = rand.nextLong();
+    assertEquals(profits(simulate(base, 20, seed)), profits(simulate(base, 20, seed)));
+  }
+
+  private static Map<Agent, ? extends AgentInfo> simulate(Spec spec, int numAgents, long seed) {
+    return simulate(spec, numAgents, seed, true);
+  }
+
+  /** Simulate numAgents zi agents as one population, or as individual ZiAgents. */
+  private static Map<Agent, ? extends AgentInfo> simulate(Spec spec, int numAgents, long seed,
+      boolean asPopulation) {
+    Random rand = new Random(seed);
+    Fundamental fundamental = GaussianMeanReverting.create(rand, simLength, 1e9, 0, 0);
+    MarketSimulator sim = MarketSimulator.create(fundamental, rand);
+    Market cda = sim.addMarket(CdaMarket.create(sim, fundamental));
+    if (asPopulation) {
+      ZiAgentPopulation population = ZiAgentPopulation.createFromSpec(sim, fundamental,
+          Collections.singleton(cda), cda, spec, numAgents, rand);
+      for (Agent agent : population.getAgents()) {
+        sim.addAgent(agent);
+      }
+    } else {
+      for (int i = 0; i < numAgents; ++i) {
+        sim.addAgent(new ZiAgent(sim, cda, fundamental, spec, new Random(rand.nextLong())));
+      }
+    }
+    sim.initialize();
+    sim.executeUntil(TimeStamp.of(simLength));
+    return sim.getAgentPayoffs();
+  }
+
+  /** Assert that two samples have means within four standard errors of each other. */
+  private static void assertSameMean(SummStats first, SummStats second) {
+    double error = Math.sqrt(first.getVariance().getAsDouble() / first.getCount()
+        + second.getVariance().getAsDouble() / second.getCount());
+    assertEquals(first.getAverage().getAsDouble(), second.getAverage().getAsDouble(), 4 * error);
+  }
+
+  private static List<Double> profits(Map<Agent, ? extends AgentInfo> payoffs) {
+    return payoffs.values().stream().map(AgentInfo::getProfit).sorted()
+        .collect(Collectors.toList());
+  }
+
+}
@@ -57,6 +57,30 @@ public class GaussianMeanRevertingTest {
     assertEquals("Second prices were not equal", p12, p22, 0);
   }
 
+  @Repeat(100)
+  @Theory
+  public void antitheticTest(@TestDoubles({0, 0.3}) double kappa,
+      @TestDoubles({100, 1000000}) double shockVar) {
+    long finalTime = rand.nextInt(100) + 2;
+    long seed = rand.nextLong();
+
+    Fundamental standard =
+        GaussianMeanReverting.create(new Random(seed), finalTime, mean, kappa, shockVar);
+    Fundamental antithetic =
+        GaussianMeanReverting.create(new Random(seed), finalTime, mean, kappa, shockVar, true);
+
+    // Reflected about the mean independent of query order
+    long[] times = {1, rand.nextInt((int) finalTime), finalTime};
+    double[] values = new double[times.length];
+    for (int i = 0; i < times.length; ++i) {
+      values[i] = standard.getValueAt(times[i]);
+    }
+    for (int i = times.length - 1; i >= 0; --i) {
+      assertEquals(2 * mean, values[i] + antithetic.getValueAt(times[i]),
+          1e-6 * Math.sqrt(shockVar));
+    }
+  }
+
   @Repeat(10)
   @Theory
   public void fundLengthTest(@TestDoubles({100}) double shockVar,
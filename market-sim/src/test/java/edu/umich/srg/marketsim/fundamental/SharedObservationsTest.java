@@ -0,0 +1,76 @@
+package edu.umich.srg.marketsim.fundamental;
+
+import static org.junit.Assert.assertEquals;
+
+import edu.umich.srg.marketsim.fundamental.GaussianFundamentalView.GaussableView;
+import edu.umich.srg.marketsim.fundamental.GaussianFundamentalView.SharedObservations;
+import edu.umich.srg.marketsim.testing.MockSim;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class SharedObservationsTest {
+
+  private static final Random rand = new Random();
+  private static final double mean = 1e6;
+  private static final long finalTime = 200;
+  private static final double transactionVariance = 1e4;
+  private static final int numViews = 20;
+
+  @Test
+  public void perfectObservationTest() {
+    sharedMatchesIndividualTest(0.5, 0);
+  }
+
+  @Test
+  public void noisyObservationTest() {
+    sharedMatchesIndividualTest(0.05, 1e4);
+    sharedMatchesIndividualTest(0, 1e4);
+  }
+
+  @Test
+  public void noObservationTest() {
+    sharedMatchesIndividualTest(0.05, Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Test that views that share transaction observations have the same estimates as views that each
+   * observe every transaction.
+   */
+  private static void sharedMatchesIndividualTest(double meanReversion,
+      double observationVariance) {
+    MockSim sim = new MockSim();
+    Fundamental fundamental =
+        GaussianMeanReverting.create(rand, finalTime, mean, meanReversion, 100);
+    GaussableView view = (GaussableView) fundamental.getView(sim);
+    SharedObservations shared = view.shareObservations(transactionVariance);
+
+    GaussianFundamentalView[] individual = new GaussianFundamentalView[numViews];
+    GaussianFundamentalView[] sharing = new GaussianFundamentalView[numViews];
+    for (int i = 0; i < numViews; ++i) {
+      long seed = rand.nextLong();
+      individual[i] = view.addNoise(new Random(seed), observationVariance);
+      sharing[i] = shared.addNoise(new Random(seed), observationVariance);
+    }
+
+    for (long time = 1; time <= finalTime; ++time) {
+      sim.setTime(time);
+      for (int transactions = rand.nextInt(3); transactions > 0; --transactions) {
+        double price = fundamental.getValueAt(time) + rand.nextGaussian() * 100;
+        int quantity = rand.nextInt(2) + 1;
+        for (GaussianFundamentalView ind : individual) {
+          ind.addObservation(price, transactionVariance, quantity);
+        }
+        shared.addObservation(price, quantity);
+      }
+      for (int i = 0; i < numViews; ++i) {
+        if (rand.nextInt(10) == 0) {
+          assertEquals(individual[i].getEstimatedFinalFundamental(),
+              sharing[i].getEstimatedFinalFundamental(), 1e-6);
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,160 @@
+package edu.umich.srg.marketsim.itch;
+
+import static edu.umich.srg.fourheap.OrderType.BUY;
+import static edu.umich.srg.fourheap.OrderType.SELL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import edu.umich.srg.fourheap.OrderType;
+import edu.umich.srg.marketsim.Price;
+import edu.umich.srg.marketsim.fundamental.ConstantFundamental;
+import edu.umich.srg.marketsim.market.CdaMarket;
+import edu.umich.srg.marketsim.market.Market.MarketView;
+import edu.umich.srg.marketsim.observer.GetQuoteObserver;
+import edu.umich.srg.marketsim.testing.MockAgent;
+import edu.umich.srg.marketsim.testing.MockSim;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+public class ItchReaderTest {
+
+  private static final long srg = ItchReader.stock("SRG");
+
+  @Test
+  public void stockSymbolTest() {
+    assertEquals("SRG", ItchReader.stockSymbol(srg));
+    assertEquals("ABCDEFGH", ItchReader.stockSymbol(ItchReader.stock("ABCDEFGH")));
+  }
+
+  @Test
+  public void decodeTest() throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(256);
+    seconds(buffer, 2);
+    add(buffer, 7, 1, BUY, 100, srg, 250000);
+    buffer.put((byte) 'S').putInt(3).put((byte) 'O'); // System event, skipped
+    buffer.put((byte) '\n'); // Unknown byte, skipped
+    buffer.put((byte) 'X').putInt(8).putLong(1).putInt(40);
+    buffer.put((byte) 'D').putInt(9).putLong(1);
+    buffer.flip();
+
+    List<String> events = new ArrayList<>();
+    ItchReader reader = ItchReader.wrap(buffer);
+    reader.readAll(new ItchHandler() {
+      @Override
+      public void addOrder(long time, long reference, OrderType type, int shares, long stock,
+          long price) {
+        events.add(String.format("A %d %d %s %d %s %d", time, reference, type, shares,
+            ItchReader.stockSymbol(stock), price));
+      }
+
+      @Override
+      public void orderCancelled(long time, long reference, int shares) {
+        events.add(String.format("X %d %d %d", time, reference, shares));
+      }
+
+      @Override
+      public void orderDeleted(long time, long reference) {
+        events.add(String.format("D %d %d", time, reference));
+      }
+    });
+
+    assertEquals(2, reader.getSeconds());
+    assertEquals(3, events.size());
+    assertEquals("A 2000000007 1 BUY 100 SRG 250000", events.get(0));
+    assertEquals("X 2000000008 1 40", events.get(1));
+    assertEquals("D 2000000009 1", events.get(2));
+  }
+
+  @Test
+  public void truncatedTest() throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(16);
+    buffer.put((byte) 'D').putInt(9).putInt(1);
+    buffer.flip();
+
+    ItchReader reader = ItchReader.wrap(buffer);
+    assertFalse(reader.next(new ItchHandler() {}));
+  }
+
+  @Test
+  public void replayTest() throws IOException {
+    MockSim sim = new MockSim();
+    CdaMarket market = CdaMarket.create(sim, ConstantFundamental.create(0, 100));
+    GetQuoteObserver quote = market.addQuoteObserver(GetQuoteObserver.create(market));
+    MarketView view = market.getView(new MockAgent());
+
+    ByteBuffer buffer = ByteBuffer.allocate(512);
+    seconds(buffer, 1);
+    add(buffer, 1, 1, BUY, 100, srg, 90);
+    add(buffer, 2, 2, SELL, 50, srg, 110);
+    add(buffer, 3, 3, SELL, 50, ItchReader.stock("OTHER"), 95);
+    buffer.put((byte) 'E').putInt(4).putLong(2).putInt(50).putLong(1);
+    buffer.put((byte) 'U').putInt(5).putLong(1).putLong(4).putInt(30).putInt(95);
+    buffer.flip();
+
+    ItchReplay replay = ItchReplay.create(view, "SRG");
+    ItchReader.wrap(buffer).readAll(replay);
+
+    assertEquals(1, replay.getNumOrders());
+    assertEquals(Optional.of(Price.of(95)), quote.getQuote().getBidPrice());
+    assertEquals(30, quote.getQuote().getBidDepth());
+    assertTrue(!quote.getQuote().getAskPrice().isPresent());
+  }
+
+  /** Test that replay never withdraws nothing from an order the simulated market already filled. */
+  @Test
+  public void replayExhaustedTest() throws IOException {
+    MockSim sim = new MockSim();
+    CdaMarket market = CdaMarket.create(sim, ConstantFundamental.create(0, 100));
+    List<Integer> withdrawn = new ArrayList<>();
+    MarketView view = recordWithdrawals(market.getView(new MockAgent()), withdrawn);
+
+    ByteBuffer buffer = ByteBuffer.allocate(512);
+    seconds(buffer, 1);
+    add(buffer, 1, 1, BUY, 100, srg, 90);
+    add(buffer, 2, 2, BUY, 50, srg, 80);
+    buffer.flip();
+
+    ItchReplay replay = ItchReplay.create(view, "SRG");
+    ItchReader.wrap(buffer).readAll(replay);
+    market.getView(new MockAgent()).submitOrder(SELL, Price.of(90), 100);
+
+    buffer.clear();
+    buffer.put((byte) 'X').putInt(3).putLong(1).putInt(40);
+    buffer.put((byte) 'X').putInt(4).putLong(2).putInt(0);
+    buffer.flip();
+    ItchReader.wrap(buffer).readAll(replay);
+
+    assertTrue(withdrawn.isEmpty());
+    assertEquals(1, replay.getNumOrders());
+  }
+
+  /** A view that delegates to view and records the quantity of every withdrawal. */
+  private static MarketView recordWithdrawals(MarketView view, List<Integer> withdrawn) {
+    return (MarketView) Proxy.newProxyInstance(MarketView.class.getClassLoader(),
+        new Class<?>[] {MarketView.class}, (proxy, method, args) -> {
+          if (method.getName().equals("withdrawOrder") && args.length == 2) {
+            withdrawn.add((Integer) args[1]);
+          }
+          return method.invoke(view, args);
+        });
+  }
+
+  private static void seconds(ByteBuffer buffer, int seconds) {
+    buffer.put((byte) 'T').putInt(seconds);
+  }
+
+  private static void add(ByteBuffer buffer, int nanos, long reference, OrderType type, int shares,
+      long stock, int price) {
+    buffer.put((byte) 'A').putInt(nanos).putLong(reference).put((byte) (type == BUY ? 'B' : 'S'))
+        .putInt(shares).putLong(stock).putInt(price);
+  }
+
+}
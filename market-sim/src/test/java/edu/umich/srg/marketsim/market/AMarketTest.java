@@ -7,9 +7,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Maps;
 
-import edu.umich.srg.fourheap.MatchedOrders;
 import edu.umich.srg.fourheap.PrioritySelector;
 import edu.umich.srg.marketsim.Price;
 import edu.umich.srg.marketsim.Sim;
@@ -27,9 +25,6 @@ import edu.umich.srg.testing.Repeat;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.util.Collection;
-import java.util.Map.Entry;
-
 public class AMarketTest {
   private MockSim sim;
   private MockMarket market;
@@ -674,14 +669,12 @@ public class AMarketTest {
 
     private MockMarket(Sim sim) {
       super(sim, ConstantFundamental.create(100, 100), MockMarket::mockPricing,
-          PrioritySelector.create(), BenchmarkStyle.VWAP);
+          PrioritySelector.create(), Benchmark.create(BenchmarkStyle.VWAP));
     }
 
-    private static Iterable<Entry<MatchedOrders<Price, AOrder>, Price>> mockPricing(
-        Collection<MatchedOrders<Price, AOrder>> matches) {
+    private static Price mockPricing(AOrder buy, AOrder sell) {
       // Awlays matches on buy price
-      return () -> matches.stream().map(m -> Maps.immutableEntry(m, m.getBuy().getPrice()))
-          .iterator();
+      return buy.getPrice();
     }
 
     private static final long serialVersionUID = 971056535454290161L;
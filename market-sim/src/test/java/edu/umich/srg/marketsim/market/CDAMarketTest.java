@@ -4,14 +4,21 @@ import static edu.umich.srg.fourheap.OrderType.BUY;
 import static edu.umich.srg.fourheap.OrderType.SELL;
 import static edu.umich.srg.marketsim.testing.MarketAsserts.ABSENT;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import com.google.common.collect.ImmutableList;
+import com.google.gson.JsonObject;
+
+import edu.umich.srg.marketsim.MarketSimulator;
 import edu.umich.srg.marketsim.Price;
 import edu.umich.srg.marketsim.TimeStamp;
 import edu.umich.srg.marketsim.fundamental.ConstantFundamental;
 import edu.umich.srg.marketsim.fundamental.Fundamental;
+import edu.umich.srg.marketsim.market.AMarket.AMarketView;
 import edu.umich.srg.marketsim.market.Market.MarketView;
 import edu.umich.srg.marketsim.observer.GetQuoteObserver;
+import edu.umich.srg.marketsim.strategy.OrderDesc;
 import edu.umich.srg.marketsim.testing.MarketAsserts;
 import edu.umich.srg.marketsim.testing.MockAgent;
 import edu.umich.srg.marketsim.testing.MockSim;
@@ -19,6 +26,9 @@ import edu.umich.srg.marketsim.testing.MockSim;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.List;
+import java.util.Random;
+
 public class CDAMarketTest {
   private Fundamental fund;
   private MockSim sim;
@@ -173,4 +183,157 @@ public class CDAMarketTest {
     assertEquals(1, view.getQuantity(second));
   }
 
+  @Test
+  public void latentTransaction() {
+    MarketSimulator sim = MarketSimulator.create(fund, new Random());
+    CdaMarket market = CdaMarket.create(sim, fund);
+    GetQuoteObserver quoteInfo = market.addQuoteObserver(GetQuoteObserver.create(market));
+    MockAgent agent = new MockAgent();
+    AMarketView latent = (AMarketView) market.getView(agent, TimeStamp.of(10));
+    MarketView immediate = market.getView(new MockAgent(), TimeStamp.ZERO);
+
+    OrderRecord order = latent.submitOrder(BUY, Price.of(100), 2);
+    sim.executeUntil(TimeStamp.of(9));
+    assertFalse(quoteInfo.getQuote().getBidPrice().isPresent());
+    sim.executeUntil(TimeStamp.of(10));
+    MarketAsserts.assertQuote(quoteInfo.getQuote(), Price.of(100), null);
+
+    sim.scheduleIn(TimeStamp.of(5), () -> immediate.submitOrder(SELL, Price.of(100), 1));
+    sim.executeUntil(TimeStamp.of(24));
+    assertEquals(1, latent.getTrueHoldings());
+    assertEquals(0, latent.getHoldings());
+    assertEquals(2, latent.getQuantity(order));
+    assertEquals(0, agent.transactions);
+
+    sim.executeUntil(TimeStamp.of(25));
+    assertEquals(1, latent.getHoldings());
+    assertEquals(-100, latent.getProfit(), 0);
+    assertEquals(1, latent.getQuantity(order));
+    assertEquals(1, agent.transactions);
+    assertEquals(2, latent.getTrueSubmissions());
+  }
+
+  @Test
+  public void latentWithdraw() {
+    MarketSimulator sim = MarketSimulator.create(fund, new Random());
+    CdaMarket market = CdaMarket.create(sim, fund);
+    GetQuoteObserver quoteInfo = market.addQuoteObserver(GetQuoteObserver.create(market));
+    MarketView latent = market.getView(new MockAgent(), TimeStamp.of(10));
+
+    // Withdrawn before the agent knows it's in the book, so it's never withdrawn
+    OrderRecord first = latent.submitOrder(BUY, Price.of(100), 1);
+    sim.executeUntil(TimeStamp.of(5));
+    latent.withdrawOrder(first);
+    assertEquals(0, latent.getQuantity(first));
+    sim.executeUntil(TimeStamp.of(30));
+    MarketAsserts.assertQuote(quoteInfo.getQuote(), Price.of(100), null);
+
+    OrderRecord second = latent.submitOrder(SELL, Price.of(200), 1);
+    sim.executeUntil(TimeStamp.of(50));
+    latent.withdrawOrder(second);
+    sim.executeUntil(TimeStamp.of(59));
+    MarketAsserts.assertQuote(quoteInfo.getQuote(), Price.of(100), Price.of(200));
+    sim.executeUntil(TimeStamp.of(60));
+    MarketAsserts.assertQuote(quoteInfo.getQuote(), Price.of(100), null);
+
+    // The handle of second is reused, but withdrawing second again doesn't touch third
+    OrderRecord third = latent.submitOrder(SELL, Price.of(300), 1);
+    sim.executeUntil(TimeStamp.of(80));
+    latent.withdrawOrder(second, 1);
+    sim.executeUntil(TimeStamp.of(100));
+    MarketAsserts.assertQuote(quoteInfo.getQuote(), Price.of(100), Price.of(300));
+    assertEquals(1, latent.getQuantity(third));
+  }
+
+  @Test
+  public void replaceOrders() {
+    MarketView other = market.getView(new MockAgent(), TimeStamp.ZERO);
+    OrderRecord old = view.submitOrder(BUY, Price.of(90), 2);
+    other.submitOrder(SELL, Price.of(100), 1);
+    int[] quotes = new int[] {0};
+    market.addQuoteObserver(quote -> quotes[0]++);
+
+    List<OrderRecord> records = view.replaceOrders(ImmutableList.of(old),
+        ImmutableList.of(OrderDesc.of(BUY, Price.of(95)), OrderDesc.of(BUY, Price.of(100))), 1);
+
+    assertEquals(1, quotes[0]);
+    assertEquals(2, records.size());
+    assertEquals(Price.of(95), records.get(0).getPrice());
+    assertEquals(0, view.getQuantity(old));
+    assertEquals(1, view.getQuantity(records.get(0)));
+    assertEquals(0, view.getQuantity(records.get(1)));
+    assertEquals(1, agent.transactions);
+    assertEquals(1, view.getHoldings());
+    MarketAsserts.assertQuote(quoteInfo.getQuote(), Price.of(95), null);
+  }
+
+  /** Test that a batch that doesn't change the book doesn't clear, quote, or sample the book. */
+  @Test
+  public void emptyBatch() {
+    fillBook(view, market.getView(new MockAgent(), TimeStamp.ZERO));
+    int[] quotes = new int[] {0};
+    market.addQuoteObserver(quote -> quotes[0]++);
+    JsonObject features = market.getFeatures();
+
+    view.withdrawOrders(ImmutableList.of());
+    view.submitOrders(ImmutableList.of(), 1);
+
+    assertEquals(0, quotes[0]);
+    assertEquals(features, market.getFeatures());
+  }
+
+  /** Test that a batch that only withdraws orders updates the quote like a single withdrawal. */
+  @Test
+  public void withdrawOnlyBatch() {
+    OrderRecord bid = fillBook(view, market.getView(new MockAgent(), TimeStamp.ZERO));
+    int[] quotes = new int[] {0};
+    market.addQuoteObserver(quote -> quotes[0]++);
+    int transactions = view.getCurrentNumTransactions();
+    double benchmark = view.getCurrentBenchmark();
+
+    view.withdrawOrders(ImmutableList.of(bid));
+
+    assertEquals(1, quotes[0]);
+    assertEquals(transactions, view.getCurrentNumTransactions());
+    assertEquals(benchmark, view.getCurrentBenchmark(), 0);
+    MarketAsserts.assertQuote(quoteInfo.getQuote(), Price.of(90), null);
+
+    CdaMarket single = CdaMarket.create(sim, fund);
+    MarketView singleView = single.getView(new MockAgent(), TimeStamp.ZERO);
+    singleView.withdrawOrder(fillBook(singleView, single.getView(new MockAgent(), TimeStamp.ZERO)));
+    assertEquals(single.getFeatures(), market.getFeatures());
+  }
+
+  /** Fill the book with a transaction and two bids, and return the best bid. */
+  private static OrderRecord fillBook(MarketView view, MarketView other) {
+    view.submitOrder(BUY, Price.of(90), 1);
+    OrderRecord bid = view.submitOrder(BUY, Price.of(95), 3);
+    other.submitOrder(SELL, Price.of(95), 1);
+    return bid;
+  }
+
+  @Test
+  public void latentReplaceOrders() {
+    MarketSimulator sim = MarketSimulator.create(fund, new Random());
+    CdaMarket market = CdaMarket.create(sim, fund);
+    GetQuoteObserver quoteInfo = market.addQuoteObserver(GetQuoteObserver.create(market));
+    MarketView latent = market.getView(new MockAgent(), TimeStamp.of(10));
+
+    List<OrderRecord> first = latent.submitOrders(
+        ImmutableList.of(OrderDesc.of(BUY, Price.of(90)), OrderDesc.of(SELL, Price.of(110))), 2);
+    assertEquals(2, latent.getActiveOrders().elementSet().size());
+    sim.executeUntil(TimeStamp.of(10));
+    MarketAsserts.assertQuote(quoteInfo.getQuote(), Price.of(90), Price.of(110));
+
+    sim.executeUntil(TimeStamp.of(20));
+    List<OrderRecord> second = latent.replaceOrders(latent.getActiveOrders().elementSet(),
+        ImmutableList.of(OrderDesc.of(BUY, Price.of(95))), 1);
+    assertEquals(0, latent.getQuantity(first.get(0)));
+    assertEquals(1, latent.getQuantity(second.get(0)));
+    sim.executeUntil(TimeStamp.of(29));
+    MarketAsserts.assertQuote(quoteInfo.getQuote(), Price.of(90), Price.of(110));
+    sim.executeUntil(TimeStamp.of(30));
+    MarketAsserts.assertQuote(quoteInfo.getQuote(), Price.of(95), null);
+  }
+
 }
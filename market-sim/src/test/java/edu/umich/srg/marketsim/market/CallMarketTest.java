@@ -6,6 +6,8 @@ import static edu.umich.srg.marketsim.testing.MarketAsserts.ABSENT;
 import static edu.umich.srg.marketsim.testing.MarketAsserts.assertQuote;
 import static org.junit.Assert.assertEquals;
 
+import com.google.common.collect.ImmutableList;
+
 import edu.umich.srg.marketsim.MarketSimulator;
 import edu.umich.srg.marketsim.Price;
 import edu.umich.srg.marketsim.TimeStamp;
@@ -147,6 +149,32 @@ public class CallMarketTest {
     assertQuote(quoteInfo.getQuote(), 100, 125);
   }
 
+  /** Test that withdrawing in a batch schedules a clear like withdrawing a single order */
+  @Test
+  public void withdrawOnlyBatchClear() {
+    MarketSimulator sim = MarketSimulator.create(ConstantFundamental.create(1000, 100), rand);
+    CallMarket market = CallMarket.create(sim, fund, 100, rand);
+    AtomicInteger numQuotes = new AtomicInteger(0);
+    GetQuoteObserver quoteInfo = market.addQuoteObserver(GetQuoteObserver.create(market));
+    market.addQuoteObserver(quote -> numQuotes.incrementAndGet());
+    MarketView view = market.getView(new MockAgent());
+
+    view.submitOrder(BUY, Price.of(100), 1);
+    OrderRecord sell = view.submitOrder(SELL, Price.of(110), 1);
+    sim.executeUntil(TimeStamp.of(200));
+    Assert.assertEquals(1, numQuotes.get());
+    assertQuote(quoteInfo.getQuote(), 100, 110);
+
+    view.withdrawOrders(ImmutableList.of(sell));
+    sim.executeUntil(TimeStamp.of(299));
+    Assert.assertEquals(1, numQuotes.get());
+    assertQuote(quoteInfo.getQuote(), 100, 110);
+
+    sim.executeUntil(TimeStamp.of(300));
+    Assert.assertEquals(2, numQuotes.get());
+    assertQuote(quoteInfo.getQuote(), 100, ABSENT);
+  }
+
   @Repeat(100)
   @Test
   public void consistentRandomTest() {
@@ -0,0 +1,90 @@
+package edu.umich.srg.marketsim.market;
+
+import static edu.umich.srg.fourheap.OrderType.BUY;
+import static edu.umich.srg.fourheap.OrderType.SELL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.google.gson.JsonArray;
+
+import edu.umich.srg.marketsim.MarketSimulator;
+import edu.umich.srg.marketsim.Price;
+import edu.umich.srg.marketsim.TimeStamp;
+import edu.umich.srg.marketsim.fundamental.ConstantFundamental;
+import edu.umich.srg.marketsim.fundamental.Fundamental;
+import edu.umich.srg.marketsim.market.Market.MarketView;
+import edu.umich.srg.marketsim.testing.MockAgent;
+import edu.umich.srg.marketsim.testing.MockSim;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class DepthSnapshotsTest {
+
+  private static final Random rand = new Random();
+  private static final Fundamental fund = ConstantFundamental.create(0, 100);
+
+  @Test
+  public void disabledTest() {
+    CdaMarket market = CdaMarket.create(new MockSim(), fund);
+    market.getView(new MockAgent()).submitOrder(BUY, Price.of(10), 1);
+
+    assertFalse(market.getDepthSnapshots().isEnabled());
+    assertEquals(0, market.getDepthSnapshots().size());
+    assertFalse(market.getFeatures().has("depth"));
+  }
+
+  @Test
+  public void onChangeTest() {
+    MockSim sim = new MockSim();
+    CdaMarket market = CdaMarket.create(sim, fund);
+    market.sampleDepth(2, TimeStamp.ZERO);
+    MarketView view = market.getView(new MockAgent());
+    DepthSnapshots depth = market.getDepthSnapshots();
+
+    sim.setTime(1);
+    view.submitOrder(BUY, Price.of(10), 2);
+    view.submitOrder(BUY, Price.of(10), 1);
+    view.submitOrder(BUY, Price.of(8), 1);
+    view.submitOrder(BUY, Price.of(5), 4);
+    assertEquals(1, depth.size());
+    assertEquals(1, depth.getTime(depth.latest()));
+    assertEquals(10, depth.getBidPrice(depth.latest(), 0));
+    assertEquals(3, depth.getBidQuantity(depth.latest(), 0));
+    assertEquals(8, depth.getBidPrice(depth.latest(), 1));
+    assertEquals(1, depth.getBidQuantity(depth.latest(), 1));
+    assertEquals(0, depth.getAskQuantity(depth.latest(), 0));
+
+    sim.setTime(2);
+    view.submitOrder(SELL, Price.of(9), 3);
+    assertEquals(2, depth.size());
+    assertEquals(8, depth.getBidPrice(depth.latest(), 0));
+    assertEquals(5, depth.getBidPrice(depth.latest(), 1));
+
+    JsonArray series = market.getFeatures().getAsJsonArray("depth");
+    assertEquals(2, series.size());
+    assertEquals(9, series.get(0).getAsJsonArray().size());
+  }
+
+  @Test
+  public void intervalTest() {
+    MarketSimulator sim = MarketSimulator.create(fund, new Random(rand.nextLong()));
+    CdaMarket market = CdaMarket.create(sim, fund);
+    market.sampleDepth(1, TimeStamp.of(10));
+    MarketView view = market.getView(new MockAgent());
+    DepthSnapshots depth = market.getDepthSnapshots();
+
+    sim.scheduleIn(TimeStamp.of(15), () -> view.submitOrder(SELL, Price.of(7), 2));
+    sim.executeUntil(TimeStamp.of(35));
+
+    assertEquals(3, depth.size());
+    assertEquals(10, depth.getTime(0));
+    assertEquals(0, depth.getAskQuantity(0, 0));
+    assertEquals(20, depth.getTime(1));
+    assertEquals(7, depth.getAskPrice(1, 0));
+    assertEquals(2, depth.getAskQuantity(1, 0));
+    assertEquals(30, depth.getTime(2));
+  }
+
+}
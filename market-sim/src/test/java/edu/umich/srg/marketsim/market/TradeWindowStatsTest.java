@@ -0,0 +1,154 @@
+package edu.umich.srg.marketsim.market;
+
+import static edu.umich.srg.fourheap.OrderType.BUY;
+import static edu.umich.srg.fourheap.OrderType.SELL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import edu.umich.srg.marketsim.Price;
+import edu.umich.srg.marketsim.TimeStamp;
+import edu.umich.srg.marketsim.fundamental.ConstantFundamental;
+import edu.umich.srg.marketsim.fundamental.Fundamental;
+import edu.umich.srg.marketsim.market.Market.MarketView;
+import edu.umich.srg.marketsim.testing.MockAgent;
+import edu.umich.srg.marketsim.testing.MockSim;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class TradeWindowStatsTest {
+
+  private static final double eps = 1e-8;
+  private static final Fundamental fund = ConstantFundamental.create(0, 100);
+  private static final Random rand = new Random();
+
+  @Test
+  public void emptyTest() {
+    TransactionHistory history = TransactionHistory.empty();
+    TradeWindowStats stats = history.windowStats(5);
+
+    assertEquals(0, stats.size());
+    assertEquals(0, stats.gainsAbove(10), eps);
+    assertEquals(0, stats.lossesBelow(10), eps);
+  }
+
+  @Test
+  public void slidingTest() {
+    MockSim sim = new MockSim();
+    CdaMarket market = CdaMarket.create(sim, fund);
+    MarketView view = market.getView(new MockAgent());
+    TradeWindowStats stats = view.getCurrentTransactions().windowStats(3);
+
+    trade(view, 5);
+    trade(view, 1);
+    // 5 1
+    assertEquals(2, stats.size());
+    assertEquals(1, stats.countBelow(3));
+    assertEquals(2, stats.gainsAbove(3), eps);
+    assertEquals(2, stats.lossesBelow(3), eps);
+
+    trade(view, 9);
+    trade(view, 3);
+    // 1 9 3
+    assertEquals(3, stats.size());
+    assertEquals(1, stats.countBelow(3));
+    assertEquals(6, stats.gainsAbove(3), eps);
+    assertEquals(2, stats.lossesBelow(3), eps);
+  }
+
+  @Test
+  public void duplicateTest() {
+    TransactionHistory history = TransactionHistory.empty();
+    TradeWindowStats stats = history.windowStats(3);
+
+    add(history, 4);
+    add(history, 4);
+    add(history, 2);
+    add(history, 4);
+    // 4 2 4
+    assertEquals(3, stats.size());
+    assertEquals(1, stats.countBelow(4));
+    assertEquals(3, stats.countBelow(4.5));
+    assertEquals(1, stats.gainsAbove(3.5), eps);
+    assertEquals(1.5, stats.lossesBelow(3.5), eps);
+  }
+
+  @Test
+  public void sharedTest() {
+    TransactionHistory history = TransactionHistory.empty();
+    assertSame(history.windowStats(4), history.windowStats(4));
+  }
+
+  @Test
+  public void zeroDepthTest() {
+    TransactionHistory history = TransactionHistory.empty();
+    TradeWindowStats stats = history.windowStats(0);
+    add(history, 4);
+
+    assertEquals(0, stats.size());
+    assertEquals(0, stats.gainsAbove(0), eps);
+  }
+
+  @Test
+  public void catchUpTest() {
+    TransactionHistory history = TransactionHistory.empty();
+    TradeWindowStats stats = history.windowStats(2);
+    add(history, 1);
+    assertEquals(1, stats.size());
+
+    // More than the depth between queries
+    add(history, 7);
+    add(history, 3);
+    add(history, 8);
+    // 3 8
+    assertEquals(2, stats.size());
+    assertEquals(1, stats.countBelow(5));
+    assertEquals(3, stats.gainsAbove(5), eps);
+    assertEquals(2, stats.lossesBelow(5), eps);
+  }
+
+  @Test
+  public void randomTest() {
+    for (int depth : new int[] {1, 5, 32}) {
+      TransactionHistory history = TransactionHistory.empty();
+      TradeWindowStats stats = history.windowStats(depth);
+      for (int i = 0; i < 500; ++i) {
+        add(history, rand.nextInt(20));
+        if (rand.nextInt(4) == 0) {
+          continue; // Sometimes skip queries so the window has to catch up
+        }
+        double cutoff = rand.nextInt(40) / 2.0;
+
+        TransactionHistory.Window window = history.last(depth);
+        int below = 0;
+        double gains = 0;
+        double losses = 0;
+        for (int j = 0; j < window.size(); ++j) {
+          long price = window.getPrice(j);
+          if (price < cutoff) {
+            ++below;
+            losses += cutoff - price;
+          } else {
+            gains += price - cutoff;
+          }
+        }
+
+        assertEquals(window.size(), stats.size());
+        assertEquals(below, stats.countBelow(cutoff));
+        assertEquals(gains, stats.gainsAbove(cutoff), eps);
+        assertEquals(losses, stats.lossesBelow(cutoff), eps);
+      }
+    }
+  }
+
+  private static void trade(MarketView view, int price) {
+    view.submitOrder(BUY, Price.of(price), 1);
+    view.submitOrder(SELL, Price.of(price), 1);
+  }
+
+  private static void add(TransactionHistory history, int price) {
+    history.add(TimeStamp.ZERO, Price.of(price), 1);
+  }
+
+}
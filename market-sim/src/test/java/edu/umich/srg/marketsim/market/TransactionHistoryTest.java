@@ -0,0 +1,106 @@
+package edu.umich.srg.marketsim.market;
+
+import static edu.umich.srg.fourheap.OrderType.BUY;
+import static edu.umich.srg.fourheap.OrderType.SELL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import edu.umich.srg.marketsim.Price;
+import edu.umich.srg.marketsim.TimeStamp;
+import edu.umich.srg.marketsim.fundamental.ConstantFundamental;
+import edu.umich.srg.marketsim.fundamental.Fundamental;
+import edu.umich.srg.marketsim.market.Market.MarketView;
+import edu.umich.srg.marketsim.testing.MockAgent;
+import edu.umich.srg.marketsim.testing.MockSim;
+
+import org.junit.Test;
+
+public class TransactionHistoryTest {
+
+  private static final Fundamental fund = ConstantFundamental.create(0, 100);
+
+  @Test
+  public void emptyTest() {
+    CdaMarket market = CdaMarket.create(new MockSim(), fund);
+    TransactionHistory history = market.getView(new MockAgent()).getCurrentTransactions();
+
+    assertEquals(0, history.size());
+    assertTrue(history.all().isEmpty());
+    assertTrue(history.last(5).isEmpty());
+    assertTrue(history.since(TimeStamp.ZERO).isEmpty());
+  }
+
+  @Test
+  public void recordTest() {
+    MockSim sim = new MockSim();
+    CdaMarket market = CdaMarket.create(sim, fund);
+    MarketView view = market.getView(new MockAgent());
+    TransactionHistory history = view.getCurrentTransactions();
+
+    sim.setTime(1);
+    view.submitOrder(BUY, Price.of(10), 2);
+    view.submitOrder(SELL, Price.of(8), 2);
+    sim.setTime(3);
+    view.submitOrder(SELL, Price.of(7), 1);
+    view.submitOrder(BUY, Price.of(9), 1);
+
+    TransactionHistory.Window all = history.all();
+    assertEquals(2, all.size());
+    assertEquals(1, all.getTime(0));
+    assertEquals(10, all.getPrice(0));
+    assertEquals(2, all.getQuantity(0));
+    assertEquals(3, all.getTime(1));
+    assertEquals(7, all.getPrice(1));
+    assertEquals(1, all.getQuantity(1));
+  }
+
+  @Test
+  public void windowTest() {
+    MockSim sim = new MockSim();
+    CdaMarket market = CdaMarket.create(sim, fund);
+    MarketView view = market.getView(new MockAgent());
+    TransactionHistory history = view.getCurrentTransactions();
+
+    // More than the initial capacity, at times 0, 0, 1, 1, ...
+    for (int i = 0; i < 100; ++i) {
+      sim.setTime(i / 2);
+      view.submitOrder(BUY, Price.of(i), 1);
+      view.submitOrder(SELL, Price.of(i), 1);
+    }
+    TransactionHistory.Window before = history.all();
+    sim.setTime(50);
+    view.submitOrder(BUY, Price.of(100), 1);
+    view.submitOrder(SELL, Price.of(100), 1);
+
+    assertEquals(101, history.size());
+    assertEquals(100, before.size());
+
+    TransactionHistory.Window last = history.last(3);
+    assertEquals(3, last.size());
+    assertEquals(98, last.getPrice(0));
+    assertEquals(100, last.getPrice(2));
+    assertEquals(101, history.last(200).size());
+
+    TransactionHistory.Window since = history.since(TimeStamp.of(10));
+    assertEquals(81, since.size());
+    assertEquals(20, since.getPrice(0));
+    assertEquals(10, since.getTime(0));
+    assertEquals(0, history.since(TimeStamp.of(51)).size());
+
+    TransactionHistory.Window nested = before.since(TimeStamp.of(49)).last(1);
+    assertEquals(1, nested.size());
+    assertEquals(99, nested.getPrice(0));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void outsideWindowTest() {
+    MockSim sim = new MockSim();
+    CdaMarket market = CdaMarket.create(sim, fund);
+    MarketView view = market.getView(new MockAgent());
+    view.submitOrder(BUY, Price.of(10), 1);
+    view.submitOrder(SELL, Price.of(10), 1);
+
+    view.getCurrentTransactions().last(1).getPrice(1);
+  }
+
+}
@@ -0,0 +1,148 @@
+package edu.umich.srg.marketsim.sip;
+
+import static edu.umich.srg.fourheap.OrderType.BUY;
+import static edu.umich.srg.fourheap.OrderType.SELL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.umich.srg.marketsim.MarketSimulator;
+import edu.umich.srg.marketsim.Price;
+import edu.umich.srg.marketsim.Sim;
+import edu.umich.srg.marketsim.TimeStamp;
+import edu.umich.srg.marketsim.fundamental.ConstantFundamental;
+import edu.umich.srg.marketsim.fundamental.Fundamental;
+import edu.umich.srg.marketsim.market.CdaMarket;
+import edu.umich.srg.marketsim.market.Market;
+import edu.umich.srg.marketsim.market.Market.MarketView;
+import edu.umich.srg.marketsim.market.OrderRecord;
+import edu.umich.srg.marketsim.testing.MockAgent;
+import edu.umich.srg.marketsim.testing.MockSim;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+public class SipTest {
+
+  private static final Random rand = new Random();
+  private static final Fundamental fund = ConstantFundamental.create(0, 100);
+
+  @Test
+  public void immediateTest() {
+    MockSim sim = new MockSim();
+    CdaMarket first = CdaMarket.create(sim, fund);
+    CdaMarket second = CdaMarket.create(sim, fund);
+    CdaMarket third = CdaMarket.create(sim, fund);
+    Sip sip = Sip.create(sim, ImmutableList.of(first, second, third), TimeStamp.ZERO);
+    MarketView firstView = first.getView(new MockAgent());
+    MarketView secondView = second.getView(new MockAgent());
+    MarketView thirdView = third.getView(new MockAgent());
+
+    firstView.submitOrder(BUY, Price.of(100), 1);
+    secondView.submitOrder(BUY, Price.of(105), 1);
+    OrderRecord ask = thirdView.submitOrder(SELL, Price.of(110), 1);
+    firstView.submitOrder(SELL, Price.of(120), 1);
+
+    Nbbo nbbo = sip.getNbbo();
+    assertEquals(Optional.of(Price.of(105)), nbbo.getBidPrice());
+    assertEquals(Optional.of(second), nbbo.getBidMarket());
+    assertEquals(Optional.of(Price.of(110)), nbbo.getAskPrice());
+    assertEquals(Optional.of(third), nbbo.getAskMarket());
+
+    thirdView.withdrawOrder(ask);
+    assertEquals(Optional.of(Price.of(120)), sip.getNbbo().getAskPrice());
+    assertEquals(Optional.of(first), sip.getNbbo().getAskMarket());
+  }
+
+  @Test
+  public void unchangedTest() {
+    MockSim sim = new MockSim();
+    CdaMarket first = CdaMarket.create(sim, fund);
+    CdaMarket second = CdaMarket.create(sim, fund);
+    Sip sip = Sip.create(sim, ImmutableList.of(first, second), TimeStamp.ZERO);
+    MarketView firstView = first.getView(new MockAgent());
+    MarketView secondView = second.getView(new MockAgent());
+
+    firstView.submitOrder(BUY, Price.of(100), 1);
+    Nbbo nbbo = sip.getNbbo();
+    secondView.submitOrder(BUY, Price.of(90), 1);
+    assertSame(nbbo, sip.getNbbo());
+  }
+
+  @Test
+  public void latencyTest() {
+    MarketSimulator sim = MarketSimulator.create(fund, new Random(rand.nextLong()));
+    CdaMarket first = CdaMarket.create(sim, fund);
+    CdaMarket second = CdaMarket.create(sim, fund);
+    ImmutableList<Market> markets = ImmutableList.of(first, second);
+    Sip sip = Sip.create(sim, markets, TimeStamp.of(5));
+    MarketView view = second.getView(new MockAgent());
+
+    sim.scheduleIn(TimeStamp.of(2), () -> view.submitOrder(SELL, Price.of(50), 1));
+    sim.executeUntil(TimeStamp.of(6));
+    assertFalse(sip.getNbbo().getAskPrice().isPresent());
+
+    sim.executeUntil(TimeStamp.of(7));
+    assertEquals(Optional.of(Price.of(50)), sip.getNbbo().getAskPrice());
+    assertEquals(Optional.of(second), sip.getNbbo().getAskMarket());
+    assertEquals(TimeStamp.of(7), sip.getNbbo().getUpdateTime());
+  }
+
+  /** Test that agents in every partition read an nbbo that only reflects quotes after latency. */
+  @Test
+  public void partitionedTest() {
+    MarketSimulator sim =
+        MarketSimulator.createPartitioned(fund, new Random(rand.nextLong()), TimeStamp.of(5));
+    Sim firstPartition = sim.createPartition();
+    Sim secondPartition = sim.createPartition();
+    sim.addMarket(CdaMarket.create(firstPartition, fund), firstPartition);
+    Market second = sim.addMarket(CdaMarket.create(secondPartition, fund), secondPartition);
+    sim.addSip(TimeStamp.of(5));
+    Sip firstSip = firstPartition.getSip().get();
+    Sip secondSip = secondPartition.getSip().get();
+    MarketView view = second.getView(new MockAgent());
+
+    // Partitions run concurrently, so each only records into its own list
+    List<Nbbo> firstSeen = new ArrayList<>();
+    List<Nbbo> secondSeen = new ArrayList<>();
+    secondPartition.scheduleIn(TimeStamp.of(2), () -> view.submitOrder(SELL, Price.of(50), 1));
+    firstPartition.scheduleIn(TimeStamp.of(6), () -> firstSeen.add(firstSip.getNbbo()));
+    firstPartition.scheduleIn(TimeStamp.of(8), () -> firstSeen.add(firstSip.getNbbo()));
+    secondPartition.scheduleIn(TimeStamp.of(8), () -> secondSeen.add(secondSip.getNbbo()));
+    sim.executeUntil(TimeStamp.of(20));
+
+    assertEquals(2, firstSeen.size());
+    assertFalse(firstSeen.get(0).getAskPrice().isPresent());
+    assertEquals(Optional.of(Price.of(50)), firstSeen.get(1).getAskPrice());
+    assertEquals(TimeStamp.of(7), firstSeen.get(1).getUpdateTime());
+    assertEquals(1, secondSeen.size());
+    assertEquals(Optional.of(second), secondSeen.get(0).getAskMarket());
+    assertEquals(TimeStamp.of(7), secondSeen.get(0).getUpdateTime());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void partitionedLatencyTest() {
+    MarketSimulator sim =
+        MarketSimulator.createPartitioned(fund, new Random(rand.nextLong()), TimeStamp.of(5));
+    sim.addSip(TimeStamp.of(4));
+  }
+
+  @Test
+  public void simulatorSipTest() {
+    MarketSimulator sim = MarketSimulator.create(fund, new Random(rand.nextLong()));
+    Market market = sim.addMarket(CdaMarket.create(sim, fund));
+    assertFalse(sim.getSip().isPresent());
+    sim.addSip(TimeStamp.ZERO);
+
+    market.getView(new MockAgent()).submitOrder(BUY, Price.of(90), 1);
+    assertEquals(Optional.of(Price.of(90)), sim.getSip().get().getNbbo().getBidPrice());
+    assertFalse(new MockSim().getSip().isPresent());
+  }
+
+}
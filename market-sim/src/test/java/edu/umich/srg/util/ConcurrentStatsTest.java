@@ -0,0 +1,68 @@
+package edu.umich.srg.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ConcurrentStatsTest {
+
+  private static final double eps = 1e-8;
+
+  @Test
+  public void singleThreadTest() {
+    ConcurrentStats stats = ConcurrentStats.create(0.01);
+    stats.accept(1);
+    stats.accept(2);
+    stats.accept(Double.NaN);
+    stats.accept(6);
+
+    assertEquals(3, stats.getCount());
+    assertEquals(3, stats.getStats().getAverage().getAsDouble(), eps);
+    assertEquals(2, stats.quantile(0.5).getAsDouble(), 2 * 0.01);
+  }
+
+  @Test
+  public void multiThreadTest() throws Exception {
+    ConcurrentStats stats = ConcurrentStats.create(0.01);
+    ExecutorService exec = Executors.newFixedThreadPool(4);
+    List<Future<?>> results = new ArrayList<>();
+    for (int i = 0; i < 8; ++i) {
+      results.add(exec.submit(() -> {
+        for (int j = 1; j <= 1000; ++j) {
+          stats.accept(j);
+        }
+      }));
+    }
+    for (Future<?> result : results) {
+      result.get();
+    }
+    exec.shutdown();
+
+    SummStats summary = stats.getStats();
+    assertEquals(8000, summary.getCount());
+    assertEquals(500.5, summary.getAverage().getAsDouble(), eps);
+    assertEquals(1, summary.getMin().getAsDouble(), 0);
+    assertEquals(1000, summary.getMax().getAsDouble(), 0);
+    assertEquals(500, stats.quantile(0.5).getAsDouble(), 500 * 0.01);
+  }
+
+  @Test
+  public void combineTest() {
+    ConcurrentStats first = ConcurrentStats.create(0.01);
+    ConcurrentStats second = ConcurrentStats.create(0.01);
+    ConcurrentStats empty = ConcurrentStats.create(0.01);
+    first.accept(1);
+    second.accept(3);
+    first.combine(empty).combine(second);
+
+    assertEquals(2, first.getCount());
+    assertEquals(2, first.getStats().getAverage().getAsDouble(), eps);
+  }
+
+}
@@ -0,0 +1,95 @@
+package edu.umich.srg.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class ControlVariateStatsTest {
+
+  private static final Random rand = new Random();
+  private static final double eps = 1e-8;
+
+  @Test
+  public void noControlsTest() {
+    ControlVariateStats stats = ControlVariateStats.empty(0);
+    stats.accept(1);
+    stats.accept(2);
+    stats.accept(6);
+
+    assertEquals(3, stats.getCount());
+    assertEquals(3, stats.getAverage(), eps);
+    assertEquals(3, stats.getUnadjustedAverage(), eps);
+  }
+
+  @Test
+  public void exactControlTest() {
+    // The value is completely explained by the control, so the estimate is exact
+    ControlVariateStats stats = ControlVariateStats.empty(1);
+    for (int i = 0; i < 20; ++i) {
+      double control = rand.nextGaussian();
+      stats.accept(5 + 2 * control, control);
+    }
+
+    assertEquals(2, stats.getCoefficients()[0], eps);
+    assertEquals(5, stats.getAverage(), eps);
+  }
+
+  @Test
+  public void twoControlTest() {
+    ControlVariateStats stats = ControlVariateStats.empty(2);
+    for (int i = 0; i < 20; ++i) {
+      double first = rand.nextGaussian();
+      double second = rand.nextGaussian();
+      stats.accept(-3 + first - 4 * second, first, second);
+    }
+
+    assertEquals(1, stats.getCoefficients()[0], eps);
+    assertEquals(-4, stats.getCoefficients()[1], eps);
+    assertEquals(-3, stats.getAverage(), eps);
+  }
+
+  @Test
+  public void degenerateControlTest() {
+    // A constant control and a duplicate control don't break the fit
+    ControlVariateStats stats = ControlVariateStats.empty(3);
+    for (int i = 0; i < 20; ++i) {
+      double control = rand.nextGaussian();
+      stats.accept(7 + 3 * control, 0, control, control);
+    }
+
+    double[] coefficients = stats.getCoefficients();
+    assertEquals(0, coefficients[0], 0);
+    assertEquals(3, coefficients[1] + coefficients[2], eps);
+    assertEquals(7, stats.getAverage(), eps);
+  }
+
+  @Test
+  public void tooFewTest() {
+    ControlVariateStats stats = ControlVariateStats.empty(2);
+    stats.accept(1, 1, 0);
+    stats.accept(3, 0, 1);
+
+    assertEquals(2, stats.getAverage(), eps);
+  }
+
+  @Test
+  public void reducesErrorTest() {
+    // Squared error of the adjusted estimate should be much smaller with a good control
+    double adjustedError = 0;
+    double unadjustedError = 0;
+    for (int j = 0; j < 100; ++j) {
+      ControlVariateStats stats = ControlVariateStats.empty(1);
+      for (int i = 0; i < 50; ++i) {
+        double control = rand.nextGaussian();
+        stats.accept(control + 0.1 * rand.nextGaussian(), control);
+      }
+      adjustedError += stats.getAverage() * stats.getAverage();
+      unadjustedError += stats.getUnadjustedAverage() * stats.getUnadjustedAverage();
+    }
+    assertTrue(adjustedError < unadjustedError / 10);
+  }
+
+}
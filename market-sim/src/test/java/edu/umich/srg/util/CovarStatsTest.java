@@ -0,0 +1,61 @@
+package edu.umich.srg.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class CovarStatsTest {
+
+  private static final Random rand = new Random();
+  private static final double eps = 1e-8;
+
+  @Test
+  public void covarianceTest() {
+    CovarStats stats = CovarStats.empty();
+    stats.accept(1, 2);
+    stats.accept(2, 4);
+    stats.accept(3, 9);
+
+    assertEquals(2, stats.getXAverage(), eps);
+    assertEquals(5, stats.getYAverage(), eps);
+    assertEquals(1, stats.getXVariance(), eps);
+    assertEquals(13, stats.getYVariance(), eps);
+    assertEquals(3.5, stats.getCovariance(), eps);
+  }
+
+  @Test
+  public void combineTest() {
+    CovarStats all = CovarStats.empty();
+    CovarStats first = CovarStats.empty();
+    CovarStats second = CovarStats.empty();
+    for (int i = 0; i < 100; ++i) {
+      double x = rand.nextGaussian();
+      double y = 3 + x + rand.nextGaussian();
+      all.accept(x, y);
+      (i < 30 ? first : second).accept(x, y);
+    }
+    first.combine(second);
+
+    assertEquals(all.getCount(), first.getCount());
+    assertEquals(all.getXAverage(), first.getXAverage(), eps);
+    assertEquals(all.getYAverage(), first.getYAverage(), eps);
+    assertEquals(all.getXVariance(), first.getXVariance(), eps);
+    assertEquals(all.getYVariance(), first.getYVariance(), eps);
+    assertEquals(all.getCovariance(), first.getCovariance(), eps);
+  }
+
+  @Test
+  public void acceptNTimesTest() {
+    CovarStats stats = CovarStats.empty();
+    stats.accept(0, 0);
+    stats.acceptNTimes(2, 4, 3);
+
+    assertEquals(1.5, stats.getXAverage(), eps);
+    assertEquals(3, stats.getYAverage(), eps);
+    assertEquals(1, stats.getXVariance(), eps);
+    assertEquals(2, stats.getCovariance(), eps);
+  }
+
+}
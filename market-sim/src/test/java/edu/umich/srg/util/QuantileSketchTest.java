@@ -0,0 +1,113 @@
+package edu.umich.srg.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class QuantileSketchTest {
+
+  private static final Random rand = new Random();
+  private static final double accuracy = 0.01;
+
+  @Test
+  public void emptyTest() {
+    QuantileSketch sketch = QuantileSketch.create(accuracy);
+    assertFalse(sketch.median().isPresent());
+    assertEquals(0, sketch.getCount());
+  }
+
+  @Test
+  public void relativeErrorTest() {
+    // Every quantile is within the accuracy of the exact value at that rank
+    QuantileSketch sketch = QuantileSketch.create(accuracy);
+    double[] values = new double[1001];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = rand.nextGaussian() * 1000;
+      sketch.accept(values[i]);
+    }
+    Arrays.sort(values);
+
+    for (double quantile : new double[] {0, 0.01, 0.25, 0.5, 0.75, 0.99, 1}) {
+      double exact = values[(int) (quantile * (values.length - 1))];
+      assertEquals(exact, sketch.quantile(quantile).getAsDouble(), Math.abs(exact) * accuracy);
+    }
+  }
+
+  @Test
+  public void zeroTest() {
+    QuantileSketch sketch = QuantileSketch.create(accuracy);
+    sketch.acceptNTimes(0, 3);
+    sketch.accept(-5);
+    sketch.accept(5);
+
+    assertEquals(0, sketch.median().getAsDouble(), 0);
+    assertEquals(-5, sketch.quantile(0).getAsDouble(), 0);
+    assertEquals(5, sketch.quantile(1).getAsDouble(), 0);
+  }
+
+  @Test
+  public void nanTest() {
+    QuantileSketch sketch = QuantileSketch.create(accuracy);
+    sketch.accept(Double.NaN);
+    sketch.accept(2);
+    assertEquals(1, sketch.getCount());
+    assertEquals(2, sketch.median().getAsDouble(), 0);
+  }
+
+  @Test
+  public void infinityTest() {
+    QuantileSketch sketch = QuantileSketch.create(accuracy);
+    sketch.accept(Double.POSITIVE_INFINITY);
+    sketch.accept(5);
+    assertEquals(5, sketch.quantile(0.25).getAsDouble(), 5 * accuracy);
+    assertEquals(Double.POSITIVE_INFINITY, sketch.quantile(1).getAsDouble(), 0);
+
+    for (int i = 1; i <= 100; ++i) {
+      sketch.accept(i);
+    }
+    sketch.accept(Double.NEGATIVE_INFINITY);
+    assertEquals(103, sketch.getCount());
+    assertEquals(50, sketch.median().getAsDouble(), 50 * accuracy);
+    assertEquals(Double.NEGATIVE_INFINITY, sketch.quantile(0).getAsDouble(), 0);
+    assertEquals(99, sketch.quantile(0.99).getAsDouble(), 99 * accuracy);
+    assertEquals(Double.POSITIVE_INFINITY, sketch.quantile(1).getAsDouble(), 0);
+
+    QuantileSketch combined = QuantileSketch.create(accuracy).combine(sketch);
+    assertEquals(50, combined.median().getAsDouble(), 50 * accuracy);
+    assertEquals(Double.NEGATIVE_INFINITY, combined.quantile(0.001).getAsDouble(), 0);
+  }
+
+  @Test
+  public void combineTest() {
+    QuantileSketch all = QuantileSketch.create(accuracy);
+    QuantileSketch first = QuantileSketch.create(accuracy);
+    QuantileSketch second = QuantileSketch.create(accuracy);
+    for (int i = 0; i < 500; ++i) {
+      double value = Math.exp(rand.nextGaussian() * 3) - 1;
+      all.accept(value);
+      (i % 3 == 0 ? first : second).accept(value);
+    }
+    second.combine(first);
+
+    assertEquals(all.getCount(), second.getCount());
+    for (double quantile : new double[] {0, 0.1, 0.5, 0.9, 1}) {
+      assertEquals(all.quantile(quantile).getAsDouble(), second.quantile(quantile).getAsDouble(),
+          0);
+    }
+  }
+
+  @Test
+  public void wideRangeTest() {
+    // Values too far apart for the buckets collapse the smallest, but the large ones stay accurate
+    QuantileSketch sketch = QuantileSketch.create(accuracy);
+    sketch.accept(1e-300);
+    sketch.acceptNTimes(1e300, 3);
+    assertEquals(1e300, sketch.median().getAsDouble(), 1e300 * accuracy);
+    assertEquals(1e-300, sketch.quantile(0).getAsDouble(), 0);
+  }
+
+}
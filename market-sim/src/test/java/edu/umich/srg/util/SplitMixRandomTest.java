@@ -0,0 +1,86 @@
+package edu.umich.srg.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+public class SplitMixRandomTest {
+
+  @Test
+  public void matchesSplittableRandomTest() {
+    SplitMixRandom rand = SplitMixRandom.create(42);
+    SplittableRandom expected = new SplittableRandom(42);
+    for (int i = 0; i < 1000; ++i) {
+      assertEquals(expected.nextLong(), rand.nextLong());
+      assertEquals(expected.nextInt(), rand.nextInt());
+      assertEquals(expected.nextInt(37), rand.nextInt(37));
+      assertEquals(expected.nextInt(64), rand.nextInt(64));
+      assertEquals(expected.nextDouble(), rand.nextDouble(), 0);
+      assertEquals(expected.nextBoolean(), rand.nextBoolean());
+    }
+  }
+
+  @Test
+  public void setSeedTest() {
+    SplitMixRandom rand = SplitMixRandom.create(7);
+    double first = rand.nextGaussian();
+    long second = rand.nextLong();
+    rand.nextGaussian(); // Leaves a cached gaussian
+    rand.setSeed(7);
+    assertEquals(first, rand.nextGaussian(), 0);
+    assertEquals(second, rand.nextLong());
+  }
+
+  @Test
+  public void splitTest() {
+    SplitMixRandom parent = SplitMixRandom.create(3);
+    SplitMixRandom child = parent.split();
+    SplitMixRandom copy = SplitMixRandom.create(3).split();
+    long[] childDraws = new long[100];
+    for (int i = 0; i < childDraws.length; ++i) {
+      childDraws[i] = child.nextLong();
+      assertEquals(childDraws[i], copy.nextLong());
+    }
+    // The streams don't line up
+    for (int i = 0; i < childDraws.length; ++i) {
+      long draw = parent.nextLong();
+      for (long childDraw : childDraws) {
+        assertNotEquals(childDraw, draw);
+      }
+    }
+  }
+
+  @Test
+  public void gaussianMomentsTest() {
+    SplitMixRandom rand = SplitMixRandom.create(11);
+    int samples = 100000;
+    double sum = 0;
+    double squares = 0;
+    for (int i = 0; i < samples; ++i) {
+      double draw = rand.nextGaussian();
+      sum += draw;
+      squares += draw * draw;
+    }
+    assertEquals(0, sum / samples, 0.02);
+    assertEquals(1, squares / samples, 0.02);
+  }
+
+  @Test
+  public void randomSourceTest() {
+    Random parent = RandomSource.JAVA.create(5);
+    Random child = RandomSource.split(parent);
+    Random expected = new Random(new Random(5).nextLong());
+    assertEquals(expected.nextLong(), child.nextLong());
+    assertEquals(RandomSource.JAVA, RandomSource.of(child));
+
+    Random fast = RandomSource.SPLITMIX.create(5);
+    assertTrue(RandomSource.split(fast) instanceof SplitMixRandom);
+    assertEquals(RandomSource.SPLITMIX, RandomSource.of(fast));
+  }
+
+}
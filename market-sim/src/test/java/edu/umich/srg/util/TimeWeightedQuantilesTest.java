@@ -0,0 +1,91 @@
+package edu.umich.srg.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+public class TimeWeightedQuantilesTest {
+
+  private static final double eps = 1e-8;
+
+  @Test
+  public void emptyTest() {
+    TimeWeightedQuantiles quantiles = TimeWeightedQuantiles.create(Double.POSITIVE_INFINITY);
+    assertFalse(quantiles.median().isPresent());
+    assertEquals(0, quantiles.getTotalWeight());
+  }
+
+  @Test
+  public void initialTest() {
+    TimeWeightedQuantiles quantiles = TimeWeightedQuantiles.create(Double.POSITIVE_INFINITY);
+    quantiles.update(5, 3);
+    // Initial for 5, and current for 1
+    assertEquals(6, quantiles.getTotalWeight());
+    assertEquals(Double.POSITIVE_INFINITY, quantiles.median().getAsDouble(), eps);
+    assertEquals(3, quantiles.quantile(0).getAsDouble(), eps);
+  }
+
+  @Test
+  public void weightedTest() {
+    TimeWeightedQuantiles quantiles = TimeWeightedQuantiles.create(0);
+    quantiles.update(0, 4);
+    quantiles.update(3, 2);
+    quantiles.update(4, 8);
+    quantiles.update(4, 6);
+    // 4 4 4 2 6, 8 was immediately replaced
+    assertEquals(5, quantiles.getTotalWeight());
+    assertEquals(4, quantiles.median().getAsDouble(), eps);
+    assertEquals(2, quantiles.quantile(0).getAsDouble(), eps);
+    assertEquals(6, quantiles.quantile(1).getAsDouble(), eps);
+    assertEquals(5, quantiles.quantile(0.875).getAsDouble(), eps);
+  }
+
+  @Test
+  public void evenMedianTest() {
+    TimeWeightedQuantiles quantiles = TimeWeightedQuantiles.create(0);
+    quantiles.update(0, -3);
+    quantiles.update(1, 10);
+    assertEquals(3.5, quantiles.median().getAsDouble(), eps);
+
+    quantiles.update(2, Double.POSITIVE_INFINITY);
+    quantiles.update(3, 1);
+    // -3 10 inf 1
+    assertEquals(5.5, quantiles.median().getAsDouble(), eps);
+  }
+
+  @Test
+  public void infiniteMedianTest() {
+    TimeWeightedQuantiles quantiles = TimeWeightedQuantiles.create(Double.POSITIVE_INFINITY);
+    quantiles.update(1, 7);
+    assertEquals(Double.POSITIVE_INFINITY, quantiles.median().getAsDouble(), eps);
+    quantiles.update(3, Double.NEGATIVE_INFINITY);
+    // inf 7 7 -inf
+    assertEquals(7, quantiles.median().getAsDouble(), eps);
+  }
+
+  @Test
+  public void manyValuesTest() {
+    TimeWeightedQuantiles quantiles = TimeWeightedQuantiles.create(0);
+    for (int i = 0; i < 1000; ++i) {
+      quantiles.update(i, 999 - i);
+    }
+    // 0 for zero time, then 999 through 0 each once
+    assertEquals(1000, quantiles.getTotalWeight());
+    assertEquals(499.5, quantiles.median().getAsDouble(), eps);
+    assertEquals(0, quantiles.getCurrent(), eps);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fractionalTest() {
+    TimeWeightedQuantiles.create(0).update(1, 0.5);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void outOfOrderTest() {
+    TimeWeightedQuantiles quantiles = TimeWeightedQuantiles.create(0);
+    quantiles.update(2, 1);
+    quantiles.update(1, 1);
+  }
+
+}